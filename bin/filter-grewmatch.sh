@@ -20,17 +20,11 @@ TARGETDIR=$BASENAME/../target
 
 
 
-if [ "$2" == "" ]; then
-	echo "usage $0 grewmath|@grewmatch conllu-files"
+if [ "$1" == "" ]; then
+	echo "usage $0 [--count] [--invert] [--first n] grewmath|@grewmatch [conllu-files|-]"
 	exit 1
 fi
 
 NEWESTJAR=$(ls -tr $TARGETDIR/ConlluEditor-* | grep with-dep | tail -1)
 
-PATTERN=$1
-shift
-CONLLU=$*
-
-java -Xmx4g -cp $NEWESTJAR com.orange.labs.conllparser.CheckGrewmatch --filter --join $PATTERN $CONLLU
- 
-
+java -Xmx4g -cp $NEWESTJAR com.orange.labs.conllparser.CheckGrewmatch --stream "$@"
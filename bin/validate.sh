@@ -27,13 +27,14 @@ TARGETDIR=$BASENAME/../target
 #fi
 
 if [ "$2" == "" ]; then
-	echo "usage $0 rules conllufile"
+	echo "usage $0 rules conllufile [--json]"
 	exit 1
 fi
 
 RULES=$1
 CONLLU=$2
+shift 2
 
-java -Xmx4g -cp $NEWESTJAR com.orange.labs.conllparser.ConllFile --cvalid ${RULES} ${CONLLU}
+java -Xmx4g -cp $NEWESTJAR com.orange.labs.conllparser.ConllFile --cvalid ${RULES} "$@" ${CONLLU}
 
 
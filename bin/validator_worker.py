@@ -0,0 +1,102 @@
+#!/usr/bin/env python3
+
+# This software is under the 3-Clause BSD License
+#
+# Copyright (c) 2026, Orange S.A.
+# 
+# Redistribution and use in source and binary forms, with or without modification,
+# are permitted provided that the following conditions are met:
+# 
+#   1. Redistributions of source code must retain the above copyright notice,
+#      this list of conditions and the following disclaimer.
+# 
+#   2. Redistributions in binary form must reproduce the above copyright notice,
+#      this list of conditions and the following disclaimer in the documentation
+#      and/or other materials provided with the distribution.
+# 
+#   3. Neither the name of the copyright holder nor the names of its contributors
+#      may be used to endorse or promote products derived from this software without
+#      specific prior written permission.
+# 
+#  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+#  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+#  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+#  ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+#  FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+#  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+#  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+#  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+#  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+#  THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+# 
+#  @author Johannes Heinecke
+#  @version 2.34.0 as of 18th October 2026
+
+
+# keeps a validation script (like validate.py of the UD tools) loaded in memory and validates
+# the CoNLL-U sentences sent by the ConlluEditor (worker mode of the validator configuration)
+#   worker: /path/to/ConlluEditor/bin/validator_worker.py /path/to/UniversalDependencies/tools/validate.py --lang cy --level 5
+#
+# stdin:  VALIDATE <n>  followed by n CoNLL-U lines
+# stdout: RESULT <m>    followed by m lines of output (stdout and stderr) of the validation script
+# the script must have a main() function which reads the file given as last argument
+
+import contextlib
+import importlib.util
+import io
+import os
+import sys
+import tempfile
+
+
+def load(script):
+    # the module is executed again for each request since many scripts keep their counters in global variables
+    # (the compiled code and imported modules are cached by python)
+    spec = importlib.util.spec_from_file_location("validator_script", script)
+    module = importlib.util.module_from_spec(spec)
+    spec.loader.exec_module(module)
+    return module
+
+
+def validate(script, args, lines):
+    with tempfile.NamedTemporaryFile("w", suffix=".conllu", encoding="utf-8", delete=False) as ofp:
+        ofp.writelines(lines)
+    output = io.StringIO()
+    argv = sys.argv
+    sys.argv = [script] + args + [ofp.name]
+    try:
+        with contextlib.redirect_stdout(output), contextlib.redirect_stderr(output):
+            load(script).main()
+    except SystemExit:
+        pass
+    except Exception as e:
+        output.write("Validator ERROR: %s\n" % e)
+    finally:
+        sys.argv = argv
+        os.unlink(ofp.name)
+    return output.getvalue().splitlines()
+
+
+def main():
+    if len(sys.argv) < 2:
+        print("usage: %s validationscript [options]" % sys.argv[0], file=sys.stderr)
+        sys.exit(1)
+    script = os.path.abspath(sys.argv[1])
+    args = sys.argv[2:]
+    sys.path.insert(0, os.path.dirname(script))
+    load(script) # check whether the script can be loaded
+
+    for header in sys.stdin:
+        elems = header.split()
+        if len(elems) != 2 or elems[0] != "VALIDATE":
+            continue
+        lines = [sys.stdin.readline() for i in range(int(elems[1]))]
+        result = validate(script, args, lines)
+        sys.stdout.write("RESULT %d\n" % len(result))
+        for line in result:
+            sys.stdout.write(line + "\n")
+        sys.stdout.flush()
+
+
+if __name__ == "__main__":
+    main()
@@ -32,7 +32,6 @@ are permitted provided that the following conditions are met:
  */
 package com.orange.labs.comparison;
 
-import static java.lang.Math.abs;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -42,14 +41,13 @@ import java.util.Map;
  * @author Johannes Heinecke
  */
 public class Analyser implements Runnable {
-    private int modulo; // current thread number
-    private int totalthreads; // number of threads used (here we process one out of totalthread
+    private int from; // first sentence of group1 to compare with the others
+    private int to; // last sentence (excluded)
     private List<String> keys;
     Map<String, ConlluComparator.Signatures> csents; // unique id (filename#id#number): sentence
     // group 2
     private List<String> keys2;
     Map<String, ConlluComparator.Signatures> csents2; // unique id (filename#id#number): sentence
-    private int len; // number of sentences
     private int len2; // number of sentences
     private int form;
     private int lemma;
@@ -57,20 +55,28 @@ public class Analyser implements Runnable {
     private int xpos;
     private int feats;
     private int deprel;
+    private CandidateIndex candidates; // if not null, only compare the pairs found by the index
+    private long comparisons = 0; // pairs compared
+    private final Distance distance = new Distance(); // keeps its buffers, one per thread
+    private JsonLinesSink sink; // if not null, results are written here as soon as they are found
+    private int block; // number of the block of sentences, for the sink
 
     //Map<String, List<ConlluComparator.Result>> results; // store similar sentences: {id1: [(id2,dit)]}
     List<String []> results; // store similar sentences: "column <TAB> dist <TAB> id1 <TAB> id2"
     private boolean aggregate; // collect results and return
 
-    public Analyser(int modulo, int totalthreads,
+    /**
+     * compare the sentences from ... to-1 of group1 with the other sentences
+     */
+    public Analyser(int from, int to,
             List<String> keys, Map<String, ConlluComparator.Signatures> csents,
             List<String> keys2, Map<String, ConlluComparator.Signatures> csents2,
-            int form, int lemma, int upos, int xpos, int feats, int deprel) {
-        System.err.println("Create Analyser " + modulo);
-        this.modulo = modulo;
-        this.totalthreads = totalthreads;
+            int form, int lemma, int upos, int xpos, int feats, int deprel,
+            CandidateIndex candidates) {
+        this.candidates = candidates;
+        this.from = from;
+        this.to = to;
         this.keys = keys;
-        this.len = keys.size();
         this.csents = csents;
         this.keys2 = keys2;
         this.len2 = keys2.size();
@@ -87,12 +93,14 @@ public class Analyser implements Runnable {
         }
     }
 
+    public void setSink(JsonLinesSink sink, int block) {
+        this.sink = sink;
+        this.block = block;
+    }
+
     @Override
     public void run() {
-        for (int i = 0; i < len; ++i) {
-            if (modulo == 0 && i % 7 == 0) {
-                System.err.format("Checking %d/%d\r", i, len);
-            }
+        for (int i = from; i < to; ++i) {
             ConlluComparator.Signatures cursent = csents.get(keys.get(i));
             //for (int j = i + 1; j < len2; ++j) {
             int start;
@@ -103,10 +111,14 @@ public class Analyser implements Runnable {
                 // two groups compare all sentences from group1 with all sentences from group2
                 start = 0;
             }
-            for (int j = start; j < len2; ++j) {
-                if (j % totalthreads != modulo) {
-                    continue; // do only one sentence out of totalthreads in this thread
-                }
+            int[] others = null;
+            if (candidates != null) {
+                others = candidates.candidates(i);
+            }
+            int end = others == null ? len2 : others.length;
+            for (int c = (others == null ? start : 0); c < end; ++c) {
+                int j = (others == null ? c : others[c]);
+                comparisons++;
                 //System.err.println("comparing " + i + " " + j);
                 ConlluComparator.Signatures othersent = csents2.get(keys2.get(j));
 
@@ -116,7 +128,7 @@ public class Analyser implements Runnable {
                         identical("FORM", cursent, othersent);
                     }
                 } else if (form > 0) {
-                    int dist = calculateDistance(cursent.sentence, othersent.sentence, form);
+                    int dist = distance.calculate(cursent.chars, othersent.chars, form);
                     if (dist == 0) {
                         identical("FORM", cursent, othersent);
                     } else  if (dist <= form) {
@@ -130,7 +142,7 @@ public class Analyser implements Runnable {
                         identical("LEMMA", cursent, othersent);
                     }
                 } else if (lemma > 0) {
-                    int dist = calculateDistance(cursent.lemmas, othersent.lemmas, lemma);
+                    int dist = distance.calculate(cursent.lemmaids, othersent.lemmaids, lemma);
                     if (dist == 0) {
                         identical("LEMMA", cursent, othersent);
                     } else if (dist <= lemma) {
@@ -144,7 +156,7 @@ public class Analyser implements Runnable {
                         identical("UPOS", cursent, othersent);
                     }
                 } else if (upos > 0) {
-                    int dist = calculateDistance(cursent.uposs, othersent.uposs, upos);
+                    int dist = distance.calculate(cursent.uposids, othersent.uposids, upos);
                     if (dist == 0) {
                         identical("UPOS", cursent, othersent);
                     } else if (dist <= upos) {
@@ -158,7 +170,7 @@ public class Analyser implements Runnable {
                         identical("XPOS", cursent, othersent);
                     }
                 } else if (xpos > 0) {
-                    int dist = calculateDistance(cursent.xposs, othersent.xposs, xpos);
+                    int dist = distance.calculate(cursent.xposids, othersent.xposids, xpos);
                     if (dist == 0) {
                         identical("XPOS", cursent, othersent);
                     } else if (dist <= xpos) {
@@ -172,7 +184,7 @@ public class Analyser implements Runnable {
                         identical("FEATS", cursent, othersent);
                     }
                 } else if (feats > 0) {
-                    int dist = calculateDistance(cursent.feats, othersent.feats, feats);
+                    int dist = distance.calculate(cursent.featsids, othersent.featsids, feats);
                     if (dist == 0) {
                         identical("FEATS", cursent, othersent);
                     } else if (dist <= feats) {
@@ -186,7 +198,7 @@ public class Analyser implements Runnable {
                         identical("DEPREL", cursent, othersent);
                     }
                 } else if (deprel > 0) {
-                    int dist = calculateDistance(cursent.deprels, othersent.deprels, deprel);
+                    int dist = distance.calculate(cursent.deprelids, othersent.deprelids, deprel);
                     if (dist == 0) {
                         identical("DEPREL", cursent, othersent);
                     } else if (dist <= deprel) {
@@ -195,54 +207,10 @@ public class Analyser implements Runnable {
                 }
             }
         }
-        if (modulo == 0) {
-            System.err.format("Checked %d      \n", len);
-        }
     }
 
-    // inspired by https://github.com/crwohlfeil/damerau-levenshtein
-    /**
-     * calculate the levenshtein-damerau distance between two lists of objects (characters or strings)
-     * levenstein_distance(a,b) >= |len(a) - len(b)|
-     * @param source
-     * @param target
-     * @return
-     */
-    private int calculateDistance(List<? extends Object> source, List<? extends Object> target, int maxdist) {
-        //if (source == null || target == null) {
-        //    throw new IllegalArgumentException("Parameter must not be null");
-        //}
-        int sourceLength = source.size();
-        int targetLength = target.size();
-        // if the length of the two sentences differs more than maxdist, we stop here
-        if (abs(sourceLength - targetLength) > maxdist) return abs(sourceLength - targetLength);
-
-        if (sourceLength == 0) {
-            return targetLength;
-        }
-        if (targetLength == 0) {
-            return sourceLength;
-        }
-        int[][] dist = new int[sourceLength + 1][targetLength + 1];
-        for (int i = 0; i < sourceLength + 1; i++) {
-            dist[i][0] = i;
-        }
-        for (int j = 0; j < targetLength + 1; j++) {
-            dist[0][j] = j;
-        }
-        for (int i = 1; i < sourceLength + 1; i++) {
-            for (int j = 1; j < targetLength + 1; j++) {
-                int cost = source.get(i - 1).equals(target.get(j - 1)) ? 0 : 1;
-                dist[i][j] = Math.min(Math.min(dist[i - 1][j] + 1, dist[i][j - 1] + 1), dist[i - 1][j - 1] + cost);
-                if (i > 1
-                        && j > 1
-                        && source.get(i - 1).equals(target.get(j - 2))
-                        && source.get(i - 2).equals(target.get(j - 1))) {
-                    dist[i][j] = Math.min(dist[i][j], dist[i - 2][j - 2] + cost);
-                }
-            }
-        }
-        return dist[sourceLength][targetLength];
+    public long getComparisons() {
+        return comparisons;
     }
 
     public List<String []> getResults() {
@@ -250,11 +218,18 @@ public class Analyser implements Runnable {
     }
 
 
+    private void add(String[] e) {
+        results.add(e);
+        if (sink != null) {
+            sink.result(block, e);
+        }
+    }
+
     private void identical(String column, ConlluComparator.Signatures s1, ConlluComparator.Signatures s2) {
         if (aggregate) {
             //results.add(String.format("%s\t0\t%s\t%s\t%s", column, s1.id, s2.id, s1.sent));
             String [] e = { column, "0", s1.id, s2.id, s1.getColumnAsString(column)};
-            results.add(e);
+            add(e);
         } else {
             System.out.format("%s identical\t%s\t%s\n", column, s1.id, s2.id);
             System.out.format("# %s\n", s1.sent);
@@ -266,7 +241,7 @@ public class Analyser implements Runnable {
         if (aggregate) {
             //results.add(String.format("%s\t%d\t%s\t%s\t%s\t%s", column, dist, s1.id, s2.id, s1.sent, s2.sent));
             String [] e = {column, ""+dist, s1.id, s2.id, s1.getColumnAsString(column), s2.getColumnAsString(column)};
-            results.add(e);
+            add(e);
         } else {
             System.out.format("%s similar %d\t%s\t%s\n", column, dist, s1.id, s2.id);
             System.out.format("# %s\n", s1.sent);
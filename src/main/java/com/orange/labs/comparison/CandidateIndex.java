@@ -0,0 +1,342 @@
+/* This library is under the 3-Clause BSD License
+
+ Copyright (c) 2018-2026, Orange S.A.
+
+ Redistribution and use in source and binary forms, with or without modification,
+ are permitted provided that the following conditions are met:
+
+ 1. Redistributions of source code must retain the above copyright notice,
+ this list of conditions and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright notice,
+ this list of conditions and the following disclaimer in the documentation
+ and/or other materials provided with the distribution.
+
+ 3. Neither the name of the copyright holder nor the names of its contributors
+ may be used to endorse or promote products derived from this software without
+ specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ @author Johannes Heinecke
+ @version 2.34.0 as of 18th October 2026
+*/
+package com.orange.labs.comparison;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * finds the sentences of group2 which may be identical or similar to a sentence of group1,
+ * so that Analyser only needs to compare these pairs and not all sentences with all others.
+ * No pair within the maximal distance of a column is lost:
+ * <ul>
+ * <li>distance 0: sentences with the same column value (hash table)</li>
+ * <li>distance d &gt; 0: the lengths differ by d at most and, if tokens (or characters for FORM)
+ * are ordered by frequency, the d+1 rarest tokens of both sentences have at least one token in common
+ * (prefix filter), and both sentences share at least max(length) - d tokens (count filter)</li>
+ * </ul>
+ *
+ * @author Johannes Heinecke <johannes.heinecke@orange.com>
+ */
+public class CandidateIndex {
+
+    private final boolean samegroup; // only group1, compare sentence i only with sentences i+1 ... n
+    private final List<ColumnIndex> columns;
+
+    public CandidateIndex(List<String> keys, Map<String, ConlluComparator.Signatures> csents,
+            List<String> keys2, Map<String, ConlluComparator.Signatures> csents2,
+            int form, int lemma, int upos, int xpos, int feats, int deprel) {
+        samegroup = csents == csents2;
+        List<ConlluComparator.Signatures> sigs = new ArrayList<>();
+        for (String k : keys) {
+            sigs.add(csents.get(k));
+        }
+        List<ConlluComparator.Signatures> sigs2;
+        if (samegroup) {
+            sigs2 = sigs;
+        } else {
+            sigs2 = new ArrayList<>();
+            for (String k : keys2) {
+                sigs2.add(csents2.get(k));
+            }
+        }
+
+        String[] names = {"FORM", "LEMMA", "UPOS", "XPOS", "FEATS", "DEPREL"};
+        int[] maxdists = {form, lemma, upos, xpos, feats, deprel};
+        columns = new ArrayList<>();
+        for (int c = 0; c < names.length; ++c) {
+            if (maxdists[c] >= 0) {
+                List<List<? extends Object>> values = new ArrayList<>();
+                for (ConlluComparator.Signatures sig : sigs) {
+                    values.add(getColumn(sig, names[c]));
+                }
+                List<List<? extends Object>> values2;
+                if (samegroup) {
+                    values2 = values;
+                } else {
+                    values2 = new ArrayList<>();
+                    for (ConlluComparator.Signatures sig : sigs2) {
+                        values2.add(getColumn(sig, names[c]));
+                    }
+                }
+                columns.add(new ColumnIndex(values, values2, maxdists[c]));
+            }
+        }
+    }
+
+    private static List<? extends Object> getColumn(ConlluComparator.Signatures sig, String col) {
+        switch (col) {
+            case "FORM":
+                // characters of the sentence, boxed only for the index
+                List<Character> chars = new ArrayList<>(sig.chars.length);
+                for (int c : sig.chars) {
+                    chars.add((char) c);
+                }
+                return chars;
+            case "LEMMA":
+                return sig.lemmas;
+            case "UPOS":
+                return sig.uposs;
+            case "XPOS":
+                return sig.xposs;
+            case "FEATS":
+                return sig.feats;
+            default:
+                return sig.deprels;
+        }
+    }
+
+    /**
+     * get the sentences of group2 which may be identical or similar to sentence i of group1
+     * in at least one column
+     *
+     * @param i number of the sentence in group1
+     * @return the numbers of the sentences in group2 in ascending order
+     */
+    public int[] candidates(int i) {
+        int[] res = new int[0];
+        for (ColumnIndex ci : columns) {
+            res = union(res, ci.candidates(i));
+        }
+        if (samegroup) {
+            int start = Arrays.binarySearch(res, i + 1);
+            if (start < 0) {
+                start = -start - 1;
+            }
+            res = Arrays.copyOfRange(res, start, res.length);
+        }
+        return res;
+    }
+
+    /** union of two sorted arrays */
+    private static int[] union(int[] a, int[] b) {
+        if (a.length == 0) {
+            return b;
+        }
+        if (b.length == 0) {
+            return a;
+        }
+        int[] res = new int[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < a.length || j < b.length) {
+            int v;
+            if (j == b.length || (i < a.length && a[i] < b[j])) {
+                v = a[i++];
+            } else if (i == a.length || b[j] < a[i]) {
+                v = b[j++];
+            } else {
+                v = a[i++];
+                j++;
+            }
+            res[k++] = v;
+        }
+        return Arrays.copyOf(res, k);
+    }
+
+    /**
+     * index of a column of the sentences of group2
+     */
+    private static class ColumnIndex {
+
+        private final int maxdist;
+        // maxdist == 0
+        private Map<List<? extends Object>, int[]> identical; // column value: sentences of group2
+        private List<List<? extends Object>> values; // column value of sentences of group1
+        // maxdist > 0
+        private long[][] elements; // tokens of sentences of group1, sorted by frequency of the token
+        private long[][] elements2; // same for group2
+        private Map<Long, int[]> prefixes; // rare token: sentences of group2 having it among their maxdist+1 rarest tokens
+        private int[] shortsentences; // sentences of group2 with maxdist tokens at most
+
+        ColumnIndex(List<List<? extends Object>> values, List<List<? extends Object>> values2, int maxdist) {
+            this.maxdist = maxdist;
+            if (maxdist == 0) {
+                this.values = values;
+                Map<List<? extends Object>, List<Integer>> tmp = new HashMap<>();
+                for (int j = 0; j < values2.size(); ++j) {
+                    List<Integer> sents = tmp.get(values2.get(j));
+                    if (sents == null) {
+                        sents = new ArrayList<>();
+                        tmp.put(values2.get(j), sents);
+                    }
+                    sents.add(j);
+                }
+                identical = new HashMap<>();
+                for (Map.Entry<List<? extends Object>, List<Integer>> e : tmp.entrySet()) {
+                    identical.put(e.getKey(), toArray(e.getValue()));
+                }
+            } else {
+                // token ids, the rarest tokens first
+                final Map<Object, Integer> frequencies = new HashMap<>();
+                count(values, frequencies);
+                if (values2 != values) {
+                    count(values2, frequencies);
+                }
+                List<Object> tokens = new ArrayList<>(frequencies.keySet());
+                tokens.sort(new Comparator<Object>() {
+                    @Override
+                    public int compare(Object a, Object b) {
+                        int rtc = Integer.compare(frequencies.get(a), frequencies.get(b));
+                        if (rtc == 0) {
+                            rtc = String.valueOf(a).compareTo(String.valueOf(b));
+                        }
+                        return rtc;
+                    }
+                });
+                Map<Object, Integer> ids = new HashMap<>();
+                for (Object t : tokens) {
+                    ids.put(t, ids.size());
+                }
+
+                elements = encode(values, ids);
+                elements2 = values2 == values ? elements : encode(values2, ids);
+
+                Map<Long, List<Integer>> tmp = new HashMap<>();
+                List<Integer> shortsents = new ArrayList<>();
+                for (int j = 0; j < elements2.length; ++j) {
+                    long[] e = elements2[j];
+                    if (e.length <= maxdist) {
+                        shortsents.add(j);
+                    }
+                    for (int p = 0; p < e.length && p <= maxdist; ++p) {
+                        List<Integer> sents = tmp.get(e[p]);
+                        if (sents == null) {
+                            sents = new ArrayList<>();
+                            tmp.put(e[p], sents);
+                        }
+                        sents.add(j);
+                    }
+                }
+                prefixes = new HashMap<>();
+                for (Map.Entry<Long, List<Integer>> e : tmp.entrySet()) {
+                    prefixes.put(e.getKey(), toArray(e.getValue()));
+                }
+                shortsentences = toArray(shortsents);
+            }
+        }
+
+        private static void count(List<List<? extends Object>> values, Map<Object, Integer> frequencies) {
+            for (List<? extends Object> v : values) {
+                for (Object t : v) {
+                    frequencies.put(t, frequencies.getOrDefault(t, 0) + 1);
+                }
+            }
+        }
+
+        /**
+         * a sentence becomes a sorted set of token id and occurrence of the token in the sentence
+         * (the second "the" is another element than the first "the")
+         */
+        private static long[][] encode(List<List<? extends Object>> values, Map<Object, Integer> ids) {
+            long[][] res = new long[values.size()][];
+            Map<Integer, Integer> occurrences = new HashMap<>();
+            for (int s = 0; s < values.size(); ++s) {
+                List<? extends Object> v = values.get(s);
+                long[] e = new long[v.size()];
+                occurrences.clear();
+                for (int t = 0; t < v.size(); ++t) {
+                    int id = ids.get(v.get(t));
+                    int occ = occurrences.getOrDefault(id, 0);
+                    occurrences.put(id, occ + 1);
+                    e[t] = ((long) id << 32) | occ;
+                }
+                Arrays.sort(e);
+                res[s] = e;
+            }
+            return res;
+        }
+
+        int[] candidates(int i) {
+            if (maxdist == 0) {
+                int[] res = identical.get(values.get(i));
+                return res == null ? new int[0] : res;
+            }
+            long[] e = elements[i];
+            int[] res = new int[0];
+            for (int p = 0; p < e.length && p <= maxdist; ++p) {
+                int[] sents = prefixes.get(e[p]);
+                if (sents != null) {
+                    res = union(res, sents);
+                }
+            }
+            if (e.length <= maxdist) {
+                res = union(res, shortsentences);
+            }
+
+            // res may be an array of the index, do not modify it
+            int[] filtered = new int[res.length];
+            int k = 0;
+            for (int j : res) {
+                long[] e2 = elements2[j];
+                if (Math.abs(e.length - e2.length) <= maxdist
+                        && common(e, e2) >= Math.max(e.length, e2.length) - maxdist) {
+                    filtered[k++] = j;
+                }
+            }
+            return Arrays.copyOf(filtered, k);
+        }
+
+        /** number of elements in both sorted arrays */
+        private static int common(long[] a, long[] b) {
+            int i = 0;
+            int j = 0;
+            int ct = 0;
+            while (i < a.length && j < b.length) {
+                if (a[i] < b[j]) {
+                    i++;
+                } else if (a[i] > b[j]) {
+                    j++;
+                } else {
+                    ct++;
+                    i++;
+                    j++;
+                }
+            }
+            return ct;
+        }
+    }
+
+    private static int[] toArray(List<Integer> l) {
+        int[] res = new int[l.size()];
+        for (int i = 0; i < res.length; ++i) {
+            res[i] = l.get(i);
+        }
+        return res;
+    }
+}
@@ -44,6 +44,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.TreeMap;
 import java.util.List;
 import java.util.Locale;
@@ -51,6 +52,10 @@ import java.util.Map;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.DefaultParser;
@@ -77,6 +82,12 @@ public class ConlluComparator {
     Map<Integer, Integer> sentencelengths2;  // sentencelength: number of sentences
 
     private int numberOfThreads;
+    private boolean useindex = true; // if false, compare all pairs of sentences
+    private int blocksize = 64; // number of sentences of group1 compared by a task
+    private volatile boolean cancelled = false;
+    private final AtomicInteger progress = new AtomicInteger(0); // blocks compared
+    private volatile int totalblocks = 0;
+    private final Map<String, Integer> tokenids = new HashMap<>(); // lemmas, upos, etc: id used to calculate distances
 
     public ConlluComparator(List<? extends Object> objects,
             List<? extends Object> objects2, // if present find identical/similar sentences only if in both groups
@@ -171,9 +182,94 @@ public class ConlluComparator {
 
     }
 
+    public void setUseIndex(boolean useindex) {
+        this.useindex = useindex;
+    }
+
+    public void setBlocksize(int blocksize) {
+        this.blocksize = Math.max(1, blocksize);
+    }
+
+    /**
+     * stop a running comparison. Blocks which are being compared are finished
+     * (and written to the jsonlines file), analyse() returns null
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /** @return the number of blocks compared and the total number of blocks of the running comparison */
+    public int[] getProgress() {
+        return new int[]{progress.get(), totalblocks};
+    }
+
+    /**
+     * everything needed to compare a block of sentences of group1 with the other sentences
+     */
+    private class Comparison {
+
+        List<String> keys;
+        List<String> keys2;
+        int[] distances; // form, lemma, upos, xpos, feats, deprel
+        CandidateIndex candidates;
+        JsonLinesSink sink;
+        List<List<String[]>> results; // results of each block
+        AtomicLong compared = new AtomicLong(0);
+
+        void compare(int block) {
+            Analyser a = new Analyser(block * blocksize, Math.min(keys.size(), (block + 1) * blocksize),
+                    keys, csents, keys2, csents2,
+                    distances[0], distances[1], distances[2], distances[3], distances[4], distances[5], candidates);
+            if (sink != null) {
+                a.setSink(sink, block);
+            }
+            a.run();
+            results.set(block, a.getResults());
+            compared.addAndGet(a.getComparisons());
+            if (sink != null) {
+                sink.blockDone(block);
+            }
+            System.err.format("Checked %d/%d blocks\r", progress.incrementAndGet(), totalblocks);
+        }
+    }
+
     /**
-     * finds identical/similar sentences. comparing all sentences with all
-     * others; $\sum_{i=1}^{i=n-1} i$ comparisons needed
+     * compares a range of blocks, split in two halves until a single block is left
+     */
+    private class BlockTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final Comparison comparison;
+        private final List<Integer> blocks;
+        private final int first;
+        private final int last; // excluded
+
+        BlockTask(Comparison comparison, List<Integer> blocks, int first, int last) {
+            this.comparison = comparison;
+            this.blocks = blocks;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected void compute() {
+            if (cancelled) {
+                return;
+            }
+            if (last - first == 1) {
+                comparison.compare(blocks.get(first));
+            } else if (last - first > 1) {
+                int middle = (first + last) / 2;
+                invokeAll(new BlockTask(comparison, blocks, first, middle),
+                        new BlockTask(comparison, blocks, middle, last));
+            }
+        }
+    }
+
+    /**
+     * finds identical/similar sentences. Comparing all sentences with all
+     * others needs $\sum_{i=1}^{i=n-1} i$ comparisons, so a CandidateIndex is used
+     * to compare only pairs of sentences which can be within the maximal distances
      *
      * @param form: 0: identical, >0 maximal Levenshtein-Damerau distance on
      * entire sentence (charater level)
@@ -181,36 +277,116 @@ public class ConlluComparator {
      * lemmas (token level)
      */
     public String analyse(int form, int lemma, int upos, int xpos, int feats, int deprel, boolean json) throws InterruptedException {
+        try {
+            return analyse(form, lemma, upos, xpos, feats, deprel, json, null, false);
+        } catch (IOException e) {
+            // without a jsonlines file nothing is written
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * finds identical/similar sentences. The sentences of group1 are split into blocks, which are compared
+     * with the other sentences by the threads of a ForkJoinPool.
+     *
+     * @param jsonlines if not null, write the results into this file as soon as they are found
+     * @param resume if true, the results of the blocks completed in jsonlines by an interrupted comparison
+     * are read and only the remaining blocks are compared
+     * @return the results or null if the comparison has been cancelled
+     */
+    public String analyse(int form, int lemma, int upos, int xpos, int feats, int deprel, boolean json,
+            File jsonlines, boolean resume) throws InterruptedException, IOException {
         List<String> keys = Arrays.asList(csents.keySet().toArray(new String[0]));
         List<String> keys2 = Arrays.asList(csents2.keySet().toArray(new String[0]));
         long comps = 0;
         for (int x = 1; x < keys.size(); ++x) {
             comps += x;
         }
-        System.err.println(comps + " comparisons needed");
-        List<Thread> thrs = new ArrayList<>();
-        List<Analyser> analysers = new ArrayList<>();
-
-        for (int th = 0; th < numberOfThreads; ++th) {
-            Analyser a = new Analyser(th, numberOfThreads,
-                    keys, csents, keys2, csents2,
+        System.err.println(comps + " comparisons needed without index");
+        CandidateIndex candidates = null;
+        if (useindex) {
+            candidates = new CandidateIndex(keys, csents, keys2, csents2,
                     form, lemma, upos, xpos, feats, deprel);
-            Thread thr = new Thread(a);
-            thr.start();
-            thrs.add(thr);
-            analysers.add(a);
         }
 
-        for (Thread thr : thrs) {
-            thr.join();
+        int[] distances = {form, lemma, upos, xpos, feats, deprel};
+        int blocks = (keys.size() + blocksize - 1) / blocksize;
+        List<List<String[]>> results = new ArrayList<>(); // results of each block
+        for (int b = 0; b < blocks; ++b) {
+            results.add(null);
+        }
+
+        JsonObject header = new JsonObject();
+        header.addProperty("sentences", keys.size());
+        header.addProperty("sentences2", csents == csents2 ? 0 : keys2.size());
+        header.addProperty("blocksize", blocksize);
+        JsonArray jdistances = new JsonArray();
+        for (int d : distances) {
+            jdistances.add(d);
+        }
+        header.add("distances", jdistances);
+        JsonLinesSink sink = null;
+        if (jsonlines != null) {
+            Map<Integer, List<String[]>> completed = null;
+            if (resume) {
+                completed = JsonLinesSink.readCompleted(jsonlines, header);
+                if (completed == null) {
+                    System.err.println("Cannot resume comparison with " + jsonlines + ", starting again");
+                } else {
+                    System.err.format("%d/%d blocks already compared\n", completed.size(), blocks);
+                }
+            }
+            // (re)write the file with the results of the completed blocks only
+            sink = new JsonLinesSink(jsonlines, header);
+            if (completed != null) {
+                for (int b : completed.keySet()) {
+                    results.set(b, completed.get(b));
+                    for (String[] elems : completed.get(b)) {
+                        sink.result(b, elems);
+                    }
+                    sink.blockDone(b);
+                }
+            }
+        }
+
+        List<Integer> todo = new ArrayList<>();
+        for (int b = 0; b < blocks; ++b) {
+            if (results.get(b) == null) {
+                todo.add(b);
+            }
+        }
+        cancelled = false;
+        progress.set(blocks - todo.size());
+        totalblocks = blocks;
+        Comparison comparison = new Comparison();
+        comparison.keys = keys;
+        comparison.keys2 = keys2;
+        comparison.distances = distances;
+        comparison.candidates = candidates;
+        comparison.sink = sink;
+        comparison.results = results;
+
+        ForkJoinPool pool = new ForkJoinPool(numberOfThreads);
+        try {
+            pool.invoke(new BlockTask(comparison, todo, 0, todo.size()));
+        } finally {
+            pool.shutdown();
+            if (sink != null) {
+                sink.close();
+            }
+        }
+        System.err.println();
+        System.err.println(comparison.compared.get() + " comparisons done");
+        if (cancelled) {
+            return null;
         }
 
         StringBuilder out = new StringBuilder();
 
         if (json) {
             JsonObject main = new JsonObject();
-            for (Analyser a : analysers) {
-                for (String[] elems : a.getResults()) {
+            for (List<String[]> blockresults : results) {
+                for (String[] elems : blockresults) {
                     JsonObject sentobject;
 
                     if (main.has(elems[2])) {
@@ -294,8 +470,8 @@ public class ConlluComparator {
             List<String[]> similar = new ArrayList<>();
             // aggregate identical
 
-            for (Analyser a : analysers) {
-                for (String[] elems : a.getResults()) {
+            for (List<String[]> blockresults : results) {
+                for (String[] elems : blockresults) {
                     if (elems[0].equals("FORM") && elems[1].equals("0")) {
                         Set<String> ids = identical.get(elems[4]);
                         if (ids == null) {
@@ -358,13 +534,19 @@ public class ConlluComparator {
 
         public ConllSentence cs;
         public String sent;
-        public List<Character> sentence;
         //public List<String> forms;
         public List<String> lemmas;
         public List<String> uposs;
         public List<String> xposs;
         public List<String> deprels;
         public List<String> feats;
+        // the same as int arrays for Distance
+        public int[] chars;
+        public int[] lemmaids;
+        public int[] uposids;
+        public int[] xposids;
+        public int[] deprelids;
+        public int[] featsids;
         public String id;
 
         public Signatures(ConllSentence cs, String id) {
@@ -377,10 +559,6 @@ public class ConlluComparator {
             deprels = new ArrayList<>();
             feats = new ArrayList<>();
             sent = cs.getSentence().strip();
-            sentence = new ArrayList<>();
-            for (char c : sent.toCharArray()) {
-                sentence.add(c);
-            }
             for (ConllWord cw : cs.getAllWords()) {
                 //forms.add(cw.getForm());
                 if (cw.getTokentype() != ConllWord.Tokentype.CONTRACTED) {
@@ -391,6 +569,28 @@ public class ConlluComparator {
                     feats.add(cw.getFeaturesStr());
                 }
             }
+            chars = new int[sent.length()];
+            for (int i = 0; i < chars.length; ++i) {
+                chars[i] = sent.charAt(i);
+            }
+            lemmaids = toIds(lemmas);
+            uposids = toIds(uposs);
+            xposids = toIds(xposs);
+            deprelids = toIds(deprels);
+            featsids = toIds(feats);
+        }
+
+        private int[] toIds(List<String> tokens) {
+            int[] ids = new int[tokens.size()];
+            for (int i = 0; i < ids.length; ++i) {
+                Integer id = tokenids.get(tokens.get(i));
+                if (id == null) {
+                    id = tokenids.size();
+                    tokenids.put(tokens.get(i), id);
+                }
+                ids[i] = id;
+            }
+            return ids;
         }
 
         public String getColumnAsString(String col) {
@@ -483,6 +683,25 @@ public class ConlluComparator {
                 .build();
         options.addOption(jsonoutput);
 
+        Option jsonlinesoutput = Option.builder().longOpt("jsonl")
+                .argName("file")
+                .hasArg()
+                .desc("write results into file (one json object per line) as soon as they are found")
+                .build();
+        options.addOption(jsonlinesoutput);
+
+        Option resume = Option.builder().longOpt("resume")
+                .desc("continue an interrupted comparison with the results of the file given with --jsonl")
+                .build();
+        options.addOption(resume);
+
+        Option blocksize = Option.builder().longOpt("blocksize")
+                .argName("int")
+                .hasArg()
+                .desc("number of sentences compared by a task (default 64)")
+                .build();
+        options.addOption(blocksize);
+
         CommandLineParser parser = new DefaultParser();
 
         try {
@@ -505,7 +724,15 @@ public class ConlluComparator {
             }
 
             ConlluComparator cc = new ConlluComparator(g1, g2, threadnum);
-            System.out.println(cc.analyse(forms, lemmas, upos, xpos, feats, deprels, line.hasOption(jsonoutput)));
+            if (line.hasOption(blocksize)) {
+                cc.setBlocksize(Integer.parseInt(line.getOptionValue(blocksize)));
+            }
+            File jsonlines = null;
+            if (line.hasOption(jsonlinesoutput)) {
+                jsonlines = new File(line.getOptionValue(jsonlinesoutput));
+            }
+            System.out.println(cc.analyse(forms, lemmas, upos, xpos, feats, deprels, line.hasOption(jsonoutput),
+                    jsonlines, line.hasOption(resume)));
         } catch (ParseException e) {
             HelpFormatter formatter = new HelpFormatter();
             formatter.setWidth(90);
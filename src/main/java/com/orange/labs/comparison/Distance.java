@@ -0,0 +1,111 @@
+/* This library is under the 3-Clause BSD License
+
+ Copyright (c) 2018-2026, Orange S.A.
+
+ Redistribution and use in source and binary forms, with or without modification,
+ are permitted provided that the following conditions are met:
+
+ 1. Redistributions of source code must retain the above copyright notice,
+ this list of conditions and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright notice,
+ this list of conditions and the following disclaimer in the documentation
+ and/or other materials provided with the distribution.
+
+ 3. Neither the name of the copyright holder nor the names of its contributors
+ may be used to endorse or promote products derived from this software without
+ specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ @author Johannes Heinecke
+ @version 2.34.0 as of 18th October 2026
+*/
+package com.orange.labs.comparison;
+
+/**
+ * Levenshtein-Damerau distance (optimal string alignment) between two sequences of token ids
+ * (or characters). Only the cells of the matrix in a diagonal band of width maxdist are calculated
+ * and the calculation stops as soon as the distance exceeds maxdist.
+ * The rows are kept between calls, an instance must not be used by several threads
+ *
+ * @author Johannes Heinecke <johannes.heinecke@orange.com>
+ */
+public class Distance {
+
+    // the last three rows of the matrix
+    private int[] row2 = new int[0];
+    private int[] row1 = new int[0];
+    private int[] row = new int[0];
+
+    // inspired by https://github.com/crwohlfeil/damerau-levenshtein
+    /**
+     * calculate the distance between source and target
+     *
+     * @return the distance if it is &lt;= maxdist, else a value &gt; maxdist
+     */
+    public int calculate(int[] source, int[] target, int maxdist) {
+        int n = source.length;
+        int m = target.length;
+        // levenstein_distance(a,b) >= |len(a) - len(b)|
+        if (Math.abs(n - m) > maxdist) {
+            return Math.abs(n - m);
+        }
+        if (n == 0) {
+            return m;
+        }
+        if (m == 0) {
+            return n;
+        }
+        if (row.length < m + 2) {
+            row2 = new int[m + 2];
+            row1 = new int[m + 2];
+            row = new int[m + 2];
+        }
+        final int inf = maxdist + 1; // cells outside the band
+
+        int hi = Math.min(m, maxdist);
+        for (int j = 0; j <= hi; ++j) {
+            row1[j] = j;
+        }
+        row1[hi + 1] = inf;
+
+        for (int i = 1; i <= n; ++i) {
+            int lo = Math.max(1, i - maxdist);
+            hi = Math.min(m, i + maxdist);
+            row[lo - 1] = (lo == 1) ? i : inf;
+            int rowmin = row[lo - 1];
+            int s1 = source[i - 1];
+            for (int j = lo; j <= hi; ++j) {
+                int t1 = target[j - 1];
+                int cost = (s1 == t1) ? 0 : 1;
+                int d = Math.min(Math.min(row1[j] + 1, row[j - 1] + 1), row1[j - 1] + cost);
+                if (i > 1 && j > 1 && s1 == target[j - 2] && source[i - 2] == t1) {
+                    d = Math.min(d, row2[j - 2] + cost);
+                }
+                row[j] = d;
+                if (d < rowmin) {
+                    rowmin = d;
+                }
+            }
+            row[hi + 1] = inf;
+            if (rowmin > maxdist) {
+                return inf;
+            }
+            int[] tmp = row2;
+            row2 = row1;
+            row1 = row;
+            row = tmp;
+        }
+        return row1[m];
+    }
+}
@@ -0,0 +1,213 @@
+/* This library is under the 3-Clause BSD License
+
+ Copyright (c) 2018-2026, Orange S.A.
+
+ Redistribution and use in source and binary forms, with or without modification,
+ are permitted provided that the following conditions are met:
+
+ 1. Redistributions of source code must retain the above copyright notice,
+ this list of conditions and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright notice,
+ this list of conditions and the following disclaimer in the documentation
+ and/or other materials provided with the distribution.
+
+ 3. Neither the name of the copyright holder nor the names of its contributors
+ may be used to endorse or promote products derived from this software without
+ specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ @author Johannes Heinecke
+ @version 2.34.0 as of 18th October 2026
+*/
+package com.orange.labs.comparison;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * writes the results of a comparison to a file as soon as they are found, one json object per line.
+ * The first line describes the comparison, a line {"done": n} is written when all sentences of block n
+ * have been compared. An interrupted comparison can be resumed by reading the results of all completed blocks
+ * (results of blocks which are not complete are ignored).
+ * The lines are written to file.tmp which replaces file when the sink is closed, so that the results of
+ * a previous comparison are not lost before they are written again
+ *
+ * @author Johannes Heinecke <johannes.heinecke@orange.com>
+ */
+public class JsonLinesSink {
+
+    private final File file;
+    private final BufferedWriter out;
+    private IOException error = null; // first error while writing
+
+    public JsonLinesSink(File file, JsonObject header) throws IOException {
+        this.file = file;
+        out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpfile(file)), StandardCharsets.UTF_8));
+        JsonObject jheader = new JsonObject();
+        jheader.add("header", header);
+        out.write(jheader.toString());
+        out.write('\n');
+        out.flush();
+    }
+
+    /**
+     * write a result of Analyser: column, distance, id1, id2, value1 [, value2]
+     */
+    public synchronized void result(int block, String[] elems) {
+        JsonObject jresult = new JsonObject();
+        jresult.addProperty("block", block);
+        jresult.addProperty("column", elems[0]);
+        jresult.addProperty("dist", Integer.parseInt(elems[1]));
+        jresult.addProperty("id1", elems[2]);
+        jresult.addProperty("id2", elems[3]);
+        jresult.addProperty("value1", elems[4]);
+        if (elems.length > 5) {
+            jresult.addProperty("value2", elems[5]);
+        }
+        write(jresult);
+    }
+
+    /** all sentences of block have been compared */
+    public synchronized void blockDone(int block) {
+        JsonObject jdone = new JsonObject();
+        jdone.addProperty("done", block);
+        write(jdone);
+        try {
+            out.flush();
+        } catch (IOException e) {
+            if (error == null) {
+                error = e;
+            }
+        }
+    }
+
+    private void write(JsonObject jobj) {
+        try {
+            out.write(jobj.toString());
+            out.write('\n');
+        } catch (IOException e) {
+            if (error == null) {
+                error = e;
+            }
+        }
+    }
+
+    /** close the temporary file and rename it (if all lines have been written) */
+    public synchronized void close() throws IOException {
+        out.close();
+        if (error != null) {
+            throw error;
+        }
+        Files.move(tmpfile(file).toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static File tmpfile(File file) {
+        return new File(file.getPath() + ".tmp");
+    }
+
+    /**
+     * read the results of the completed blocks of a previous comparison. If the previous comparison was
+     * killed, its results are still in file.tmp, which is used if it contains more completed blocks than file
+     *
+     * @param header must be identical to the header of the file
+     * @return the results of each completed block or null if the file does not exist or belongs to another comparison
+     */
+    public static Map<Integer, List<String[]>> readCompleted(File file, JsonObject header) throws IOException {
+        Map<Integer, List<String[]>> completed = read(file, header);
+        Map<Integer, List<String[]>> tmpcompleted = read(tmpfile(file), header);
+        if (completed == null || (tmpcompleted != null && tmpcompleted.size() > completed.size())) {
+            return tmpcompleted;
+        }
+        return completed;
+    }
+
+    private static Map<Integer, List<String[]>> read(File file, JsonObject header) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        Map<Integer, List<String[]>> results = new HashMap<>();
+        Set<Integer> done = new HashSet<>();
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line = br.readLine();
+            if (line == null) {
+                return null;
+            }
+            try {
+                JsonElement jheader = JsonParser.parseString(line).getAsJsonObject().get("header");
+                if (!header.equals(jheader)) {
+                    return null;
+                }
+            } catch (JsonParseException | IllegalStateException e) {
+                return null;
+            }
+            while ((line = br.readLine()) != null) {
+                JsonObject jobj;
+                try {
+                    jobj = JsonParser.parseString(line).getAsJsonObject();
+                } catch (JsonParseException | IllegalStateException e) {
+                    // incomplete last line of an interrupted comparison
+                    continue;
+                }
+                if (jobj.has("done")) {
+                    done.add(jobj.get("done").getAsInt());
+                } else if (jobj.has("block")) {
+                    int block = jobj.get("block").getAsInt();
+                    String[] elems;
+                    if (jobj.has("value2")) {
+                        elems = new String[6];
+                        elems[5] = jobj.get("value2").getAsString();
+                    } else {
+                        elems = new String[5];
+                    }
+                    elems[0] = jobj.get("column").getAsString();
+                    elems[1] = jobj.get("dist").getAsString();
+                    elems[2] = jobj.get("id1").getAsString();
+                    elems[3] = jobj.get("id2").getAsString();
+                    elems[4] = jobj.get("value1").getAsString();
+                    List<String[]> l = results.get(block);
+                    if (l == null) {
+                        l = new ArrayList<>();
+                        results.put(block, l);
+                    }
+                    l.add(elems);
+                }
+            }
+        }
+        Map<Integer, List<String[]>> completed = new HashMap<>();
+        for (int block : done) {
+            List<String[]> l = results.get(block);
+            completed.put(block, l == null ? new ArrayList<String[]>() : l);
+        }
+        return completed;
+    }
+}
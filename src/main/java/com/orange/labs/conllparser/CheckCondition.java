@@ -32,15 +32,53 @@ are permitted provided that the following conditions are met:
  */
 package com.orange.labs.conllparser;
 
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import org.antlr.v4.runtime.*;
 import org.antlr.v4.runtime.misc.ParseCancellationException;
-import org.antlr.v4.runtime.tree.*;
 
+/**
+ * a condition (Upos:NOUN and head(Lemma:eat) ...). The parse tree is compiled once into a tree of
+ * predicates which is not modified by evaluate() and can be used by several threads
+ */
 public class CheckCondition {
 
-    ParseTree tree;
+    private final Node root; // compiled condition
+
+    // parsed conditions, most recently used last
+    private static final int MAXCACHED = 100;
+    private static final Map<String, CheckCondition> cache = new LinkedHashMap<String, CheckCondition>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CheckCondition> eldest) {
+            return size() > MAXCACHED;
+        }
+    };
+    private static final Pattern FEATSEP = Pattern.compile("[:=]");
+
+    /**
+     * get the compiled condition. Conditions are compiled only once
+     */
+    public static CheckCondition compile(String condition) throws ConllException {
+        synchronized (cache) {
+            CheckCondition cc = cache.get(condition);
+            if (cc == null) {
+                cc = new CheckCondition(condition, false);
+                cache.put(condition, cc);
+            }
+            return cc;
+        }
+    }
 
     public CheckCondition(String condition, boolean debug) throws ConllException {
         try {
@@ -59,16 +97,413 @@ public class CheckCondition {
             CommonTokenStream tokens = new CommonTokenStream(lexer);
             ConditionsParser parser = new ConditionsParser(tokens);
             parser.addErrorListener(new GrammarErrorListener());
-            tree = parser.prog(); // parser
-        } catch (ParseCancellationException e) {
+            root = compile(((ConditionsParser.PrintResultContext) parser.prog()).expression()); // parser
+        } catch (ParseCancellationException | PatternSyntaxException e) {
             throw new ConllException(e.getMessage());
         }
     }
 
-    public boolean evaluate(Map<String, Set<String>> wordlists, ConllWord cword) throws Exception {
-        CEvalVisitor eval = new CEvalVisitor(cword, wordlists);
-        boolean rtc = eval.visit(tree);
-        return rtc;
+    /**
+     * @param wordlists lists of words for Lemma:#file and Form:#file ("file": (words)), files not yet
+     * in wordlists are read when needed. If null, #file is a regex
+     * @param cword the word to check
+     */
+    public boolean evaluate(Map<String, Set<String>> wordlists, ConllWord cword) {
+        return root.test(cword, cword, wordlists);
+    }
+
+    /** a compiled (part of a) condition */
+    private interface Node {
+        /**
+         * @param w the word to check (reached from cword by head(), child() etc.)
+         * @param cword the word the whole condition is evaluated on (used by value comparisons)
+         */
+        boolean test(ConllWord w, ConllWord cword, Map<String, Set<String>> wordlists);
+    }
+
+    /** a compiled value (@Upos, head(@Feat:Number), ...) compared by = and ~ */
+    private abstract static class Getter {
+        /** the value for word w, null if there is none. Not used if multiple() */
+        abstract String get(ConllWord w);
+
+        /** add the values for word w to values. @return false if there is none */
+        boolean getAll(ConllWord w, List<String> values) {
+            String v = get(w);
+            if (v == null) {
+                return false;
+            }
+            values.add(v);
+            return true;
+        }
+
+        /** true if there can be several values (child()) */
+        boolean multiple() {
+            return false;
+        }
+    }
+
+    private static Node compile(ConditionsParser.ExpressionContext ctx) throws ConllException {
+        if (ctx instanceof ConditionsParser.FieldnameContext) {
+            return compile(((ConditionsParser.FieldnameContext) ctx).field());
+        } else if (ctx instanceof ConditionsParser.KlammernContext) {
+            return compile(((ConditionsParser.KlammernContext) ctx).expression());
+        } else if (ctx instanceof ConditionsParser.NichtContext) {
+            final Node inner = compile(((ConditionsParser.NichtContext) ctx).expression());
+            return (w, cword, wl) -> !inner.test(w, cword, wl);
+        } else if (ctx instanceof ConditionsParser.UndContext) {
+            final Node left = compile(((ConditionsParser.UndContext) ctx).expression(0));
+            final Node right = compile(((ConditionsParser.UndContext) ctx).expression(1));
+            return (w, cword, wl) -> left.test(w, cword, wl) && right.test(w, cword, wl);
+        } else if (ctx instanceof ConditionsParser.OderContext) {
+            final Node left = compile(((ConditionsParser.OderContext) ctx).expression(0));
+            final Node right = compile(((ConditionsParser.OderContext) ctx).expression(1));
+            return (w, cword, wl) -> left.test(w, cword, wl) || right.test(w, cword, wl);
+        } else if (ctx instanceof ConditionsParser.KopfContext) {
+            final Node inner = compile(((ConditionsParser.KopfContext) ctx).expression());
+            return (w, cword, wl) -> w != null && w.getHeadWord() != null && inner.test(w.getHeadWord(), cword, wl);
+        } else if (ctx instanceof ConditionsParser.ChildContext) {
+            final Node inner = compile(((ConditionsParser.ChildContext) ctx).expression());
+            return (w, cword, wl) -> {
+                if (w != null) {
+                    for (ConllWord dep : w.getDependents()) {
+                        if (inner.test(dep, cword, wl)) {
+                            return true;
+                        }
+                    }
+                }
+                return false;
+            };
+        } else if (ctx instanceof ConditionsParser.VorherContext) {
+            final Node inner = compile(((ConditionsParser.VorherContext) ctx).expression());
+            return (w, cword, wl) -> {
+                ConllWord prec = preceding(w);
+                return prec != null && inner.test(prec, cword, wl);
+            };
+        } else if (ctx instanceof ConditionsParser.NachherContext) {
+            final Node inner = compile(((ConditionsParser.NachherContext) ctx).expression());
+            return (w, cword, wl) -> {
+                ConllWord next = following(w);
+                return next != null && inner.test(next, cword, wl);
+            };
+        } else if (ctx instanceof ConditionsParser.ValcompareContext) {
+            // values are always taken from the word the condition is evaluated on
+            final Getter left = compile(((ConditionsParser.ValcompareContext) ctx).columnname(0));
+            final Getter right = compile(((ConditionsParser.ValcompareContext) ctx).columnname(1));
+            return (w, cword, wl) -> compare(left, right, cword, false);
+        } else if (ctx instanceof ConditionsParser.ValcompatibleContext) {
+            final Getter left = compile(((ConditionsParser.ValcompatibleContext) ctx).columnname(0));
+            final Getter right = compile(((ConditionsParser.ValcompatibleContext) ctx).columnname(1));
+            return (w, cword, wl) -> compare(left, right, cword, true);
+        }
+        throw new ConllException("invalid condition " + ctx.getText());
+    }
+
+    private static Node compile(ConditionsParser.FieldContext ctx) throws ConllException {
+        final String text = ctx.getText();
+        if (ctx instanceof ConditionsParser.CheckUposContext) {
+            final String regex = text.substring(5); // cut "Upos:"
+            final Pattern p = ConllWord.regex(regex);
+            return (w, cword, wl) -> w != null && matches(w.getUpostag(), p, regex);
+        } else if (ctx instanceof ConditionsParser.CheckXposContext) {
+            final String regex = text.substring(5);
+            final Pattern p = ConllWord.regex(regex);
+            return (w, cword, wl) -> w != null && matches(w.getXpostag(), p, regex);
+        } else if (ctx instanceof ConditionsParser.CheckDeprelContext) {
+            final String regex = text.substring(7);
+            final Pattern p = ConllWord.regex(regex);
+            return (w, cword, wl) -> w != null && matches(w.getDeplabel(), p, regex);
+        } else if (ctx instanceof ConditionsParser.CheckLemmaContext) {
+            final String regex = text.substring(6);
+            final Pattern p = ConllWord.regex(regex);
+            final String wordlist = regex.startsWith("#") && regex.length() > 1 ? regex.substring(1) : null;
+            return (w, cword, wl) -> {
+                if (w == null) {
+                    return false;
+                }
+                if (wl != null && wordlist != null) {
+                    Set<String> words = getWordlist(wl, wordlist);
+                    return words != null && words.contains(w.getLemma());
+                }
+                return matches(w.getLemma(), p, regex);
+            };
+        } else if (ctx instanceof ConditionsParser.CheckFormContext) {
+            final String regex = text.substring(5);
+            final Pattern p = ConllWord.regex(regex);
+            final String wordlist = regex.startsWith("#") && regex.length() > 1 ? regex.substring(1) : null;
+            return (w, cword, wl) -> {
+                if (w == null) {
+                    return false;
+                }
+                if (wl != null && wordlist != null) {
+                    Set<String> words = getWordlist(wl, wordlist);
+                    return words != null && words.contains(w.getForm());
+                }
+                return matches(w.getForm(), p, regex);
+            };
+        } else if (ctx instanceof ConditionsParser.CheckFeatContext) {
+            final String[] fv = FEATSEP.split(text.substring(5));
+            if (fv.length == 2 && !"!".equals(fv[1])) {
+                final Pattern p = ConllWord.regex(fv[1]);
+                return (w, cword, wl) -> w != null && w.getFeatures() != null && matches(w.getFeatures().get(fv[0]), p, fv[1]);
+            }
+            // feature must (not) be in word with any value
+            final boolean present = fv.length != 2;
+            return (w, cword, wl) -> w != null && (w.getFeatures() != null && w.getFeatures().containsKey(fv[0])) == present;
+        } else if (ctx instanceof ConditionsParser.CheckMiscContext) {
+            final String[] fv = FEATSEP.split(text.substring(5));
+            if (fv.length == 2 && !"!".equals(fv[1])) {
+                final Pattern p = ConllWord.regex(fv[1]);
+                return (w, cword, wl) -> {
+                    if (w == null || w.getMisc() == null) {
+                        return false;
+                    }
+                    Object v = w.getMisc().get(fv[0]);
+                    return v != null && matches(v instanceof String ? (String) v : String.valueOf((Long) v), p, fv[1]);
+                };
+            }
+            final boolean present = fv.length != 2;
+            return (w, cword, wl) -> w != null && (w.getMisc() != null && w.getMisc().containsKey(fv[0])) == present;
+        } else if (ctx instanceof ConditionsParser.CheckIDContext) {
+            final int id = Integer.parseInt(text.substring(3));
+            return (w, cword, wl) -> w != null && w.getId() == id;
+        } else if (ctx instanceof ConditionsParser.CheckHeadIDContext) {
+            final String value = text.substring(7); // cut "HeadId:"
+            final int head = Integer.parseInt(value);
+            if (value.charAt(0) == '+' || value.charAt(0) == '-') {
+                // relative head
+                return (w, cword, wl) -> w != null && w.getHead() == w.getId() + head;
+            }
+            return (w, cword, wl) -> w != null && w.getHead() == head;
+        } else if (ctx instanceof ConditionsParser.CheckAbsEUDContext || ctx instanceof ConditionsParser.CheckRelEUDContext) {
+            // EUD:3:nsubj, EUD:*:nsubj (any head) or EUD:+1:nsubj (relative head)
+            String[] elems = FEATSEP.split(text, 3);
+            if (elems.length != 3) {
+                throw new ConllException("invalid enhanced dependency " + text);
+            }
+            final boolean anyhead = "*".equals(elems[1]);
+            final boolean relative = ctx instanceof ConditionsParser.CheckRelEUDContext;
+            final int eudhead = anyhead ? 0 : Integer.parseInt(elems[1]);
+            final String euddeprel = elems[2];
+            return (w, cword, wl) -> {
+                if (w == null) {
+                    return false;
+                }
+                for (ConllWord.EnhancedDeps ehd : w.getDeps()) {
+                    if ((anyhead || ehd.headid == (relative ? w.getId() + eudhead : eudhead))
+                            && ehd.deprel.equals(euddeprel)) {
+                        return true;
+                    }
+                }
+                return false;
+            };
+        } else if (ctx instanceof ConditionsParser.CheckMWTContext) {
+            final int wantedlength = Integer.parseInt(text.substring(4));
+            return (w, cword, wl) -> w != null && w.getSubid() >= 2 && w.getSubid() + 1 - w.getId() == wantedlength;
+        } else if (ctx instanceof ConditionsParser.CheckEmptyContext) {
+            return (w, cword, wl) -> w != null && w.getTokentype() == ConllWord.Tokentype.EMPTY;
+        } else if (ctx instanceof ConditionsParser.CheckIsMWTContext) {
+            return (w, cword, wl) -> w != null && w.getTokentype() == ConllWord.Tokentype.CONTRACTED;
+        }
+        throw new ConllException("invalid condition " + text);
+    }
+
+    private static Getter compile(ConditionsParser.ColumnnameContext ctx) throws ConllException {
+        if (ctx instanceof ConditionsParser.ValueUposContext) {
+            return new Getter() {
+                @Override
+                String get(ConllWord w) {
+                    return w == null ? null : w.getUpostag();
+                }
+            };
+        } else if (ctx instanceof ConditionsParser.ValueXposContext) {
+            return new Getter() {
+                @Override
+                String get(ConllWord w) {
+                    return w == null ? null : w.getXpostag();
+                }
+            };
+        } else if (ctx instanceof ConditionsParser.ValueDeprelContext) {
+            return new Getter() {
+                @Override
+                String get(ConllWord w) {
+                    return w == null ? null : w.getDeplabel();
+                }
+            };
+        } else if (ctx instanceof ConditionsParser.ValueFeatContext) {
+            final String name = ctx.getText().substring(6); // cut "@Feat:"
+            return new Getter() {
+                @Override
+                String get(ConllWord w) {
+                    return w == null || w.getFeatures() == null ? null : w.getFeatures().get(name);
+                }
+            };
+        } else if (ctx instanceof ConditionsParser.GetkopfContext) {
+            return new Path(compile(((ConditionsParser.GetkopfContext) ctx).columnname())) {
+                @Override
+                ConllWord next(ConllWord w) {
+                    return w == null ? null : w.getHeadWord();
+                }
+            };
+        } else if (ctx instanceof ConditionsParser.GetvorherContext) {
+            return new Path(compile(((ConditionsParser.GetvorherContext) ctx).columnname())) {
+                @Override
+                ConllWord next(ConllWord w) {
+                    return preceding(w);
+                }
+            };
+        } else if (ctx instanceof ConditionsParser.GetnachherContext) {
+            return new Path(compile(((ConditionsParser.GetnachherContext) ctx).columnname())) {
+                @Override
+                ConllWord next(ConllWord w) {
+                    return following(w);
+                }
+            };
+        } else if (ctx instanceof ConditionsParser.GetchildContext) {
+            final Getter inner = compile(((ConditionsParser.GetchildContext) ctx).columnname());
+            return new Getter() {
+                @Override
+                String get(ConllWord w) {
+                    throw new UnsupportedOperationException("child() has several values");
+                }
+
+                @Override
+                boolean getAll(ConllWord w, List<String> values) {
+                    if (w != null) {
+                        for (ConllWord dep : w.getDependents()) {
+                            inner.getAll(dep, values);
+                        }
+                    }
+                    return true; // no children: no values, but not null
+                }
+
+                @Override
+                boolean multiple() {
+                    return true;
+                }
+            };
+        }
+        throw new ConllException("invalid value " + ctx.getText());
+    }
+
+    /** the value of the word reached by head(), prec() or next() */
+    private abstract static class Path extends Getter {
+        final Getter inner;
+
+        Path(Getter inner) {
+            this.inner = inner;
+        }
+
+        /** @return the word reached from w, or null */
+        abstract ConllWord next(ConllWord w);
+
+        @Override
+        String get(ConllWord w) {
+            ConllWord n = next(w);
+            return n == null ? null : inner.get(n);
+        }
+
+        @Override
+        boolean getAll(ConllWord w, List<String> values) {
+            ConllWord n = next(w);
+            return n != null && inner.getAll(n, values);
+        }
+
+        @Override
+        boolean multiple() {
+            return inner.multiple();
+        }
+    }
+
+    /**
+     * compare the values of left and right. Empty values (_) are never equal but compatible with everything,
+     * if left or right has no value at all the values are not equal but compatible
+     */
+    private static boolean compare(Getter left, Getter right, ConllWord cword, boolean compatible) {
+        if (!left.multiple() && !right.multiple()) {
+            String l = left.get(cword);
+            String r = right.get(cword);
+            if (l == null || r == null) {
+                return compatible;
+            }
+            if ("_".equals(l) || "_".equals(r)) {
+                return compatible;
+            }
+            return l.equals(r);
+        }
+        List<String> lvalues = new ArrayList<>();
+        List<String> rvalues = new ArrayList<>();
+        if (!left.getAll(cword, lvalues) || !right.getAll(cword, rvalues)) {
+            return compatible;
+        }
+        for (String l : lvalues) {
+            if ("_".equals(l)) {
+                if (compatible) {
+                    return true;
+                }
+                continue;
+            }
+            for (String r : rvalues) {
+                if ("_".equals(r)) {
+                    if (compatible) {
+                        return true;
+                    }
+                    continue;
+                }
+                if (r.equals(l)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(String value, Pattern p, String literal) {
+        if (value == null) {
+            return false;
+        }
+        return p == null ? value.equals(literal) : p.matcher(value).matches();
+    }
+
+    /** the word before w (null if w is the first word) */
+    private static ConllWord preceding(ConllWord w) {
+        if (w == null || w.getMysentence() == null || w.getId() <= 1) {
+            return null;
+        }
+        List<ConllWord> words = w.getMysentence().getWords();
+        return w.getId() - 1 <= words.size() ? words.get(w.getId() - 2) : null;
+    }
+
+    /** the word after w (null if w is the last word) */
+    private static ConllWord following(ConllWord w) {
+        if (w == null || w.getMysentence() == null || w.getId() < 0) {
+            return null;
+        }
+        List<ConllWord> words = w.getMysentence().getWords();
+        return w.getId() < words.size() ? words.get(w.getId()) : null;
+    }
+
+    /** get a list of words, read the file if it is not yet in wordlists */
+    private static Set<String> getWordlist(Map<String, Set<String>> wordlists, String filename) {
+        synchronized (wordlists) {
+            if (!wordlists.containsKey(filename)) {
+                wordlists.put(filename, readWordsFromFile(filename));
+            }
+            return wordlists.get(filename);
+        }
+    }
+
+    private static Set<String> readWordsFromFile(String filename) {
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(filename), StandardCharsets.UTF_8))) {
+            Set<String> words = new HashSet<>();
+            String line;
+            while ((line = br.readLine()) != null) {
+                words.add(line);
+            }
+            return words;
+        } catch (IOException e) {
+            System.err.format("Cannot open wordlist <%s>: %s\n", filename, e.getMessage());
+            return null;
+        }
     }
 
     public static void main(String[] args) throws Exception {
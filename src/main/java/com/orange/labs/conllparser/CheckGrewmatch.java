@@ -1,6 +1,6 @@
 /* This library is under the 3-Clause BSD License
 
-Copyright (c) 2018-2023, Orange S.A.
+Copyright (c) 2018-2026, Orange S.A.
 
 Redistribution and use in source and binary forms, with or without modification,
 are permitted provided that the following conditions are met:
@@ -28,21 +28,28 @@ are permitted provided that the following conditions are met:
  THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
  @author Johannes Heinecke
- @version 2.20.0 as of 15th January 2023
+ @version 2.34.0 as of 18th October 2026
  */
 package com.orange.labs.conllparser;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.Token;
@@ -53,6 +60,31 @@ public class CheckGrewmatch {
 
     ParseTree tree;
     String condition;
+    // the visited pattern, used to match all sentences (matching does not modify it)
+    private final GrewVisitor compiled;
+
+    // compiled patterns, most recently used last
+    private static final int MAXCACHED = 100;
+    private static final Map<String, CheckGrewmatch> cache = new LinkedHashMap<String, CheckGrewmatch>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CheckGrewmatch> eldest) {
+            return size() > MAXCACHED;
+        }
+    };
+
+    /**
+     * get the compiled pattern for a query. Patterns are parsed only once and can be used by several threads
+     */
+    public static CheckGrewmatch compile(String condition) throws ConllException {
+        synchronized (cache) {
+            CheckGrewmatch cg = cache.get(condition);
+            if (cg == null) {
+                cg = new CheckGrewmatch(condition, false);
+                cache.put(condition, cg);
+            }
+            return cg;
+        }
+    }
 
     public CheckGrewmatch(String condition, boolean debug) throws ConllException {
         this.condition = condition;
@@ -76,17 +108,51 @@ public class CheckGrewmatch {
         } catch (ParseCancellationException e) {
             throw new ConllException(e.getMessage());
         }
+        compiled = new GrewVisitor(null);
+        compiled.visit(tree);
     }
 
-    public List<List<ConllWord>> match(Map<String, Set<String>> wordlists, ConllSentence csent) throws ConllException {
+    /** the visitor for the pattern, a new one is needed only if wordlists must be read */
+    private GrewVisitor getVisitor(Map<String, Set<String>> wordlists) {
+        if (wordlists == null) {
+            return compiled;
+        }
         GrewVisitor eval = new GrewVisitor(wordlists);
-        boolean rtc = eval.visit(tree);
+        eval.visit(tree);
+        return eval;
+    }
+
+    /**
+     * the values a sentence must contain in order to match the pattern (to find candidate sentences with a QueryIndex)
+     */
+    public List<QueryIndex.Requirement> getRequirements() {
+        return compiled.requirements();
+    }
+
+    public List<List<ConllWord>> match(Map<String, Set<String>> wordlists, ConllSentence csent) throws ConllException {
+        return match(wordlists, csent, null);
+    }
+
+    /**
+     * find all matches in the sentence
+     *
+     * @param trace if not null, statistics on candidates and rejected constraints are added to it
+     */
+    public List<List<ConllWord>> match(Map<String, Set<String>> wordlists, ConllSentence csent, GrewTrace trace) throws ConllException {
+        GrewVisitor eval = getVisitor(wordlists);
         //eval.out();
 
         // TODO APPLY CONDITIONS on word
-        return eval.match(csent);        
+        return eval.match(csent, 0, trace);
     }
     
+    /**
+     * check whether the pattern matches the sentence, stops at the first match found
+     */
+    public boolean matches(Map<String, Set<String>> wordlists, ConllSentence csent) throws ConllException {
+        return getVisitor(wordlists).match(csent, 1) != null;
+    }
+
     public int evaluate(Map<String, Set<String>> wordlists, ConllSentence csent) throws Exception {
         List<List<ConllWord>> llcw = match(wordlists, csent);
         int ct = 0;
@@ -123,16 +189,36 @@ public class CheckGrewmatch {
     }
     
     public int evaluate(Map<String, Set<String>> wordlists, ConllFile cf, boolean debug, boolean filter) throws Exception {
-        GrewVisitor eval = new GrewVisitor(wordlists);
-        boolean rtc = eval.visit(tree);
+        return evaluate(wordlists, cf, debug, filter, null);
+    }
+
+    public int evaluate(Map<String, Set<String>> wordlists, ConllFile cf, boolean debug, boolean filter, GrewTrace trace) throws Exception {
+        return evaluate(wordlists, cf, debug, filter, trace, null);
+    }
+
+    /**
+     * @param index if not null, only the sentences which the index gives as candidates are searched
+     */
+    public int evaluate(Map<String, Set<String>> wordlists, ConllFile cf, boolean debug, boolean filter, GrewTrace trace, QueryIndex index) throws Exception {
+        GrewVisitor eval = getVisitor(wordlists);
         if (debug) eval.out();
 
+        BitSet candidates = null;
+        if (index != null && index.size() == cf.getSentences().size()) {
+            candidates = index.candidates(getRequirements());
+        }
         int ct = 0;
+        int sn = -1;
         for (ConllSentence cs : cf.getSentences()) {
+            sn++;
+            if (candidates != null && !candidates.get(sn)) {
+                continue;
+            }
             //if (deNode n1 = nodes.get(cp.node1);bug) System.out.println("======================= ");
             cs.normalise();
             cs.makeTrees(null);
-            List<List<ConllWord>> llcw = eval.match(cs);
+            // with --filter (and without --debug) the number of matches is not needed
+            List<List<ConllWord>> llcw = eval.match(cs, filter && !debug ? 1 : 0, trace);
             if (llcw != null) {
                 if (debug) System.out.println("FOUND " + llcw.size());
                 for (List<ConllWord> lcw : llcw) {
@@ -153,6 +239,108 @@ public class CheckGrewmatch {
         return ct;
     }
 
+    /**
+     * write the sentences which match at least one of the patterns (or none of them, if invert is true) in the order
+     * of the input. Blocks of sentences are read while threads threads search the patterns in the preceding blocks,
+     * so that only a few blocks of sentences are kept in memory (see ConllFile.runInOrder()).
+     *
+     * @param patterns the compiled patterns
+     * @param sentences the input (e.g. a ConllSentenceReader)
+     * @param out output stream, nothing is written if null (to count the selected sentences)
+     * @param invert select the sentences which do not match
+     * @param first stop after first sentences have been selected (0: no limit)
+     * @param threads number of threads which search the patterns
+     * @return the number of selected sentences
+     */
+    public static int filter(List<CheckGrewmatch> patterns, Iterable<ConllSentence> sentences, PrintStream out,
+            boolean invert, int first, int threads) throws ConllException {
+        return filter(patterns, sentences, out, invert, first, null, threads);
+    }
+
+    /**
+     * @param candidates if not null, the patterns are only searched in these sentences (see QueryIndex),
+     * the other sentences do not match
+     */
+    public static int filter(final List<CheckGrewmatch> patterns, Iterable<ConllSentence> sentences, final PrintStream out,
+            final boolean invert, final int first, final BitSet candidates, int threads) throws ConllException {
+        final Iterator<ConllSentence> it = sentences.iterator();
+        Iterator<FilterChunk> chunks = new Iterator<FilterChunk>() {
+            int read = 0; // number of sentences read
+
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public FilterChunk next() {
+                List<ConllSentence> sents = new ArrayList<>();
+                BitSet searched = new BitSet();
+                while (sents.size() < ConllFile.CHUNKSIZE && it.hasNext()) {
+                    if (candidates == null || candidates.get(read)) {
+                        searched.set(sents.size());
+                    }
+                    sents.add(it.next());
+                    read++;
+                }
+                return new FilterChunk(patterns, sents, searched, invert);
+            }
+        };
+
+        final int[] selected = {0};
+        ConllFile.runInOrder(threads, chunks, c -> {
+            for (ConllSentence cs : c.selected) {
+                if (out != null) {
+                    out.print(cs);
+                }
+                selected[0]++;
+                if (first > 0 && selected[0] >= first) {
+                    return false;
+                }
+            }
+            return true;
+        });
+        return selected[0];
+    }
+
+    /** sentences which are searched together by a thread */
+    private static class FilterChunk implements Callable<FilterChunk> {
+        final List<CheckGrewmatch> patterns;
+        final List<ConllSentence> sentences;
+        final BitSet searched; // sentences which can match
+        final boolean invert;
+        final List<ConllSentence> selected = new ArrayList<>();
+
+        FilterChunk(List<CheckGrewmatch> patterns, List<ConllSentence> sentences, BitSet searched, boolean invert) {
+            this.patterns = patterns;
+            this.sentences = sentences;
+            this.searched = searched;
+            this.invert = invert;
+        }
+
+        @Override
+        public FilterChunk call() throws ConllException {
+            for (int i = 0; i < sentences.size(); ++i) {
+                ConllSentence cs = sentences.get(i);
+                boolean found = false;
+                if (searched.get(i)) {
+                    cs.normalise();
+                    cs.makeTrees(null);
+                    for (CheckGrewmatch cg : patterns) {
+                        if (cg.compiled.match(cs, 1) != null) {
+                            found = true;
+                            break;
+                        }
+                    }
+                }
+                if (found != invert) {
+                    selected.add(cs);
+                }
+            }
+            return this;
+        }
+    }
+
     public class CWSortbyId implements Comparator<ConllWord> {
         // Used for sorting in ascending order of
         // roll number
@@ -181,11 +369,23 @@ public class CheckGrewmatch {
      */
     public static void main(String[] args) throws Exception {
         if (args.length == 0) {
-            System.err.println("Usage: CheckGrewmatch [--debug] [--join] [--filter] 'grewmatch'|@patternfile [conllu file]");
+            System.err.println("Usage: CheckGrewmatch [--debug] [--explain] [--join] [--filter] 'grewmatch'|@patternfile [conllu file]");
+            System.err.println("       CheckGrewmatch --stream [--count] [--invert] [--first <n>] [--threads <n>] 'grewmatch'|@patternfile [conllu files|-]");
+            System.err.println("   --stream      output the sentences which match one of the patterns, reading sentence by sentence in parallel");
+            System.err.println("   --count       only output the number of sentences found (with --stream)");
+            System.err.println("   --invert      output the sentences which do not match (with --stream)");
+            System.err.println("   --first <n>   stop after n sentences (with --stream)");
+            System.err.println("   --threads <n> number of threads searching the patterns (with --stream, default: number of processors)");
         } else {
             boolean debug = false;
             boolean join = false; // if true merge all input files first
             boolean filter = false; // if true, output all sentences with match the pattern
+            boolean explain = false; // if true, print statistics on candidates and rejected constraints (on stderr)
+            boolean stream = false; // if true, read sentence by sentence and output the matching sentences
+            boolean count = false; // with stream: only output the number of sentences found
+            boolean invert = false; // with stream: output sentences which do not match
+            int first = 0; // with stream: stop after the first n sentences found
+            int threads = ConllFile.DEFAULTTHREADS; // with stream: threads searching the patterns
             int offset = 0;
             for (int i = 0; i<args.length; ++i) {
                 if (args[i].charAt(0) != '-') {
@@ -202,6 +402,26 @@ public class CheckGrewmatch {
                     case "--filter":
                         filter = true;
                         break;
+                    case "--explain":
+                        explain = true;
+                        break;
+                    case "--stream":
+                        stream = true;
+                        break;
+                    case "--count":
+                        count = true;
+                        break;
+                    case "--invert":
+                        invert = true;
+                        break;
+                    case "--first":
+                        first = Integer.parseInt(args[++i]);
+                        offset++;
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        offset++;
+                        break;
                     default:
                         System.err.println("Invalid option " + args[i]);
                 }
@@ -226,7 +446,44 @@ public class CheckGrewmatch {
                 cgs.add(cg);
             }
             ConllSentence csent;
-            if (args.length == 1) {
+            if (stream) {
+                PrintStream out = new PrintStream(new BufferedOutputStream(System.out, 1 << 16), false, StandardCharsets.UTF_8);
+                List<String> files = new ArrayList<>();
+                for (int i = offset + 1; i < args.length; ++i) {
+                    files.add(args[i]);
+                }
+                if (files.isEmpty()) {
+                    files.add("-");
+                }
+                int selected = 0;
+                boolean header = false;
+                for (String fn : files) {
+                    InputStream is = fn.equals("-") ? System.in : new FileInputStream(fn);
+                    BitSet candidates = null;
+                    QueryIndex index = fn.equals("-") ? null : QueryIndex.load(new File(fn));
+                    if (index != null) {
+                        candidates = new BitSet();
+                        for (CheckGrewmatch cg : cgs) {
+                            candidates.or(index.candidates(cg.getRequirements()));
+                        }
+                    }
+                    try (ConllSentenceReader reader = new ConllSentenceReader(is)) {
+                        if (!count && !header) {
+                            out.print(reader.getColDefString());
+                            header = true;
+                        }
+                        selected += filter(cgs, reader, count ? null : out, invert, first > 0 ? first - selected : 0, candidates, threads);
+                        reader.checkErrors();
+                    }
+                    if (first > 0 && selected >= first) {
+                        break;
+                    }
+                }
+                if (count) {
+                    out.println(selected);
+                }
+                out.flush();
+            } else if (args.length == 1) {
                 //cword = new ConllWord("1\trules\trule\tNOUN\tNNS\tNumber=Plur|Gender=Neut\t2\tnsubj\t_\tSpaceAfter=No", null, null);
 //                csent = new ConllSentence("1\trules\trule\tNOUN\tNNS\tNumber=Plur|Gender=Neut\t2\tnsubj\t_\t_\n"
 //                        + "2\tsleep\tsleep\tVERB\tNOUN\tNumber=Plur|Person=3\t0\troot\t_\tSpaceAfter=No", null);
@@ -266,27 +523,35 @@ public class CheckGrewmatch {
                 if (join) {
                     // merge conllu files first and then search patterns
                     List<ConllFile> cfs = new ArrayList<>();
+                    List<QueryIndex> indexes = new ArrayList<>();
                     for (int i = offset+1; i < args.length; ++i) {
                         ConllFile cf = new ConllFile(new File(args[i]), null);
                         cfs.add(cf);
+                        // statistics of --explain are for all sentences
+                        indexes.add(explain ? null : QueryIndex.load(new File(args[i])));
                     }
                     for (CheckGrewmatch cg : cgs) {
                         System.out.println(cg.condition);
                         int r = 0;
-                        for (ConllFile cf : cfs) {
-                            r += cg.evaluate(null, cf, debug, filter);
+                        GrewTrace trace = explain ? new GrewTrace() : null;
+                        for (int i = 0; i < cfs.size(); ++i) {
+                            r += cg.evaluate(null, cfs.get(i), debug, filter, trace, indexes.get(i));
                             matches += r;
                         }
                         if (!filter) System.out.println("solutions: " + r);
+                        if (explain) System.err.println("explain: " + trace);
                     }
                 } else {
                     for (int i = offset+1; i < args.length; ++i) {
                         ConllFile cf = new ConllFile(new File(args[i]), null);
+                        QueryIndex index = explain ? null : QueryIndex.load(new File(args[i]));
                         for (CheckGrewmatch cg : cgs) {
                             System.out.println(cg.condition);
-                            int r = cg.evaluate(null, cf, debug, filter);
+                            GrewTrace trace = explain ? new GrewTrace() : null;
+                            int r = cg.evaluate(null, cf, debug, filter, trace, index);
                             matches += r;
                             if (!filter) System.out.println("solutions: " + r);
+                            if (explain) System.err.println("explain: " + trace);
                         }
                     }
                 }
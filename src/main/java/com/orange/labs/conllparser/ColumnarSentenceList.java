@@ -0,0 +1,506 @@
+/* This library is under the 3-Clause BSD License
+
+ Copyright (c) 2018-2026, Orange S.A.
+
+ Redistribution and use in source and binary forms, with or without modification,
+ are permitted provided that the following conditions are met:
+
+ 1. Redistributions of source code must retain the above copyright notice,
+ this list of conditions and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright notice,
+ this list of conditions and the following disclaimer in the documentation
+ and/or other materials provided with the distribution.
+
+ 3. Neither the name of the copyright holder nor the names of its contributors
+ may be used to endorse or promote products derived from this software without
+ specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ @author Johannes Heinecke
+ @version 2.34.0 as of 18th October 2026
+*/
+package com.orange.labs.conllparser;
+
+import com.google.gson.JsonObject;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * read-only list of the sentences of a (big) CoNLL-U file, kept in columns.
+ * Every distinct value of a column is stored once in a symbol table, a word only holds the numbers of its values
+ * (one int array per column, ids and heads as numbers, features as a list of Name=Value symbols).
+ * Comments, MWT and empty word lines are kept as lines.
+ * A ConllSentence is created from the columns every time it is accessed and is not kept, so it
+ * must not be modified. getFilestats() and find() work on the columns without creating sentences.
+ *
+ * @author Johannes Heinecke <johannes.heinecke@orange.com>
+ */
+public class ColumnarSentenceList extends AbstractList<ConllSentence> {
+
+    private final Map<String, Integer> columndefs;
+    private final boolean standardcols;
+    private final String colDefString;
+    private final int numcols;
+    private final int idcol;
+    private final int headcol; // -1 if there is no HEAD column
+    private final int featscol; // -1 if there is no FEATS column
+
+    private final SymbolTable[] symbols; // column: its values (not used for ID, HEAD and FEATS)
+    private final SymbolTable features; // Name=Value
+    private final SymbolTable lines; // comments, MWT and empty words
+
+    // per sentence (with an additional entry after the last sentence)
+    private final IntColumn firstword; // first word of the sentence in the word columns
+    private final IntColumn firstline; // first line of the sentence in otherlines
+
+    // per word
+    private final IntColumn[] columns; // column: symbol (id or head for ID and HEAD, first feature in feats for FEATS)
+    private final IntColumn feats; // symbols in features
+
+    // per comment, MWT or empty word
+    private final IntColumn otherlines; // symbol in lines
+    private final IntColumn otherpos; // number of words of the sentence before the line
+
+    public ColumnarSentenceList(File file) throws IOException, ConllException {
+        this(new FileInputStream(file));
+    }
+
+    /**
+     * read all sentences. The stream is closed at the end
+     */
+    public ColumnarSentenceList(InputStream ips) throws IOException, ConllException {
+        try (ConllSentenceReader reader = new ConllSentenceReader(ips)) {
+            columndefs = reader.getColumndefs();
+            standardcols = reader.isStandardcols();
+            colDefString = reader.getColDefString();
+            numcols = columndefs.size();
+            if (!columndefs.containsKey("ID")) {
+                throw new ConllException("no ID column");
+            }
+            idcol = columndefs.get("ID");
+            headcol = columndefs.containsKey("HEAD") ? columndefs.get("HEAD") : -1;
+            featscol = columndefs.containsKey("FEATS") ? columndefs.get("FEATS") : -1;
+
+            symbols = new SymbolTable[numcols];
+            columns = new IntColumn[numcols];
+            for (int c = 0; c < numcols; ++c) {
+                symbols[c] = new SymbolTable();
+                columns[c] = new IntColumn();
+            }
+            features = new SymbolTable();
+            lines = new SymbolTable();
+            feats = new IntColumn();
+            firstword = new IntColumn();
+            firstline = new IntColumn();
+            otherlines = new IntColumn();
+            otherpos = new IntColumn();
+
+            ConllSentence cs;
+            while ((cs = reader.readSentence()) != null) {
+                add(cs.toString());
+            }
+            reader.checkErrors();
+        }
+        firstword.add(columns[idcol].size());
+        firstline.add(otherlines.size());
+
+        for (IntColumn col : columns) {
+            col.trim();
+        }
+        feats.trim();
+        firstword.trim();
+        firstline.trim();
+        otherlines.trim();
+        otherpos.trim();
+        System.err.format("%d sentences, %d words, %d distinct values\n", size(), columns[idcol].size(), distinctValues());
+    }
+
+    /** split a sentence in CoNLL-U format into the columns */
+    private void add(String conllu) {
+        firstword.add(columns[idcol].size());
+        firstline.add(otherlines.size());
+        int words = 0;
+        for (String line : conllu.split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (line.charAt(0) != '#') {
+                String[] cols = line.split("\t", -1);
+                if (cols.length == numcols && isNumber(cols[idcol])
+                        && (headcol == -1 || isNumber(cols[headcol]) || ConllWord.EmptyColumn.equals(cols[headcol]))) {
+                    for (int c = 0; c < numcols; ++c) {
+                        if (c == idcol) {
+                            columns[c].add(Integer.parseInt(cols[c]));
+                        } else if (c == headcol) {
+                            columns[c].add(ConllWord.EmptyColumn.equals(cols[c]) ? -1 : Integer.parseInt(cols[c]));
+                        } else if (c == featscol) {
+                            columns[c].add(feats.size());
+                            if (!ConllWord.EmptyColumn.equals(cols[c])) {
+                                for (String fv : cols[c].split("\\|")) {
+                                    feats.add(features.intern(fv));
+                                }
+                            }
+                        } else {
+                            columns[c].add(symbols[c].intern(cols[c]));
+                        }
+                    }
+                    words++;
+                    continue;
+                }
+            }
+            // comments, MWT and empty words
+            otherlines.add(lines.intern(line));
+            otherpos.add(words);
+        }
+    }
+
+    private static boolean isNumber(String s) {
+        if (s.isEmpty() || s.length() > 9) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); ++i) {
+            if (s.charAt(i) < '0' || s.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** create the sentence sn from the columns */
+    @Override
+    public ConllSentence get(int sn) {
+        if (sn < 0 || sn >= size()) {
+            throw new IndexOutOfBoundsException("sentence " + sn);
+        }
+        try {
+            return new ConllSentence(getConllu(sn), columndefs);
+        } catch (ConllException ex) {
+            throw new IllegalStateException(ex.getMessage());
+        }
+    }
+
+    /** the sentence sn in CoNLL-U format */
+    public String getConllu(int sn) {
+        StringBuilder sb = new StringBuilder();
+        int w0 = firstword.get(sn);
+        int w1 = firstword.get(sn + 1);
+        int l = firstline.get(sn);
+        int l1 = firstline.get(sn + 1);
+        for (int w = w0; w <= w1; ++w) {
+            while (l < l1 && otherpos.get(l) == w - w0) {
+                sb.append(lines.get(otherlines.get(l++))).append('\n');
+            }
+            if (w == w1) {
+                break;
+            }
+            for (int c = 0; c < numcols; ++c) {
+                if (c > 0) {
+                    sb.append('\t');
+                }
+                sb.append(value(w, c));
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /** value of column c of word w */
+    private String value(int w, int c) {
+        int v = columns[c].get(w);
+        if (c == idcol) {
+            return Integer.toString(v);
+        } else if (c == headcol) {
+            return v == -1 ? ConllWord.EmptyColumn : Integer.toString(v);
+        } else if (c == featscol) {
+            int end = featsEnd(w);
+            if (v == end) {
+                return ConllWord.EmptyColumn;
+            }
+            StringBuilder sb = new StringBuilder(features.get(feats.get(v)));
+            for (int f = v + 1; f < end; ++f) {
+                sb.append('|').append(features.get(feats.get(f)));
+            }
+            return sb.toString();
+        }
+        return symbols[c].get(v);
+    }
+
+    private int featsEnd(int w) {
+        return w + 1 < columns[featscol].size() ? columns[featscol].get(w + 1) : feats.size();
+    }
+
+    @Override
+    public int size() {
+        return firstword.size() - 1;
+    }
+
+    public int numberOfWords() {
+        return columns[idcol].size();
+    }
+
+    /** number of distinct values in all symbol tables */
+    public int distinctValues() {
+        int n = features.size() + lines.size();
+        for (SymbolTable st : symbols) {
+            n += st.size();
+        }
+        return n;
+    }
+
+    public Map<String, Integer> getColumndefs() {
+        return columndefs;
+    }
+
+    public boolean isStandardcols() {
+        return standardcols;
+    }
+
+    public String getColDefString() {
+        return colDefString;
+    }
+
+    /**
+     * get the numbers of the sentences with a word whose column matches the regex (entirely). For FEATS
+     * the regex is matched against each Name=Value. Every distinct value is matched only once
+     *
+     * @param column a column name (as in global.columns)
+     * @param regex the regex
+     * @return sentence numbers
+     */
+    public List<Integer> find(String column, Pattern regex) {
+        List<Integer> found = new ArrayList<>();
+        Integer c = columndefs.get(column);
+        if (c == null) {
+            return found;
+        }
+        BitSet matching = null; // symbols which match
+        if (c == featscol) {
+            matching = features.matching(regex);
+        } else if (c != idcol && c != headcol) {
+            matching = symbols[c].matching(regex);
+        }
+        for (int sn = 0; sn < size(); ++sn) {
+            int w1 = firstword.get(sn + 1);
+            boolean ok = false;
+            for (int w = firstword.get(sn); w < w1 && !ok; ++w) {
+                int v = columns[c].get(w);
+                if (c == featscol) {
+                    for (int f = v; f < featsEnd(w); ++f) {
+                        if (matching.get(feats.get(f))) {
+                            ok = true;
+                            break;
+                        }
+                    }
+                } else if (matching != null) {
+                    ok = matching.get(v);
+                } else {
+                    ok = regex.matcher(value(w, c)).matches();
+                }
+            }
+            if (ok) {
+                found.add(sn);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * the same statistics as ConllFile.getFilestats(), calculated on the columns.
+     * Symbols are counted first and only replaced by their values at the end
+     */
+    public JsonObject getFilestats(File file) {
+        Integer upc = columndefs.get("UPOS");
+        Integer drc = columndefs.get("DEPREL");
+        if (upc == null || drc == null) {
+            return ConllFile.getFilestats(file, this);
+        }
+        int upostags = symbols[upc].size();
+        int[] uposs = new int[upostags];
+        int[] deprels = new int[symbols[drc].size()];
+        Map<Long, Integer> deprels_upos = new HashMap<>(); // deprel << 32 | upos: freq
+        Map<Long, Integer> feats_upos = new HashMap<>(); // feature << 32 | upos: freq
+
+        int nwords = numberOfWords();
+        for (int w = 0; w < nwords; ++w) {
+            int upos = columns[upc].get(w);
+            int deprel = columns[drc].get(w);
+            uposs[upos]++;
+            deprels[deprel]++;
+            increment(deprels_upos, ((long) deprel << 32) | upos);
+            if (featscol != -1) {
+                for (int f = columns[featscol].get(w); f < featsEnd(w); ++f) {
+                    increment(feats_upos, ((long) feats.get(f) << 32) | upos);
+                }
+            }
+        }
+
+        // MWTs and empty words are counted like in ConllFile.getFilestats()
+        int mwts = 0;
+        int emptywords = 0;
+        int mwttokens = 0; // of the last sentence
+        for (int sn = 0; sn < size(); ++sn) {
+            mwttokens = 0;
+            Set<String> emptyids = new HashSet<>();
+            for (int l = firstline.get(sn); l < firstline.get(sn + 1); ++l) {
+                String line = lines.get(otherlines.get(l));
+                if (line.charAt(0) == '#') {
+                    continue;
+                }
+                String id = line.split("\t", 2)[0];
+                int dash = id.indexOf('-');
+                int dot = id.indexOf('.');
+                if (dash > 0) {
+                    mwts++;
+                    mwttokens += Integer.parseInt(id.substring(dash + 1)) - Integer.parseInt(id.substring(0, dash));
+                } else if (dot > 0) {
+                    emptyids.add(id.substring(0, dot));
+                }
+            }
+            emptywords += emptyids.size();
+        }
+
+        JsonObject jdoc = new JsonObject();
+        jdoc.addProperty("filename", file.getAbsolutePath());
+        jdoc.addProperty("sentences", size());
+        jdoc.addProperty("syntactic_words", nwords);
+        jdoc.addProperty("mwts", mwts);
+        jdoc.addProperty("emptywords", emptywords);
+        jdoc.addProperty("surface_words", size() == 0 ? 0 : nwords - mwttokens);
+
+        Map<String, Integer> sorted = new TreeMap<>();
+        for (int i = 0; i < uposs.length; ++i) {
+            if (uposs[i] > 0) {
+                sorted.put(symbols[upc].get(i), uposs[i]);
+            }
+        }
+        jdoc.add("UPOSs", toJson(sorted));
+
+        sorted = new TreeMap<>();
+        for (int i = 0; i < deprels.length; ++i) {
+            if (deprels[i] > 0) {
+                sorted.put(symbols[drc].get(i), deprels[i]);
+            }
+        }
+        jdoc.add("Deprels", toJson(sorted));
+        jdoc.add("Deprels_UPOS", toJson(deprels_upos, symbols[drc], symbols[upc]));
+        jdoc.add("Features", toJson(feats_upos, features, symbols[upc]));
+        return jdoc;
+    }
+
+    private static void increment(Map<Long, Integer> counts, long key) {
+        Integer ct = counts.get(key);
+        counts.put(key, ct == null ? 1 : ct + 1);
+    }
+
+    private static JsonObject toJson(Map<String, Integer> counts) {
+        JsonObject u = new JsonObject();
+        for (String k : counts.keySet()) {
+            u.addProperty(k, counts.get(k));
+        }
+        return u;
+    }
+
+    private static JsonObject toJson(Map<Long, Integer> counts, SymbolTable outer, SymbolTable inner) {
+        Map<String, Map<String, Integer>> sorted = new TreeMap<>();
+        for (Map.Entry<Long, Integer> e : counts.entrySet()) {
+            String o = outer.get((int) (e.getKey() >>> 32));
+            Map<String, Integer> in = sorted.get(o);
+            if (in == null) {
+                in = new TreeMap<>();
+                sorted.put(o, in);
+            }
+            in.put(inner.get((int) (e.getKey() & 0xffffffffL)), e.getValue());
+        }
+        JsonObject jo = new JsonObject();
+        for (String o : sorted.keySet()) {
+            jo.add(o, toJson(sorted.get(o)));
+        }
+        return jo;
+    }
+
+    /** distinct values of a column, each value is stored once */
+    static class SymbolTable {
+
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int intern(String value) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = values.size();
+                ids.put(value, id);
+                values.add(value);
+            }
+            return id;
+        }
+
+        String get(int id) {
+            return values.get(id);
+        }
+
+        int size() {
+            return values.size();
+        }
+
+        /** the values which match the regex */
+        BitSet matching(Pattern regex) {
+            BitSet bs = new BitSet(values.size());
+            for (int i = 0; i < values.size(); ++i) {
+                if (regex.matcher(values.get(i)).matches()) {
+                    bs.set(i);
+                }
+            }
+            return bs;
+        }
+    }
+
+    /** growing int array */
+    static class IntColumn {
+
+        private int[] data = new int[1024];
+        private int size = 0;
+
+        void add(int v) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, Math.max(1024, size * 2));
+            }
+            data[size++] = v;
+        }
+
+        int get(int i) {
+            return data[i];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void trim() {
+            data = Arrays.copyOf(data, size);
+        }
+    }
+}
@@ -28,7 +28,7 @@
  THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
  @author Johannes Heinecke
- @version 2.33.1 as of 23th April 2026
+ @version 2.34.0 as of 18th October 2026
 */
 package com.orange.labs.conllparser;
 
@@ -45,21 +45,27 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.PrintStream;
-import java.lang.reflect.InvocationTargetException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.util.AbstractMap;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * Ouvrir un fichier CONLL
@@ -77,6 +83,10 @@ public class ConllFile {
     // conllup columns are edited as text only
     static Set<String> conllustandard =  new LinkedHashSet<>(Arrays.asList("ID", "FORM", "LEMMA", "UPOS", "XPOS", "FEATS", "HEAD", "DEPREL", "DEPS", "MISC"));
     File file;
+    // default number of threads used to parse, edit and validate the sentences of a file
+    public static final int DEFAULTTHREADS = Runtime.getRuntime().availableProcessors();
+    public static final int CHUNKSIZE = 250; // number of sentences processed by a thread at a time
+    int threads = DEFAULTTHREADS; // threads used for this file (1: no parallel processing)
 
     /**
      * open CoNLL-U File and read its contents
@@ -86,7 +96,20 @@ public class ConllFile {
      * @throws ConllException
      */
     public ConllFile(File file) throws IOException, ConllException {
+        this(file, DEFAULTTHREADS);
+    }
+
+    /**
+     * open CoNLL-U File and read its contents
+     *
+     * @param file CONLL file
+     * @param threads number of threads used to parse, edit and validate the sentences (1: no parallel processing)
+     * @throws IOException
+     * @throws ConllException
+     */
+    public ConllFile(File file, int threads) throws IOException, ConllException {
         this.file = file;
+        this.threads = threads;
         FileInputStream fis = new FileInputStream(file);
         parse(fis);
         fis.close();
@@ -107,10 +130,76 @@ public class ConllFile {
         fis.close();
     }
 
+    /**
+     * open a CoNLL-U file without parsing it entirely: sentences are parsed when they are accessed
+     * (see MappedSentenceList)
+     *
+     * @param file CONLL file
+     * @param cs class to use instead of ConllSentence (must be a subclass)
+     * @param lazycache maximal number of unmodified sentences kept in memory. If &lt;= 0 the file is parsed entirely
+     * @throws IOException
+     * @throws ConllException
+     */
+    public ConllFile(File file, Class<? extends ConllSentence> cs, int lazycache) throws IOException, ConllException {
+        this.file = file;
+        conllsentenceSubclass = cs;
+        if (lazycache > 0) {
+            MappedSentenceList msl = new MappedSentenceList(file, cs, lazycache);
+            sentences = msl;
+            columndefs = msl.getColumndefs();
+            standardcols = msl.isStandardcols();
+        } else {
+            FileInputStream fis = new FileInputStream(file);
+            parse(fis);
+            fis.close();
+        }
+    }
+
+    /**
+     * open a CoNLL-U file read-only, keeping the sentences in columns which need much less memory
+     * (see ColumnarSentenceList). Sentences are created when accessed, and modifications are lost
+     *
+     * @param file CONLL file
+     * @param columnar if false the file is read normally
+     * @throws IOException
+     * @throws ConllException
+     */
+    public ConllFile(File file, boolean columnar) throws IOException, ConllException {
+        this(file, columnar, DEFAULTTHREADS);
+    }
+
+    /**
+     * @param threads number of threads used to parse, edit and validate the sentences (1: no parallel processing)
+     */
+    public ConllFile(File file, boolean columnar, int threads) throws IOException, ConllException {
+        this.file = file;
+        this.threads = threads;
+        if (columnar) {
+            ColumnarSentenceList csl = new ColumnarSentenceList(file);
+            sentences = csl;
+            columndefs = csl.getColumndefs();
+            standardcols = csl.isStandardcols();
+        } else {
+            FileInputStream fis = new FileInputStream(file);
+            parse(fis);
+            fis.close();
+        }
+    }
+
     public ConllFile(String filecontents) throws ConllException, IOException {
         this(filecontents, null);
     }
 
+    /**
+     * @param threads number of threads used to parse, edit and validate the sentences (1: no parallel processing)
+     */
+    public ConllFile(String filecontents, int threads) throws ConllException, IOException {
+        this.file = new File("__contents__");
+        this.threads = threads;
+        InputStream inputStream = new ByteArrayInputStream(filecontents.getBytes(StandardCharsets.UTF_8));
+        parse(inputStream);
+    }
+
     public ConllFile(String filecontents, Class<? extends ConllSentence> cs) throws ConllException, IOException {
         this.file = new File("__contents__");
         conllsentenceSubclass = cs;
@@ -125,178 +214,243 @@ public class ConllFile {
     }
 
     private void parse(InputStream ips /*, boolean ignoreSentencesWithoutAnnot, boolean ignoreSentencesWithoutTarget*/) throws ConllException, IOException {
-        BufferedReader br = new BufferedReader(new InputStreamReader(ips, StandardCharsets.UTF_8));
+        ConllSentenceReader reader = new ConllSentenceReader(ips, conllsentenceSubclass);
+        columndefs = reader.getColumndefs();
+        standardcols = reader.isStandardcols();
         sentences = new ArrayList<>();
 
-        List<AbstractMap.SimpleEntry<Integer, String>> sentenceLines = new ArrayList<>();
-        int countWords = 0; // count only non-comment lines
-        String line;
-        // on lit des commentaires dans le fichier CONLL qui sont uniquement utiles pour Gift
-        //boolean showgrana = true;
-        //boolean showID = true;
-        ctline = 0;
+        if (threads > 1) {
+            parseParallel(reader);
+        } else {
+            ConllSentence cs;
+            while ((cs = reader.readSentence()) != null) {
+                sentences.add(cs);
+            }
+        }
+        ctline = reader.getLineNumber();
+        reader.checkErrors();
+        System.err.format("%d lines (%d sentences) read\n\n", ctline, sentences.size());
+    }
 
-        columndefs = new LinkedHashMap<>();
-        try {
-            List<String> errors = new ArrayList<>();
-            while ((line = br.readLine()) != null) {
-                ctline++;
-                if (ctline == 1) {
-                    // check whether we read a CoNLL-U plus file
-                    if (line.startsWith("# global.columns =")) {
-                        String [] elems = line.substring(18).trim().split("[ \\t]+");
-                        if (elems.length < 2) {
-                            throw new ConllException("invalid conllu+ definition " + line);
-                        }
-                        for (String d : elems) {
-                            int pos = columndefs.size();
-                            if (columndefs.containsKey(d)) {
-                                throw new ConllException("doubled column name in conllu+ definition " + line);
-                            }
-                            columndefs.put(d, pos);
-                        }
-                        standardcols = false;
-                        // currently only additional columns are allowed, so the first 10 MUST be the standard CoNLL-U columns
-                        Iterator<String> cdefs = columndefs.keySet().iterator();
-                        Iterator<String> cst  = conllustandard.iterator();
-                        for (int i = 0; i < 10; ++i) {
-                            String st = cst.next();
-                            if (!cdefs.hasNext()) {
-                                throw new ConllException("Missing Standard column '" + st + "' in conllu+ definition " + line);
-                            }
-                            String def = cdefs.next();
+    /**
+     * sentence blocks are read by the current thread, the sentences are created by a pool of threads.
+     * The sentences and errors are put back into the order of the file. Since runInOrder() only reads the next
+     * blocks when a thread is free, the lines of the whole file are never kept in memory
+     */
+    private void parseParallel(final ConllSentenceReader reader) throws ConllException, IOException {
+        Iterator<Chunk> chunks = new Iterator<Chunk>() {
+            List<AbstractMap.SimpleEntry<Integer, String>> block = readBlock(); // next block, null at the end
 
-                            if (!def.equals(st)) {
-                                 throw new ConllException("Column definition ('" + def + "' != '" + st + "') does not follow Standard column order in conllu+ definition: '" + line + "'");
-                            }
-                        }
-                        continue;
-                    } else {
-                        // standard CoNLL-U columns
-                        columndefs.put("ID", 0);
-                        columndefs.put("FORM", 1);
-                        columndefs.put("LEMMA", 2);
-                        columndefs.put("UPOS", 3);
-                        columndefs.put("XPOS", 4);
-                        columndefs.put("FEATS", 5);
-                        columndefs.put("HEAD", 6);
-                        columndefs.put("DEPREL", 7);
-                        columndefs.put("DEPS", 8);
-                        columndefs.put("MISC", 9);
-                    }
+            @Override
+            public boolean hasNext() {
+                return block != null;
+            }
+
+            @Override
+            public Chunk next() {
+                Chunk chunk = new Chunk(reader);
+                while (block != null && chunk.blocks.size() < CHUNKSIZE) {
+                    chunk.blocks.add(block);
+                    // errors found while reading the block (lines without ID) stay with the block
+                    chunk.lineerrors.add(new ArrayList<>(reader.getErrors()));
+                    reader.getErrors().clear();
+                    block = readBlock();
                 }
-                //System.out.println("LINE1:" + line);
+                return chunk;
+            }
 
-                if (ctline % 100000 == 0) {
-                    System.err.format("%d lines (%d sentences) read\r", ctline, sentences.size());
+            private List<AbstractMap.SimpleEntry<Integer, String>> readBlock() {
+                try {
+                    return reader.readBlock();
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
                 }
-                if (line.trim().isEmpty()) {
-                    if (!sentenceLines.isEmpty() && countWords != 0) {
-                        try {
-                            processSentence(sentenceLines, /*ignoreSentencesWithoutAnnot, ignoreSentencesWithoutTarget, */columndefs);
-                        } catch (ConllException ex) {
-                            sentenceLines.clear();
-                            errors.add(ex.getMessage());
-                        }
-                        countWords = 0;
+            }
+        };
 
-                    }
-                } else {
-                    if (line.startsWith("#")) {
-                        // TODO remove GRANA comments
-                        /*if (line.startsWith("#NOGRANA")) {
-                            showgrana = false;
-                        } else if (line.startsWith("#NOID")) {
-                            showID = false;
-                        } else if (line.startsWith("#GRANA")) {
-                            showgrana = true;
-                        } else if (line.startsWith("#ID")) {
-                            showID = true;
-                        }*/
-                        sentenceLines.add(new AbstractMap.SimpleEntry<>(ctline, line)); // we add comments line to sentence to be able to reproduce them in output
-                    } else {
-                        // TODO deprecate usage of shift
-                        // les lignes CONLL commencent toujours avec un nombre, SAUF si on utilise le
-                        // shift, dans ce cas on peut trouver autre choses dans des colonnes < shift ...
-                        String[] elems = line.split("\t");
-                        if (//elems.length >= 8 &&
-                                !elems[0].isEmpty() && Character.isDigit(elems[0].charAt(0))) {
-                            // supprimer les lignes commentaires ou autres
-                            //System.out.println("ADDING " + line);
-                            sentenceLines.add(new AbstractMap.SimpleEntry<>(ctline, line));
-                            countWords++;
-                        } else {
-                            //System.err.println("WARNING: incorrect line ignored: (line " + ctline + "): " + line);
-                            //throw new ConllException("incorrect line: (line " + ctline + "): " + line + "\n   First column must contain the ID");
-                            errors.add("incorrect line: (line " + ctline + "): " + line + "\n   First column must contain the ID");
-                        }
-                    }
+        final List<String> errors = new ArrayList<>(); // errors of the chunks already added
+        try {
+            runInOrder(threads, chunks, c -> {
+                addChunk(c, errors);
+                return true;
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        // errors found after the last block
+        List<String> trailingerrors = new ArrayList<>(reader.getErrors());
+        reader.getErrors().clear();
+        reader.getErrors().addAll(errors);
+        reader.getErrors().addAll(trailingerrors);
+    }
+
+    /** add the sentences of a parsed chunk, and its errors to errors */
+    private void addChunk(Chunk c, List<String> errors) {
+        for (int i = 0; i < c.sentences.length; ++i) {
+            errors.addAll(c.lineerrors.get(i));
+            if (c.sentenceerrors[i] != null) {
+                errors.add(c.sentenceerrors[i]);
+            } else if (c.sentences[i] != null) {
+                sentences.add(c.sentences[i]);
+            }
+        }
+    }
+
+    /** sentence blocks which are parsed together by a thread */
+    private static class Chunk implements Callable<Chunk> {
+        final ConllSentenceReader reader;
+        final List<List<AbstractMap.SimpleEntry<Integer, String>>> blocks = new ArrayList<>(CHUNKSIZE);
+        final List<List<String>> lineerrors = new ArrayList<>(CHUNKSIZE);
+        ConllSentence[] sentences;
+        String[] sentenceerrors;
+
+        Chunk(ConllSentenceReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public Chunk call() {
+            sentences = new ConllSentence[blocks.size()];
+            sentenceerrors = new String[blocks.size()];
+            for (int i = 0; i < blocks.size(); ++i) {
+                try {
+                    sentences[i] = reader.makeSentence(blocks.get(i));
+                } catch (ConllException ex) {
+                    sentenceerrors[i] = ex.getMessage();
                 }
             }
+            blocks.clear(); // lines are not needed anymore
+            return this;
+        }
+    }
+
+    /** receives the results of the tasks run by runInOrder(), in the order of the tasks */
+    public interface ResultHandler<T> {
+        /** @return false to stop, the remaining tasks are cancelled */
+        boolean handle(T result) throws ConllException;
+    }
 
-            // process last block of words (= sentence)
-            if (!sentenceLines.isEmpty() && countWords > 0) {
+    /** creates the task which processes the elements from (included) to to (excluded) of a list */
+    public interface ChunkTask<T> {
+        Callable<T> create(int from, int to);
+    }
+
+    /**
+     * run tasks with the threads of pool and give their results to handler in the order of the tasks.
+     * At most two tasks per thread are waiting or running, the next tasks are only taken from tasks when
+     * a result has been handled (so tasks can read their input lazily).
+     * Exceptions of the tasks are thrown as they are if they are ConllExceptions or RuntimeExceptions,
+     * other exceptions are wrapped into a ConllException.
+     *
+     * @param pool if null, the tasks are run one after the other by the current thread. The pool is not shut down
+     * @param tasks the tasks to run
+     * @param handler receives the results
+     */
+    public static <T> void runInOrder(ForkJoinPool pool, Iterator<? extends Callable<T>> tasks, ResultHandler<T> handler) throws ConllException {
+        if (pool == null) {
+            while (tasks.hasNext()) {
+                T result;
                 try {
-                processSentence(sentenceLines, /*ignoreSentencesWithoutAnnot, ignoreSentencesWithoutTarget,*/ columndefs);
-                } catch (ConllException e) {
-                    errors.add(e.getMessage());
+                    result = tasks.next().call();
+                } catch (ConllException | RuntimeException ex) {
+                    throw ex;
+                } catch (Exception ex) {
+                    throw new ConllException("" + ex);
+                }
+                if (!handler.handle(result)) {
+                    return;
                 }
             }
+            return;
+        }
 
-            if (!errors.isEmpty()) {
-                StringBuilder sb = new StringBuilder('\n');
-                for (String ex : errors) {
-                    sb.append(ex).append('\n');
+        Deque<Future<T>> running = new ArrayDeque<>();
+        try {
+            while (tasks.hasNext()) {
+                running.add(pool.submit(tasks.next()));
+                if (running.size() >= 2 * pool.getParallelism() && !handler.handle(running.poll().get())) {
+                    return;
                 }
-                throw new ConllException(sb.toString());
             }
-        } catch (ConllException e) {
-            //throw new ConllException(e.getMessage() + " (sentence ending with line " + ctline + ")");
-            throw new ConllException(e.getMessage());
+            while (!running.isEmpty()) {
+                if (!handler.handle(running.poll().get())) {
+                    return;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ConllException("interrupted");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            // ForkJoinPool wraps checked exceptions of a Callable into (several) RuntimeExceptions
+            while (cause.getClass() == RuntimeException.class && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof ConllException) {
+                throw (ConllException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new ConllException("" + cause);
+        } finally {
+            for (Future<T> f : running) {
+                f.cancel(true);
+            }
         }
-        System.err.format("%d lines (%d sentences) read\n\n", ctline, sentences.size());
     }
 
     /**
-     * on a lu des lignes qui font une phrases/règle et on est arrivé à la fin
-     * du block, maintenant on les traite.
+     * run tasks with a pool of threads threads which is shut down at the end
+     * @param threads if 1 or less, the tasks are run by the current thread
      */
-    private void processSentence(List<AbstractMap.SimpleEntry<Integer, String>> sentenceLines,
-            //boolean ignoreSentencesWithoutAnnot, boolean ignoreSentencesWithoutTarget,
-            //boolean showgrana, boolean showID,
-            Map<String, Integer>columndefs) throws ConllException {
-        // on a lu un bloc de lignes CONLL qui font une phrase
-        ConllSentence c = null;
-        if (conllsentenceSubclass == null) {
-            c = new ConllSentence(sentenceLines, columndefs);
-        } else {
-            try {
-                @SuppressWarnings("rawtypes")
-				Class [] cargs = new Class[2];
-                cargs[0] = List.class;
-                cargs[1] = Map.class;
-                // TODO: conllsentence sublcasses do not use yet the CoNLL-U+ format
-                // get the constructor with arguments cargs (a list)
-                // and create a new instance
-                c = conllsentenceSubclass.getDeclaredConstructor(cargs).newInstance(sentenceLines, columndefs);
-            } catch (NoSuchMethodException | SecurityException | InstantiationException | IllegalAccessException | IllegalArgumentException ex) {
-                System.err.println("Invalid ConllSentence subclass " + ex + ":: " + ex.getMessage());
-            } catch (InvocationTargetException ex) {
-                //System.err.println("Error in external ConllSentence subclass " + ex.getCause());
-                throw new ConllException("" + ex.getCause());
+    public static <T> void runInOrder(int threads, Iterator<? extends Callable<T>> tasks, ResultHandler<T> handler) throws ConllException {
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        try {
+            runInOrder(pool, tasks, handler);
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
             }
         }
-        //if (!ignoreSentencesWithoutAnnot /*|| c.isAnnotated()*/) {
-        //    if (!ignoreSentencesWithoutTarget /*|| c.hasTargets()*/) {
-                sentences.add(c);
-         //   }
-        //}
-//        if (c != null) {
-//            c.setShowID(showID);
-//            c.setShowgrana(showgrana);
-//        }
-        sentenceLines.clear();
+    }
+
+    /**
+     * process the elements of a list of length size in chunks of CHUNKSIZE elements by the threads of pool,
+     * the results are given to handler in the order of the list
+     */
+    public static <T> void runInOrder(ForkJoinPool pool, final int size, final ChunkTask<T> chunktask, ResultHandler<T> handler) throws ConllException {
+        Iterator<Callable<T>> tasks = new Iterator<Callable<T>>() {
+            int from = 0;
 
+            @Override
+            public boolean hasNext() {
+                return from < size;
+            }
+
+            @Override
+            public Callable<T> next() {
+                int to = Math.min(from + CHUNKSIZE, size);
+                Callable<T> task = chunktask.create(from, to);
+                from = to;
+                return task;
+            }
+        };
+        runInOrder(size > CHUNKSIZE ? pool : null, tasks, handler);
+    }
+
+    /**
+     * process the elements of a list of length size in chunks of CHUNKSIZE elements by threads threads,
+     * the results are given to handler in the order of the list
+     */
+    public static <T> void runInOrder(int threads, int size, ChunkTask<T> chunktask, ResultHandler<T> handler) throws ConllException {
+        ForkJoinPool pool = threads > 1 && size > CHUNKSIZE ? new ForkJoinPool(threads) : null;
+        try {
+            runInOrder(pool, size, chunktask, handler);
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
     }
 
     public List<ConllSentence> getSentences() {
@@ -325,6 +479,25 @@ public class ConllFile {
         return null;
     }
 
+    /** @return true if the sentences are only parsed when accessed */
+    public boolean isLazy() {
+        return sentences instanceof MappedSentenceList;
+    }
+
+    /** in lazy mode, keep sentence sn in memory until the file is reloaded, since it has been modified */
+    public void pin(int sn) {
+        if (sentences instanceof MappedSentenceList) {
+            ((MappedSentenceList) sentences).pin(sn);
+        }
+    }
+
+    /** in lazy mode, reread the file after it has been overwritten with all modified sentences */
+    public void reload() throws IOException, ConllException {
+        if (sentences instanceof MappedSentenceList) {
+            ((MappedSentenceList) sentences).reload();
+        }
+    }
+
     public void addSentences(List<ConllSentence> s) {
         sentences.addAll(s);
     }
@@ -361,6 +534,14 @@ public class ConllFile {
         return columndefs;
     }
 
+    /** write the file sentence by sentence, without creating a String for the whole file (see toString()) */
+    public void write(Writer out) throws IOException {
+        out.write(getColDefString());
+        for (ConllSentence c : sentences) {
+            out.write(c.toString());
+        }
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -438,11 +619,12 @@ public class ConllFile {
 //    }
 
 
-    class CondAndRepl {
+    static class CondAndRepl {
         CheckCondition condition;
         String cstr;
         List<GetReplacement>replacements;
         String values;
+        int changes = 0;
         public CondAndRepl(String c, String rs) throws ConllException {
             condition = new CheckCondition(c, false);
             cstr = c;
@@ -455,55 +637,163 @@ public class ConllFile {
         }
     }
 
-    /** read rules file
-     *   condition > newvals
-     *   Upos:ADP and Lemma:d.* > Feat:Key="Val", Xpos:"prep"
-     *   and apply rule + replacement on all words of all sentences
-     * @param rulefile
-     * @throws ConllException, IOException
+    /** the rules of a rule file (condition &gt; newvals), applied sentence by sentence
+     * so that they can also be used on a ConllSentenceReader without loading the whole file.
+     * The rules are parsed once. Since a rule only modifies words of the sentence it is applied on,
+     * blocks of sentences can be processed in parallel
      */
-    public void conditionalEdit(File rulefile) throws ConllException, IOException {
-        FileInputStream fis = new FileInputStream(rulefile);
-        BufferedReader br = new BufferedReader(new InputStreamReader(fis, StandardCharsets.UTF_8));
-        String line;
-
+    public static class EditRules {
+        List<CondAndRepl> conds;
         // store here the wordlists found in Lemma:#... and Form:#.... in order to avoir rereading them
-        Map<String, Set<String>> wordlists = new HashMap<>(); // stores lists for Form and Lemma: "filename": (words)
-        int changes = 0;
-        int ct = 0;
+        Map<String, Set<String>> wordlists = Collections.synchronizedMap(new HashMap<String, Set<String>>()); // stores lists for Form and Lemma: "filename": (words)
         StringBuilder warnings = new StringBuilder();
 
-        List<CondAndRepl> conds = new ArrayList<>();
+        public EditRules(File rulefile) throws ConllException, IOException {
+            FileInputStream fis = new FileInputStream(rulefile);
+            BufferedReader br = new BufferedReader(new InputStreamReader(fis, StandardCharsets.UTF_8));
+            String line;
+            int ct = 0;
+            conds = new ArrayList<>();
 
-        while ((line = br.readLine()) != null) {
-            ct++;
-            line = line.trim();
-            //System.err.format("<%s>\n", line);
-            if (line.isEmpty() || line.charAt(0) == '#') continue;
-            String [] elems = line.split(">", 2);
-            if (elems.length != 2) {
-                throw new ConllException("Line " + ct + ": missing '>'");
-            }
             try {
-                CondAndRepl cr = new CondAndRepl(elems[0], elems[1]);
-                conds.add(cr);
-            } catch (ConllException e) {
-                //e.printStackTrace();
-                throw new ConllException("Line " + ct + ": " + e.getMessage());
+                while ((line = br.readLine()) != null) {
+                    ct++;
+                    line = line.trim();
+                    //System.err.format("<%s>\n", line);
+                    if (line.isEmpty() || line.charAt(0) == '#') continue;
+                    String [] elems = line.split(">", 2);
+                    if (elems.length != 2) {
+                        throw new ConllException("Line " + ct + ": missing '>'");
+                    }
+                    try {
+                        CondAndRepl cr = new CondAndRepl(elems[0], elems[1]);
+                        conds.add(cr);
+                    } catch (ConllException e) {
+                        //e.printStackTrace();
+                        throw new ConllException("Line " + ct + ": " + e.getMessage());
+                    }
+                }
+            } finally {
+                br.close();
             }
         }
 
-        for (CondAndRepl cr : conds) {
-            Set<ConllWord>matching_cw = conditionalEdit(cr.condition, cr.replacements, wordlists, warnings);
-            System.err.println(matching_cw.size() + " changes for condition: " + cr.cstr + " values: " + cr.values);
-            changes += matching_cw.size();
+        /**
+         * apply all rules (in the order of the rule file) on a sentence
+         * @return the number of changes
+         */
+        public int apply(ConllSentence cs) throws ConllException {
+            int[] changes = new int[conds.size()];
+            StringBuilder w = new StringBuilder();
+            apply(cs, changes, w);
+            add(changes, w);
+            int total = 0;
+            for (int c : changes) {
+                total += c;
+            }
+            return total;
         }
 
-        if (warnings.length() > 0) {
-            System.err.println(warnings.toString());
+        private void apply(ConllSentence cs, int[] changes, StringBuilder w) throws ConllException {
+            for (int r = 0; r < changes.length; ++r) {
+                CondAndRepl cr = conds.get(r);
+                changes[r] += cs.conditionalEdit(cr.condition, cr.replacements, wordlists, w).size();
+            }
+        }
+
+        private synchronized void add(int[] changes, StringBuilder w) {
+            for (int r = 0; r < changes.length; ++r) {
+                conds.get(r).changes += changes[r];
+            }
+            warnings.append(w);
+        }
+
+        private boolean add(EditChunk c) {
+            add(c.changes, c.warnings);
+            return true;
+        }
+
+        /**
+         * apply all rules on a list of sentences. Blocks of sentences are processed by threads threads,
+         * the changes per rule and the warnings are the same as if the sentences were processed one after the other
+         */
+        public void apply(final List<ConllSentence> sentences, int threads) throws ConllException {
+            runInOrder(threads, sentences.size(), (from, to) -> new EditChunk(sentences.subList(from, to)), this::add);
+        }
+
+        /**
+         * apply all rules on a list of sentences, blocks of sentences are processed by the threads of pool
+         * (which is not shut down, so that it can be used for the next sentences)
+         * @param pool if null, the sentences are processed one after the other
+         */
+        public void apply(final List<ConllSentence> sentences, ForkJoinPool pool) throws ConllException {
+            runInOrder(pool, sentences.size(), (from, to) -> new EditChunk(sentences.subList(from, to)), this::add);
+        }
+
+        /** sentences which are edited together by a thread */
+        private class EditChunk implements Callable<EditChunk> {
+            final List<ConllSentence> sentences;
+            final int[] changes = new int[conds.size()];
+            final StringBuilder warnings = new StringBuilder();
+
+            EditChunk(List<ConllSentence> sentences) {
+                this.sentences = sentences;
+            }
+
+            @Override
+            public EditChunk call() throws ConllException {
+                for (ConllSentence cs : sentences) {
+                    apply(cs, changes, warnings);
+                }
+                return this;
+            }
+        }
+
+        /** @return the number of changes of each rule */
+        public List<Integer> getChanges() {
+            List<Integer> res = new ArrayList<>();
+            for (CondAndRepl cr : conds) {
+                res.add(cr.changes);
+            }
+            return res;
+        }
+
+        /** print the number of changes per rule and the warnings */
+        public void report() {
+            int changes = 0;
+            for (CondAndRepl cr : conds) {
+                System.err.println(cr.changes + " changes for condition: " + cr.cstr + " values: " + cr.values);
+                changes += cr.changes;
+            }
+            if (warnings.length() > 0) {
+                System.err.println(warnings.toString());
+            }
+            System.err.println(changes + " changes");
         }
-        System.err.println(changes + " changes");
-        br.close();
+    }
+
+    /** read rules file
+     *   condition > newvals
+     *   Upos:ADP and Lemma:d.* > Feat:Key="Val", Xpos:"prep"
+     *   and apply rule + replacement on all words of all sentences
+     * @param rulefile
+     * @throws ConllException, IOException
+     */
+    public void conditionalEdit(File rulefile) throws ConllException, IOException {
+        EditRules rules = new EditRules(rulefile);
+        // the rules only modify words of the sentence they are applied on, so applying all rules to
+        // one sentence after the other gives the same result as applying each rule to all sentences
+        if (isLazy()) {
+            // sentences are parsed when accessed, and modified ones must be kept
+            for (int sn = 0; sn < sentences.size(); ++sn) {
+                if (rules.apply(sentences.get(sn)) > 0) {
+                    pin(sn);
+                }
+            }
+        } else {
+            rules.apply(sentences, threads);
+        }
+        rules.report();
     }
 
     /* check a condition and apply modifications on all words of all sentences and return a list of matching words*/
@@ -556,6 +846,18 @@ public class ConllFile {
     }
 
     public void conditionalValidation(File validfile, PrintStream err) throws ConllException, IOException {
+        conditionalValidation(validfile, err, null);
+    }
+
+    /**
+     * check if/then rules on all words of all sentences. All rules are checked on a sentence in one traversal,
+     * blocks of sentences are checked by the threads of the file, errors are written in the order of the sentences
+     * @param validfile file with the rules (condition == condition)
+     * @param err stream for the errors as text (System.err if null)
+     * @param json if not null, every error is written as a line of JSON on this stream
+     * @return the number of errors
+     */
+    public int conditionalValidation(File validfile, PrintStream err, PrintStream json) throws ConllException, IOException {
         FileInputStream fis = new FileInputStream(validfile);
         BufferedReader br = new BufferedReader(new InputStreamReader(fis, StandardCharsets.UTF_8));
         String line;
@@ -588,20 +890,88 @@ public class ConllFile {
         }
         br.close();
 
-        for (ConllSentence cs : sentences) {
-            StringBuilder warnings = new StringBuilder();
-            for (ImplicationConditions ic : ics) {
+        List<CheckCondition> ifconditions = new ArrayList<>();
+        List<CheckCondition> thenconditions = new ArrayList<>();
+        for (ImplicationConditions ic : ics) {
+            ifconditions.add(ic.ifcondition);
+            thenconditions.add(ic.thencondition);
+        }
+
+        final PrintStream out = err;
+        final int[] errors = {0};
+        runInOrder(isLazy() ? 1 : threads, sentences.size(),
+                (from, to) -> new ValidationChunk(ics, ifconditions, thenconditions, sentences.subList(from, to), from),
+                c -> {
+                    errors[0] += c.write(out, json);
+                    return true;
+                });
+        return errors[0];
+    }
+
+    /** sentences which are validated together by a thread */
+    private class ValidationChunk implements Callable<ValidationChunk> {
+        final List<ImplicationConditions> ics;
+        final List<CheckCondition> ifconditions;
+        final List<CheckCondition> thenconditions;
+        final List<ConllSentence> sentences;
+        final int offset; // number of the first sentence in the file
+        final StringBuilder text = new StringBuilder();
+        final List<String> jsonlines = new ArrayList<>();
+        int errors = 0;
+
+        ValidationChunk(List<ImplicationConditions> ics, List<CheckCondition> ifconditions, List<CheckCondition> thenconditions,
+                List<ConllSentence> sentences, int offset) {
+            this.ics = ics;
+            this.ifconditions = ifconditions;
+            this.thenconditions = thenconditions;
+            this.sentences = sentences;
+            this.offset = offset;
+        }
 
-                int errs = cs.conditionalValidation(ic.ifcondition, ic.thencondition, warnings);
-                if (errs > 0) {
-                    err.println("Sentence " + cs.getSentid());
-                    err.println(cs.getSentence());
+        @Override
+        public ValidationChunk call() throws ConllException {
+            for (int i = 0; i < sentences.size(); ++i) {
+                ConllSentence cs = sentences.get(i);
+                List<List<ConllWord>> errs = cs.conditionalValidation(ifconditions, thenconditions);
+                // the warnings of all failed rules of a sentence are repeated for every following failed rule
+                StringBuilder warnings = new StringBuilder();
+                for (int r = 0; r < ics.size(); ++r) {
+                    if (errs.get(r).isEmpty()) {
+                        continue;
+                    }
+                    ImplicationConditions ic = ics.get(r);
+                    for (ConllWord cw : errs.get(r)) {
+                        warnings.append("   ERROR ").append(cw.toString()).append('\n');
+                        JsonObject jerr = new JsonObject();
+                        jerr.addProperty("sentence", offset + i + 1);
+                        jerr.addProperty("sent_id", cs.getSentid());
+                        jerr.addProperty("id", cw.getFullId());
+                        jerr.addProperty("form", cw.getForm());
+                        jerr.addProperty("rule", ic.linenumber);
+                        jerr.addProperty("if", ic.ifstr.trim());
+                        jerr.addProperty("then", ic.thenstr.trim());
+                        jsonlines.add(jerr.toString());
+                        errors++;
+                    }
+                    text.append("Sentence ").append(cs.getSentid()).append('\n');
+                    text.append(cs.getSentence()).append('\n');
+                    text.append("  Applying rule ").append(ic).append('\n');
+                    text.append(warnings).append('\n');
+                }
+            }
+            return this;
+        }
 
-                    err.println("  Applying rule " + ic);
-                    err.println(warnings.toString());
+        /** write the results
+         * @return the number of errors */
+        int write(PrintStream err, PrintStream json) {
+            err.print(text);
+            if (json != null) {
+                for (String line : jsonlines) {
+                    json.println(line);
                 }
             }
-            //err.println();
+            return errors;
         }
     }
 
@@ -644,9 +1014,21 @@ public class ConllFile {
     };
 
     public JsonObject getFilestats() {
+        if (sentences instanceof ColumnarSentenceList) {
+            return ((ColumnarSentenceList) sentences).getFilestats(file);
+        }
+        return getFilestats(file, sentences);
+    }
+
+    /**
+     * statistics on sentences. Only the counts are kept in memory, so this works on a ConllSentenceReader as well
+     * @param file the file the sentences come from
+     * @param sentences the sentences
+     */
+    public static JsonObject getFilestats(File file, Iterable<ConllSentence> sentences) {
         JsonObject jdoc = new JsonObject();
         jdoc.addProperty("filename", file.getAbsolutePath());
-        jdoc.addProperty("sentences", sentences.size());
+        int ctsentences = 0;
         // tokens means "surface tokens", e.g. Spanish "vámonos" counts as one token
         // words means "syntactic words", e.g. Spanish "vámonos" is split to two words, "vamos" and "nos"
         // fused is the number of tokens that are split to two or more syntactic words
@@ -664,6 +1046,7 @@ public class ConllFile {
 
 
         for (ConllSentence csent : sentences) {
+            ctsentences++;
             syntactic_words += csent.getWords().size();
             for (ConllWord cw : csent.getWords()) {
                 if (uposs.containsKey(cw.getUpostag())) {
@@ -724,6 +1107,7 @@ public class ConllFile {
             }
         }
 
+        jdoc.addProperty("sentences", ctsentences);
         jdoc.addProperty("syntactic_words", syntactic_words);
         jdoc.addProperty("mwts", mwts);
         jdoc.addProperty("emptywords", emptywords);
@@ -787,19 +1171,50 @@ public class ConllFile {
             int first, int last,
             String sid) throws ConllException {
 
-        //if (output == Output.ANN) {
-        //    out.print(cf.getAnn());
-        //} else {
-        if (true) {
-            List<ConllSentence> sentences = cf.getSentences();
-            if (shuffle) {
-                Collections.shuffle(sentences);
-            }
+        List<ConllSentence> sentences = cf.getSentences();
+        if (shuffle) {
+            Collections.shuffle(sentences);
+        }
+        processInput(out, sentences, cf.getColDefString(), null, output, filter, strict, first, last, sid, 1);
+    }
 
-            int ct = 0;
-            if (output == Output.CONLL) {
-                out.print(cf.getColDefString());
-            }
+    /**
+     * process sentences one by one (sentences can come from a ConllSentenceReader, to process files
+     * which do not fit into memory)
+     *
+     * @param out the output stream
+     * @param sentences the sentences
+     * @param coldefs the global.columns line (or an empty string)
+     * @param rules if not null, apply these rules on the sentences before output
+     * @param output the output format
+     * @param filter if not null, output only sentences with a XPOS/UPOS
+     * @param strict if false, allow words with head 0 have a deprel different from "root"
+     * @param first start with this sentence number
+     * @param last stop after this sentence number
+     * @param sid sentence id
+     * @param threads number of threads which apply the rules
+     * matching the filter
+     * @throws ConllException
+     */
+    public static void processInput(PrintStream out,
+            Iterable<ConllSentence> sentences,
+            String coldefs,
+            EditRules rules,
+            Output output,
+            String filter,
+            boolean strict,
+            int first, int last,
+            String sid,
+            int threads) throws ConllException {
+        int ct = 0;
+        if (output == Output.CONLL) {
+            out.print(coldefs);
+        }
+        // with rules, sentences are edited in parallel in batches, all batches by the threads of the same pool
+        List<ConllSentence> batch = new ArrayList<>();
+        int batchsize = CHUNKSIZE * Math.max(1, threads);
+        ForkJoinPool pool = rules != null && threads > 1 ? new ForkJoinPool(threads) : null;
+        try {
             for (ConllSentence cs : sentences) {
                 ct++;
                 if (ct < first) {
@@ -811,40 +1226,42 @@ public class ConllFile {
                 if (sid != null && !sid.equalsIgnoreCase(cs.getSentid())) {
                     continue;
                 }
-                if (filter != null) {
-                    String text = cs.getSentence();
-                    if (text.matches(".*" + filter + ".*")) {
-                        if (null == output) {
-                            out.println(cs.getSentence());
-                        } else {
-                            switch (output) {
-                                case CONLL:
-                                    out.print(cs.toString());
-                                    break;
-                                case LATEX:
-                                    out.println(cs.getLaTeX(false, false));
-                                    break;
-                                default:
-                                    out.println(cs.getSentence());
-                                    break;
-                            }
-                        }
-                    } else {
-                        for (ConllWord w : cs.getWords()) {
-                            if (w.matchesUpostag(filter) || w.matchesXpostag(filter)) {
-                                if (output == Output.CONLL) {
-                                    out.print(cs.toString());
-                                } else {
-                                    out.println(cs.getSentence());
-                                }
-                                break;
-                            }
+                if (rules != null) {
+                    batch.add(cs);
+                    if (batch.size() == batchsize) {
+                        rules.apply(batch, pool);
+                        for (ConllSentence bcs : batch) {
+                            output(out, bcs, output, filter, strict);
                         }
+                        batch.clear();
                     }
+                } else {
+                    output(out, cs, output, filter, strict);
+                }
+            }
+            if (!batch.isEmpty()) {
+                rules.apply(batch, pool);
+                for (ConllSentence bcs : batch) {
+                    output(out, bcs, output, filter, strict);
+                }
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    private static void output(PrintStream out, ConllSentence cs, Output output, String filter, boolean strict) {
+        if (filter != null) {
+            String text = cs.getSentence();
+            if (text.matches(".*" + filter + ".*")) {
+                if (null == output) {
+                    out.println(cs.getSentence());
                 } else {
                     switch (output) {
                         case CONLL:
-                            out.print(cs.toString(strict));
+                            out.print(cs.toString());
                             break;
                         case LATEX:
                             out.println(cs.getLaTeX(false, false));
@@ -854,6 +1271,29 @@ public class ConllFile {
                             break;
                     }
                 }
+            } else {
+                for (ConllWord w : cs.getWords()) {
+                    if (w.matchesUpostag(filter) || w.matchesXpostag(filter)) {
+                        if (output == Output.CONLL) {
+                            out.print(cs.toString());
+                        } else {
+                            out.println(cs.getSentence());
+                        }
+                        break;
+                    }
+                }
+            }
+        } else {
+            switch (output) {
+                case CONLL:
+                    out.print(cs.toString(strict));
+                    break;
+                case LATEX:
+                    out.println(cs.getLaTeX(false, false));
+                    break;
+                default:
+                    out.println(cs.getSentence());
+                    break;
             }
         }
     }
@@ -899,6 +1339,7 @@ public class ConllFile {
             System.out.println("usage: ConllFile [options] file.conll|-");
             System.out.println("   --cedit <conditionfile>     search&replace on a conllu file");
             System.out.println("   --cvalid <if/then file>     validate conditions on all word of a conllu file");
+            System.out.println("   --json                      with --cvalid: output the errors also as JSON lines");
             //System.err.println("   --quiet                     less verbose output (currently only with --cvalid");
             System.out.println("   --conll                     output in CoNLL-U format");
             System.out.println("   --tex                       output in LaTeX format");
@@ -910,6 +1351,11 @@ public class ConllFile {
             System.out.println("   --crossval <n>              splits the file in n parts (n-1 parts for training and 1 part for testing, needs --outfileprefix");
             System.out.println("   --outfileprefix <n>         specify the prefix used fo the files created by --crossval");
             System.out.println("   --stats                     file statistics (in json format)");
+            System.out.println("   --stream                    read sentence by sentence instead of loading the whole file (for big files,");
+            System.out.println("                               not with --shuffle, --crossval and --cvalid)");
+            System.out.println("   --columnar                  keep the file in columns, needs less memory (for big files,");
+            System.out.println("                               not with --stream, --shuffle, --crossval, --cedit and --cvalid)");
+            System.out.println("   --threads <n>               number of threads to parse, edit and validate sentences (default: number of processors)");
         } else {
             //for (String a : args) System.err.println("arg " + a);
             String filter = null;
@@ -918,6 +1364,8 @@ public class ConllFile {
             boolean debug = false;
             boolean strict = true;
             boolean stats = false;
+            boolean stream = false;
+            boolean columnar = false;
             //boolean quiet = false;
 
             int first = 1;
@@ -927,6 +1375,8 @@ public class ConllFile {
             String outfileprefix = null;
             String conditionfile = null;
             String validationfile = null;
+            boolean jsonerrors = false;
+            int threads = DEFAULTTHREADS;
             Set<String>subphrase_deprels = null;
 
             Output output = Output.TEXT;
@@ -953,6 +1403,12 @@ public class ConllFile {
                 } else if (args[a].equals("--stats")) {
                     stats = true;
                     argindex++;
+                } else if (args[a].equals("--stream")) {
+                    stream = true;
+                    argindex++;
+                } else if (args[a].equals("--columnar")) {
+                    columnar = true;
+                    argindex++;
                 //} else if (args[a].equals("--quiet")) {
                 //    quiet = true;
                 //    argindex++;
@@ -965,6 +1421,9 @@ public class ConllFile {
                 } else if (args[a].equals("--cvalid")) {
                     validationfile = args[++a];
                     argindex += 2;
+                } else if (args[a].equals("--json")) {
+                    jsonerrors = true;
+                    argindex++;
                 } else if (args[a].equals("--subphrase")) {
                     subphrase_deprels = new HashSet<String>(Arrays.asList(args[++a].split(",")));
                     argindex += 2;
@@ -983,6 +1442,9 @@ public class ConllFile {
                 } else if (args[a].equals("--outfileprefix")) {
                     outfileprefix = args[++a];
                     argindex += 2;
+                } else if (args[a].equals("--threads")) {
+                    threads = Integer.parseInt(args[++a]);
+                    argindex += 2;
 
                 } else if (args[a].startsWith("-")) {
                     System.err.println("Invalid option " + args[a]);
@@ -1000,6 +1462,16 @@ public class ConllFile {
                 System.exit(1);
             }
 
+            if (stream && (shuffle || cvparts > 0 || validationfile != null)) {
+                System.err.println("--stream cannot be used with --shuffle, --crossval or --cvalid");
+                System.exit(1);
+            }
+
+            if (columnar && (stream || shuffle || cvparts > 0 || conditionfile != null || validationfile != null)) {
+                System.err.println("--columnar cannot be used with --stream, --shuffle, --crossval, --cedit or --cvalid");
+                System.exit(1);
+            }
+
             if (filter != null) {
                 System.err.println("FILTER '" + filter + "'");
             }
@@ -1014,7 +1486,40 @@ public class ConllFile {
 
                 ConllFile cf;
                 PrintStream out = new PrintStream(System.out, true, "UTF-8");
-                if (args[argindex].equals("-")) {
+                if (stream) {
+                    // only the current sentence is kept in memory
+                    InputStream is;
+                    if (args[argindex].equals("-")) {
+                        is = System.in;
+                    } else {
+                        is = new FileInputStream(args[argindex]);
+                    }
+                    ConllSentenceReader reader = new ConllSentenceReader(is);
+                    try {
+                        if (stats) {
+                            System.out.println(getFilestats(new File(args[argindex]), reader));
+                        } else if (subphrase_deprels != null) {
+                            for (ConllSentence cs : reader) {
+                                String s = cs.getSubTreeAsText(subphrase_deprels);
+                                if (!s.isEmpty()) {
+                                    System.out.format("# %s\n%s\n", cs.getSentid(), s);
+                                }
+                            }
+                        } else {
+                            EditRules rules = null;
+                            if (conditionfile != null) {
+                                rules = new EditRules(new File(conditionfile));
+                            }
+                            processInput(out, reader, reader.getColDefString(), rules, output, filter, strict, first, last, sid, threads);
+                            if (rules != null) {
+                                rules.report();
+                            }
+                        }
+                    } finally {
+                        reader.close();
+                    }
+                    reader.checkErrors();
+                } else if (args[argindex].equals("-")) {
                     BufferedReader br = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
 
                     String line;
@@ -1036,7 +1541,7 @@ public class ConllFile {
                     }
 
                 } else {
-                    cf = new ConllFile(new File(args[argindex])/*, false, false*/);
+                    cf = new ConllFile(new File(args[argindex]), columnar, threads);
                     if (stats) {
                         System.out.println(cf.getFilestats());
                     }
@@ -1055,7 +1560,7 @@ public class ConllFile {
                            cf.conditionalEdit(new File(conditionfile));
                         }
                         else if (validationfile != null) {
-                           cf.conditionalValidation(new File(validationfile), null);
+                           cf.conditionalValidation(new File(validationfile), null, jsonerrors ? out : null);
                         }
 
                         if (validationfile == null) {
@@ -1071,6 +1576,10 @@ public class ConllFile {
                 if (debug) e.printStackTrace();
                 System.err.println("IO Error: " + e.getMessage());
                 System.exit(1);
+            } catch (UncheckedIOException e) {
+                if (debug) e.printStackTrace();
+                System.err.println("IO Error: " + e.getCause().getMessage());
+                System.exit(1);
             }
 
         }
@@ -28,7 +28,7 @@ are permitted provided that the following conditions are met:
  THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
  @author Johannes Heinecke
- @version 2.33.1 as of 25th April 2026
+ @version 2.34.0 as of 18th October 2026
 */
 package com.orange.labs.conllparser;
 
@@ -88,6 +88,15 @@ public class ConllSentence {
     private int number_of_comments = 0; // includes newpar, newdoc etc
     private boolean is_modified = true;
 
+    // normalise() and makeTrees() do nothing if ids, heads and enhanced dependencies have not changed since their last call
+    private int structure = 0; // increased by every change of ids, heads, enhanced dependencies or words
+    private boolean tracked = true; // false if the words may belong to another sentence and do not tell us about their changes
+    private int normalisedAt = -1; // value of structure after the last normalise()
+    private int normalisedFirst = -1;
+    private int normalisedNodes = -1;
+    private int treesAt = -1; // value of structure after the last makeTrees()
+    private int treesNodes = -1;
+
     //private boolean nextToStringcomplete = false; // le prochain toString() rajoute les colonnes prefixées
     Map<String, Integer> columndefs = null;
     private int last_modified = 0; // last modification date in this session. To avoid to users edit the same sentence at the same time. When a modification is sent by the client, the modifcation date must still be the same
@@ -121,6 +130,7 @@ public class ConllSentence {
 
     public ConllSentence(List<ConllWord> cw) {
         words = cw;
+        tracked = false;
         //hasEnhancedDeps = words.get(0).isBasicdeps_in_ed_column();
 
         comments = new ArrayList<>();
@@ -143,7 +153,9 @@ public class ConllSentence {
         comments = new ArrayList<>(orig.comments);
         hasEnhancedDeps = orig.hasEnhancedDeps;
         for (ConllWord word : orig.getWords()) {
-            words.add(new ConllWord(word));
+            ConllWord cw = new ConllWord(word);
+            cw.setMysentence(this);
+            words.add(cw);
         }
         if (orig.emptywords != null) {
             emptywords = new HashMap<>();
@@ -151,7 +163,9 @@ public class ConllSentence {
             for (Integer ei : orig.emptywords.keySet()) {
                 List<ConllWord> ews = new ArrayList<>();
                 for (ConllWord cw : orig.emptywords.get(ei)) {
-                    ews.add(new ConllWord(cw));
+                    ConllWord ew = new ConllWord(cw);
+                    ew.setMysentence(this);
+                    ews.add(ew);
                 }
                 emptywords.put(ei, ews);
             }
@@ -160,7 +174,9 @@ public class ConllSentence {
         if (orig.contracted != null) {
             contracted = new HashMap<>();
             for (Integer id : orig.contracted.keySet()) {
-                contracted.put(id, new ConllWord(orig.contracted.get(id)));
+                ConllWord mwt = new ConllWord(orig.contracted.get(id));
+                mwt.setMysentence(this);
+                contracted.put(id, mwt);
             }
         }
         newdoc = orig.newdoc;
@@ -336,6 +352,7 @@ public class ConllSentence {
         ew.add(emptyword);
         emptyword.setSubId(ew.size());
         emptyword.setMysentence(this);
+        structureChanged();
         is_modified = true;
     }
 
@@ -413,6 +430,9 @@ public class ConllSentence {
      * @param first id du premier mot
      */
     public void normalise(int first) {
+        if (tracked && normalisedAt == structure && normalisedFirst == first && normalisedNodes == numberOfNodes()) {
+            return;
+        }
         Map<Integer, Integer> oldnewIds = new HashMap<>(); // correspondances entre des IDs originaux et les IDs normalisés
         int ct = first;
 
@@ -467,6 +487,31 @@ public class ConllSentence {
             }
             emptywords = e2;
         }
+        normalisedAt = structure;
+        normalisedFirst = first;
+        normalisedNodes = numberOfNodes();
+    }
+
+    /**
+     * ids, heads, enhanced dependencies or words of the sentence have changed.
+     * The next normalise() and makeTrees() will recalculate everything
+     */
+    public void structureChanged() {
+        structure++;
+    }
+
+    /** number of words, empty words and MWTs */
+    private int numberOfNodes() {
+        int n = words.size();
+        if (emptywords != null) {
+            for (List<ConllWord> ews : emptywords.values()) {
+                n += ews.size();
+            }
+        }
+        if (contracted != null) {
+            n += contracted.size();
+        }
+        return n;
     }
 
     /**
@@ -613,6 +658,8 @@ public class ConllSentence {
                 }
             }
         }
+        structureChanged();
+        newsent.structureChanged();
         // set text of split sentences
         text = getSentence();
         newsent.normalise();
@@ -625,6 +672,14 @@ public class ConllSentence {
         n.normalise(words.size() + 1);
         //System.out.println("nnnnnn " + n);
 
+        for (ConllWord cw : n.getAllWords()) {
+            cw.setMysentence(this);
+        }
+        if (n.contracted != null) {
+            for (ConllWord cw : n.contracted.values()) {
+                cw.setMysentence(this);
+            }
+        }
         words.addAll(n.getWords());
         if (n.emptywords != null) {
             if (emptywords == null) {
@@ -641,6 +696,7 @@ public class ConllSentence {
             }
         }
         text = getSentence();
+        structureChanged();
         is_modified = true;
     }
 
@@ -705,6 +761,7 @@ public class ConllSentence {
 
         // supprimer les mots devenus inutiles
         deleteUnusedWords();
+        structureChanged();
         is_modified = true;
     }
 
@@ -718,6 +775,7 @@ public class ConllSentence {
                 it.remove();
             }
         }
+        structureChanged();
         is_modified = true;
     }
 
@@ -1392,6 +1450,7 @@ public class ConllSentence {
      */
     public void addWord(ConllWord cw, int id) throws ConllException {
         cw.setMysentence(this);
+        structureChanged();
         is_modified = true;
         if (cw.getTokentype() == ConllWord.Tokentype.CONTRACTED) {
             if (contracted == null) {
@@ -1458,6 +1517,7 @@ public class ConllSentence {
     }
 
     public void deleteContracted(int id) throws ConllException {
+        structureChanged();
         is_modified = true;
         if (contracted != null) {
             ConllWord removed = contracted.remove(id);
@@ -1490,6 +1550,7 @@ public class ConllSentence {
 
         ConllWord removed = ews.remove(subid - 1);
         removed.setMysentence(null);
+        structureChanged();
 
         if (ews.isEmpty()) {
             emptywords.remove(id);
@@ -1593,6 +1654,7 @@ public class ConllSentence {
 
             ConllWord removed = words.remove(id - 1);
             removed.setMysentence(null);
+            structureChanged();
             normalise(1);
             makeTrees(null);
             is_modified = true;
@@ -1623,6 +1685,7 @@ public class ConllSentence {
 
                 for (ConllWord mwt : mwts) {
                     contracted.remove(mwt.getId());
+                    mwt.setMysentence(null);
                 }
             }
 
@@ -1639,6 +1702,7 @@ public class ConllSentence {
                 }
                 //System.err.println("CURRENT FURTHER DOWN, deleting " + current);
                 words.remove(current);
+                current.setMysentence(null);
             } else {
                 // current word further up than following
                 current.setForm(current.getForm() + other.getForm());
@@ -1650,7 +1714,9 @@ public class ConllSentence {
                 }
                 //System.err.println("OTHER FURTHER DOWN, deleting " + other);
                 words.remove(other);
+                other.setMysentence(null);
             }
+            structureChanged();
 
             normalise(1);
             makeTrees(null);
@@ -1673,12 +1739,15 @@ public class ConllSentence {
 
     /**
      * creates the tree structure. In case of an error a ConllException is
-     * thrown.
+     * thrown. Does nothing if the structure has not changed since the last call.
      *
      * @param debug
      * @throws ConllException
      */
     public void makeTrees(StringBuilder debug) throws ConllException {
+        if (debug == null && tracked && treesAt == structure && treesNodes == numberOfNodes()) {
+            return;
+        }
         //parcourir les mots jusqu'à un root,
         // chercher les autres feuilles qui dépendent de cette racine
         // extraire cet arbre partiel
@@ -1799,6 +1868,8 @@ public class ConllSentence {
             passednodes.add(cw);
             cw.checkCycles(passednodes);
         }
+        treesAt = structure;
+        treesNodes = numberOfNodes();
         //return errs.toString();
     }
 
@@ -2695,6 +2766,30 @@ public class ConllSentence {
         return cterrors;
     }
 
+    /**
+     * check several if/then rules in one traversal of the words
+     * @param ifconditions the if part of each rule
+     * @param thenconditions the then part of each rule
+     * @return for each rule the words which match the if condition but not the then condition
+     */
+    public List<List<ConllWord>> conditionalValidation(List<CheckCondition> ifconditions, List<CheckCondition> thenconditions) throws ConllException {
+        normalise();
+        makeTrees(null);
+        List<List<ConllWord>> errors = new ArrayList<>();
+        for (int r = 0; r < ifconditions.size(); ++r) {
+            errors.add(new ArrayList<ConllWord>());
+        }
+        for (ConllWord cw : words) {
+            for (int r = 0; r < ifconditions.size(); ++r) {
+                if (cw.matchCondition(ifconditions.get(r), null)
+                        && !cw.matchCondition(thenconditions.get(r), null)) {
+                    errors.get(r).add(cw);
+                }
+            }
+        }
+        return errors;
+    }
+
 /** check whether current sentence is projective. Implies that makeTree() has been called.
  * for trees with more than one root this may return an invalid value
  * @return true if sentence is projective
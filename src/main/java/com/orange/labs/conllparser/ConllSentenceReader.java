@@ -0,0 +1,364 @@
+/* This library is under the 3-Clause BSD License
+
+ Copyright (c) 2018-2026, Orange S.A.
+
+ Redistribution and use in source and binary forms, with or without modification,
+ are permitted provided that the following conditions are met:
+
+ 1. Redistributions of source code must retain the above copyright notice,
+ this list of conditions and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright notice,
+ this list of conditions and the following disclaimer in the documentation
+ and/or other materials provided with the distribution.
+
+ 3. Neither the name of the copyright holder nor the names of its contributors
+ may be used to endorse or promote products derived from this software without
+ specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ @author Johannes Heinecke
+ @version 2.34.0 as of 18th October 2026
+*/
+package com.orange.labs.conllparser;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * reads a CoNLL-U (or CoNLL-U Plus) file sentence by sentence, without keeping
+ * more than the current sentence in memory. ConllFile uses it to load a file entirely,
+ * batch jobs on big files can iterate over the sentences instead.
+ * Errors in the input do not stop the reader, they are collected and can be retrieved with
+ * getErrors() (or checkErrors()) at the end.
+ *
+ * @author Johannes Heinecke <johannes.heinecke@orange.com>
+ */
+public class ConllSentenceReader implements Closeable, Iterable<ConllSentence> {
+
+    private final BufferedReader br;
+    private final Class<? extends ConllSentence> conllsentenceSubclass;
+    private final Map<String, Integer> columndefs; // column definitions: column name: position
+    private boolean standardcols = true;
+    private int ctline = 0;
+    private int ctsentences = 0;
+    private String pendingline = null; // first line, if it is not a global.columns definition
+    private boolean eof = false;
+    private final List<String> errors;
+    private boolean verbose = true;
+
+    public ConllSentenceReader(InputStream ips) throws ConllException, IOException {
+        this(ips, null);
+    }
+
+    /**
+     * @param ips stream to read (UTF-8)
+     * @param cs class to use instead of ConllSentence (must be a subclass), or null
+     * @throws ConllException invalid global.columns definition
+     * @throws IOException
+     */
+    public ConllSentenceReader(InputStream ips, Class<? extends ConllSentence> cs) throws ConllException, IOException {
+        br = new BufferedReader(new InputStreamReader(ips, StandardCharsets.UTF_8));
+        conllsentenceSubclass = cs;
+        columndefs = new LinkedHashMap<>();
+        errors = new ArrayList<>();
+        readHeader();
+    }
+
+    /**
+     * read a part of a file, which does not start with a global.columns definition
+     *
+     * @param ips stream to read (UTF-8)
+     * @param cs class to use instead of ConllSentence (must be a subclass), or null
+     * @param columndefs the column definitions of the file
+     * @param firstline line number of the first line of ips in the file
+     */
+    ConllSentenceReader(InputStream ips, Class<? extends ConllSentence> cs, Map<String, Integer> columndefs, int firstline) {
+        br = new BufferedReader(new InputStreamReader(ips, StandardCharsets.UTF_8));
+        conllsentenceSubclass = cs;
+        this.columndefs = columndefs;
+        errors = new ArrayList<>();
+        ctline = firstline - 1;
+        verbose = false;
+    }
+
+    /** check whether we read a CoNLL-U plus file */
+    private void readHeader() throws ConllException, IOException {
+        String line = br.readLine();
+        if (line == null) {
+            eof = true;
+        } else {
+            ctline++;
+        }
+        if (line != null && line.startsWith("# global.columns =")) {
+            String[] elems = line.substring(18).trim().split("[ \\t]+");
+            if (elems.length < 2) {
+                throw new ConllException("invalid conllu+ definition " + line);
+            }
+            for (String d : elems) {
+                int pos = columndefs.size();
+                if (columndefs.containsKey(d)) {
+                    throw new ConllException("doubled column name in conllu+ definition " + line);
+                }
+                columndefs.put(d, pos);
+            }
+            standardcols = false;
+            // currently only additional columns are allowed, so the first 10 MUST be the standard CoNLL-U columns
+            Iterator<String> cdefs = columndefs.keySet().iterator();
+            Iterator<String> cst = ConllFile.conllustandard.iterator();
+            for (int i = 0; i < 10; ++i) {
+                String st = cst.next();
+                if (!cdefs.hasNext()) {
+                    throw new ConllException("Missing Standard column '" + st + "' in conllu+ definition " + line);
+                }
+                String def = cdefs.next();
+
+                if (!def.equals(st)) {
+                    throw new ConllException("Column definition ('" + def + "' != '" + st + "') does not follow Standard column order in conllu+ definition: '" + line + "'");
+                }
+            }
+        } else {
+            // standard CoNLL-U columns
+            int pos = 0;
+            for (String st : ConllFile.conllustandard) {
+                columndefs.put(st, pos++);
+            }
+            pendingline = line;
+        }
+    }
+
+    public Map<String, Integer> getColumndefs() {
+        return columndefs;
+    }
+
+    public boolean isStandardcols() {
+        return standardcols;
+    }
+
+    /** @return the "# global.columns =" line (with newline) for CoNLL-U Plus input, an empty string otherwise */
+    public String getColDefString() {
+        if (standardcols) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("# global.columns =");
+        for (String col : columndefs.keySet()) {
+            sb.append(' ').append(col);
+        }
+        sb.append('\n');
+        return sb.toString();
+    }
+
+    /** @return number of lines read so far */
+    public int getLineNumber() {
+        return ctline;
+    }
+
+    /** @return number of sentences read so far */
+    public int getSentenceCount() {
+        return ctsentences;
+    }
+
+    /** @return the errors found so far (incorrect lines, invalid sentences) */
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    /** throws a ConllException with all errors found so far, if any */
+    public void checkErrors() throws ConllException {
+        if (!errors.isEmpty()) {
+            StringBuilder sb = new StringBuilder();
+            for (String ex : errors) {
+                sb.append(ex).append('\n');
+            }
+            throw new ConllException(sb.toString());
+        }
+    }
+
+    /** if false, do not print progress messages on stderr */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * read the lines of the next sentence (with their line numbers), comment lines included.
+     * Comment lines not followed by any word line are attached to the following sentence.
+     * Lines which do not start with an ID are reported as error and skipped.
+     *
+     * @return the lines or null at the end of the input
+     * @throws IOException
+     */
+    public List<AbstractMap.SimpleEntry<Integer, String>> readBlock() throws IOException {
+        if (eof) {
+            return null;
+        }
+        List<AbstractMap.SimpleEntry<Integer, String>> sentenceLines = new ArrayList<>();
+        int countWords = 0; // count only non-comment lines
+        while (true) {
+            String line;
+            if (pendingline != null) {
+                line = pendingline;
+                pendingline = null;
+            } else {
+                line = br.readLine();
+                if (line == null) {
+                    eof = true;
+                    break;
+                }
+                ctline++;
+                if (verbose && ctline % 100000 == 0) {
+                    System.err.format("%d lines (%d sentences) read\r", ctline, ctsentences);
+                }
+            }
+
+            if (line.trim().isEmpty()) {
+                if (countWords != 0) {
+                    ctsentences++;
+                    return sentenceLines;
+                }
+            } else if (line.startsWith("#")) {
+                sentenceLines.add(new AbstractMap.SimpleEntry<>(ctline, line)); // we add comments line to sentence to be able to reproduce them in output
+            } else {
+                String[] elems = line.split("\t");
+                if (!elems[0].isEmpty() && Character.isDigit(elems[0].charAt(0))) {
+                    sentenceLines.add(new AbstractMap.SimpleEntry<>(ctline, line));
+                    countWords++;
+                } else {
+                    errors.add("incorrect line: (line " + ctline + "): " + line + "\n   First column must contain the ID");
+                }
+            }
+        }
+        // last block of words (= sentence)
+        if (countWords > 0) {
+            ctsentences++;
+            return sentenceLines;
+        }
+        return null;
+    }
+
+    /**
+     * create a sentence (or an instance of the ConllSentence subclass) from the lines returned by readBlock()
+     */
+    public ConllSentence makeSentence(List<AbstractMap.SimpleEntry<Integer, String>> sentenceLines) throws ConllException {
+        if (conllsentenceSubclass == null) {
+            return new ConllSentence(sentenceLines, columndefs);
+        }
+        try {
+            @SuppressWarnings("rawtypes")
+            Class[] cargs = new Class[2];
+            cargs[0] = List.class;
+            cargs[1] = Map.class;
+            // TODO: conllsentence sublcasses do not use yet the CoNLL-U+ format
+            // get the constructor with arguments cargs (a list)
+            // and create a new instance
+            return conllsentenceSubclass.getDeclaredConstructor(cargs).newInstance(sentenceLines, columndefs);
+        } catch (NoSuchMethodException | SecurityException | InstantiationException | IllegalAccessException | IllegalArgumentException ex) {
+            System.err.println("Invalid ConllSentence subclass " + ex + ":: " + ex.getMessage());
+            return null;
+        } catch (InvocationTargetException ex) {
+            throw new ConllException("" + ex.getCause());
+        }
+    }
+
+    /**
+     * read the next sentence. Invalid sentences are skipped and their error added to getErrors()
+     *
+     * @return the next sentence or null at the end of the input
+     * @throws IOException
+     */
+    public ConllSentence readSentence() throws IOException {
+        List<AbstractMap.SimpleEntry<Integer, String>> sentenceLines;
+        while ((sentenceLines = readBlock()) != null) {
+            try {
+                ConllSentence cs = makeSentence(sentenceLines);
+                if (cs != null) {
+                    return cs;
+                }
+            } catch (ConllException ex) {
+                errors.add(ex.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * iterate over the remaining sentences. IOExceptions are rethrown as UncheckedIOException
+     */
+    @Override
+    public Iterator<ConllSentence> iterator() {
+        return new Iterator<ConllSentence>() {
+            ConllSentence nextsentence = null;
+
+            @Override
+            public boolean hasNext() {
+                if (nextsentence == null) {
+                    try {
+                        nextsentence = readSentence();
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }
+                return nextsentence != null;
+            }
+
+            @Override
+            public ConllSentence next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                ConllSentence cs = nextsentence;
+                nextsentence = null;
+                return cs;
+            }
+        };
+    }
+
+    /**
+     * the remaining sentences as a sequential stream. Closing the stream closes the reader
+     */
+    public Stream<ConllSentence> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            close();
+                        } catch (IOException ex) {
+                            throw new UncheckedIOException(ex);
+                        }
+                    }
+                });
+    }
+
+    @Override
+    public void close() throws IOException {
+        br.close();
+    }
+}
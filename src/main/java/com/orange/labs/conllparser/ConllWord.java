@@ -1,6 +1,6 @@
 /* This library is under the 3-Clause BSD License
 
-Copyright (c) 2018-2025, Orange S.A.
+Copyright (c) 2018-2026, Orange S.A.
 
 Redistribution and use in source and binary forms, with or without modification,
 are permitted provided that the following conditions are met:
@@ -28,7 +28,7 @@ are permitted provided that the following conditions are met:
  THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
  @author Johannes Heinecke
- @version 2.31.0 as of 28th May 2025
+ @version 2.34.0 as of 18th October 2026
  */
 package com.orange.labs.conllparser;
 
@@ -44,6 +44,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -84,6 +85,11 @@ public class ConllWord {
     public final static String EmptyExtraColumn = "*"; // non standard columns use "*" if empty
 
     private static Pattern number = Pattern.compile("\\d{1,3}(#\\d{3})+");
+    // compiled regexes of the matches*() methods. Regexes without special characters are compared with equals()
+    private static final Map<String, Pattern> regexcache = new ConcurrentHashMap<>();
+    private static final Pattern LITERAL = Pattern.compile("");
+    private static final Pattern SPECIALCHARS = Pattern.compile("[\\\\.\\[\\]{}()<>*+?^$|-]");
+    private static final int MAXREGEXES = 10000;
     public static final boolean DEBUG = false;
     public static boolean RELAXED = false; // if true, we correct errors in conllu file which are non ambiguous
     // if head == id --> set head to 0
@@ -561,7 +567,18 @@ public class ConllWord {
     }
 
     public void setMysentence(ConllSentence mysentence) {
-        this.mysentence = mysentence;
+        if (this.mysentence != mysentence) {
+            structureChanged();
+            this.mysentence = mysentence;
+            structureChanged();
+        }
+    }
+
+    /** ids, heads or enhanced dependencies have changed, the sentence must rebuild its trees */
+    private void structureChanged() {
+        if (mysentence != null) {
+            mysentence.structureChanged();
+        }
     }
 
     public boolean isWhquestion() {
@@ -710,7 +727,7 @@ public class ConllWord {
         List<ConllWord> res = null;
         for (ConllWord dep : dependents) {
             //System.err.println("zzzz " + dep.getDeplabel() + " m " + deplabel);
-            boolean matchOK = dep.getDeplabel().matches(deplabel);
+            boolean matchOK = matchesRegex(dep.getDeplabel(), deplabel);
             //if (dep.getDeplabel().matches(deplabel)) {
             if ((matchOK && !inverse) || (!matchOK && inverse)) {
                 if (res == null) {
@@ -947,6 +964,7 @@ public class ConllWord {
         } else if (!deps.isEmpty()) {
             return;
         }
+        structureChanged();
         if (toktype == Tokentype.EMPTY) {
             deps.add(new EnhancedDeps("0", "root"));
         } else {
@@ -1298,11 +1316,17 @@ public class ConllWord {
     }
 
     public void setId(int i) {
-        id = i;
+        if (id != i) {
+            id = i;
+            structureChanged();
+        }
     }
 
     public void setSubId(int i) {
-        subid = i;
+        if (subid != i) {
+            subid = i;
+            structureChanged();
+        }
     }
 
     public String getForm() {
@@ -1368,32 +1392,62 @@ public class ConllWord {
         return upostag.equals(regex);
     }
 
+    /**
+     * get the compiled regex. Patterns are compiled only once and shared by all threads
+     *
+     * @return the pattern or null if regex is a literal string
+     */
+    public static Pattern regex(String regex) {
+        Pattern p = regexcache.get(regex);
+        if (p == null) {
+            if (regexcache.size() > MAXREGEXES) {
+                regexcache.clear();
+            }
+            if (SPECIALCHARS.matcher(regex).find()) {
+                p = Pattern.compile(regex);
+            } else {
+                p = LITERAL;
+            }
+            regexcache.put(regex, p);
+        }
+        return p == LITERAL ? null : p;
+    }
+
+    /** same as value.matches(regex) without compiling the regex each time */
+    public static boolean matchesRegex(String value, String regex) {
+        Pattern p = regex(regex);
+        if (p == null) {
+            return value.equals(regex);
+        }
+        return p.matcher(value).matches();
+    }
+
     public boolean matchesXpostag(String regex) {
         if (xpostag == null) {
             return false;
         }
-        return xpostag.matches(regex);
+        return matchesRegex(xpostag, regex);
     }
 
     public boolean matchesUpostag(String regex) {
         if (upostag == null) {
             return false;
         }
-        return upostag.matches(regex);
+        return matchesRegex(upostag, regex);
     }
 
     public boolean matchesLemma(String regex) {
         if (lemma == null) {
             return false;
         }
-        return lemma.matches(regex);
+        return matchesRegex(lemma, regex);
     }
 
     public boolean matchesForm(String regex) {
         if (form == null) {
             return false;
         }
-        return form.matches(regex);
+        return matchesRegex(form, regex);
     }
 
     /**
@@ -1451,7 +1505,7 @@ public class ConllWord {
                 }
 
                 for (EnhancedDeps ehd : deps) {
-                    if (ehd.deprel.matches(regex)) {
+                    if (matchesRegex(ehd.deprel, regex)) {
                         return true;
                     }
                 }
@@ -1596,7 +1650,7 @@ public class ConllWord {
         if (v == null) {
             return false;
         }
-        return (v.matches(valregex));
+        return matchesRegex(v, valregex);
     }
 
     public boolean matchesMiscValue(String name, String valregex) {
@@ -1613,7 +1667,7 @@ public class ConllWord {
         } else {
             val = String.valueOf((Long) v);
         }
-        return (val.matches(valregex));
+        return matchesRegex(val, valregex);
     }
 
     public int getHead() {
@@ -1625,14 +1679,19 @@ public class ConllWord {
     }
 
     public void setHead(int head) {
-        this.head = head;
+        if (this.head != head) {
+            this.head = head;
+            structureChanged();
+        }
     }
 
     public void setDeps(List<EnhancedDeps> deps) {
         this.deps = deps;
+        structureChanged();
     }
 
     public void setDeps(String unparsed_enhdepsstring) throws ConllException {
+        structureChanged();
         deps.clear();
         if (!"_".equals(unparsed_enhdepsstring)) {
             if (unparsed_enhdepsstring.length() > 1) {
@@ -1647,17 +1706,20 @@ public class ConllWord {
     public void addDeps(String unparsed_enhdepsstring) throws ConllException {
         ConllWord.EnhancedDeps ehd = new ConllWord.EnhancedDeps(unparsed_enhdepsstring);
         deps.add(ehd);
+        structureChanged();
     }
 
     public void addDeps(String headId, String deprel) throws ConllException {
         ConllWord.EnhancedDeps ehd = new ConllWord.EnhancedDeps(headId, deprel);
         deps.add(ehd);
+        structureChanged();
     }
 
     public boolean delDeps(String headId) {
         for (EnhancedDeps ed : deps) {
             if (ed.getFullHeadId().equals(headId)) {
                 deps.remove(ed);
+                structureChanged();
                 return true;
             }
         }
@@ -1824,7 +1886,7 @@ public class ConllWord {
         if (deplabel == null) {
             return false;
         }
-        return deplabel.matches(d);
+        return matchesRegex(deplabel, d);
     }
 
     /**
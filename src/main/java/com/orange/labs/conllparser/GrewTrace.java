@@ -0,0 +1,154 @@
+/* This library is under the 3-Clause BSD License
+
+ Copyright (c) 2018-2026, Orange S.A.
+
+ Redistribution and use in source and binary forms, with or without modification,
+ are permitted provided that the following conditions are met:
+
+ 1. Redistributions of source code must retain the above copyright notice,
+ this list of conditions and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright notice,
+ this list of conditions and the following disclaimer in the documentation
+ and/or other materials provided with the distribution.
+
+ 3. Neither the name of the copyright holder nor the names of its contributors
+ may be used to endorse or promote products derived from this software without
+ specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ @author Johannes Heinecke
+ @version 2.34.0 as of 18th October 2026
+*/
+package com.orange.labs.conllparser;
+
+import com.google.gson.JsonObject;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * diagnostics of a grewmatch search: how many candidate words each node of the pattern had
+ * and how many partial matches have been rejected by which constraint.
+ * A trace is filled by GrewVisitor.match() if given, it must not be shared between threads.
+ *
+ * @author Johannes Heinecke <johannes.heinecke@orange.com>
+ */
+public class GrewTrace {
+
+    private int sentences = 0; // sentences searched
+    private int matchedsentences = 0;
+    private int matches = 0;
+    private int globalfailed = 0; // sentences rejected by a global constraint (is_projective etc)
+    private int nocandidates = 0; // sentences where at least one node did not have any candidate word
+    private long bindings = 0; // words tried for a node during the search of combinations
+
+    private final Map<String, Long> candidates; // node: number of candidate words in all sentences
+    private final Map<String, Integer> missing; // node: number of sentences without candidate words
+    private final Map<String, Long> rejected; // constraint: number of partial matches rejected
+
+    public GrewTrace() {
+        candidates = new TreeMap<>();
+        missing = new TreeMap<>();
+        rejected = new TreeMap<>();
+    }
+
+    void sentence() {
+        sentences++;
+    }
+
+    void globalFailed() {
+        globalfailed++;
+    }
+
+    void candidates(String node, int ct) {
+        candidates.put(node, candidates.getOrDefault(node, 0L) + ct);
+    }
+
+    void missing(String node) {
+        missing.put(node, missing.getOrDefault(node, 0) + 1);
+    }
+
+    void noCandidates() {
+        nocandidates++;
+    }
+
+    void binding() {
+        bindings++;
+    }
+
+    void rejected(String constraint) {
+        rejected.put(constraint, rejected.getOrDefault(constraint, 0L) + 1);
+    }
+
+    void found(int ct) {
+        if (ct > 0) {
+            matchedsentences++;
+            matches += ct;
+        }
+    }
+
+    public int getSentences() {
+        return sentences;
+    }
+
+    public int getMatchedSentences() {
+        return matchedsentences;
+    }
+
+    public int getMatches() {
+        return matches;
+    }
+
+    public long getBindings() {
+        return bindings;
+    }
+
+    public long getRejected(String constraint) {
+        return rejected.getOrDefault(constraint, 0L);
+    }
+
+    public long getCandidates(String node) {
+        return candidates.getOrDefault(node, 0L);
+    }
+
+    public JsonObject toJson() {
+        JsonObject jtrace = new JsonObject();
+        jtrace.addProperty("sentences", sentences);
+        jtrace.addProperty("matched_sentences", matchedsentences);
+        jtrace.addProperty("matches", matches);
+        jtrace.addProperty("global_failed", globalfailed);
+        jtrace.addProperty("no_candidates", nocandidates);
+        jtrace.addProperty("bindings", bindings);
+
+        JsonObject jnodes = new JsonObject();
+        for (String node : candidates.keySet()) {
+            JsonObject jnode = new JsonObject();
+            jnode.addProperty("candidates", candidates.get(node));
+            jnode.addProperty("missing", missing.getOrDefault(node, 0));
+            jnodes.add(node, jnode);
+        }
+        jtrace.add("nodes", jnodes);
+
+        JsonObject jrejected = new JsonObject();
+        for (String c : rejected.keySet()) {
+            jrejected.addProperty(c, rejected.get(c));
+        }
+        jtrace.add("rejected", jrejected);
+        return jtrace;
+    }
+
+    @Override
+    public String toString() {
+        return toJson().toString();
+    }
+}
@@ -1,6 +1,6 @@
 /* This library is under the 3-Clause BSD License
 
-Copyright (c) 2018-2023, Orange S.A.
+Copyright (c) 2018-2026, Orange S.A.
 
 Redistribution and use in source and binary forms, with or without modification,
 are permitted provided that the following conditions are met:
@@ -28,12 +28,14 @@ are permitted provided that the following conditions are met:
  THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
  @author Johannes Heinecke
- @version 2.20.0 as of 15th January 2023
+ @version 2.34.0 as of 18th October 2026
  */
 package com.orange.labs.conllparser;
 
 import com.orange.labs.conllparser.GrewmatchParser.DeprelContext;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -83,10 +85,31 @@ public class GrewVisitor extends GrewmatchBaseVisitor<Boolean> {
     }
 
     // TODO put into CheckGrewmatch ?
-    // TODO optimize
     public List<List<ConllWord>> match(ConllSentence csent) throws ConllException {
-        final boolean debug = true;
+        return match(csent, 0);
+    }
+
+    /**
+     * find the combinations of words of the sentence which match the pattern
+     *
+     * @param limit stop after limit combinations have been found (0: find all)
+     * @return the combinations (a word for each node) or null
+     */
+    public List<List<ConllWord>> match(ConllSentence csent, int limit) throws ConllException {
+        return match(csent, limit, null);
+    }
 
+    /**
+     * find the combinations of words of the sentence which match the pattern
+     *
+     * @param limit stop after limit combinations have been found (0: find all)
+     * @param trace if not null, diagnostics of the search are added to it
+     * @return the combinations (a word for each node) or null
+     */
+    public List<List<ConllWord>> match(ConllSentence csent, int limit, GrewTrace trace) throws ConllException {
+        if (trace != null) {
+            trace.sentence();
+        }
         List<List<ConllWord>> final_node_combinations = new ArrayList<>();
         if (!globals.isEmpty()) {
             for (String gl : globals) {
@@ -99,7 +122,7 @@ public class GrewVisitor extends GrewmatchBaseVisitor<Boolean> {
                         final_node_combinations.add(unproj);
                         //return final_node_combinations;
                     } else {
-                        return null;
+                        return globalFailed(trace);
                     }
                 } else if ("is_projective".equals(gl)) {
                     boolean rtc = csent.isProjective(null);
@@ -109,7 +132,7 @@ public class GrewVisitor extends GrewmatchBaseVisitor<Boolean> {
                         final_node_combinations.add(proj);
                         //return final_node_combinations;
                     } else {
-                        return null;
+                        return globalFailed(trace);
                     }
                 } else {
                     List<ConllWord> roots = new ArrayList<>();
@@ -123,14 +146,14 @@ public class GrewVisitor extends GrewmatchBaseVisitor<Boolean> {
                             final_node_combinations.add(roots);
                             //return final_node_combinations;
                         } else {
-                            return null;
+                            return globalFailed(trace);
                         }
                     } else if ("is_tree".equals(gl)) {
                         if (csent.getHeads().size() == 1) {
                             final_node_combinations.add(roots);
                             //return final_node_combinations;
                         } else {
-                            return null; //final_node_combinations;
+                            return globalFailed(trace);
                         }
                     }
                 }
@@ -159,25 +182,26 @@ public class GrewVisitor extends GrewmatchBaseVisitor<Boolean> {
                 cws.add(cw);
                 //id2node.put(cw.getId(), nodename);
             }
-            if (debug) {
-                System.out.println("CW " + cw);
-                System.out.println("   " + rtc);
-            }
         }
 
-        if (debug) {
-            System.out.println("MATCHEDNODES " + matchednodes);
+        if (trace != null) {
+            for (String nodename : nodes.keySet()) {
+                List<ConllWord> cws = matchednodes.get(nodename);
+                trace.candidates(nodename, cws == null ? 0 : cws.size());
+                if (cws == null) {
+                    trace.missing(nodename);
+                }
+            }
         }
 
         // check whether every nodename matches a CW
         if (matchednodes.size() != nodes.size()) {
+            if (trace != null) {
+                trace.noCandidates();
+            }
             return null;
         }
 
-        if (debug) {
-            printmap2(matchednodes);
-        }
-
         List<String> node_order = new ArrayList<>();
         for (String nodename : matchednodes.keySet()) {
             node_order.add(nodename);
@@ -187,325 +211,402 @@ public class GrewVisitor extends GrewmatchBaseVisitor<Boolean> {
             return null; // nothing found
         }
 
-        // check for all possible combinations of nodes, whether some combinations
-        // are impossible due to relation/order constraints
-        // first create a list of combinations
-        List<List<ConllWord>> node_combinations = new ArrayList<>();
-        for (List<ConllWord> lcw : matchednodes.values()) {
-            node_combinations.add(lcw);
-        }
-        node_combinations = cartesianProduct(node_combinations);
-
-        // /*List<List<ConllWord>> */final_node_combinations = new ArrayList<>();
-        // List<List<Node>> final_nodes = new ArrayList<>();
-        int num_nodes = matchednodes.size();
-        //System.out.println("dsd" + num_nodes);
-
-        // do relations and order constraint inhibit a n-tuple of nodes ?
-        if (debug) {
-            System.out.println("COMBIS " + node_combinations.size());
-        }
-        for (List<ConllWord> lcw : node_combinations) {
-            Set<ConllWord> tmp = new HashSet<>(lcw);
-            if (tmp.size() == num_nodes) {
-                //System.out.println("COMBINATION");
-                Map<String, ConllWord> node2cw = new HashMap<>();
-                Map<Integer, String> cw2node = new HashMap<>();
-                int i = 0;
-                for (ConllWord cw : lcw) {
-                    node2cw.put(node_order.get(i), cw);
-                    //System.out.println("   " + node_order.get(i) + " " + cw.getFullId());
-                    cw2node.put(cw.getId(), node_order.get(i));
-                    i++;
+        // bind the nodes one after the other (following the relations), and check every constraint
+        // as soon as all its nodes are bound, so that impossible combinations are abandoned early
+        int rest = limit - final_node_combinations.size();
+        if (!nodes.isEmpty() && (limit <= 0 || rest > 0)) {
+            List<Step> steps = plan(matchednodes);
+            List<int[]> found = new ArrayList<>();
+            Map<String, ConllWord> node2cw = new HashMap<>();
+            bind(steps, 0, matchednodes, node2cw, new int[steps.size()], found, limit <= 0 ? 0 : rest, trace);
+
+            // same order as the combinations of all candidates (in the order of node names)
+            List<int[]> sorted = new ArrayList<>();
+            for (int[] positions : found) {
+                int[] byname = new int[positions.length];
+                for (int i = 0; i < steps.size(); ++i) {
+                    byname[node_order.indexOf(steps.get(i).node)] = positions[i];
                 }
-
-                // for all order constraints
-                boolean ok = true;
-                for (String former : before.keySet()) {
-                    String latter = before.get(former);
-                    //find CWs associated with nodenames (in current tuple)
-                    ConllWord formerid = node2cw.get(former);
-                    ConllWord latterid = node2cw.get(latter);
-                    if (debug) {
-                        System.out.println("ORDER CHECK " + formerid + " " + former + " before " + latterid + " " + latter);
-                    }
-                    if (formerid.getId() >= latterid.getId()) {
-                        ok = false;
-                        if (debug) {
-                            System.out.println(" ORDER FAILED");
+                sorted.add(byname);
+            }
+            Collections.sort(sorted, new Comparator<int[]>() {
+                @Override
+                public int compare(int[] a, int[] b) {
+                    for (int i = 0; i < a.length; ++i) {
+                        if (a[i] != b[i]) {
+                            return a[i] - b[i];
                         }
-                        break;
                     }
-                    //System.out.println(" TTTT");
+                    return 0;
                 }
-                if (!ok) {
-                    continue;
+            });
+            for (int[] positions : sorted) {
+                List<ConllWord> lcw = new ArrayList<>();
+                for (int i = 0; i < positions.length; ++i) {
+                    lcw.add(matchednodes.get(node_order.get(i)).get(positions[i]));
                 }
+                final_node_combinations.add(lcw);
+            }
+        }
 
-                // for all strict order constraints
-                for (String former : strictlybefore.keySet()) {
-                    String latter = strictlybefore.get(former);
-                    //find CWs associated with nodenames (in current tuple)
-                    ConllWord formerid = node2cw.get(former);
-                    ConllWord latterid = node2cw.get(latter);
-
-                    if (debug) {
-                        System.out.println("ORDER CHECK " + formerid + " " + former + " strictlybefore " + latterid + " " + latter);
-                    }
+        if (trace != null) {
+            trace.found(final_node_combinations.size());
+        }
+        if (!final_node_combinations.isEmpty()) {
+            return final_node_combinations;
+        } else {
+            return null;
+        }
+    }
 
-                    if (formerid.getId() + 1 != latterid.getId()) {
-                        ok = false;
-                        if (debug) {
-                            System.out.println(" STRICT ORDER FAILED");
-                        }
+    /**
+     * the values a sentence must contain in order to match the pattern: the values of the
+     * upos, lemma, deprel and feature conditions of all nodes and the relations between nodes with a UPOS
+     */
+    List<QueryIndex.Requirement> requirements() {
+        List<QueryIndex.Requirement> reqs = new ArrayList<>();
+        for (Node nd : nodes.values()) {
+            for (Map.Entry<String, List<String>> e : nd.must_feats.entrySet()) {
+                if (e.getValue().contains("_")) {
+                    continue; // the root (id 0) which can be matched by nodes, has only empty columns
+                }
+                Set<String> vals = new HashSet<>();
+                QueryIndex.Column col = null;
+                switch (e.getKey()) {
+                    case "upos":
+                        col = QueryIndex.Column.UPOS;
+                        vals.addAll(e.getValue());
                         break;
-                    }
-                    //System.out.println(" TTTT");
+                    case "lemma":
+                        col = QueryIndex.Column.LEMMA;
+                        vals.addAll(e.getValue());
+                        break;
+                    case "deprels":
+                        col = QueryIndex.Column.DEPREL;
+                        vals.addAll(e.getValue());
+                        break;
+                    case "xpos":
+                    case "form":
+                        break; // not indexed
+                    default:
+                        col = QueryIndex.Column.FEAT;
+                        String name = e.getKey().toLowerCase();
+                        for (String val : e.getValue()) {
+                            vals.add(val.isEmpty() ? name : name + "=" + val);
+                        }
+                }
+                if (col != null) {
+                    reqs.add(new QueryIndex.Requirement(col, vals));
                 }
-                if (!ok) {
+            }
+        }
+        for (Map<String, Rel> m : relations) {
+            for (Rel rel : m.values()) {
+                if (rel.without || rel.notdeprels || rel.deprels == null) {
                     continue;
                 }
-
-                // check field comparisons
-                for (Compare cp : equals) {
-                    if (debug) System.out.println("CONSTRAINT " + cp);
-                    Node n1 = nodes.get(cp.node1);
-                    if (n1 == null) {
-                        throw new ConllException("Identifier " + cp.node1 + " not found");
-                    }
-                    Node n2 = nodes.get(cp.node2);
-                    if (n2 == null) {
-                        throw new ConllException("Identifier " + cp.node2 + " not found");
-                    }
-                    ConllWord cw1 = node2cw.get(n1.id);
-                    ConllWord cw2 = node2cw.get(n2.id);
-                    //System.out.println("AA1 " + n1.id + " " + cw1);
-                    //System.out.println("AA2 " + n2.id + " " + cw2);
-
-                    String val1;
-                    switch (cp.field1) {
-                        case "upos":
-                            val1 = cw1.getUpostag();
-                            break;
-                        case "xpos":
-                            val1 = cw1.getXpostag();
-                            break;
-                        case "form":
-                            val1 = cw1.getForm();
-                            break;
-                        case "lemma":
-                            val1 = cw1.getLemma();
-                            break;
-                        default:
-                            val1 = cw1.getFeatures().get(cp.field1);
-                    }
-                    if (val1 == null) {
-                        ok = false;
-                        continue;
-                    }
-                    String val2;
-                    switch (cp.field2) {
-                        case "upos":
-                            val2 = cw2.getUpostag();
-                            break;
-                        case "xpos":
-                            val2 = cw2.getXpostag();
-                            break;
-                        case "form":
-                            val2 = cw2.getForm();
-                            break;
-                        case "lemma":
-                            val2 = cw2.getLemma();
-                            break;
-                        default:
-                            val2 = cw2.getFeatures().get(cp.field2);
-                    }
-                    if (val2 == null) {
-                        ok = false;
-                        continue;
-                    }
-                    //System.out.println("VALS " + val1 + " " + val2);
-                    if (cp.equal != cp.without) {
-                        // features must be present and equal
-                        if (val1 == null || val2 == null || !val1.endsWith(val2)) {
-                            ok = false;
-                            continue;
-                        }
-                    } else {
-                        // features must be present and unequal
-                        if (val1 == null || val2 == null || val1.endsWith(val2)) {
-                            ok = false;
-                            continue;
+                reqs.add(new QueryIndex.Requirement(QueryIndex.Column.DEPREL, new HashSet<>(rel.deprels)));
+                List<String> headupos = upos(rel.head);
+                List<String> depupos = upos(rel.dep);
+                if (headupos != null && depupos != null) {
+                    Set<String> triples = new HashSet<>();
+                    for (String h : headupos) {
+                        for (String d : rel.deprels) {
+                            for (String u : depupos) {
+                                triples.add(QueryIndex.triple(h, d, u));
+                            }
                         }
                     }
-
+                    reqs.add(new QueryIndex.Requirement(QueryIndex.Column.TRIPLE, triples));
                 }
+            }
+        }
+        return reqs;
+    }
 
-                // check relation constraints
-                for (Map<String, Rel> m : relations) {
-                    // all relation groups must be true
-                    // without == true: at least one of the relations in m mist be true
-                    boolean allnegok = false;
-                    //System.out.println("ABC " + m);
-                    for (String rid : m.keySet()) {
-                        Rel rel = m.get(rid);
-                        ConllWord head = node2cw.get(rel.head);
-                        ConllWord dep = node2cw.get(rel.dep);
-
-                        if (debug) {
-                            System.out.println("CHECK REL " + rel);
-                            System.out.println("  head " + head);
-                            System.out.println("  dep  " + dep);
-                        }
+    /** the UPOS a node must have, or null */
+    private List<String> upos(String nodename) {
+        Node nd = nodes.get(nodename);
+        if (nd == null) {
+            return null;
+        }
+        List<String> vals = nd.must_feats.get("upos");
+        if (vals == null || vals.contains("_")) {
+            return null;
+        }
+        return vals;
+    }
 
-                        if (!rel.without) {
-                            if (dep.getHeadWord() != head && !(dep.getHead() == 0 && (head != null && head.getId() == 0))
-                                    ) {
-                                // the head is not the head requred
-                                ok = false;
-                                allnegok = false;
-                                if (debug) {
-                                    System.out.println("BAD HEAD");
-                                }
-                                break;
-                            }
+    private List<List<ConllWord>> globalFailed(GrewTrace trace) {
+        if (trace != null) {
+            trace.globalFailed();
+        }
+        return null;
+    }
 
-                            //System.out.println("AAAAAAAAAAA " + rel.deprels + " " + dep.getDeplabel() + " " + rel.notdeprels);
-                            if (rel.deprels != null
-                                    //&& !rel.deprel.equals(dep.getDeplabel())
-                                    && ((!rel.deprels.contains(dep.getDeplabel()) && !rel.notdeprels)
-                                    || rel.deprels.contains(dep.getDeplabel()) && rel.notdeprels)) {
-                                // dependant does not have the deprel required
-                                ok = false;
-                                if (debug) {
-                                    System.out.println("NOT REQUIRED DEPREL");
-                                }
-                                break;
-                            }
-                        } else {
-                            // without == true
-                            ok = true;
-                            if (dep == null) {
-                                // no dep node defined as node, so check whether the head does not
-                                // have a dependent with forbidden relation
-                                for (ConllWord d : head.getDependents()) {
-                                    //if (d.getDeplabel().equals(rel.deprel)) {
-                                    if (rel.deprels.contains(d.getDeplabel())) {
-                                        ok = false;
-
-                                        if (debug) {
-                                            System.out.println("FORBIDDEN DEPREL");
-                                        }
-                                    }
-                                }
-                            } else if ((dep.getHeadWord() == head || head == null)
-                                    && rel.deprels != null
-                                    //&& rel.deprel.equals(dep.getDeplabel())
-                                    && rel.deprels.contains(dep.getDeplabel())) {
-                                // dependant hase the forbidden deprel
-                                ok = false;
-                                if (debug) {
-                                    System.out.println("FORBIDDEN  DEPREL");
-                                }
-                                break;
-                            }
-                            if (ok) {
-                                //allnegok = true;
-                                break;
-                            }
-                            //System.out.println("ZZZZZZ " + ok + " " + allnegok);
-                        }
-                    }
-                    //System.out.println("ZZZZZZ2 " + ok + " " + allnegok);
-                    if (!ok) break;
-//                    if (!allnegok) {
-//                       continue;
-//                    } else {
-//                        ok = true;
-//                    }
+    /**
+     * a node to bind and the constraints which can be checked once it is bound
+     */
+    class Step {
+
+        String node;
+        List<String[]> before = new ArrayList<>(); // former, latter
+        List<String[]> strictlybefore = new ArrayList<>();
+        List<Compare> compares = new ArrayList<>();
+        List<Rel> rels = new ArrayList<>(); // relations which must exist
+        List<Map<String, Rel>> withouts = new ArrayList<>(); // relations which must not exist
+
+        Step(String node) {
+            this.node = node;
+        }
+    }
+
+    /**
+     * choose the order in which nodes are bound: start with the node with the fewest candidates,
+     * then follow relations to the neighbouring nodes
+     */
+    private List<Step> plan(Map<String, List<ConllWord>> matchednodes) throws ConllException {
+        List<Rel> positive = new ArrayList<>();
+        for (Map<String, Rel> m : relations) {
+            for (Rel rel : m.values()) {
+                if (!rel.without) {
+                    positive.add(rel);
                 }
-                //System.out.println("zzzzzz " + ok);
-                if (!ok) {
+            }
+        }
+
+        List<String> order = new ArrayList<>();
+        Set<String> bound = new HashSet<>();
+        while (order.size() < matchednodes.size()) {
+            String best = null;
+            boolean bestlinked = false;
+            for (String n : matchednodes.keySet()) {
+                if (bound.contains(n)) {
                     continue;
                 }
-                //System.out.println("ADDED " + lcw);
-                if (!lcw.isEmpty()) {
-                    final_node_combinations.add(lcw);
+                boolean linked = false;
+                for (Rel rel : positive) {
+                    if ((rel.head.equals(n) && bound.contains(rel.dep))
+                            || (rel.dep.equals(n) && bound.contains(rel.head))) {
+                        linked = true;
+                        break;
+                    }
+                }
+                if (best == null
+                        || (linked && !bestlinked)
+                        || (linked == bestlinked && matchednodes.get(n).size() < matchednodes.get(best).size())) {
+                    best = n;
+                    bestlinked = linked;
                 }
-                //               List<Node> ln = new ArrayList<>();
-                //               for (ConllWord cw : lcw) {
-                //                   Node nn = new Node();
-                //               }
-
             }
+            order.add(best);
+            bound.add(best);
         }
 
-        if (!final_node_combinations.isEmpty()) {
-            return final_node_combinations;
-        } else {
-            return null;
+        List<Step> steps = new ArrayList<>();
+        Map<String, Integer> position = new HashMap<>();
+        for (String n : order) {
+            position.put(n, steps.size());
+            steps.add(new Step(n));
+        }
+
+        for (String former : before.keySet()) {
+            String[] fl = {former, before.get(former)};
+            steps.get(Math.max(position.get(fl[0]), position.get(fl[1]))).before.add(fl);
+        }
+        for (String former : strictlybefore.keySet()) {
+            String[] fl = {former, strictlybefore.get(former)};
+            steps.get(Math.max(position.get(fl[0]), position.get(fl[1]))).strictlybefore.add(fl);
+        }
+        for (Compare cp : equals) {
+            if (!nodes.containsKey(cp.node1)) {
+                throw new ConllException("Identifier " + cp.node1 + " not found");
+            }
+            if (!nodes.containsKey(cp.node2)) {
+                throw new ConllException("Identifier " + cp.node2 + " not found");
+            }
+            steps.get(Math.max(position.get(cp.node1), position.get(cp.node2))).compares.add(cp);
+        }
+        for (Rel rel : positive) {
+            steps.get(Math.max(position.get(rel.head), position.get(rel.dep))).rels.add(rel);
         }
+        for (Map<String, Rel> m : relations) {
+            if (m.isEmpty() || !m.values().iterator().next().without) {
+                continue;
+            }
+            // nodes of the without clause which are not defined in the pattern are never bound
+            int last = 0;
+            for (Rel rel : m.values()) {
+                if (position.containsKey(rel.head)) {
+                    last = Math.max(last, position.get(rel.head));
+                }
+                if (position.containsKey(rel.dep)) {
+                    last = Math.max(last, position.get(rel.dep));
+                }
+            }
+            steps.get(last).withouts.add(m);
+        }
+        return steps;
     }
 
-    //https://stackoverflow.com/questions/714108/cartesian-product-of-an-arbitrary-number-of-sets
-    private <T> List<List<T>> cartesianProduct(List<List<T>> lists) {
-        List<List<T>> resultLists = new ArrayList<>();
-        if (lists.isEmpty()) {
-            resultLists.add(new ArrayList<>());
-            return resultLists;
-        } else {
-            List<T> firstList = lists.get(0);
-            List<List<T>> remainingLists = cartesianProduct(lists.subList(1, lists.size()));
-            for (T condition : firstList) {
-                for (List<T> remainingList : remainingLists) {
-                    ArrayList<T> resultList = new ArrayList<>();
-                    resultList.add(condition);
-                    resultList.addAll(remainingList);
-                    resultLists.add(resultList);
-                    //System.out.println("zzzz " + resultList.size() + " " + resultList);
+    /**
+     * bind node of step s to all its candidates which satisfy the constraints and continue with the next step
+     *
+     * @param positions candidate chosen for each step
+     * @param found all complete combinations found
+     * @param limit stop when so many combinations are found (&lt;= 0: find all)
+     * @param trace counts rejected bindings if not null
+     * @return false if the search must stop
+     */
+    private boolean bind(List<Step> steps, int s, Map<String, List<ConllWord>> matchednodes,
+            Map<String, ConllWord> node2cw, int[] positions, List<int[]> found, int limit, GrewTrace trace) {
+        if (s == steps.size()) {
+            found.add(positions.clone());
+            return limit <= 0 || found.size() < limit;
+        }
+        Step step = steps.get(s);
+        List<ConllWord> candidates = matchednodes.get(step.node);
+        for (int i = 0; i < candidates.size(); ++i) {
+            ConllWord cw = candidates.get(i);
+            if (trace != null) {
+                trace.binding();
+            }
+            if (node2cw.containsValue(cw)) {
+                // every node must be a different word
+                if (trace != null) {
+                    trace.rejected("distinct");
+                }
+                continue;
+            }
+            node2cw.put(step.node, cw);
+            String failed = check(step, node2cw);
+            if (failed != null) {
+                if (trace != null) {
+                    trace.rejected(failed);
+                }
+            } else {
+                positions[s] = i;
+                if (!bind(steps, s + 1, matchednodes, node2cw, positions, found, limit, trace)) {
+                    node2cw.remove(step.node);
+                    return false;
                 }
             }
+            node2cw.remove(step.node);
         }
-        return resultLists;
+        return true;
     }
 
-    private void printmap(Map m) {
-        for (Object k : m.keySet()) {
-            System.out.println("===" + k + "\t" + m.get(k));
+    /**
+     * check the constraints of a step whose nodes are all bound
+     *
+     * @return null if all constraints are satisfied, else the kind of constraint which failed
+     */
+    private String check(Step step, Map<String, ConllWord> node2cw) {
+        for (String[] fl : step.before) {
+            if (node2cw.get(fl[0]).getId() >= node2cw.get(fl[1]).getId()) {
+                return "before";
+            }
+        }
+        for (String[] fl : step.strictlybefore) {
+            if (node2cw.get(fl[0]).getId() + 1 != node2cw.get(fl[1]).getId()) {
+                return "strictlybefore";
+            }
+        }
+        for (Compare cp : step.compares) {
+            String val1 = getField(node2cw.get(cp.node1), cp.field1);
+            String val2 = getField(node2cw.get(cp.node2), cp.field2);
+            if (val1 == null || val2 == null) {
+                return "compare";
+            }
+            if (cp.equal != cp.without) {
+                // features must be present and equal
+                if (!val1.endsWith(val2)) {
+                    return "compare";
+                }
+            } else {
+                // features must be present and unequal
+                if (val1.endsWith(val2)) {
+                    return "compare";
+                }
+            }
         }
+        for (Rel rel : step.rels) {
+            ConllWord head = node2cw.get(rel.head);
+            ConllWord dep = node2cw.get(rel.dep);
+            if (dep.getHeadWord() != head && !(dep.getHead() == 0 && head.getId() == 0)) {
+                // the head is not the head requred
+                return "relation";
+            }
+            if (rel.deprels != null
+                    && ((!rel.deprels.contains(dep.getDeplabel()) && !rel.notdeprels)
+                    || rel.deprels.contains(dep.getDeplabel()) && rel.notdeprels)) {
+                // dependant does not have the deprel required
+                return "relation";
+            }
+        }
+        for (Map<String, Rel> m : step.withouts) {
+            if (!checkWithout(m, node2cw)) {
+                return "without";
+            }
+        }
+        return null;
     }
 
-    private void printmap2(Map<?, ?> m) {
-        for (Object k : m.keySet()) {
-            System.out.println("===" + k);
-            for (Object k2 : (List) m.get(k)) {
-                System.out.println("\t" + k2);
+    /** true if one of the relations of a without clause is absent */
+    private boolean checkWithout(Map<String, Rel> m, Map<String, ConllWord> node2cw) {
+        boolean ok = true;
+        for (Rel rel : m.values()) {
+            ConllWord head = node2cw.get(rel.head);
+            ConllWord dep = node2cw.get(rel.dep);
+            ok = true;
+            if (dep == null) {
+                // no dep node defined as node, so check whether the head does not
+                // have a dependent with forbidden relation
+                for (ConllWord d : head.getDependents()) {
+                    if (rel.deprels.contains(d.getDeplabel())) {
+                        ok = false;
+                    }
+                }
+            } else if ((dep.getHeadWord() == head || head == null)
+                    && rel.deprels != null
+                    && rel.deprels.contains(dep.getDeplabel())) {
+                // dependant has the forbidden deprel
+                return false;
+            }
+            if (ok) {
+                return true;
             }
         }
+        return ok;
+    }
+
+    private static String getField(ConllWord cw, String field) {
+        switch (field) {
+            case "upos":
+                return cw.getUpostag();
+            case "xpos":
+                return cw.getXpostag();
+            case "form":
+                return cw.getForm();
+            case "lemma":
+                return cw.getLemma();
+            default:
+                return cw.getFeatures().get(field);
+        }
     }
 
     private List<Node> match(ConllWord cw) {
-        final boolean debug = false;
         boolean ok = true; // empty expression matches always
 
         // for all nodes
         List<Node> matched = new ArrayList<>();
-        if (debug) {
-            System.out.println("Try to match " + cw);
-        }
         for (String n : nodes.keySet()) {
-            if (debug) {
-                System.out.println("..NODE " + n + " == " + nodes.get(n));
-            }
             ok = true;
             Node nd = nodes.get(n);
             for (String f : nd.must_feats.keySet()) {
                 boolean featok = false;
                 for (String val : nd.must_feats.get(f)) {
                     // positive: one of all must be ok
-                    if (debug) {
-                        System.out.println("CHECKING " + f + "=" + val);
-                    }
                     switch (f) {
                         case "upos":
                             if (cw.getUpostag().equals(val)) {
@@ -550,9 +651,6 @@ public class GrewVisitor extends GrewmatchBaseVisitor<Boolean> {
                                 }
                             }
                     }
-                    if (debug) {
-                        System.out.println("checkresult " + featok);
-                    }
                 }
                 if (!featok) {
                     // node invalid
@@ -566,9 +664,6 @@ public class GrewVisitor extends GrewmatchBaseVisitor<Boolean> {
                     boolean featok = true;
                     for (String val : nd.must_not_feats.get(f)) {
                         // negative, non feat must fit
-                        if (debug) {
-                            System.out.println("CHECKING NEGATIV " + f + "<>" + val + "   " + featok);
-                        }
                         switch (f) {
                             case "upos":
                                 if (cw.getUpostag().equals(val)) {
@@ -612,9 +707,6 @@ public class GrewVisitor extends GrewmatchBaseVisitor<Boolean> {
                                     }
                                 }
                         }
-                        if (debug) {
-                            System.out.println("neg checking result " + featok);
-                        }
                     }
                     if (!featok) {
                         // node invalid
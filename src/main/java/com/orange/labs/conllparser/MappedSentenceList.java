@@ -0,0 +1,412 @@
+/* This library is under the 3-Clause BSD License
+
+ Copyright (c) 2018-2026, Orange S.A.
+
+ Redistribution and use in source and binary forms, with or without modification,
+ are permitted provided that the following conditions are met:
+
+ 1. Redistributions of source code must retain the above copyright notice,
+ this list of conditions and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright notice,
+ this list of conditions and the following disclaimer in the documentation
+ and/or other materials provided with the distribution.
+
+ 3. Neither the name of the copyright holder nor the names of its contributors
+ may be used to endorse or promote products derived from this software without
+ specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ @author Johannes Heinecke
+ @version 2.34.0 as of 18th October 2026
+*/
+package com.orange.labs.conllparser;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * list of the sentences of a (big) CoNLL-U file which is not parsed entirely.
+ * When opened, the memory mapped file is only scanned to find where the sentences start and end,
+ * and which sent_id they have.
+ * A sentence is parsed when it is accessed for the first time and kept in a LRU cache.
+ * Sentences which are modified (set(), add(), pin() or a modification counter &gt; 0) are kept in memory
+ * until the file is saved and reload() is called.
+ *
+ * @author Johannes Heinecke <johannes.heinecke@orange.com>
+ */
+public class MappedSentenceList extends AbstractList<ConllSentence> {
+
+    private static final int SEGMENTBITS = 30; // files are mapped in segments of 1 GB
+    private static final long SEGMENTMASK = (1L << SEGMENTBITS) - 1;
+
+    private final File file;
+    private final Class<? extends ConllSentence> conllsentenceSubclass;
+    private Map<String, Integer> columndefs;
+    private boolean standardcols;
+    private MappedByteBuffer[] segments;
+    private long filesize;
+
+    // sentences in the file (blocks)
+    private int blocks;
+    private long[] starts; // offset of first byte
+    private long[] ends; // offset after the last line
+    private int[] firstlines; // line number of first line
+    private Map<String, List<Integer>> sentids; // sent_id: blocks (sent_ids are not always unique)
+
+    // sentence number: block (or negative ids for sentences added after loading). null as long as no sentences
+    // have been added or deleted (sentence number == block)
+    private int[] slots;
+    private int size;
+    private int nextnew;
+
+    private final Map<Integer, ConllSentence> pinned; // block (or negative id): modified sentence
+    private final LinkedHashMap<Integer, ConllSentence> cache; // block: unmodified sentence
+
+    /**
+     * @param file the CoNLL-U file
+     * @param cs class to use instead of ConllSentence (must be a subclass), or null
+     * @param cachesize maximal number of unmodified sentences kept in memory
+     * @throws IOException
+     * @throws ConllException invalid global.columns definition
+     */
+    public MappedSentenceList(File file, Class<? extends ConllSentence> cs, final int cachesize) throws IOException, ConllException {
+        this.file = file;
+        conllsentenceSubclass = cs;
+        pinned = new HashMap<>();
+        cache = new LinkedHashMap<Integer, ConllSentence>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, ConllSentence> eldest) {
+                if (size() <= cachesize) {
+                    return false;
+                }
+                if (eldest.getValue().getLastModification() > 0) {
+                    // modified in place, must not get lost
+                    pinned.put(eldest.getKey(), eldest.getValue());
+                }
+                return true;
+            }
+        };
+        map();
+    }
+
+    /** (re)build the index of the sentences in the file */
+    private void map() throws IOException, ConllException {
+        try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            filesize = fc.size();
+            int nsegments = (int) ((filesize + SEGMENTMASK) >>> SEGMENTBITS);
+            segments = new MappedByteBuffer[nsegments];
+            for (int i = 0; i < nsegments; ++i) {
+                long pos = (long) i << SEGMENTBITS;
+                segments[i] = fc.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(SEGMENTMASK + 1, filesize - pos));
+            }
+        }
+
+        blocks = 0;
+        starts = new long[1024];
+        ends = new long[1024];
+        firstlines = new int[1024];
+        sentids = new HashMap<>();
+        slots = null;
+        nextnew = -1;
+        pinned.clear();
+        cache.clear();
+
+        long pos = 0;
+        int ctline = 0;
+        // the first line may define the columns (CoNLL-U plus)
+        long eol = endOfLine(0);
+        String firstline = new String(read(0, eol), StandardCharsets.UTF_8);
+        if (firstline.startsWith("# global.columns =")) {
+            pos = Math.min(eol + 1, filesize);
+            ctline = 1;
+        }
+        ConllSentenceReader header = new ConllSentenceReader(new ByteArrayInputStream(firstline.getBytes(StandardCharsets.UTF_8)));
+        columndefs = header.getColumndefs();
+        standardcols = header.isStandardcols();
+
+        // same segmentation as ConllSentenceReader.readBlock()
+        long blockstart = -1;
+        int blockline = 0;
+        boolean haswords = false;
+        String sentid = null;
+        while (pos < filesize) {
+            long linestart = pos;
+            ctline++;
+            boolean blank = true;
+            while (pos < filesize) {
+                byte b = at(pos);
+                if (b == '\n') {
+                    break;
+                }
+                if ((b & 0xff) > ' ') {
+                    blank = false;
+                }
+                pos++;
+            }
+            long lineend = pos;
+            pos++; // skip \n
+
+            if (blank) {
+                if (haswords) {
+                    addBlock(blockstart, linestart, blockline, sentid);
+                    blockstart = -1;
+                    haswords = false;
+                    sentid = null;
+                }
+            } else {
+                if (blockstart == -1) {
+                    blockstart = linestart;
+                    blockline = ctline;
+                }
+                byte first = at(linestart);
+                if (first == '#') {
+                    if (lineend - linestart > 12) {
+                        String prefix = new String(read(linestart, linestart + 12), StandardCharsets.UTF_8);
+                        if (prefix.equals("# sent_id = ")) {
+                            sentid = new String(read(linestart + 12, lineend), StandardCharsets.UTF_8).trim();
+                        }
+                    }
+                } else if (first >= '0' && first <= '9') {
+                    haswords = true;
+                }
+            }
+        }
+        if (haswords) {
+            addBlock(blockstart, filesize, blockline, sentid);
+        }
+        size = blocks;
+        System.err.format("%d lines (%d sentences) indexed\n", ctline, blocks);
+    }
+
+    private void addBlock(long start, long end, int firstline, String sentid) {
+        if (blocks == starts.length) {
+            starts = Arrays.copyOf(starts, blocks * 2);
+            ends = Arrays.copyOf(ends, blocks * 2);
+            firstlines = Arrays.copyOf(firstlines, blocks * 2);
+        }
+        starts[blocks] = start;
+        ends[blocks] = end;
+        firstlines[blocks] = firstline;
+        if (sentid != null) {
+            sentids.computeIfAbsent(sentid, k -> new ArrayList<>(1)).add(blocks);
+        }
+        blocks++;
+    }
+
+    private byte at(long pos) {
+        return segments[(int) (pos >>> SEGMENTBITS)].get((int) (pos & SEGMENTMASK));
+    }
+
+    private long endOfLine(long pos) {
+        while (pos < filesize && at(pos) != '\n') {
+            pos++;
+        }
+        return pos;
+    }
+
+    private byte[] read(long from, long to) {
+        byte[] bytes = new byte[(int) (to - from)];
+        int i = 0;
+        while (from < to) {
+            MappedByteBuffer seg = segments[(int) (from >>> SEGMENTBITS)];
+            int offset = (int) (from & SEGMENTMASK);
+            int len = (int) Math.min(to - from, seg.capacity() - offset);
+            for (int j = 0; j < len; ++j) {
+                bytes[i++] = seg.get(offset + j);
+            }
+            from += len;
+        }
+        return bytes;
+    }
+
+    /** parse the sentence of a block */
+    private ConllSentence parse(int block) {
+        ConllSentenceReader reader = new ConllSentenceReader(new ByteArrayInputStream(read(starts[block], ends[block])),
+                conllsentenceSubclass, columndefs, firstlines[block]);
+        try {
+            ConllSentence cs = reader.readSentence();
+            if (!reader.getErrors().isEmpty()) {
+                throw new IllegalStateException(String.join("\n", reader.getErrors()));
+            }
+            return cs;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /** the file has been rewritten (with all modifications), reread the index and forget modified sentences */
+    public synchronized void reload() throws IOException, ConllException {
+        map();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public Map<String, Integer> getColumndefs() {
+        return columndefs;
+    }
+
+    public boolean isStandardcols() {
+        return standardcols;
+    }
+
+    /** @return number of sentences kept in memory (cached and modified) */
+    public synchronized int getLoaded() {
+        return cache.size() + pinned.size();
+    }
+
+    private int slot(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        if (slots == null) {
+            return index;
+        }
+        return slots[index];
+    }
+
+    /** sentences are added or deleted, sentence numbers are no longer block numbers */
+    private void makeSlots() {
+        if (slots == null) {
+            slots = new int[Math.max(size + 16, 16)];
+            for (int i = 0; i < size; ++i) {
+                slots[i] = i;
+            }
+        } else if (slots.length == size) {
+            slots = Arrays.copyOf(slots, size * 2);
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized ConllSentence get(int index) {
+        int slot = slot(index);
+        ConllSentence cs = pinned.get(slot);
+        if (cs == null) {
+            cs = cache.get(slot);
+            if (cs == null) {
+                cs = parse(slot);
+                cache.put(slot, cs);
+            }
+        }
+        return cs;
+    }
+
+    /** keep the sentence in memory until the file is reloaded (since it will be modified) */
+    public synchronized void pin(int index) {
+        int slot = slot(index);
+        ConllSentence cs = cache.remove(slot);
+        if (cs != null) {
+            pinned.put(slot, cs);
+        } else if (!pinned.containsKey(slot)) {
+            pinned.put(slot, parse(slot));
+        }
+    }
+
+    @Override
+    public synchronized ConllSentence set(int index, ConllSentence cs) {
+        ConllSentence old = get(index);
+        int slot = slot(index);
+        cache.remove(slot);
+        pinned.put(slot, cs);
+        return old;
+    }
+
+    @Override
+    public synchronized void add(int index, ConllSentence cs) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        makeSlots();
+        System.arraycopy(slots, index, slots, index + 1, size - index);
+        slots[index] = nextnew;
+        pinned.put(nextnew, cs);
+        nextnew--;
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public synchronized ConllSentence remove(int index) {
+        ConllSentence old = get(index);
+        makeSlots();
+        int slot = slots[index];
+        System.arraycopy(slots, index + 1, slots, index, size - index - 1);
+        size--;
+        pinned.remove(slot);
+        cache.remove(slot);
+        modCount++;
+        return old;
+    }
+
+    /**
+     * find the sentences whose sent_id matches a regex (Matcher.find()), without parsing sentences
+     * which have not been modified
+     *
+     * @return the sentence numbers
+     */
+    public synchronized Set<Integer> findSentids(Pattern regex) {
+        Set<Integer> sents = new TreeSet<>();
+        List<Integer> matching = new ArrayList<>(); // blocks or negative ids
+        for (Map.Entry<String, List<Integer>> e : sentids.entrySet()) {
+            if (regex.matcher(e.getKey()).find()) {
+                for (Integer block : e.getValue()) {
+                    if (!pinned.containsKey(block)) {
+                        matching.add(block);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<Integer, ConllSentence> e : pinned.entrySet()) {
+            String sid = e.getValue().getSentid();
+            if (sid != null && regex.matcher(sid).find()) {
+                matching.add(e.getKey());
+            }
+        }
+        if (slots == null) {
+            sents.addAll(matching);
+        } else {
+            Set<Integer> m = new TreeSet<>(matching);
+            for (int i = 0; i < size; ++i) {
+                if (m.contains(slots[i])) {
+                    sents.add(i);
+                }
+            }
+        }
+        return sents;
+    }
+}
@@ -0,0 +1,347 @@
+/* This library is under the 3-Clause BSD License
+
+ Copyright (c) 2018-2026, Orange S.A.
+
+ Redistribution and use in source and binary forms, with or without modification,
+ are permitted provided that the following conditions are met:
+
+ 1. Redistributions of source code must retain the above copyright notice,
+ this list of conditions and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright notice,
+ this list of conditions and the following disclaimer in the documentation
+ and/or other materials provided with the distribution.
+
+ 3. Neither the name of the copyright holder nor the names of its contributors
+ may be used to endorse or promote products derived from this software without
+ specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ @author Johannes Heinecke
+ @version 2.34.0 as of 18th October 2026
+*/
+package com.orange.labs.conllparser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * index of the sentences of a file for grewmatch and subtree searches: for every UPOS, lemma, deprel, feature
+ * and (head UPOS, deprel, dependent UPOS) triple the sorted list of the sentences which contain it.
+ * Searches use it to skip the sentences which cannot contain the words and relations of the query.
+ * The index can be saved next to the CoNLL-U file (file.conllu.qidx) and is only loaded as long as
+ * the file has the same size and modification time.
+ *
+ * @author Johannes Heinecke <johannes.heinecke@orange.com>
+ */
+public class QueryIndex {
+
+    public enum Column {
+        UPOS, LEMMA, DEPREL, FEAT, TRIPLE
+    };
+
+    private static final String MAGIC = "ConlluEditor query index";
+    private static final int VERSION = 1;
+    public static final String SUFFIX = ".qidx";
+
+    private final int sentences;
+    private final Map<Column, Map<String, int[]>> postings; // column: value: sentence numbers
+    private final BitSet modified; // sentences modified since the index has been built, always candidates
+
+    /**
+     * index all sentences
+     */
+    public QueryIndex(Iterable<ConllSentence> sentencelist) {
+        Map<Column, Map<String, List<Integer>>> lists = new EnumMap<>(Column.class);
+        for (Column c : Column.values()) {
+            lists.put(c, new HashMap<String, List<Integer>>());
+        }
+        int sn = 0;
+        for (ConllSentence cs : sentencelist) {
+            Map<Integer, ConllWord> byid = new HashMap<>();
+            for (ConllWord cw : cs.getWords()) {
+                byid.put(cw.getId(), cw);
+            }
+            for (ConllWord cw : cs.getAllWords()) {
+                add(lists, Column.UPOS, cw.getUpostag(), sn);
+                add(lists, Column.LEMMA, cw.getLemma(), sn);
+                add(lists, Column.DEPREL, cw.getDeplabel(), sn);
+                for (Map.Entry<String, String> fv : cw.getFeatures().entrySet()) {
+                    String name = fv.getKey().toLowerCase();
+                    add(lists, Column.FEAT, name, sn);
+                    add(lists, Column.FEAT, name + "=" + fv.getValue(), sn);
+                }
+                if (cw.getTokentype() == ConllWord.Tokentype.WORD && cw.getHead() > 0) {
+                    ConllWord head = byid.get(cw.getHead());
+                    if (head != null) {
+                        add(lists, Column.TRIPLE, triple(head.getUpostag(), cw.getDeplabel(), cw.getUpostag()), sn);
+                    }
+                }
+            }
+            sn++;
+        }
+        sentences = sn;
+        postings = new EnumMap<>(Column.class);
+        for (Column c : Column.values()) {
+            Map<String, int[]> p = new HashMap<>();
+            for (Map.Entry<String, List<Integer>> e : lists.get(c).entrySet()) {
+                List<Integer> l = e.getValue();
+                int[] sents = new int[l.size()];
+                for (int i = 0; i < sents.length; ++i) {
+                    sents[i] = l.get(i);
+                }
+                p.put(e.getKey(), sents);
+            }
+            postings.put(c, p);
+        }
+        modified = new BitSet();
+    }
+
+    private QueryIndex(int sentences, Map<Column, Map<String, int[]>> postings) {
+        this.sentences = sentences;
+        this.postings = postings;
+        modified = new BitSet();
+    }
+
+    private static void add(Map<Column, Map<String, List<Integer>>> lists, Column col, String value, int sn) {
+        if (value == null) {
+            return;
+        }
+        List<Integer> sents = lists.get(col).get(value);
+        if (sents == null) {
+            sents = new ArrayList<>();
+            lists.get(col).put(value, sents);
+        }
+        if (sents.isEmpty() || sents.get(sents.size() - 1) != sn) {
+            sents.add(sn);
+        }
+    }
+
+    /** the key of a dependency relation in Column.TRIPLE */
+    public static String triple(String headupos, String deprel, String depupos) {
+        return headupos + " " + deprel + " " + depupos;
+    }
+
+    /** number of indexed sentences */
+    public int size() {
+        return sentences;
+    }
+
+    /** sentence sn has been modified, it is a candidate for every search until the index is built again */
+    public synchronized void modified(int sn) {
+        modified.set(sn);
+    }
+
+    /**
+     * get the sentences which can match a query
+     *
+     * @param requirements values the sentence must contain (all requirements must be met)
+     * @return the sentence numbers
+     */
+    public synchronized BitSet candidates(List<Requirement> requirements) {
+        BitSet res = new BitSet(sentences);
+        res.set(0, sentences);
+        for (Requirement req : requirements) {
+            BitSet sents = new BitSet(sentences);
+            Map<String, int[]> p = postings.get(req.column);
+            if (req.values != null || ConllWord.regex(req.regex) == null) {
+                // exact values
+                Set<String> values = req.values;
+                if (values == null) {
+                    values = new HashSet<>();
+                    values.add(req.regex);
+                }
+                for (String v : values) {
+                    set(sents, p.get(v));
+                }
+            } else {
+                for (Map.Entry<String, int[]> e : p.entrySet()) {
+                    if (ConllWord.matchesRegex(e.getKey(), req.regex)) {
+                        set(sents, e.getValue());
+                    }
+                }
+            }
+            res.and(sents);
+        }
+        res.or(modified);
+        return res;
+    }
+
+    private static void set(BitSet bs, int[] sents) {
+        if (sents != null) {
+            for (int sn : sents) {
+                bs.set(sn);
+            }
+        }
+    }
+
+    /**
+     * values a sentence must contain in order to match a query: one of the values, or a value which matches
+     * the regex (entirely, like String.matches())
+     */
+    public static class Requirement {
+        final Column column;
+        final Set<String> values;
+        final String regex;
+
+        public Requirement(Column column, Set<String> values) {
+            this.column = column;
+            this.values = values;
+            this.regex = null;
+        }
+
+        public Requirement(Column column, String regex) {
+            this.column = column;
+            this.values = null;
+            this.regex = regex;
+        }
+
+        @Override
+        public String toString() {
+            return column + ":" + (values != null ? values : regex);
+        }
+    }
+
+    /** the file where the index of the CoNLL-U file is stored */
+    public static File sidecar(File conllufile) {
+        return new File(conllufile.getPath() + SUFFIX);
+    }
+
+    /**
+     * write the index next to the CoNLL-U file it has been built from
+     */
+    public void save(File conllufile) throws IOException {
+        File tmp = new File(sidecar(conllufile).getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeUTF(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(conllufile.length());
+            out.writeLong(conllufile.lastModified());
+            out.writeInt(sentences);
+            for (Column c : Column.values()) {
+                Map<String, int[]> p = postings.get(c);
+                out.writeInt(p.size());
+                for (Map.Entry<String, int[]> e : p.entrySet()) {
+                    out.writeUTF(e.getKey());
+                    int[] sents = e.getValue();
+                    writeVarint(out, sents.length);
+                    int last = 0;
+                    for (int sn : sents) {
+                        writeVarint(out, sn - last); // sentence numbers are sorted
+                        last = sn;
+                    }
+                }
+            }
+        }
+        File f = sidecar(conllufile);
+        if (f.exists() && !f.delete()) {
+            throw new IOException("cannot replace " + f);
+        }
+        if (!tmp.renameTo(f)) {
+            throw new IOException("cannot rename " + tmp + " to " + f);
+        }
+    }
+
+    /**
+     * read the index of a CoNLL-U file
+     *
+     * @return the index or null if there is none or if the file has changed since the index has been built
+     */
+    public static QueryIndex load(File conllufile) throws IOException {
+        File f = sidecar(conllufile);
+        if (!f.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)))) {
+            if (!MAGIC.equals(in.readUTF()) || in.readInt() != VERSION) {
+                System.err.println("Ignoring index " + f + ": invalid format");
+                return null;
+            }
+            if (in.readLong() != conllufile.length() || in.readLong() != conllufile.lastModified()) {
+                System.err.println("Ignoring index " + f + ": " + conllufile + " has been modified");
+                return null;
+            }
+            int sentences = in.readInt();
+            Map<Column, Map<String, int[]>> postings = new EnumMap<>(Column.class);
+            for (Column c : Column.values()) {
+                int values = in.readInt();
+                Map<String, int[]> p = new HashMap<>();
+                for (int v = 0; v < values; ++v) {
+                    String key = in.readUTF();
+                    int[] sents = new int[readVarint(in)];
+                    int last = 0;
+                    for (int i = 0; i < sents.length; ++i) {
+                        last += readVarint(in);
+                        sents[i] = last;
+                    }
+                    p.put(key, sents);
+                }
+                postings.put(c, p);
+            }
+            return new QueryIndex(sentences, postings);
+        }
+    }
+
+    private static void writeVarint(DataOutputStream out, int v) throws IOException {
+        while ((v & ~0x7f) != 0) {
+            out.writeByte((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        int v = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            v |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return v;
+    }
+
+    /** build the index of the given files */
+    public static void main(String[] args) throws ConllException, IOException {
+        if (args.length == 0) {
+            System.err.println("usage: QueryIndex file.conllu ...");
+            System.err.println("   writes the index for grewmatch and subtree searches into file.conllu" + SUFFIX);
+            System.exit(1);
+        }
+        for (String fn : args) {
+            File file = new File(fn);
+            QueryIndex qi;
+            try (ConllSentenceReader reader = new ConllSentenceReader(new FileInputStream(file))) {
+                qi = new QueryIndex(reader);
+                reader.checkErrors();
+            }
+            qi.save(file);
+            System.err.println(sidecar(file) + ": " + qi.size() + " sentences");
+        }
+    }
+}
@@ -0,0 +1,416 @@
+/* This library is under the 3-Clause BSD License
+
+ Copyright (c) 2018-2026, Orange S.A.
+
+ Redistribution and use in source and binary forms, with or without modification,
+ are permitted provided that the following conditions are met:
+
+ 1. Redistributions of source code must retain the above copyright notice,
+ this list of conditions and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright notice,
+ this list of conditions and the following disclaimer in the documentation
+ and/or other materials provided with the distribution.
+
+ 3. Neither the name of the copyright holder nor the names of its contributors
+ may be used to endorse or promote products derived from this software without
+ specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ @author Johannes Heinecke
+ @version 2.34.0 as of 18th October 2026
+*/
+package com.orange.labs.conllparser;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * validates sentences without calling an external programme: invalid UPOS, XPOS, deprels and features,
+ * roots, head ids, cycles, non-projective punctuation, MWT spans and the rules of a validation file
+ * (as ConllFile.conditionalValidation()). The checks are created once and applied to each sentence.
+ * Results are kept per sentence, a sentence is only validated again when its modification counter has changed.
+ *
+ * @author Johannes Heinecke <johannes.heinecke@orange.com>
+ */
+public class ValidationEngine {
+
+    private final List<Rule> rules;
+    private final Map<ConllSentence, Result> cache; // sentence: last validation
+    private final AtomicInteger validated = new AtomicInteger(0); // sentences validated (not found in cache)
+
+    /**
+     * @param validupos valid UPOS (or null)
+     * @param validxpos valid XPOS (or null)
+     * @param validdeprels valid deprels (or null)
+     * @param validfeats valid features (or null)
+     */
+    public ValidationEngine(Set<String> validupos, Set<String> validxpos, Set<String> validdeprels, ValidFeatures validfeats) {
+        rules = new ArrayList<>();
+        cache = Collections.synchronizedMap(new WeakHashMap<ConllSentence, Result>());
+        rules.add(new TreeRule());
+        rules.add(new MwtRule());
+        if (validupos != null || validxpos != null || validdeprels != null || validfeats != null) {
+            rules.add(new ValueRule(validupos, validxpos, validdeprels, validfeats));
+        }
+    }
+
+    /**
+     * add the rules of a validation file, one rule per line: condition == condition
+     * (see ConllFile.conditionalValidation())
+     */
+    public void addRules(File rulesfile) throws IOException, ConllException {
+        BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(rulesfile), StandardCharsets.UTF_8));
+        String line;
+        int ct = 0;
+        try {
+            while ((line = br.readLine()) != null) {
+                ct++;
+                line = line.trim();
+                if (line.isEmpty() || line.charAt(0) == '#') continue;
+                String[] elems = line.split("==", 2);
+                if (elems.length != 2) {
+                    throw new ConllException("Line " + ct + ": missing '=='");
+                }
+                try {
+                    rules.add(new ConditionRule(elems[0], elems[1], ct));
+                } catch (ConllException e) {
+                    throw new ConllException("Line " + ct + ": " + e.getMessage());
+                }
+            }
+        } finally {
+            br.close();
+        }
+        cache.clear();
+    }
+
+    /**
+     * validate a sentence. The sentence is not normalised, the tree checks use the ids and head ids as they are
+     *
+     * @return {"errors": n, "words": {"id": [{"rule": name, "message": text}, ...], ...}, "sentence": [...]}
+     */
+    public JsonObject validate(ConllSentence cs) {
+        Result r = cache.get(cs);
+        if (r != null && r.modification == cs.getLastModification()) {
+            return r.json;
+        }
+        Errors errors = new Errors();
+        synchronized (cs) {
+            int modification = cs.getLastModification();
+            for (Rule rule : rules) {
+                rule.check(cs, errors);
+            }
+            r = new Result(modification, errors.toJson());
+        }
+        validated.incrementAndGet();
+        cache.put(cs, r);
+        return r.json;
+    }
+
+    /**
+     * validate sentences in parallel
+     *
+     * @param threads number of threads
+     * @return {"sentences": n, "errors": n, "invalid": [{"sentence": number, "sent_id": id, "errors": n, "words": ..., "sentence": ...}, ...]}
+     */
+    public JsonObject validate(final List<ConllSentence> sentences, int threads) throws ConllException {
+        final JsonObject[] results = new JsonObject[sentences.size()];
+        ConllFile.runInOrder(threads, sentences.size(), (from, to) -> () -> {
+            for (int i = from; i < to; ++i) {
+                results[i] = validate(sentences.get(i));
+            }
+            return null;
+        }, r -> true);
+
+        JsonObject solution = new JsonObject();
+        JsonArray invalid = new JsonArray();
+        int errors = 0;
+        for (int i = 0; i < results.length; ++i) {
+            int n = results[i].get("errors").getAsInt();
+            if (n > 0) {
+                errors += n;
+                JsonObject js = results[i].deepCopy();
+                js.addProperty("sentence", i);
+                if (sentences.get(i).getSentid() != null) {
+                    js.addProperty("sent_id", sentences.get(i).getSentid());
+                }
+                invalid.add(js);
+            }
+        }
+        solution.addProperty("sentences", results.length);
+        solution.addProperty("errors", errors);
+        solution.add("invalid", invalid);
+        return solution;
+    }
+
+    /** number of sentences which have been validated (and not taken from the cache) */
+    public int getValidated() {
+        return validated.get();
+    }
+
+    private static class Result {
+        final int modification;
+        final JsonObject json;
+
+        Result(int modification, JsonObject json) {
+            this.modification = modification;
+            this.json = json;
+        }
+    }
+
+    /** errors found in a sentence */
+    private static class Errors {
+        private final Map<String, JsonArray> words = new LinkedHashMap<>(); // word id: errors
+        private final JsonArray sentence = new JsonArray();
+        private int count = 0;
+        private boolean invalidtree = false; // set by TreeRule, makeTrees() would fail
+
+        /** error of word id or of the whole sentence if id is null */
+        void add(String id, String rule, String message) {
+            JsonObject e = new JsonObject();
+            e.addProperty("rule", rule);
+            e.addProperty("message", message);
+            if (id == null) {
+                sentence.add(e);
+            } else {
+                JsonArray ja = words.get(id);
+                if (ja == null) {
+                    ja = new JsonArray();
+                    words.put(id, ja);
+                }
+                ja.add(e);
+            }
+            count++;
+        }
+
+        JsonObject toJson() {
+            JsonObject jo = new JsonObject();
+            jo.addProperty("errors", count);
+            JsonObject jwords = new JsonObject();
+            for (Map.Entry<String, JsonArray> e : words.entrySet()) {
+                jwords.add(e.getKey(), e.getValue());
+            }
+            jo.add("words", jwords);
+            jo.add("sentence", sentence);
+            return jo;
+        }
+    }
+
+    private interface Rule {
+        void check(ConllSentence cs, Errors errors);
+    }
+
+    /** UPOS, XPOS, deprel and feature values */
+    private static class ValueRule implements Rule {
+        final Set<String> validupos;
+        final Set<String> validxpos;
+        final Set<String> validdeprels;
+        final ValidFeatures validfeats;
+
+        ValueRule(Set<String> validupos, Set<String> validxpos, Set<String> validdeprels, ValidFeatures validfeats) {
+            this.validupos = validupos;
+            this.validxpos = validxpos;
+            this.validdeprels = validdeprels;
+            this.validfeats = validfeats;
+        }
+
+        @Override
+        public void check(ConllSentence cs, Errors errors) {
+            for (ConllWord cw : cs.getAllWords()) {
+                String id = cw.getFullId();
+                if (validupos != null && !ConllWord.EmptyColumn.equals(cw.getUpostag()) && !validupos.contains(cw.getUpostag())) {
+                    errors.add(id, "invalid-upos", "invalid UPOS " + cw.getUpostag());
+                }
+                if (validxpos != null && !ConllWord.EmptyColumn.equals(cw.getXpostag()) && !validxpos.contains(cw.getXpostag())) {
+                    errors.add(id, "invalid-xpos", "invalid XPOS " + cw.getXpostag());
+                }
+                if (validdeprels != null && cw.getTokentype() == ConllWord.Tokentype.WORD && !validdeprels.contains(cw.getDeplabel())) {
+                    errors.add(id, "invalid-deprel", "invalid deprel " + cw.getDeplabel());
+                }
+                if (validfeats != null) {
+                    for (Map.Entry<String, String> fv : cw.getFeatures().entrySet()) {
+                        int rtc = validfeats.isValid(cw.getUpostag(), cw.getXpostag(), fv.getKey(), fv.getValue());
+                        if (rtc == 1) {
+                            errors.add(id, "invalid-feature", "invalid feature " + fv.getKey());
+                        } else if (rtc == 2) {
+                            errors.add(id, "invalid-feature-value", "invalid value " + fv.getKey() + "=" + fv.getValue());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * basic tree: word ids, head ids, roots, cycles and non-projective punctuation.
+     * Only uses the ids and head ids, so it works even if makeTrees() fails
+     */
+    private static class TreeRule implements Rule {
+        @Override
+        public void check(ConllSentence cs, Errors errors) {
+            int before = errors.count;
+            checkTree(cs, errors);
+            errors.invalidtree = errors.count > before;
+        }
+
+        private void checkTree(ConllSentence cs, Errors errors) {
+            List<ConllWord> words = cs.getWords();
+            int n = words.size();
+            int[] heads = new int[n + 1]; // word id: head id (-1 if invalid)
+            int roots = 0;
+            int unannotated = 0; // words without head
+            for (int i = 0; i < n; ++i) {
+                ConllWord cw = words.get(i);
+                int h = cw.getHead();
+                String id = cw.getFullId();
+                if (cw.getId() != i + 1) {
+                    errors.add(id, "word-id-sequence", "word id " + id + " found at position " + (i + 1));
+                    return; // all other checks would be wrong
+                }
+                if (h == -1) {
+                    unannotated++;
+                } else if (h < 0 || h > n) {
+                    errors.add(id, "invalid-head", "head " + h + " does not exist");
+                    h = -1;
+                } else if (h == cw.getId()) {
+                    errors.add(id, "invalid-head", "word is its own head");
+                    h = -1;
+                } else if (h == 0) {
+                    roots++;
+                    if (!"root".equals(cw.getDeplabel())) {
+                        errors.add(id, "root-deprel", "head 0 with deprel " + cw.getDeplabel());
+                    }
+                } else if ("root".equals(cw.getDeplabel())) {
+                    errors.add(id, "root-deprel", "deprel root with head " + h);
+                }
+                heads[i + 1] = h;
+            }
+            if (roots == 0) {
+                if (unannotated == 0) {
+                    errors.add(null, "no-root", "no word with head 0");
+                }
+            } else if (roots > 1) {
+                errors.add(null, "multiple-roots", roots + " words with head 0");
+            }
+
+            boolean cycles = false;
+            for (int i = 1; i <= n; ++i) {
+                if (heads[i] > 0 && dominates(heads, i, heads[i])) {
+                    errors.add("" + i, "cycle", "word is part of a cycle");
+                    cycles = true;
+                }
+            }
+            if (cycles) {
+                return;
+            }
+
+            for (int i = 1; i <= n; ++i) {
+                ConllWord cw = words.get(i - 1);
+                int h = heads[i];
+                if (h > 0 && "PUNCT".equals(cw.getUpostag())) {
+                    for (int k = Math.min(i, h) + 1; k < Math.max(i, h); ++k) {
+                        if (!dominates(heads, h, k)) {
+                            errors.add(cw.getFullId(), "punct-is-nonproj", "punctuation attached non-projectively to " + h + " over " + k);
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+
+        /** true if word h is an ancestor of word k (or k itself). Stops after heads.length steps (cycles) */
+        private static boolean dominates(int[] heads, int h, int k) {
+            for (int steps = 0; k > 0 && steps < heads.length; ++steps) {
+                if (k == h) {
+                    return true;
+                }
+                k = heads[k];
+            }
+            return false;
+        }
+    }
+
+    /** multiword tokens must span existing words and must not overlap */
+    private static class MwtRule implements Rule {
+        @Override
+        public void check(ConllSentence cs, Errors errors) {
+            Map<Integer, ConllWord> contracted = cs.getContractedWords();
+            if (contracted == null) {
+                return;
+            }
+            int lastend = 0;
+            for (Integer start : new TreeSet<>(contracted.keySet())) {
+                ConllWord mwt = contracted.get(start);
+                int end = mwt.getSubid();
+                String id = mwt.getFullId();
+                if (end <= start) {
+                    errors.add(id, "mwt-span", "multiword token ends before it starts");
+                } else if (end > cs.getWords().size()) {
+                    errors.add(id, "mwt-span", "multiword token ends after the last word");
+                }
+                if (start <= lastend) {
+                    errors.add(id, "mwt-overlap", "multiword token overlaps with the preceding one");
+                }
+                lastend = Math.max(lastend, end);
+            }
+        }
+    }
+
+    /**
+     * if a word matches the first condition, it must match the second one.
+     * Conditions may use the heads and dependents of a word, so they are only checked if TreeRule found no error
+     */
+    private static class ConditionRule implements Rule {
+        final CheckCondition ifcondition;
+        final CheckCondition thencondition;
+        final String name;
+
+        ConditionRule(String ifstr, String thenstr, int linenumber) throws ConllException {
+            ifcondition = new CheckCondition(ifstr, false);
+            thencondition = new CheckCondition(thenstr, false);
+            name = "line " + linenumber + ": " + ifstr.trim() + " == " + thenstr.trim();
+        }
+
+        @Override
+        public void check(ConllSentence cs, Errors errors) {
+            if (errors.invalidtree) {
+                return;
+            }
+            try {
+                cs.makeTrees(null); // does nothing if the tree has not changed since the last call
+                for (ConllWord cw : cs.getWords()) {
+                    if (cw.matchCondition(ifcondition, null) && !cw.matchCondition(thencondition, null)) {
+                        errors.add(cw.getFullId(), "condition", name);
+                    }
+                }
+            } catch (ConllException e) {
+                errors.add(null, "condition", name + ": " + e.getMessage());
+            }
+        }
+    }
+}
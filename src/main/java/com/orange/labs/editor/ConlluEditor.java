@@ -46,26 +46,28 @@ import com.orange.labs.conllparser.ConllSentence;
 import com.orange.labs.conllparser.ConllWord;
 import com.orange.labs.conllparser.ConlluPlusConverter;
 import com.orange.labs.conllparser.GetReplacement;
+import com.orange.labs.conllparser.GrewTrace;
+import com.orange.labs.conllparser.MappedSentenceList;
+import com.orange.labs.conllparser.QueryIndex;
 import com.orange.labs.conllparser.ValidFeatures;
+import com.orange.labs.conllparser.ValidationEngine;
 import com.orange.labs.httpserver.ServeurHTTP;
 import com.orange.labs.search.SubTreeSearch;
 import java.io.BufferedReader;
 
-import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -78,6 +80,10 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -88,8 +94,6 @@ import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
-import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.api.Status;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
 import org.yaml.snakeyaml.Yaml;
@@ -117,8 +121,24 @@ public class ConlluEditor {
     ValidFeatures validFeatures = null;
     JsonObject shortcuts = null;
     Validator validator = null;
-    History history;
+    ValidationEngine validationengine = null; // in-process validation, created when needed
+    File validationrules = null; // condition rules used by validationengine
+    History history; // undo/redo history of each modified sentence
+    int undodepth = 1000; // maximal number of undos per sentence
+    SearchIndex searchindex; // sentences per lemma, upos, xpos, deprel, feature, sentid and comments
+    QueryIndex queryindex; // sentences per upos, lemma, deprel, feature and relation, read from file.conllu.qidx (if present), written again when the file is saved
+    private boolean queryindexstale = false; // sentences have been split or joined since the query index was built
+    IncrementalSaver saver; // writes only modified sentences when saving
+    // last response of returnTree() for each sentence, cleared when a sentence is modified
+    private final Map<ConllSentence, TreeView> treeviews = Collections.synchronizedMap(new WeakHashMap<ConllSentence, TreeView>());
+    private final AtomicInteger treesbuilt = new AtomicInteger(0);
+    int lazycache = 0; // if > 0 sentences are parsed when needed, and at most lazycache unmodified sentences are kept in memory
+    JsonObject lazystats = null; // file statistics are only calculated once in lazy mode
     boolean callgitcommit = true;
+    private final ReentrantReadWriteLock rwlock = new ReentrantReadWriteLock(true); // read: navigation and search, write: modifications
+    GitCommitter gitcommitter = null; // commits saved files in the background
+    int commitdelay = 1000; // ms to wait for further saves which are committed together
+    int commitedits = 20; // maximal number of saves committed together
     int changesSinceSave = 0;
     int saveafter = -1; // save after n changes // -1: save when changing sentence
     int shortcuttimeout = 700; // GUI waits for 700ms, before decing that shortcut is complete
@@ -173,7 +193,18 @@ public class ConlluEditor {
     }
 
     public ConlluEditor(String conllfile, boolean overwrite) throws ConllException, IOException {
+        this(conllfile, overwrite, 0);
+    }
+
+    /**
+     * @param conllfile file to edit
+     * @param overwrite overwrite existing backup file
+     * @param lazycache if &gt; 0, do not parse the whole file at start-up, but only the sentences displayed
+     * (keeping at most lazycache unmodified sentences in memory)
+     */
+    public ConlluEditor(String conllfile, boolean overwrite, int lazycache) throws ConllException, IOException {
         System.err.println(getVersion());
+        this.lazycache = lazycache;
         filename = new File(conllfile);
         filename = filename.getAbsoluteFile().toPath().normalize().toFile();
 
@@ -228,6 +259,7 @@ public class ConlluEditor {
                     } else {
                         System.err.println("Shutting down ConlluEditor ...");
                     }
+                    closeGitCommitter(); // commit what is still queued
                 } catch (InterruptedException e) {
                     e.printStackTrace();
                 } catch (IOException ex) {
@@ -241,14 +273,26 @@ public class ConlluEditor {
         if ((debug & 0x01) == 1) {
             System.err.println("Loading " + filename);
         }
-        cfile = new ConllFile(filename, null);
+        cfile = new ConllFile(filename, null, lazycache);
         numberOfSentences = cfile.getSentences().size();
+        lazystats = null;
+        saver = new IncrementalSaver(cfile);
+        history = new History(undodepth);
 
         System.out.println("Number of sentences loaded: " + numberOfSentences);
 
-        if (true) {
+        if (cfile.isLazy()) {
+            // the index is built when the first search is done
+            searchindex = null;
+        } else {
+            searchindex = new SearchIndex(cfile);
             cfile.checkTree();
         }
+        queryindex = QueryIndex.load(filename);
+        queryindexstale = false;
+        if (queryindex != null) {
+            System.out.println("Query index loaded: " + QueryIndex.sidecar(filename));
+        }
 
     }
 
@@ -351,11 +395,13 @@ public class ConlluEditor {
         validUPOS = readUposJson(filenames);
         // rread other files in list
         validUPOS.addAll(readList(filenames));
+        validationengine = null;
         System.err.format("%d valid UPOS read from %s\n", validUPOS.size(), filenames.toString());
     }
 
     public void setValidXPOS(List<String> filenames) throws IOException {
         validXPOS = readList(filenames);
+        validationengine = null;
         System.err.format("%d valid XPOS read from %s\n", validXPOS.size(), filenames.toString());
     }
 
@@ -364,6 +410,7 @@ public class ConlluEditor {
         validDeprels = readDeprelsJson(filenames, lg);
         // read the other (text) files
         validDeprels.addAll(readList(filenames));
+        validationengine = null;
 
         if (validDeprels != null) {
             System.err.format("%d valid Deprel read from %s\n", validDeprels.size(), filenames.toString());
@@ -374,6 +421,25 @@ public class ConlluEditor {
 
     public void setValidFeatures(List<String> filenames, String lg, boolean include_unused) throws IOException {
         validFeatures = new ValidFeatures(filenames, lg, include_unused);
+        validationengine = null;
+    }
+
+    /** file with validation rules (condition == condition) checked by the "validate" command */
+    public void setValidationRules(String filename) {
+        validationrules = new File(filename);
+        validationengine = null;
+    }
+
+    /** get the in-process validator (created again if the valid values have been changed) */
+    private synchronized ValidationEngine getValidationEngine() throws IOException, ConllException {
+        if (validationengine == null) {
+            ValidationEngine ve = new ValidationEngine(validUPOS, validXPOS, validDeprels, validFeatures);
+            if (validationrules != null) {
+                ve.addRules(validationrules);
+            }
+            validationengine = ve;
+        }
+        return validationengine;
     }
 
     public void setShortcuts(String filename) throws IOException {
@@ -510,6 +576,8 @@ public class ConlluEditor {
                         setValidFeatures(paths, language, false);
                     } else if (key.equals("validator")) {
                         setValidator(makePath(mydir, (String) val));
+                    } else if (key.equals("rules")) {
+                        setValidationRules(makePath(mydir, (String) val));
                     } else if (key.equals("shortcuts")) {
                         setShortcuts(makePath(mydir, (String) val));
                     }
@@ -550,6 +618,12 @@ public class ConlluEditor {
         }
     }
 
+    /** maximal number of modifications which can be undone per sentence */
+    public void setUndoDepth(int depth) {
+        undodepth = depth;
+        history = new History(undodepth);
+    }
+
     public void setShortcutTimeout(int timeout) {
         this.shortcuttimeout = timeout;
     }
@@ -607,6 +681,69 @@ public class ConlluEditor {
     }
 
     private String returnTree(int sentid, ConllSentence csent, ConllSentence.Highlight highlight) throws ConllException {
+        // concurrent readers of the same sentence must not rebuild its trees at the same time
+        synchronized (csent) {
+            TreeView tv = new TreeView(sentid, csent, highlight);
+            TreeView last = treeviews.get(csent);
+            if (last != null && last.sameAs(tv)) {
+                return last.json;
+            }
+            tv.json = returnTreeLocked(sentid, csent, highlight);
+            treesbuilt.incrementAndGet();
+            treeviews.put(csent, tv);
+            return tv.json;
+        }
+    }
+
+    /** number of sentence views which have been calculated (and not taken from the cache) */
+    public int getTreesBuilt() {
+        return treesbuilt.get();
+    }
+
+    /**
+     * everything the response of returnTree() depends on, apart from the sentence itself
+     */
+    private class TreeView {
+        final int sentid;
+        final int maxsentence;
+        final int lastmodification;
+        final int changes;
+        final boolean canundo;
+        final boolean canredo;
+        final Map<Integer, ConllWord.Fields> highlight;
+        final Object[] config; // validation lists and comparison file
+        String json;
+
+        TreeView(int sentid, ConllSentence csent, ConllSentence.Highlight hl) {
+            this.sentid = sentid;
+            maxsentence = numberOfSentences;
+            lastmodification = csent.getLastModification();
+            changes = changesSinceSave;
+            canundo = history.canUndo(sentid);
+            canredo = history.canRedo(sentid);
+            highlight = hl == null ? null : hl.idshl;
+            config = new Object[]{validUPOS, validXPOS, validDeprels, validFeatures, comparisonFile};
+        }
+
+        boolean sameAs(TreeView tv) {
+            if (sentid != tv.sentid || maxsentence != tv.maxsentence
+                    || lastmodification != tv.lastmodification || changes != tv.changes
+                    || canundo != tv.canundo || canredo != tv.canredo) {
+                return false;
+            }
+            for (int i = 0; i < config.length; ++i) {
+                if (config[i] != tv.config[i]) {
+                    return false;
+                }
+            }
+            if (highlight == null) {
+                return tv.highlight == null;
+            }
+            return highlight.equals(tv.highlight);
+        }
+    }
+
+    private String returnTreeLocked(int sentid, ConllSentence csent, ConllSentence.Highlight highlight) throws ConllException {
         csent.normalise();
         csent.makeTrees(null);
 
@@ -844,13 +981,8 @@ public class ConlluEditor {
         }
 
         solution.addProperty("comments", csent.getCommentsStr());
-        if (history != null) {
-            solution.addProperty("canUndo", history.canUndo());
-            solution.addProperty("canRedo", history.canRedo());
-        } else {
-            solution.addProperty("canUndo", false);
-            solution.addProperty("canRedo", false);
-        }
+        solution.addProperty("canUndo", history.canUndo(sentid));
+        solution.addProperty("canRedo", history.canRedo(sentid));
 //        Map<Integer, Integer> heights = calculate_flat_arcs_height(csent);
 //        JsonObject arc = new JsonObject();
 //        for (Integer id : heights.keySet()) {
@@ -878,6 +1010,15 @@ public class ConlluEditor {
      * @return raw text as LaTeX, CoNLL-U or SD parse
      */
     public String getraw(Raw raw, int currentSentenceId, boolean all_enhanced, boolean r2l) {
+        rwlock.readLock().lock();
+        try {
+            return getrawLocked(raw, currentSentenceId, all_enhanced, r2l);
+        } finally {
+            rwlock.readLock().unlock();
+        }
+    }
+
+    private String getrawLocked(Raw raw, int currentSentenceId, boolean all_enhanced, boolean r2l) {
         JsonObject solution = new JsonObject();
 
         ConllSentence csent = null;
@@ -886,38 +1027,40 @@ public class ConlluEditor {
         }
 
         if (csent != null) {
-            switch (raw) {
-                case VALIDATION:
-                    if (validator == null) {
-                        solution.addProperty("raw", "ERROR: no validator configuration given");
-                    } else {
-                        try {
-                            solution.addProperty("raw", validator.validate(csent));
-                        } catch (InterruptedException | IOException e) {
-                            solution.addProperty("raw", "Validator error: " + e.getMessage());
+            synchronized (csent) {
+                switch (raw) {
+                    case VALIDATION:
+                        if (validator == null) {
+                            solution.addProperty("raw", "ERROR: no validator configuration given");
+                        } else {
+                            try {
+                                solution.addProperty("raw", validator.validate(csent));
+                            } catch (InterruptedException | IOException e) {
+                                solution.addProperty("raw", "Validator error: " + e.getMessage());
+                            }
                         }
-                    }
 
-                    break;
-                case LATEX:
-                    solution.addProperty("raw", csent.getLaTeX(all_enhanced, r2l));
-                    break;
-                case SDPARSE:
-                    solution.addProperty("raw", csent.getSDparse());
-                    break;
-                case SPACY_JSON:
-                    Gson gson = new GsonBuilder().setPrettyPrinting().create();
-                    String jsonOutput = gson.toJson(csent.toSpacyJson());
-                    solution.addProperty("raw", jsonOutput);
-                    break;
-                //case CONLLUPLUS:
-                //    solution.addProperty("raw", cfile.getColDefString() + csent.toString());
-                //    break;
-                case CONLLU:
-                default:
-                    solution.addProperty("raw", cfile.getColDefString() + csent.toString());
-                    //solution.addProperty("raw", csent.toString());
-                    break;
+                        break;
+                    case LATEX:
+                        solution.addProperty("raw", csent.getLaTeX(all_enhanced, r2l));
+                        break;
+                    case SDPARSE:
+                        solution.addProperty("raw", csent.getSDparse());
+                        break;
+                    case SPACY_JSON:
+                        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+                        String jsonOutput = gson.toJson(csent.toSpacyJson());
+                        solution.addProperty("raw", jsonOutput);
+                        break;
+                    //case CONLLUPLUS:
+                    //    solution.addProperty("raw", cfile.getColDefString() + csent.toString());
+                    //    break;
+                    case CONLLU:
+                    default:
+                        solution.addProperty("raw", cfile.getColDefString() + csent.toString());
+                        //solution.addProperty("raw", csent.toString());
+                        break;
+                }
             }
         } else {
             solution.addProperty("raw", "no sentence available");
@@ -932,6 +1075,15 @@ public class ConlluEditor {
      * @return
      */
     public String getValidlists() {
+        rwlock.readLock().lock();
+        try {
+            return getValidlistsLocked();
+        } finally {
+            rwlock.readLock().unlock();
+        }
+    }
+
+    private String getValidlistsLocked() {
         JsonObject solution = new JsonObject();
         if (validDeprels != null) {
             List<String> tmp = new ArrayList<>();
@@ -997,8 +1149,20 @@ public class ConlluEditor {
         solution.addProperty("git_dirty", gitdirty);
         solution.addProperty("reinit", mode);
         solution.addProperty("saveafter", saveafter);
+        if (gitcommitter != null) {
+            solution.add("gitcommits", gitcommitter.getStats());
+        }
         solution.addProperty("shortcuttimeout", shortcuttimeout);
-        solution.add("stats", cfile.getFilestats());
+        if (cfile.isLazy()) {
+            synchronized (this) {
+                if (lazystats == null) {
+                    lazystats = cfile.getFilestats();
+                }
+                solution.add("stats", lazystats);
+            }
+        } else {
+            solution.add("stats", cfile.getFilestats());
+        }
         JsonArray coldefs = new JsonArray();
         for (String cd : cfile.getColDefs().keySet()) {
             coldefs.add(cd);
@@ -1016,7 +1180,7 @@ public class ConlluEditor {
         return solution.toString();
     }
 
-    // only for the unitary tests. Get the lastmodification value of a sentences without using "read" (which will delete undo history)
+    // only for the unitary tests. Get the lastmodification value of a sentences without using "read"
     public int getLastModification(int sentid) {
         ConllSentence csnt = cfile.getSentences().get(sentid);
         return csnt.getLastModification();
@@ -1032,6 +1196,8 @@ public class ConlluEditor {
           prec                       preceeding sentence
           read <num>                 return sentence <num>
           line <num>                 return sentence which contains line number <num>
+          validate                   validate the current sentence (UPOS, XPOS, deprels and features, tree, MWT and validation rules)
+          validate all               validate all sentences
           findsentid "true" <regex>  find sentence with sentid matching regex. if 2nd argument == "true", search backwards
           findhighlight "true"       find sentence with highlighted token or deprel
           findcomment "true" <regex> find sentence with comment matching regex. if 2nd argument == "true", search backwards
@@ -1094,7 +1260,7 @@ public class ConlluEditor {
                                        "translations":"de: German translation\nen: English translation ..."
                                       }
           mod comments <comment>     set the comment fo a sentence (# text, # sent_id, # newpar etc are set automatically!)
-          mod undo                   undo last "mod" command (if we are still in the same sentence)
+          mod undo                   undo last "mod" command of the current sentence
           mod redo                   redo last "undone" "mod" command
           mod ed add <depid> <headid> <deprel>
                                      add an enhanced dependency <deprel> from <headid> to <depid>
@@ -1107,6 +1273,84 @@ public class ConlluEditor {
                                      or to <filename.conllu> and execute a "git add" and "git commit"
     */
     public String process(String command, int currentSentenceId, String editinfo, int prevmod) {
+        // navigation and search commands run concurrently, commands which modify the file one at a time
+        Lock lock = modifies(command) ? rwlock.writeLock() : rwlock.readLock();
+        lock.lock();
+        if (lock == rwlock.readLock() && modifies(command)) {
+            // a modification arrived before we got the lock: saving it needs the write lock.
+            // We check again in processCommand() once we have it
+            lock.unlock();
+            lock = rwlock.writeLock();
+            lock.lock();
+        }
+        try {
+            if (command.startsWith("mod ") || command.startsWith("replaceexpression ")) {
+                // not all modifications increase the modification counter of the sentence
+                treeviews.clear();
+            }
+            String rtc = processCommand(command, currentSentenceId, editinfo, prevmod);
+            if (command.startsWith("mod ") && mode == 0
+                    && currentSentenceId >= 0 && currentSentenceId < cfile.getSentences().size()) {
+                sentenceModified(currentSentenceId);
+            }
+            return rtc;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * true if the command modifies the file (or reloads it, or saves it because we change sentence).
+     * changesSinceSave is only modified with the write lock, so the result is only certain with one of the locks
+     */
+    private boolean modifies(String command) {
+        return mode == 2
+                || command.startsWith("mod ")
+                || command.startsWith("save")
+                || command.startsWith("replaceexpression ")
+                || (changesSinceSave > 0 && saveafter == -1);
+    }
+
+    /** sentence sn has been modified, update the search index and keep it in memory in lazy mode */
+    private void sentenceModified(int sn) {
+        if (searchindex != null) {
+            searchindex.update(sn);
+        }
+        synchronized (this) {
+            if (queryindex != null && !queryindexstale) {
+                queryindex.modified(sn);
+            }
+        }
+        cfile.pin(sn);
+    }
+
+    /** sentences have been split or joined, the sentence numbers of the query index are no longer valid */
+    private synchronized void sentencesMoved() {
+        queryindexstale = true;
+    }
+
+    /**
+     * get the sentences which can match a grewmatch or subtree query
+     * @return null if there is no query index
+     */
+    private synchronized QueryIndex getQueryIndex() {
+        if (queryindex != null && queryindexstale) {
+            // sentences have been split or joined, the sentence numbers have changed
+            queryindex = new QueryIndex(cfile.getSentences());
+            queryindexstale = false;
+        }
+        return queryindex;
+    }
+
+    private synchronized SearchIndex getSearchIndex() {
+        if (searchindex == null) {
+            // lazy mode: this reads all sentences once
+            searchindex = new SearchIndex(cfile);
+        }
+        return searchindex;
+    }
+
+    private String processCommand(String command, int currentSentenceId, String editinfo, int prevmod) {
         if (mode == 2) {
             try {
                 init();
@@ -1120,9 +1364,6 @@ public class ConlluEditor {
         }
         try {
             if (!command.startsWith("mod ")) {
-                // we changed the sentence, forget history
-                history = null;
-
                 if (!command.startsWith("save") && changesSinceSave > 0 && saveafter == -1) {
                     // save sentence because the changed sentence (if saveafter == -1)
                     try {
@@ -1195,9 +1436,14 @@ public class ConlluEditor {
                 boolean backwards = f[1].equalsIgnoreCase("true");
                 Pattern idAtrouver = Pattern.compile(f[2]);
 
-                for (int i = (backwards ? currentSentenceId - 1 : currentSentenceId + 1);
-                        (backwards ? i >= 0 : i < numberOfSentences);
-                        i = (backwards ? i - 1 : i + 1)) {
+                SearchIndex.Hits hits;
+                if (searchindex == null && cfile.getSentences() instanceof MappedSentenceList) {
+                    // no need to parse all sentences to find a sentence id
+                    hits = new SearchIndex.Hits(((MappedSentenceList) cfile.getSentences()).findSentids(idAtrouver));
+                } else {
+                    hits = getSearchIndex().find(SearchIndex.Column.SENTID, idAtrouver);
+                }
+                for (int i = hits.next(currentSentenceId, backwards); i >= 0; i = hits.next(i, backwards)) {
                     ConllSentence cs = cfile.getSentences().get(i);
                     String sid = cs.getSentid();
                     if (sid != null) {
@@ -1225,9 +1471,8 @@ public class ConlluEditor {
                     motAtrouver = motAtrouver.substring(1, motAtrouver.length() - 1);
                     //System.err.println("<" + motAtrouver + ">");
                 }
-                for (int i = (backwards ? currentSentenceId - 1 : currentSentenceId + 1);
-                        (backwards ? i >= 0 : i < numberOfSentences);
-                        i = (backwards ? i - 1 : i + 1)) {
+                SearchIndex.Hits hits = getSearchIndex().findComment(motAtrouver);
+                for (int i = hits.next(currentSentenceId, backwards); i >= 0; i = hits.next(i, backwards)) {
                     ConllSentence cs = cfile.getSentences().get(i);
                     String text = cs.getCommentsStr();
                     int wordoffset = text.indexOf(motAtrouver);
@@ -1429,12 +1674,20 @@ public class ConlluEditor {
                 // si le deuxième mot est "true" on cherche en arrière
                 boolean backwards = f[1].equalsIgnoreCase("true");
 
-                CheckGrewmatch cgm = new CheckGrewmatch(f[2], false);
+                CheckGrewmatch cgm = CheckGrewmatch.compile(f[2]);
+                QueryIndex qi = getQueryIndex();
+                BitSet candidates = qi == null ? null : qi.candidates(cgm.getRequirements());
                 for (int i = (backwards ? currentSentenceId - 1 : currentSentenceId + 1);
                         (backwards ? i >= 0 : i < numberOfSentences);
                         i = (backwards ? i - 1 : i + 1)) {
+                    if (candidates != null && !candidates.get(i)) {
+                        continue;
+                    }
                     ConllSentence cs = cfile.getSentences().get(i);
-                    List<List<ConllWord>> llcw = cgm.match(null, cs);
+                    List<List<ConllWord>> llcw;
+                    synchronized (cs) {
+                        llcw = cgm.match(null, cs);
+                    }
                     if (llcw != null) {
                         Set<Integer> ids = new TreeSet<>();
                         for (List<ConllWord> lcw : llcw) {
@@ -1450,6 +1703,47 @@ public class ConlluEditor {
                 }
                 return formatErrMsg("not found «" + f[2] + "»", currentSentenceId);
 
+            } else if (command.startsWith("explaingrewmatch ")) {
+                // search the pattern in all sentences and return statistics on candidates and rejected constraints
+                String[] f = command.trim().split(" +", 2);
+                if (f.length != 2) {
+                    return formatErrMsg("INVALID syntax «" + command + "»", currentSentenceId);
+                }
+                CheckGrewmatch cgm = CheckGrewmatch.compile(f[1]);
+                GrewTrace trace = new GrewTrace();
+                JsonArray found = new JsonArray();
+                long start = System.currentTimeMillis();
+                for (int i = 0; i < numberOfSentences; ++i) {
+                    ConllSentence cs = cfile.getSentences().get(i);
+                    List<List<ConllWord>> llcw;
+                    synchronized (cs) {
+                        cs.normalise();
+                        cs.makeTrees(null);
+                        llcw = cgm.match(null, cs, trace);
+                    }
+                    if (llcw != null && found.size() < 100) {
+                        found.add(i);
+                    }
+                }
+                JsonObject solution = prepare(currentSentenceId);
+                JsonObject explain = trace.toJson();
+                explain.addProperty("time_ms", System.currentTimeMillis() - start);
+                explain.add("found", found); // the first 100 sentences which match
+                solution.add("explain", explain);
+                return solution.toString();
+
+            } else if (command.equals("validate") || command.startsWith("validate ")) {
+                // in-process validation of the current sentence, or of all sentences ("validate all")
+                JsonObject solution = prepare(currentSentenceId);
+                if (command.trim().equals("validate all")) {
+                    solution.add("validation", getValidationEngine().validate(cfile.getSentences(), ConllFile.DEFAULTTHREADS));
+                } else if (currentSentenceId >= 0 && currentSentenceId < numberOfSentences) {
+                    solution.add("validation", getValidationEngine().validate(cfile.getSentences().get(currentSentenceId)));
+                } else {
+                    return formatErrMsg("INVALID sentence number «" + currentSentenceId + "»", currentSentenceId);
+                }
+                return solution.toString();
+
             } else if (command.startsWith("findexpression ")) {
                 String[] f = command.trim().split(" +", 3);
                 if (f.length != 3) {
@@ -1458,12 +1752,15 @@ public class ConlluEditor {
                 // si le deuxième mot est "true" on cherche en arrière
                 boolean backwards = f[1].equalsIgnoreCase("true");
 
-                CheckCondition findpt = new CheckCondition(f[2], false);
+                CheckCondition findpt = CheckCondition.compile(f[2]);
                 for (int i = (backwards ? currentSentenceId - 1 : currentSentenceId + 1);
                         (backwards ? i >= 0 : i < numberOfSentences);
                         i = (backwards ? i - 1 : i + 1)) {
                     ConllSentence cs = cfile.getSentences().get(i);
-                    ConllWord cw = cs.conditionalSearch(findpt); //f[2]);
+                    ConllWord cw;
+                    synchronized (cs) {
+                        cw = cs.conditionalSearch(findpt); //f[2]);
+                    }
                     if (cw != null) {
                         currentSentenceId = i;
                         ConllSentence.Highlight hl = new ConllSentence.Highlight(ConllWord.Fields.LEMMA, cw.getId(), cw.getId());
@@ -1502,21 +1799,24 @@ public class ConlluEditor {
                     newvals.add(new GetReplacement(repl));
                 }
 
-                CheckCondition findpt = new CheckCondition(find, false);
+                CheckCondition findpt = CheckCondition.compile(find);
                 for (int i = (backwards ? currentSentenceId - 1 : currentSentenceId + 1);
                         (backwards ? i >= 0 : i < numberOfSentences);
                         i = (backwards ? i - 1 : i + 1)) {
                     ConllSentence cs = cfile.getSentences().get(i);
-                    if (history == null) {
-                        history = new History(200);
+                    if (cs.conditionalSearch(findpt) == null) {
+                        // sentence will not be modified, keep its history as it is
+                        continue;
                     }
-                    history.add(cs);
+                    history.add(i, cs);
 
                     StringBuilder warnings = new StringBuilder();
                     Set<ConllWord> cws = cs.conditionalEdit(findpt, newvals, null, warnings);
                     // TODO display warnings in GUI!
                     if (!cws.isEmpty()) {
                         currentSentenceId = i;
+                        cs.increaseModificationCounter();
+                        sentenceModified(i);
                         Set<Integer> ids = new HashSet<>();
                         for (ConllWord cw : cws) {
                             ids.add(cw.getId());
@@ -1532,6 +1832,7 @@ public class ConlluEditor {
 
                         return returnTree(currentSentenceId, cs, hl); //cw.getUpostag());
                     }
+                    history.cancel(i);
                 }
                 return formatErrMsg("not found «" + find + "»", currentSentenceId);
 
@@ -1558,9 +1859,19 @@ public class ConlluEditor {
                 boolean backwards = f[1].equalsIgnoreCase("true");
 
                 String[] elems = f[2].split("/");
-                for (int i = (backwards ? currentSentenceId - 1 : currentSentenceId + 1);
-                        (backwards ? i >= 0 : i < numberOfSentences);
-                        i = (backwards ? i - 1 : i + 1)) {
+                // only sentences containing the first element can match
+                SearchIndex.Hits hits;
+                if (field == ConllWord.Fields.FEATURE) {
+                    String[] nv = elems[0].split(":", 2);
+                    if (nv.length == 2) {
+                        hits = getSearchIndex().findFeature(nv[0], Pattern.compile(nv[1]));
+                    } else {
+                        hits = new SearchIndex.Hits();
+                    }
+                } else {
+                    hits = getSearchIndex().find(SearchIndex.Column.valueOf(field.name()), Pattern.compile(elems[0]));
+                }
+                for (int i = hits.next(currentSentenceId, backwards); i >= 0; i = hits.next(i, backwards)) {
                     ConllSentence cs = cfile.getSentences().get(i);
 
                     Iterator<ConllWord> cwit = cs.getWords().iterator();
@@ -1598,13 +1909,21 @@ public class ConlluEditor {
                 boolean backwards = f[1].equalsIgnoreCase("true");
 
                 SubTreeSearch std = new SubTreeSearch(f[2]);
+                QueryIndex qi = getQueryIndex();
+                BitSet candidates = qi == null ? null : std.candidates(qi);
 
                 for (int i = (backwards ? currentSentenceId - 1 : currentSentenceId + 1);
                         (backwards ? i >= 0 : i < numberOfSentences);
                         i = (backwards ? i - 1 : i + 1)) {
+                    if (candidates != null && !candidates.get(i)) {
+                        continue;
+                    }
                     ConllSentence cs = cfile.getSentences().get(i);
 
-                    Set<Integer> ids = std.match(cs);
+                    Set<Integer> ids;
+                    synchronized (cs) {
+                        ids = std.match(cs);
+                    }
                     if (!ids.isEmpty()) {
                         currentSentenceId = i;
                         ConllSentence.Highlight hl = new ConllSentence.Highlight(ConllWord.Fields.FORM, ids);
@@ -1633,7 +1952,10 @@ public class ConlluEditor {
 
                 ConllSentence cs = cfile.getSentences().get(currentSentenceId);
                 int wid = Integer.parseInt(f[1]);
-                ConllSentence subtree = cs.getSubtree(wid);
+                ConllSentence subtree;
+                synchronized (cs) {
+                    subtree = cs.getSubtree(wid);
+                }
                 StringBuilder sb = new StringBuilder();
 
                 if (coldefs != null) {
@@ -1663,9 +1985,8 @@ public class ConlluEditor {
                 // si le deuxième mot est "true" on cherche en arrière
                 boolean backwards = f[1].equalsIgnoreCase("true");
 
-                for (int i = (backwards ? currentSentenceId - 1 : currentSentenceId + 1);
-                        (backwards ? i >= 0 : i < numberOfSentences);
-                        i = (backwards ? i - 1 : i + 1)) {
+                SearchIndex.Hits hits = getSearchIndex().find(SearchIndex.Column.DEPREL, Pattern.compile(rels[0]));
+                for (int i = hits.next(currentSentenceId, backwards); i >= 0; i = hits.next(i, backwards)) {
 
                     ConllSentence cs = cfile.getSentences().get(i);
                     for (ConllWord cw : cs.getWords()) {
@@ -1678,8 +1999,11 @@ public class ConlluEditor {
                             } else {
                                 // chaine de deprels
                                 Set<Integer> toHighlight = new HashSet<>();
-                                cs.makeTrees(null);
-                                boolean ok = cw.matchesTree(1, rels, updown, toHighlight);
+                                boolean ok;
+                                synchronized (cs) {
+                                    cs.makeTrees(null);
+                                    ok = cw.matchesTree(1, rels, updown, toHighlight);
+                                }
                                 if (ok) {
                                     //System.err.println("--------------- " + cw.getId());
                                     toHighlight.add(cw.getId());
@@ -1826,10 +2150,7 @@ public class ConlluEditor {
                     return formatErrMsg("INVALID id (not an integer) «" + command + "» " + e.getMessage(), currentSentenceId);
                 }
 
-                if (history == null) {
-                    history = new History(200);
-                }
-                history.add(csent);
+                history.add(currentSentenceId, csent);
 
                 //ConllWord modWord = csent.getWords().get(id - 1);
                 switch (f[1]) {
@@ -1923,10 +2244,7 @@ public class ConlluEditor {
                     return formatErrMsg("Word " + id + " is part of a MWT already. «" + command + "»", currentSentenceId);
                 }
 
-                if (history == null) {
-                    history = new History(200);
-                }
-                history.add(csent);
+                history.add(currentSentenceId, csent);
 
                 // insert a new MWT before the current word
                 // the current word becomes the first word of the MWT (inheriting all columns except form)
@@ -2002,10 +2320,7 @@ public class ConlluEditor {
                 }
                 //System.err.println("<" + f[1] + ">");
 
-                if (history == null) {
-                    history = new History(200);
-                }
-                history.add(csent);
+                history.add(currentSentenceId, csent);
 
                 // delete all Space(s)After in tokens which are now part of the MWT and add the correct SpaceAfter
                 // to the new MWT
@@ -2083,10 +2398,7 @@ public class ConlluEditor {
                 }
                 //System.err.println("<" + f[1] + ">");
 
-                if (history == null) {
-                    history = new History(200);
-                }
-                history.add(csent);
+                history.add(currentSentenceId, csent);
 
                 // delete MT word
                 if (end == 0) {
@@ -2136,10 +2448,7 @@ public class ConlluEditor {
                 }
                 //System.err.println("<" + f[1] + ">");
 
-                if (history == null) {
-                    history = new History(200);
-                }
-                history.add(csent);
+                history.add(currentSentenceId, csent);
 
                 ConllWord modWord = null;
                 if (f[1].equals("split")) {
@@ -2212,17 +2521,17 @@ public class ConlluEditor {
                 }
                 //System.err.println("<" + f[1] + ">");
 
-                if (history == null) {
-                    history = new History(200);
-                }
-                history.add(csent);
+                history.add(currentSentenceId, csent);
                 // split current sentence at word id
                 ConllSentence newsent = csent.splitSentence(id);
 //                System.out.println(csent);
 //                System.out.println(newsent);
 
                 cfile.getSentences().add(currentSentenceId + 1, newsent);
+                history.shift(currentSentenceId + 1, 1);
                 numberOfSentences++;
+                saver.structureChanged();
+                sentencesMoved();
                 newsent.increaseModificationCounter();
                 csent.increaseModificationCounter();
                 try {
@@ -2236,18 +2545,20 @@ public class ConlluEditor {
                 //String[] f = command.trim().split(" +");
                 csent = cfile.getSentences().get(currentSentenceId);
 
-//                if (history == null) {
-//                    history = new History(200);
-//                }
-//                history.add(csent);
                 if (currentSentenceId >= cfile.getSentences().size()) {
                     return formatErrMsg("No next sentence to join", currentSentenceId);
                 }
                 ConllSentence nextsent = cfile.getSentences().get(currentSentenceId + 1);
                 csent.joinsentence(nextsent);
+                // the joined sentence cannot be undone, the following sentences have moved
+                history.remove(currentSentenceId);
+                history.remove(currentSentenceId + 1);
+                history.shift(currentSentenceId + 2, -1);
                 csent.increaseModificationCounter();
                 cfile.getSentences().remove(currentSentenceId + 1);
                 numberOfSentences--;
+                saver.structureChanged();
+                sentencesMoved();
                 try {
                     writeBackup(currentSentenceId, null, editinfo);
                 } catch (IOException ex) {
@@ -2291,10 +2602,7 @@ public class ConlluEditor {
                     return formatErrMsg("INVALID subid (not an integer) «" + command + "» " + e.getMessage(), currentSentenceId);
                 }
 
-                if (history == null) {
-                    history = new History(200);
-                }
-                history.add(csent);
+                history.add(currentSentenceId, csent);
 
                 csent.deleteEmptyWord(id, subid);
                 csent.increaseModificationCounter();
@@ -2328,10 +2636,7 @@ public class ConlluEditor {
                 }
                 //System.err.println("<" + f[1] + ">");
 
-                if (history == null) {
-                    history = new History(200);
-                }
-                history.add(csent);
+                history.add(currentSentenceId, csent);
                 String form = f[3];
 
                 ConllWord newword = new ConllWord(form, csent.getColumndefs());
@@ -2365,11 +2670,8 @@ public class ConlluEditor {
                     return formatErrMsg("INVALID command length «" + command + "»", currentSentenceId);
                 }
 
-                if (history == null) {
-                    history = new History(200);
-                }
                 csent = cfile.getSentences().get(currentSentenceId);
-                history.add(csent);
+                history.add(currentSentenceId, csent);
                 ConllWord modWord = csent.getHead();
 
                 JsonElement jelement = JsonParser.parseString(f[2]);
@@ -2430,10 +2732,7 @@ public class ConlluEditor {
                      return formatErrMsg("INVALID word id «" + command + "»", currentSentenceId);
                 }
 
-                if (history == null) {
-                    history = new History(200);
-                }
-                history.add(csent);
+                history.add(currentSentenceId, csent);
 
                 if (f[3].equals("false")) {
                     //csent.removeHighlightDeprel(f[2]);
@@ -2461,10 +2760,7 @@ public class ConlluEditor {
                      return formatErrMsg("INVALID word id «" + command + "»", currentSentenceId);
                 }
 
-                if (history == null) {
-                    history = new History(200);
-                }
-                history.add(csent);
+                history.add(currentSentenceId, csent);
 
 
                 if (f[3].equals("false")) {
@@ -2492,11 +2788,8 @@ public class ConlluEditor {
                     newcomment = f[2];
                 }
 
-                if (history == null) {
-                    history = new History(200);
-                }
                 csent = cfile.getSentences().get(currentSentenceId);
-                history.add(csent);
+                history.add(currentSentenceId, csent);
 
                 ConllWord modWord = csent.getHead();
                 csent.setComments(newcomment);
@@ -2510,28 +2803,25 @@ public class ConlluEditor {
                 return returnTree(currentSentenceId, csent);
 
             } else if (command.startsWith("mod undo")) {
-                if (history != null) {
+                csent = cfile.getSentences().get(currentSentenceId);
+                ConllSentence cs = history.undo(currentSentenceId, csent, cfile.getColDefs());
+                if (cs != null) {
+                    cfile.getSentences().set(currentSentenceId, cs);
                     csent = cfile.getSentences().get(currentSentenceId);
-                    ConllSentence cs = history.undo(csent);
-                    if (cs != null) {
-                        cfile.getSentences().set(currentSentenceId, cs);
-                        csent = cfile.getSentences().get(currentSentenceId);
-                        writeBackup(currentSentenceId, null, "undo");
-                        return returnTree(currentSentenceId, csent);
-                    }
+                    writeBackup(currentSentenceId, null, "undo");
+                    return returnTree(currentSentenceId, csent);
                 }
                 return formatErrMsg("No more undo possible", currentSentenceId);
 
             } else if (command.startsWith("mod redo")) {
-                if (history != null) {
-                    ConllSentence cs = history.redo();
-                    if (cs != null) {
-                        cfile.getSentences().set(currentSentenceId, cs);
-                        csent = cfile.getSentences().get(currentSentenceId);
-                        csent.increaseModificationCounter();
-                        writeBackup(currentSentenceId, null, "redo");
-                        return returnTree(currentSentenceId, csent);
-                    }
+                csent = cfile.getSentences().get(currentSentenceId);
+                ConllSentence cs = history.redo(currentSentenceId, csent, cfile.getColDefs());
+                if (cs != null) {
+                    cfile.getSentences().set(currentSentenceId, cs);
+                    csent = cfile.getSentences().get(currentSentenceId);
+                    csent.increaseModificationCounter();
+                    writeBackup(currentSentenceId, null, "redo");
+                    return returnTree(currentSentenceId, csent);
                 }
                 return formatErrMsg("No more redo possible", currentSentenceId);
 
@@ -2551,10 +2841,7 @@ public class ConlluEditor {
                 }
 
                 csent = cfile.getSentences().get(currentSentenceId);
-                if (history == null) {
-                    history = new History(200);
-                }
-                history.add(csent);
+                history.add(currentSentenceId, csent);
 
                 ConllWord dep = csent.getWord(f[3]);
                 if (dep == null) {
@@ -2634,10 +2921,7 @@ public class ConlluEditor {
                     newdeprel = f[3];
                 }
 
-                if (history == null) {
-                    history = new History(200);
-                }
-                history.add(csent);
+                history.add(currentSentenceId, csent);
                 ConllWord depword = csent.getWords().get(dep_id - 1);
                 ConllWord oldhead = depword.getHeadWord();
                 if (depword.getHead() == newhead_id) {
@@ -2736,34 +3020,13 @@ public class ConlluEditor {
      * @return 0, error, 1 if the file is under Git Version control, 2 if the
      * directory is git controlled but the file is not, else 3
      */
-    // TODO merge with writeBackup()
     private synchronized int versionning() throws IOException {
         File dir = filename.getParentFile().toPath().normalize().toFile();
 
         try {
-            //Git git = Git.open(dir);
-            FileRepositoryBuilder repositoryBuilder = new FileRepositoryBuilder();
-            repositoryBuilder.findGitDir(dir);
-            File gitdir = repositoryBuilder.getGitDir();
-            //System.err.println("EEEEEE " + gitdir + " eeee " + dir );
-            if (gitdir != null) {
-                Git git = Git.open(gitdir);
-                Status status = git.status().call();
-
-                // calculer le nom du fichier par rapport du réperoitre .git
-                Path gitdirbase = gitdir.getAbsoluteFile().getParentFile().toPath().normalize();
-                //System.err.println("gitdirbase    " + gitdirbase);
-                //System.err.println("filename      " + filename.toPath().normalize());
-                Path filepathInGit = gitdirbase.relativize(filename.toPath().normalize());
-                //System.err.println("IGNORED " + status.getIgnoredNotInIndex());
-                //System.err.println("filenameInGit " + filepathInGit);
-                Set<String> untracked = status.getUntracked();
-                //System.err.println("UNTRACKED " + untracked);
-//                boolean ignore = false;
-//                for (String pattern : status.getIgnoredNotInIndex()) {
-//
-//                }
-                if (!callgitcommit || untracked.contains(filepathInGit.toString())) {
+            GitCommitter gc = getGitCommitter(dir);
+            if (gc != null) {
+                if (!callgitcommit || gc.isUntracked(filename)) {
                     // untracked file in git controlled directory
                     System.err.println("Git dir untracked");
                     return 2;
@@ -2784,11 +3047,106 @@ public class ConlluEditor {
         }
     }
 
+    /**
+     * get the (cached) committer of the git repository containing dir
+     *
+     * @return the committer or null if dir is not git controlled
+     */
+    private synchronized GitCommitter getGitCommitter(File dir) throws IOException {
+        if (gitcommitter != null) {
+            FileRepositoryBuilder repositoryBuilder = new FileRepositoryBuilder();
+            repositoryBuilder.findGitDir(dir);
+            File gitdir = repositoryBuilder.getGitDir();
+            if (gitdir != null && gitdir.getAbsoluteFile().toPath().normalize().equals(gitcommitter.getGitDir().getAbsoluteFile().toPath().normalize())) {
+                return gitcommitter;
+            }
+            // another repository (only in tests the output file is not the edited file)
+            gitcommitter.shutdown();
+        }
+        gitcommitter = GitCommitter.open(dir, this);
+        if (gitcommitter != null) {
+            gitcommitter.setMaxdelay(commitdelay);
+            gitcommitter.setMaxedits(commitedits);
+        }
+        return gitcommitter;
+    }
+
+    /** commit what is still queued and close the repository */
+    private void closeGitCommitter() {
+        GitCommitter gc;
+        synchronized (this) {
+            gc = gitcommitter;
+            gitcommitter = null;
+        }
+        if (gc != null) {
+            try {
+                gc.close(); // not while holding the lock, the committer needs it to add files
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * wait until all saved files have been committed
+     */
+    public void flushCommits() throws InterruptedException {
+        GitCommitter gc;
+        synchronized (this) {
+            gc = gitcommitter;
+        }
+        if (gc != null) {
+            gc.flush();
+        }
+    }
+
+    public void setCommitdelay(int commitdelay) {
+        this.commitdelay = commitdelay;
+        if (gitcommitter != null) {
+            gitcommitter.setMaxdelay(commitdelay);
+        }
+    }
+
+    public void setCommitedits(int commitedits) {
+        this.commitedits = commitedits;
+        if (gitcommitter != null) {
+            gitcommitter.setMaxedits(commitedits);
+        }
+    }
+
+    /**
+     * write the file, only the sentences modified since the last save are written if possible
+     */
+    private void save(File f) throws IOException {
+        IncrementalSaver.Mode m = saver.save(f);
+        if ((debug & 0x01) == 1) {
+            System.err.format("Saved %s (%s)\n", f, m);
+        }
+        if (cfile.isLazy() && f.equals(filename)) {
+            // the mapped file has been modified or replaced
+            try {
+                cfile.reload();
+            } catch (ConllException ex) {
+                throw new IOException("Cannot reload saved file: " + ex.getMessage());
+            }
+            lazystats = null;
+        }
+        synchronized (this) {
+            if (queryindex != null) {
+                // the saved file has a new modification time, the old sidecar would be ignored when the file is loaded again
+                queryindex = new QueryIndex(cfile.getSentences());
+                queryindexstale = false;
+                queryindex.save(f);
+            }
+        }
+    }
+
     private synchronized String writeBackup(int currentSentenceId, ConllWord modWord, String editinfo) throws IOException {
         return writeBackup(currentSentenceId, modWord, editinfo, false);
     }
 
     private synchronized String writeBackup(int currentSentenceId, ConllWord modWord, String editinfo, boolean forcesave) throws IOException {
+        saver.modified(currentSentenceId);
         if (!forcesave && (saveafter < 0 || changesSinceSave < saveafter)) {
             return null; // no need to save yet
         }
@@ -2801,34 +3159,11 @@ public class ConlluEditor {
         }
 
         try {
-            //Git git = Git.open(dir);
-            FileRepositoryBuilder repositoryBuilder = new FileRepositoryBuilder();
-            repositoryBuilder.findGitDir(dir);
-            File gitdir = repositoryBuilder.getGitDir();
-            //System.err.println("EEEEEE " + gitdir + " eeee " + dir );
-            if (gitdir != null) {
-                Git git = Git.open(gitdir);
-                Status status = git.status().call();
-
-                // calculer le nom du fichier par rapport du réperoitre .git
-                Path gitdirbase = gitdir.getAbsoluteFile().getParentFile().toPath().normalize();
-                //System.err.println("gitdirbase    " + gitdirbase);
-                //System.err.println("filename      " + filename.toPath().normalize());
-                Path filepathInGit = gitdirbase.relativize(outfilename.toPath().normalize());
-                //System.err.println("IGNORED " + status.getIgnoredNotInIndex());
-                //System.err.println("filenameInGit " + filepathInGit);
-                Set<String> untracked = status.getUntracked();
-                //System.err.println("UNTRACKED " + untracked);
-//                boolean ignore = false;
-//                for (String pattern : status.getIgnoredNotInIndex()) {
-//
-//                }
-                if (!callgitcommit || untracked.contains(filepathInGit.toString())) {
+            GitCommitter gc = getGitCommitter(dir);
+            if (gc != null) {
+                if (!callgitcommit || gc.isUntracked(outfilename)) {
                     String backUpFilename = outfilename + suffix;
-                    //System.err.println("Write ddddd " );
-                    BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(backUpFilename), StandardCharsets.UTF_8));
-                    bw.write(cfile.toString());
-                    bw.close();
+                    save(new File(backUpFilename));
                     System.err.printf("File '%s' not tracked by git\n", backUpFilename);
                     changesSinceSave = 0;
                     return backUpFilename;
@@ -2837,28 +3172,20 @@ public class ConlluEditor {
                     //System.err.format("Tag '%s': '%s' set.", tagname, tagmessage);
                     //return tagname;
                 } else {
-                    BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outfilename), StandardCharsets.UTF_8));
-                    bw.write(cfile.toString());
-                    bw.close();
+                    save(outfilename);
                     changesSinceSave = 0;
-                    git.add().addFilepattern(filepathInGit.toString()).call();
+                    // git add and git commit are done in the background
                     if (modWord == null) {
-                        git.commit().setMessage(String.format("saving %s sentence: %d (%s)", outfilename, currentSentenceId + 1, editinfo)).call();
+                        gc.commit(outfilename, String.format("saving %s sentence: %d (%s)", outfilename, currentSentenceId + 1, editinfo));
                     } else {
-                        //String sentid = "";
-                        //if ()
-                        git.commit().setMessage(String.format("modification: %s sentence %d, word: %d (%s)", outfilename, currentSentenceId + 1, modWord.getId(), editinfo)).call();
+                        gc.commit(outfilename, String.format("modification: %s sentence %d, word: %d (%s)", outfilename, currentSentenceId + 1, modWord.getId(), editinfo));
                     }
-                    System.err.printf("File '%s' committed\n", filepathInGit);
                     return outfilename.toString();
 
                 }
             } else {
                 String backUpFilename = outfilename + suffix;
-                //System.err.println("Write ddddd " );
-                BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(backUpFilename), StandardCharsets.UTF_8));
-                bw.write(cfile.toString());
-                bw.close();
+                save(new File(backUpFilename));
                 changesSinceSave = 0;
                 System.err.printf("Directory '%s' is not a git repository\n", dir);
                 return backUpFilename;
@@ -2944,6 +3271,27 @@ public class ConlluEditor {
                 .build();
         options.addOption(saveAfter);
 
+        Option commitdelay = Option.builder().longOpt("commitDelay")
+                .argName("milliseconds")
+                .hasArg()
+                .desc("saves within this time are committed together (default 1000)")
+                .build();
+        options.addOption(commitdelay);
+
+        Option commitedits = Option.builder().longOpt("commitEdits")
+                .argName("int")
+                .hasArg()
+                .desc("maximal number of saves committed together (default 20)")
+                .build();
+        options.addOption(commitedits);
+
+        Option threads = Option.builder().longOpt("threads")
+                .argName("int")
+                .hasArg()
+                .desc("number of threads handling HTTP requests (default: number of processors, 0: one thread)")
+                .build();
+        options.addOption(threads);
+
         Option shortcuttimeout = Option.builder("T").longOpt("shortcutTimeout")
                 .argName("milliseconds")
                 .hasArg()
@@ -2951,6 +3299,20 @@ public class ConlluEditor {
                 .build();
         options.addOption(shortcuttimeout);
 
+        Option validationrules = Option.builder().longOpt("validationRules")
+                .argName("file")
+                .hasArg()
+                .desc("file with validation rules (condition == condition) checked by the in-process validation")
+                .build();
+        options.addOption(validationrules);
+
+        Option undodepth = Option.builder().longOpt("undoDepth")
+                .argName("number")
+                .hasArg()
+                .desc("maximal number of modifications which can be undone per sentence (default 1000)")
+                .build();
+        options.addOption(undodepth);
+
         Option verbosity = Option.builder().longOpt("verb")
                 .argName("hex")
                 .hasArg()
@@ -2990,6 +3352,13 @@ public class ConlluEditor {
                 .build();
         options.addOption(compare);
 
+        Option lazy = Option.builder().longOpt("lazy")
+                .argName("int")
+                .hasArg()
+                .desc("for very big files: parse sentences only when needed, keeping at most n unmodified sentences in memory")
+                .build();
+        options.addOption(lazy);
+
         Option uiconfig = Option.builder("u").longOpt("uiconfig")
                 .argName("file")
                 .hasArg()
@@ -3014,7 +3383,15 @@ public class ConlluEditor {
                 throw new ParseException("missing CoNLL-U-filename and/or port number");
             }
 
-            ConlluEditor ce = new ConlluEditor(line.getArgList().get(0), line.hasOption(overwrite));
+            int lazycache = 0;
+            if (line.hasOption(lazy)) {
+                lazycache = Integer.parseInt(line.getOptionValue(lazy));
+                if (lazycache <= 0) {
+                    throw new ParseException("Invalid value for option --lazy. Must be positive integer");
+                }
+            }
+
+            ConlluEditor ce = new ConlluEditor(line.getArgList().get(0), line.hasOption(overwrite), lazycache);
 
             if (line.hasOption(uiconfig)) {
                 ce.setUIConfig(line.getOptionValue(uiconfig));
@@ -3040,6 +3417,10 @@ public class ConlluEditor {
                 ce.setShortcuts(line.getOptionValue(shortcuts));
             }
 
+            if (line.hasOption(validationrules)) {
+                ce.setValidationRules(line.getOptionValue(validationrules));
+            }
+
             String savea = line.getOptionValue(saveAfter);
 
             if (savea != null) {
@@ -3050,6 +3431,24 @@ public class ConlluEditor {
                 }
             }
 
+            String cd = line.getOptionValue(commitdelay);
+            if (cd != null) {
+                if (Integer.parseInt(cd) >= 0) {
+                    ce.setCommitdelay(Integer.parseInt(cd));
+                } else {
+                    System.err.println("Invalid value for option --commitDelay. Must be positive integer");
+                }
+            }
+
+            String cedits = line.getOptionValue(commitedits);
+            if (cedits != null) {
+                if (Integer.parseInt(cedits) > 0) {
+                    ce.setCommitedits(Integer.parseInt(cedits));
+                } else {
+                    System.err.println("Invalid value for option --commitEdits. Must be positive integer");
+                }
+            }
+
             String scto = line.getOptionValue(shortcuttimeout);
             if (scto != null) {
                 if (Integer.parseInt(scto) > 0) {
@@ -3059,6 +3458,15 @@ public class ConlluEditor {
                 }
             }
 
+            String ud = line.getOptionValue(undodepth);
+            if (ud != null) {
+                if (Integer.parseInt(ud) > 0) {
+                    ce.setUndoDepth(Integer.parseInt(ud));
+                } else {
+                    System.err.println("Invalid value for option --undoDepth. Must be positive integer");
+                }
+            }
+
             int debug = 0x0d;
             if (line.hasOption(verbosity)) {
                 debug = Integer.parseInt(line.getOptionValue(verbosity), 16);
@@ -3080,9 +3488,17 @@ public class ConlluEditor {
                 ce.setMode(mode);
             }
 
+            int httpthreads = ServeurHTTP.DEFAULT_THREADS;
+            if (line.hasOption(threads)) {
+                httpthreads = Integer.parseInt(line.getOptionValue(threads));
+                if (httpthreads < 0) {
+                    throw new ParseException("Invalid value for option --threads. Must be positive integer or 0");
+                }
+            }
+
             int port = Integer.parseInt(line.getArgList().get(1));
             // ServeurHTTP sh =
-            new ServeurHTTP(port, ce, line.getOptionValue(rootdir), debug, false);
+            new ServeurHTTP(port, ce, line.getOptionValue(rootdir), debug, false, httpthreads);
         } catch (ParseException e) {
             // oops, something went wrong
             //System.err.println("Command line error: " + exp.getMessage());
@@ -0,0 +1,303 @@
+/* This library is under the 3-Clause BSD License
+
+ Copyright (c) 2018-2026, Orange S.A.
+
+ Redistribution and use in source and binary forms, with or without modification,
+ are permitted provided that the following conditions are met:
+
+ 1. Redistributions of source code must retain the above copyright notice,
+ this list of conditions and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright notice,
+ this list of conditions and the following disclaimer in the documentation
+ and/or other materials provided with the distribution.
+
+ 3. Neither the name of the copyright holder nor the names of its contributors
+ may be used to endorse or promote products derived from this software without
+ specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ @author Johannes Heinecke
+ @version 2.34.0 as of 18th October 2026
+*/
+package com.orange.labs.editor;
+
+import com.google.gson.JsonObject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.api.AddCommand;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+
+/**
+ * commits saved files in a background thread, so that saving does not wait for git.
+ * Saves which arrive within maxdelay milliseconds (at most maxedits saves) are committed together.
+ * The Git handle is opened once and kept.
+ *
+ * @author Johannes Heinecke <johannes.heinecke@orange.com>
+ */
+public class GitCommitter {
+
+    private final Git git;
+    private final Path workdir; // directory which contains .git
+    private final Object lock; // held while adding a file, the editor holds it while writing files
+    private final Set<String> tracked; // files known to be tracked by git
+    private final LinkedBlockingQueue<Event> queue;
+    private Thread worker = null;
+
+    private int maxdelay = 1000; // ms to wait for further saves before committing
+    private int maxedits = 20; // commit latest after so many saves
+
+    // statistics
+    private int pending = 0; // saves not yet committed
+    private long commits = 0;
+    private long committededits = 0;
+    private long errors = 0;
+    private long lastlatency = 0; // ms between the first save of a commit and the end of the commit
+    private long maxlatency = 0;
+    private long totalcommittime = 0; // ms spent in git add and git commit
+
+    private static final Event STOP = new Event(null, null);
+
+    private static class Event {
+        final String path;
+        final String message;
+        final long time;
+
+        Event(String path, String message) {
+            this.path = path;
+            this.message = message;
+            time = System.currentTimeMillis();
+        }
+    }
+
+    private GitCommitter(File gitdir, Object lock) throws IOException {
+        git = Git.open(gitdir);
+        workdir = gitdir.getAbsoluteFile().getParentFile().toPath().normalize();
+        this.lock = lock;
+        tracked = new HashSet<>();
+        queue = new LinkedBlockingQueue<>();
+    }
+
+    /**
+     * get a committer for the git repository containing dir
+     *
+     * @param dir directory
+     * @param lock object to synchronise with while files are added
+     * @return the committer or null if dir is not in a git repository
+     */
+    public static GitCommitter open(File dir, Object lock) throws IOException {
+        FileRepositoryBuilder repositoryBuilder = new FileRepositoryBuilder();
+        repositoryBuilder.findGitDir(dir);
+        File gitdir = repositoryBuilder.getGitDir();
+        if (gitdir == null) {
+            return null;
+        }
+        return new GitCommitter(gitdir, lock);
+    }
+
+    public File getGitDir() {
+        return git.getRepository().getDirectory();
+    }
+
+    public void setMaxdelay(int maxdelay) {
+        this.maxdelay = maxdelay;
+    }
+
+    public void setMaxedits(int maxedits) {
+        this.maxedits = maxedits;
+    }
+
+    /** path of a file relative to the working directory of the repository */
+    public String relativize(File f) {
+        return workdir.relativize(f.toPath().normalize()).toString();
+    }
+
+    /**
+     * check whether a file is untracked. Only the status of this file is checked and a file found
+     * to be tracked is not checked again
+     */
+    public boolean isUntracked(File f) throws GitAPIException {
+        String path = relativize(f);
+        synchronized (tracked) {
+            if (tracked.contains(path)) {
+                return false;
+            }
+        }
+        Set<String> untracked = git.status().addPath(path).call().getUntracked();
+        if (untracked.contains(path)) {
+            return true;
+        }
+        synchronized (tracked) {
+            tracked.add(path);
+        }
+        return false;
+    }
+
+    /**
+     * queue a commit of a saved file
+     *
+     * @param f the saved file
+     * @param message commit message
+     */
+    public synchronized void commit(File f, String message) {
+        if (worker == null) {
+            worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    work();
+                }
+            }, "git-committer");
+            worker.setDaemon(true);
+            worker.start();
+        }
+        pending++;
+        queue.add(new Event(relativize(f), message));
+    }
+
+    private void work() {
+        try {
+            while (true) {
+                Event first = queue.take();
+                if (first == STOP) {
+                    break;
+                }
+                List<Event> batch = new ArrayList<>();
+                batch.add(first);
+                boolean stop = false;
+                while (batch.size() < maxedits) {
+                    long wait = first.time + maxdelay - System.currentTimeMillis();
+                    Event e = queue.poll(Math.max(wait, 0), TimeUnit.MILLISECONDS);
+                    if (e == null) {
+                        break;
+                    }
+                    if (e == STOP) {
+                        stop = true;
+                        break;
+                    }
+                    batch.add(e);
+                }
+                commitBatch(batch);
+                if (stop) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        git.close();
+    }
+
+    private void commitBatch(List<Event> batch) {
+        long start = System.currentTimeMillis();
+        Set<String> paths = new LinkedHashSet<>();
+        StringBuilder message = new StringBuilder();
+        if (batch.size() == 1) {
+            message.append(batch.get(0).message);
+        } else {
+            message.append(String.format("%d modifications\n\n", batch.size()));
+            for (Event e : batch) {
+                message.append(e.message).append('\n');
+            }
+        }
+        for (Event e : batch) {
+            paths.add(e.path);
+        }
+
+        try {
+            synchronized (lock) {
+                AddCommand add = git.add();
+                for (String p : paths) {
+                    add.addFilepattern(p);
+                }
+                add.call();
+            }
+            git.commit().setMessage(message.toString()).call();
+            System.err.printf("File '%s' committed (%d edits)\n", String.join("', '", paths), batch.size());
+        } catch (GitAPIException | RuntimeException ex) {
+            // JGitInternalException (e.g. .git/index locked by another git process) must not stop the worker
+            System.err.println("GIT ERROR: " + ex.getMessage());
+            synchronized (this) {
+                errors++;
+            }
+        }
+
+        long end = System.currentTimeMillis();
+        synchronized (this) {
+            commits++;
+            committededits += batch.size();
+            lastlatency = end - batch.get(0).time;
+            if (lastlatency > maxlatency) {
+                maxlatency = lastlatency;
+            }
+            totalcommittime += end - start;
+            pending -= batch.size();
+            notifyAll();
+        }
+    }
+
+    /** wait until all queued saves are committed */
+    public synchronized void flush() throws InterruptedException {
+        while (pending > 0) {
+            wait();
+        }
+    }
+
+    /** commit all queued saves and stop the worker thread, without waiting */
+    public void shutdown() {
+        Thread w;
+        synchronized (this) {
+            w = worker;
+            worker = null;
+        }
+        if (w != null) {
+            queue.add(STOP); // the worker closes the repository
+        } else {
+            git.close();
+        }
+    }
+
+    /** commit all queued saves, stop the worker thread and wait until it has finished */
+    public void close() throws InterruptedException {
+        Thread w;
+        synchronized (this) {
+            w = worker;
+        }
+        shutdown();
+        if (w != null) {
+            w.join();
+        }
+    }
+
+    /** latency and queue statistics */
+    public synchronized JsonObject getStats() {
+        JsonObject stats = new JsonObject();
+        stats.addProperty("queue", pending);
+        stats.addProperty("commits", commits);
+        stats.addProperty("committed_edits", committededits);
+        stats.addProperty("errors", errors);
+        stats.addProperty("last_latency_ms", lastlatency);
+        stats.addProperty("max_latency_ms", maxlatency);
+        stats.addProperty("mean_commit_ms", commits == 0 ? 0 : totalcommittime / commits);
+        return stats;
+    }
+}
@@ -1,6 +1,6 @@
 /** This library is under the 3-Clause BSD License
 
-Copyright (c) 2018, Orange S.A.
+Copyright (c) 2018-2026, Orange S.A.
 
 Redistribution and use in source and binary forms, with or without modification,
 are permitted provided that the following conditions are met:
@@ -28,99 +28,228 @@ are permitted provided that the following conditions are met:
  THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
  @author Johannes Heinecke
- @version 1.0 as of 5th November 2018
+ @version 2.34.0 as of 18th October 2026
 */
 
 package com.orange.labs.editor;
 
+import com.orange.labs.conllparser.ConllException;
 import com.orange.labs.conllparser.ConllSentence;
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.UnaryOperator;
 
 /**
+ * undo/redo history of the sentences of the edited file. Each sentence has its own history
+ * which is kept when another sentence is displayed.
+ * Instead of copies of the sentence, we store for every modification only the CoNLL-U lines
+ * (comments and words) which have changed. The lines of the whole sentence are only kept between add()
+ * and the moment the modification is recorded, i.e. when the sentence is used again by add(), undo() or redo().
+ * add() must be called before a sentence is modified. If a sentence is modified without add(),
+ * its history is lost.
  *
  * @author Johannes Heinecke <johannes.heinecke@orange.com>
  */
 public class History {
-    Deque<ConllSentence> history; // last n sentences
-    Deque<ConllSentence> future; // next sentences (filled during undo)
-    final boolean debug = false;
-    int size;
-
-    public History(int size) {
-        this.size = size;
-        history = new ArrayDeque<>();
-        future = new ArrayDeque<>();
+    private final Map<Integer, Versions> sentences; // sentence number: history of the sentence
+    private final int depth; // maximal number of undos per sentence
+
+    public History(int depth) {
+        this.depth = depth;
+        sentences = new HashMap<>();
     }
 
-    public void add(ConllSentence cs) {
-        // add new sentence, if we arrive at size, we kill the oldest entry
-        history.addLast(new ConllSentence(cs));
-        if (history.size() > size) history.pollFirst();
-        // we also empty future
-        future.clear();
-        if (debug) {
-            System.err.println("ADDED " + cs);
-            System.err.println("H: " + history.size());
-            listwords(history);
-            System.err.println("F: " + future.size());
-            listwords(future);
+    /** sentence cs (number sn) is going to be modified */
+    public synchronized void add(int sn, ConllSentence cs) {
+        Versions v = sentences.get(sn);
+        if (v == null) {
+            v = new Versions(cs);
+            sentences.put(sn, v);
+        } else {
+            v.update(cs);
+        }
+        v.start(cs);
+    }
+
+    /** sentence sn has not been modified after add() */
+    public synchronized void cancel(int sn) {
+        Versions v = sentences.get(sn);
+        if (v != null) {
+            if (v.past.isEmpty() && v.future.isEmpty()) {
+                sentences.remove(sn);
+            } else {
+                v.before = null;
+            }
         }
     }
 
     /** returns true if an undo is possible */
-    public boolean canUndo() {
-        return !history.isEmpty();
+    public synchronized boolean canUndo(int sn) {
+        Versions v = sentences.get(sn);
+        return v != null && (v.before != null || !v.past.isEmpty());
     }
 
-    public boolean canRedo() {
-        return !future.isEmpty();
+    public synchronized boolean canRedo(int sn) {
+        Versions v = sentences.get(sn);
+        return v != null && !v.future.isEmpty();
     }
 
+    /**
+     * get the preceding version of sentence sn
+     *
+     * @param current the sentence sn as it is now
+     * @return the preceding version or null
+     */
+    public synchronized ConllSentence undo(int sn, ConllSentence current, Map<String, Integer> columndefs) throws ConllException {
+        Versions v = sentences.get(sn);
+        if (v == null) {
+            return null;
+        }
+        v.update(current);
+        if (v.past.isEmpty()) {
+            return null;
+        }
+        Delta d = v.past.pollLast();
+        v.future.addLast(d);
+        return v.sentence(current, columndefs, d::revert);
+    }
 
-    /** get before last version and move last version to future */
-    public ConllSentence undo(ConllSentence current) {
-        if (!history.isEmpty()) {
-            ConllSentence last = history.pollLast();
+    /** get the version of sentence sn before the last undo, or null */
+    public synchronized ConllSentence redo(int sn, ConllSentence current, Map<String, Integer> columndefs) throws ConllException {
+        Versions v = sentences.get(sn);
+        if (v == null) {
+            return null;
+        }
+        v.update(current);
+        if (v.future.isEmpty()) {
+            return null;
+        }
+        Delta d = v.future.pollLast();
+        v.past.addLast(d);
+        return v.sentence(current, columndefs, d::apply);
+    }
 
-            future.addLast(current);
-            if (future.size() > size) future.pollFirst();
+    /** forget the history of sentence sn */
+    public synchronized void remove(int sn) {
+        sentences.remove(sn);
+    }
 
-            if (debug) {
-                System.err.println("UNDONE to " + last);
-                System.err.println("H: " + history.size());
-                listwords(history);
-                System.err.println("F: " + future.size());
-                listwords(future);
+    /** sentences have been inserted (delta > 0) or deleted (delta < 0) before sentence number from */
+    public synchronized void shift(int from, int delta) {
+        Map<Integer, Versions> shifted = new HashMap<>();
+        for (Map.Entry<Integer, Versions> e : sentences.entrySet()) {
+            if (e.getKey() >= from) {
+                shifted.put(e.getKey() + delta, e.getValue());
+            } else {
+                shifted.put(e.getKey(), e.getValue());
             }
-            return last;
         }
-        return null;
+        sentences.clear();
+        sentences.putAll(shifted);
     }
 
-     public ConllSentence redo() {
-         if (!future.isEmpty()) {
-            ConllSentence cs = future.pollLast();
-            ConllSentence csforundo = new ConllSentence(cs);
-            history.addLast(csforundo);
-            if (debug) {
-                System.err.println("UNDONE to " + cs);
-                System.err.println("H: " + history.size());
-                listwords(history);
-                System.err.println("F: " + future.size());
-                listwords(future);
+    /** history of one sentence */
+    private class Versions {
+        String[] before = null; // CoNLL-U lines before the modification, null if no modification is pending
+        int version; // modification counter of the sentence when the history was last updated
+        int hash; // hash code of the sentence when the history was last updated
+        Deque<Delta> past = new ArrayDeque<>();
+        Deque<Delta> future = new ArrayDeque<>(); // filled by undo
+
+        Versions(ConllSentence cs) {
+            version = cs.getLastModification();
+        }
+
+        /** sentence cs is going to be modified, keep its lines until the modification is recorded */
+        void start(ConllSentence cs) {
+            String text = cs.toString();
+            before = text.split("\n");
+            hash = text.hashCode();
+            future.clear();
+        }
+
+        /** record the modifications since start() */
+        void update(ConllSentence cs) {
+            if (before == null && cs.getLastModification() == version) {
+                return;
             }
+            String text = cs.toString();
+            if (before != null) {
+                Delta d = Delta.diff(before, text.split("\n"));
+                if (d != null) {
+                    past.addLast(d);
+                    if (past.size() > depth) {
+                        past.pollFirst();
+                    }
+                }
+                before = null;
+            } else if (text.hashCode() != hash) {
+                // modified without add(): the stored modifications do not fit the sentence any more
+                past.clear();
+                future.clear();
+            }
+            hash = text.hashCode();
+            version = cs.getLastModification();
+        }
+
+        /** parse the lines of the current sentence after applying change to them */
+        ConllSentence sentence(ConllSentence current, Map<String, Integer> columndefs, UnaryOperator<String[]> change) throws ConllException {
+            String text = String.join("\n", change.apply(current.toString().split("\n"))) + "\n";
+            ConllSentence cs = new ConllSentence(text, columndefs);
+            hash = cs.toString().hashCode();
+            version = cs.getLastModification();
             return cs;
-         }
-         return null;
-     }
+        }
+    }
+
+    /** lines replaced by a modification */
+    private static class Delta {
+        final int start; // first modified line
+        final String[] before;
+        final String[] after;
+
+        private Delta(int start, String[] before, String[] after) {
+            this.start = start;
+            this.before = before;
+            this.after = after;
+        }
 
-    private void listwords(Deque<ConllSentence> d) {
-        int i = 0;
-        for (ConllSentence cs : d) {
+        /** find the lines between the common beginning and the common end of a and b, null if a and b are identical */
+        static Delta diff(String[] a, String[] b) {
+            int start = 0;
+            while (start < a.length && start < b.length && a[start].equals(b[start])) {
+                start++;
+            }
+            if (start == a.length && start == b.length) {
+                return null;
+            }
+            int end = 0;
+            while (end < a.length - start && end < b.length - start
+                    && a[a.length - 1 - end].equals(b[b.length - 1 - end])) {
+                end++;
+            }
+            return new Delta(start,
+                    Arrays.copyOfRange(a, start, a.length - end),
+                    Arrays.copyOfRange(b, start, b.length - end));
+        }
+
+        String[] revert(String[] lines) {
+            return replace(lines, after.length, before);
+        }
+
+        String[] apply(String[] lines) {
+            return replace(lines, before.length, after);
+        }
 
-            System.err.println(i + " " + cs.getWord(1));
-            i++;
+        private String[] replace(String[] lines, int removed, String[] added) {
+            String[] res = new String[lines.length - removed + added.length];
+            System.arraycopy(lines, 0, res, 0, start);
+            System.arraycopy(added, 0, res, start, added.length);
+            System.arraycopy(lines, start + removed, res, start + added.length, lines.length - start - removed);
+            return res;
         }
     }
 }
@@ -0,0 +1,228 @@
+/* This library is under the 3-Clause BSD License
+
+ Copyright (c) 2018-2026, Orange S.A.
+
+ Redistribution and use in source and binary forms, with or without modification,
+ are permitted provided that the following conditions are met:
+
+ 1. Redistributions of source code must retain the above copyright notice,
+ this list of conditions and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright notice,
+ this list of conditions and the following disclaimer in the documentation
+ and/or other materials provided with the distribution.
+
+ 3. Neither the name of the copyright holder nor the names of its contributors
+ may be used to endorse or promote products derived from this software without
+ specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ @author Johannes Heinecke
+ @version 2.34.0 as of 18th October 2026
+*/
+package com.orange.labs.editor;
+
+import com.orange.labs.conllparser.ConllFile;
+import com.orange.labs.conllparser.ConllSentence;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * saves the edited file. The saver remembers where each sentence starts in the file it has written,
+ * so that the next time only the modified sentences must be written: in place, if they have the same length,
+ * otherwise the unmodified parts of the old file are copied into a new file together with the modified sentences.
+ * If sentences have been added or deleted, or if the file has been changed by someone else, the whole file is written.
+ * New files are written to a temporary file which replaces the old file once it is complete.
+ *
+ * @author Johannes Heinecke <johannes.heinecke@orange.com>
+ */
+public class IncrementalSaver {
+
+    public enum Mode {
+        FULL, SPLICE, INPLACE
+    };
+
+    private final ConllFile cfile;
+    private final Set<Integer> dirty; // sentences modified since the last save
+    private boolean structurechanged = false; // sentences added or deleted since the last save
+
+    // state of the last saved file
+    private File savedfile = null;
+    private long[] offsets = null; // offsets[i]: first byte of sentence i, offsets[n]: size of the file
+    private long savedsize = -1;
+    private long savedtime = -1;
+
+    public IncrementalSaver(ConllFile cfile) {
+        this.cfile = cfile;
+        dirty = new TreeSet<>();
+    }
+
+    /** sentence sn has been modified */
+    public synchronized void modified(int sn) {
+        dirty.add(sn);
+    }
+
+    /** sentences have been added or deleted */
+    public synchronized void structureChanged() {
+        structurechanged = true;
+    }
+
+    /**
+     * write all sentences to file f
+     *
+     * @return the way the file has been written
+     */
+    public synchronized Mode save(File f) throws IOException {
+        Mode m;
+        if (!canSaveIncrementally(f)) {
+            writeFull(f);
+            m = Mode.FULL;
+        } else if (dirty.isEmpty()) {
+            m = Mode.INPLACE; // nothing to do
+        } else {
+            List<byte[]> modified = new ArrayList<>();
+            boolean samesize = true;
+            for (int sn : dirty) {
+                byte[] b = cfile.getSentences().get(sn).toString().getBytes(StandardCharsets.UTF_8);
+                modified.add(b);
+                if (b.length != offsets[sn + 1] - offsets[sn]) {
+                    samesize = false;
+                }
+            }
+            if (samesize) {
+                writeInPlace(f, modified);
+                m = Mode.INPLACE;
+            } else {
+                writeSpliced(f, modified);
+                m = Mode.SPLICE;
+            }
+        }
+        dirty.clear();
+        structurechanged = false;
+        savedfile = f;
+        savedsize = f.length();
+        savedtime = f.lastModified();
+        return m;
+    }
+
+    /** the file we wrote last time is still unchanged and contains the same sentences */
+    private boolean canSaveIncrementally(File f) {
+        return !structurechanged
+                && offsets != null
+                && f.equals(savedfile)
+                && offsets.length == cfile.getSentences().size() + 1
+                && f.length() == savedsize
+                && f.lastModified() == savedtime;
+    }
+
+    private void writeFull(File f) throws IOException {
+        List<ConllSentence> sentences = cfile.getSentences();
+        long[] newoffsets = new long[sentences.size() + 1];
+        File tmp = new File(f.getPath() + ".tmp");
+        long pos;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp))) {
+            byte[] header = cfile.getColDefString().getBytes(StandardCharsets.UTF_8);
+            out.write(header);
+            pos = header.length;
+            int sn = 0;
+            for (ConllSentence cs : sentences) {
+                newoffsets[sn++] = pos;
+                byte[] b = cs.toString().getBytes(StandardCharsets.UTF_8);
+                out.write(b);
+                pos += b.length;
+            }
+            newoffsets[sn] = pos;
+        }
+        replace(tmp, f);
+        offsets = newoffsets;
+    }
+
+    /** all modified sentences have the same length as before: overwrite them */
+    private void writeInPlace(File f, List<byte[]> modified) throws IOException {
+        try (FileChannel fc = FileChannel.open(f.toPath(), StandardOpenOption.WRITE)) {
+            int i = 0;
+            for (int sn : dirty) {
+                ByteBuffer bb = ByteBuffer.wrap(modified.get(i++));
+                long pos = offsets[sn];
+                while (bb.hasRemaining()) {
+                    pos += fc.write(bb, pos);
+                }
+            }
+            fc.force(false);
+        }
+    }
+
+    /** copy the unmodified parts of the old file and the modified sentences into a new file */
+    private void writeSpliced(File f, List<byte[]> modified) throws IOException {
+        long[] newoffsets = new long[offsets.length];
+        File tmp = new File(f.getPath() + ".tmp");
+        try (FileChannel in = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            copy(in, out, 0, offsets[0]); // global.columns
+            long delta = 0; // difference between old and new offsets
+            int next = 0; // first sentence not yet written
+            int i = 0;
+            for (int sn : dirty) {
+                copy(in, out, offsets[next], offsets[sn]);
+                for (int j = next; j < sn; ++j) {
+                    newoffsets[j] = offsets[j] + delta;
+                }
+                byte[] b = modified.get(i++);
+                newoffsets[sn] = offsets[sn] + delta;
+                ByteBuffer bb = ByteBuffer.wrap(b);
+                while (bb.hasRemaining()) {
+                    out.write(bb);
+                }
+                delta += b.length - (offsets[sn + 1] - offsets[sn]);
+                next = sn + 1;
+            }
+            int last = offsets.length - 1;
+            copy(in, out, offsets[next], offsets[last]);
+            for (int j = next; j <= last; ++j) {
+                newoffsets[j] = offsets[j] + delta;
+            }
+            out.force(false);
+        }
+        replace(tmp, f);
+        offsets = newoffsets;
+    }
+
+    private static void copy(FileChannel in, FileChannel out, long from, long to) throws IOException {
+        while (from < to) {
+            from += in.transferTo(from, to - from, out);
+        }
+    }
+
+    /** replace f by the completely written file tmp */
+    private static void replace(File tmp, File f) throws IOException {
+        try {
+            Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
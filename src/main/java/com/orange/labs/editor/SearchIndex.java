@@ -0,0 +1,288 @@
+/* This library is under the 3-Clause BSD License
+
+Copyright (c) 2018-2026, Orange S.A.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+  1. Redistributions of source code must retain the above copyright notice,
+     this list of conditions and the following disclaimer.
+
+  2. Redistributions in binary form must reproduce the above copyright notice,
+     this list of conditions and the following disclaimer in the documentation
+     and/or other materials provided with the distribution.
+
+  3. Neither the name of the copyright holder nor the names of its contributors
+     may be used to endorse or promote products derived from this software without
+     specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ @author Johannes Heinecke
+ @version 2.33.1 as of 18th October 2026
+ */
+package com.orange.labs.editor;
+
+import com.orange.labs.conllparser.ConllFile;
+import com.orange.labs.conllparser.ConllSentence;
+import com.orange.labs.conllparser.ConllWord;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * inverted index over the sentences of the edited file: for every column value
+ * (and every feature name/value) the sorted list of the numbers of the sentences
+ * which contain it. The find* commands use it to jump directly to the
+ * next (or preceding) sentence which can contain a hit, instead of testing every
+ * sentence in between.
+ *
+ * @author Johannes Heinecke <johannes.heinecke@orange.com>
+ */
+public class SearchIndex {
+
+    public enum Column {
+        LEMMA, UPOS, XPOS, DEPREL, SENTID, COMMENT
+    };
+
+    private final ConllFile cfile;
+    private final Map<Column, Map<String, TreeSet<Integer>>> postings; // column: value: sentence numbers
+    private final Map<String, Map<String, TreeSet<Integer>>> features; // feature name: value: sentence numbers
+    // everything a sentence has been indexed with, needed to remove it when the sentence is modified
+    private final List<Map<Column, List<String>>> indexedValues;
+    private final List<List<String[]>> indexedFeatures;
+
+    public SearchIndex(ConllFile cfile) {
+        this.cfile = cfile;
+        postings = new EnumMap<>(Column.class);
+        for (Column c : Column.values()) {
+            postings.put(c, new HashMap<>());
+        }
+        features = new TreeMap<>(String.CASE_INSENSITIVE_ORDER); // like ConllWord.features
+        indexedValues = new ArrayList<>();
+        indexedFeatures = new ArrayList<>();
+        rebuild();
+    }
+
+    /**
+     * (re)index all sentences of the file
+     */
+    public final void rebuild() {
+        for (Map<String, TreeSet<Integer>> p : postings.values()) {
+            p.clear();
+        }
+        features.clear();
+        indexedValues.clear();
+        indexedFeatures.clear();
+        int sn = 0;
+        for (ConllSentence cs : cfile.getSentences()) {
+            indexedValues.add(new EnumMap<>(Column.class));
+            indexedFeatures.add(new ArrayList<>());
+            add(sn++, cs);
+        }
+    }
+
+    /**
+     * update the index after sentence sn has been modified. If sentences have been
+     * added or deleted (sentence split or join), all following sentence numbers have changed,
+     * so we reindex everything
+     *
+     * @param sn number of the modified sentence
+     */
+    public void update(int sn) {
+        if (indexedValues.size() != cfile.getSentences().size()) {
+            rebuild();
+            return;
+        }
+        if (sn < 0 || sn >= indexedValues.size()) {
+            return;
+        }
+        remove(sn);
+        add(sn, cfile.getSentences().get(sn));
+    }
+
+    public int size() {
+        return indexedValues.size();
+    }
+
+    private void add(int sn, ConllSentence cs) {
+        for (ConllWord cw : cs.getWords()) {
+            addValue(sn, Column.LEMMA, cw.getLemma());
+            addValue(sn, Column.UPOS, cw.getUpostag());
+            addValue(sn, Column.XPOS, cw.getXpostag());
+            addValue(sn, Column.DEPREL, cw.getDeplabel());
+            for (Map.Entry<String, String> fv : cw.getFeatures().entrySet()) {
+                addFeature(sn, fv.getKey(), fv.getValue());
+            }
+        }
+        addValue(sn, Column.SENTID, cs.getSentid());
+        addValue(sn, Column.COMMENT, cs.getCommentsStr());
+    }
+
+    private void addValue(int sn, Column col, String value) {
+        if (value == null) {
+            return;
+        }
+        TreeSet<Integer> sents = postings.get(col).get(value);
+        if (sents == null) {
+            sents = new TreeSet<>();
+            postings.get(col).put(value, sents);
+        }
+        if (sents.add(sn)) {
+            List<String> values = indexedValues.get(sn).get(col);
+            if (values == null) {
+                values = new ArrayList<>();
+                indexedValues.get(sn).put(col, values);
+            }
+            values.add(value);
+        }
+    }
+
+    private void addFeature(int sn, String name, String value) {
+        if (value == null) {
+            return;
+        }
+        Map<String, TreeSet<Integer>> vals = features.get(name);
+        if (vals == null) {
+            vals = new HashMap<>();
+            features.put(name, vals);
+        }
+        TreeSet<Integer> sents = vals.get(value);
+        if (sents == null) {
+            sents = new TreeSet<>();
+            vals.put(value, sents);
+        }
+        if (sents.add(sn)) {
+            indexedFeatures.get(sn).add(new String[]{name, value});
+        }
+    }
+
+    private void remove(int sn) {
+        Map<Column, List<String>> cols = indexedValues.get(sn);
+        for (Column col : cols.keySet()) {
+            Map<String, TreeSet<Integer>> p = postings.get(col);
+            for (String value : cols.get(col)) {
+                TreeSet<Integer> sents = p.get(value);
+                sents.remove(sn);
+                if (sents.isEmpty()) {
+                    p.remove(value);
+                }
+            }
+        }
+        cols.clear();
+
+        for (String[] fv : indexedFeatures.get(sn)) {
+            Map<String, TreeSet<Integer>> vals = features.get(fv[0]);
+            TreeSet<Integer> sents = vals.get(fv[1]);
+            sents.remove(sn);
+            if (sents.isEmpty()) {
+                vals.remove(fv[1]);
+                if (vals.isEmpty()) {
+                    features.remove(fv[0]);
+                }
+            }
+        }
+        indexedFeatures.get(sn).clear();
+    }
+
+    /**
+     * get the sentences containing a value of a column which matches a regex (entirely,
+     * like String.matches()).
+     * For Column.SENTID the regex must only match a part of the sentence id (like Matcher.find()),
+     * for Column.COMMENT the regex is ignored, use findComment()
+     */
+    public Hits find(Column col, Pattern regex) {
+        Hits hits = new Hits();
+        for (Map.Entry<String, TreeSet<Integer>> e : postings.get(col).entrySet()) {
+            boolean ok;
+            if (col == Column.SENTID) {
+                ok = regex.matcher(e.getKey()).find();
+            } else {
+                ok = regex.matcher(e.getKey()).matches();
+            }
+            if (ok) {
+                hits.lists.add(e.getValue());
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * get the sentences containing a word with the feature name, whose value matches valregex
+     */
+    public Hits findFeature(String name, Pattern valregex) {
+        Hits hits = new Hits();
+        Map<String, TreeSet<Integer>> vals = features.get(name);
+        if (vals != null) {
+            for (Map.Entry<String, TreeSet<Integer>> e : vals.entrySet()) {
+                if (valregex.matcher(e.getKey()).matches()) {
+                    hits.lists.add(e.getValue());
+                }
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * get the sentences whose comments contain the string
+     */
+    public Hits findComment(String text) {
+        Hits hits = new Hits();
+        for (Map.Entry<String, TreeSet<Integer>> e : postings.get(Column.COMMENT).entrySet()) {
+            if (e.getKey().contains(text)) {
+                hits.lists.add(e.getValue());
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * the posting lists of all values which matched a search
+     */
+    public static class Hits {
+        List<TreeSet<Integer>> lists = new ArrayList<>();
+
+        public Hits() {
+        }
+
+        /** hits found without the index */
+        public Hits(Set<Integer> sents) {
+            lists.add(new TreeSet<>(sents));
+        }
+
+        /**
+         * get the first sentence after (or before) sentence number from, which may contain a hit
+         *
+         * @param from current sentence number
+         * @param backwards if true search the preceding sentence
+         * @return the sentence number or -1 if there is none
+         */
+        public int next(int from, boolean backwards) {
+            int best = -1;
+            for (TreeSet<Integer> sents : lists) {
+                Integer sn = backwards ? sents.lower(from) : sents.higher(from);
+                if (sn != null) {
+                    if (best == -1 || (backwards ? sn > best : sn < best)) {
+                        best = sn;
+                    }
+                }
+            }
+            return best;
+        }
+    }
+}
@@ -1,6 +1,6 @@
 /* This library is under the 3-Clause BSD License
 
-Copyright (c) 2018, Orange S.A.
+Copyright (c) 2018-2026, Orange S.A.
 
 Redistribution and use in source and binary forms, with or without modification,
 are permitted provided that the following conditions are met:
@@ -28,10 +28,12 @@ are permitted provided that the following conditions are met:
  THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
  @author Johannes Heinecke
- @version 1.14.8 as of 28th November 2019
+ @version 2.34.0 as of 18th October 2026
  */
 package com.orange.labs.editor;
 
+import com.orange.labs.conllparser.ConllException;
+import com.orange.labs.conllparser.ConllFile;
 import com.orange.labs.conllparser.ConllSentence;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
@@ -42,15 +44,38 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Validation wrapper, to call an (external) validation script with one CoNLL-U sentence
+ * Validation wrapper, to call an (external) validation script with one CoNLL-U sentence (or several).
+ * If the configuration contains a "worker:" command, the validator programmes are started once and
+ * kept running (as many as "workers:"). They read the sentences to validate on stdin and write the results on stdout:
+ * <pre>
+ * request:  VALIDATE n   followed by n CoNLL-U lines
+ * response: RESULT m     followed by m lines of validation output
+ * </pre>
+ * A worker which does not answer within "timeout:" seconds, or which dies, is restarted for the next request.
  * @author Johannes Heinece <johannes dot heinecke at orange point com>
  */
 public class Validator {
     String validationcommand;
+    String workercommand = null; // persistent validator processes
+    int workers = 2;
+    int timeout = 30; // seconds
     boolean readStdout = true;
     boolean readStderr = true;
+    private BlockingQueue<Worker> idle = null; // workers waiting for a request
+    private List<Worker> all = null; // all workers, idle or busy
+    private volatile boolean closed = false;
+
+    private static final Object EOF = new Object(); // the worker process has terminated
 
     public Validator(String conffile) {
         try {
@@ -69,6 +94,22 @@ public class Validator {
                         } else {
                             System.err.format("Validator ERROR: \"script:\" value does not contain \"{FILE}\"\n");
                         }
+                    } else if (elems[0].equals("worker")) {
+                        workercommand = elems[1].trim();
+                    } else if (elems[0].equals("workers") || elems[0].equals("timeout")) {
+                        try {
+                            int val = Integer.parseInt(elems[1].trim());
+                            if (val <= 0) {
+                                throw new NumberFormatException();
+                            }
+                            if (elems[0].equals("workers")) {
+                                workers = val;
+                            } else {
+                                timeout = val;
+                            }
+                        } catch (NumberFormatException e) {
+                            System.err.format("Validator ERROR: \"%s:\" must be a positive integer <%s>\n", elems[0], line);
+                        }
                     }
 //                        else if (elems[0].equals("stdout")) {
 //                            if (elems[1].equals("true") || elems[1].equals("yes") ) {
@@ -90,45 +131,199 @@ public class Validator {
         } catch (IOException ex) {
             System.err.format("Validator ERROR: Cannot load validation configuration: %s: %s\n", conffile, ex.getMessage());
         }
-        System.err.println("Validation command: " + validationcommand);
+        if (workercommand != null) {
+            idle = new ArrayBlockingQueue<>(workers);
+            all = new ArrayList<>();
+            for (int i = 0; i < workers; ++i) {
+                all.add(new Worker());
+            }
+            idle.addAll(all);
+            System.err.format("Validation workers: %d x %s\n", workers, workercommand);
+        } else {
+            System.err.println("Validation command: " + validationcommand);
+        }
     }
 
     public String validate(ConllSentence cs) throws IOException, InterruptedException {
+        return validate(Collections.singletonList(cs));
+    }
+
+    /**
+     * validate several sentences (e.g. all sentences of a file) with a single call of the validator
+     *
+     * @return the output of the validator
+     */
+    public String validate(List<ConllSentence> sentences) throws IOException, InterruptedException {
+        if (idle != null) {
+            Worker w = idle.take();
+            try {
+                return w.validate(sentences);
+            } finally {
+                idle.add(w);
+            }
+        }
+
         if (validationcommand == null) return "Validator ERROR: bad initialisation";
         File f = File.createTempFile("ce_", ".conllu");
-        FileOutputStream fos = new FileOutputStream(f);
-        BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(fos, StandardCharsets.UTF_8));
-        bw.append(cs.toString());
-        bw.close();
+        File out = File.createTempFile("ce_", ".out");
+        try {
+            BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f), StandardCharsets.UTF_8));
+            for (ConllSentence cs : sentences) {
+                bw.append(cs.toString());
+            }
+            bw.close();
+
+            ProcessBuilder pb = new ProcessBuilder(validationcommand.replace("{FILE}", f.getAbsolutePath()).split("\\s+"))
+                    .redirectErrorStream(true)
+                    .redirectOutput(out);
+            Process validationprocess = pb.start();
 
-        // TODO: add timeout
-        ProcessBuilder pb = new ProcessBuilder(validationcommand.replace("{FILE}", f.getAbsolutePath()).split("\\s+"))
-                .redirectErrorStream(true);
-        Process validationprocess = pb.start();
+            StringBuilder sb = new StringBuilder();
+            boolean exitednormally = validationprocess.waitFor(timeout, TimeUnit.SECONDS);
+            if (!exitednormally) {
+                validationprocess.destroyForcibly();
+                validationprocess.waitFor();
+            }
+            for (String line : Files.readAllLines(out.toPath(), StandardCharsets.UTF_8)) {
+                sb.append(line);
+                sb.append(System.getProperty("line.separator"));
+            }
+            if (!exitednormally) {
+                sb.append("Validation process killed after timeout of " + timeout + " seconds");
+            }
+            return sb.toString();
+        } finally {
+            f.delete();
+            out.delete();
+        }
+    }
+
+    /** stop all worker processes, also those which are validating. Workers are not restarted afterwards */
+    public void close() {
+        closed = true;
+        if (all != null) {
+            for (Worker w : all) {
+                w.stop();
+            }
+        }
+    }
+
+    /** a persistent validator process, (re)started when needed */
+    private class Worker {
+        Process process = null;
+        BufferedWriter in;
+        BlockingQueue<Object> results; // responses (String) or EOF
+
+        private synchronized void start() throws IOException {
+            ProcessBuilder pb = new ProcessBuilder(workercommand.split("\\s+"))
+                    .redirectError(ProcessBuilder.Redirect.INHERIT);
+            process = pb.start();
+            in = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+            final BufferedReader br = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+            final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+            results = queue;
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    readResults(br, queue);
+                }
+            }, "validator-worker");
+            reader.setDaemon(true);
+            reader.start();
+        }
 
+        private synchronized void stop() {
+            if (process != null) {
+                // children of the worker may keep its stdout open
+                process.descendants().forEach(ProcessHandle::destroyForcibly);
+                process.destroyForcibly();
+                process = null;
+                results.add(EOF); // a request waiting for the answer returns at once
+            }
+        }
 
-        StringBuilder sb = new StringBuilder();
-        String line = null;
+        String validate(List<ConllSentence> sentences) throws IOException, InterruptedException {
+            synchronized (this) {
+                if (closed) {
+                    return "Validator ERROR: validator closed";
+                }
+                if (process == null || !process.isAlive()) {
+                    stop();
+                    start();
+                }
+            }
+            List<String> lines = new ArrayList<>();
+            for (ConllSentence cs : sentences) {
+                Collections.addAll(lines, cs.toString().split("\n", -1));
+                lines.remove(lines.size() - 1); // toString() ends with a newline
+            }
+            results.clear();
+            try {
+                in.write("VALIDATE " + lines.size() + "\n");
+                for (String line : lines) {
+                    in.write(line);
+                    in.write('\n');
+                }
+                in.flush();
+            } catch (IOException e) {
+                stop();
+                return "Validation process terminated unexpectedly: " + e.getMessage();
+            }
 
-        //BufferedReader br =  new BufferedReader(new InputStreamReader(val.getErrorStream()));
-        BufferedReader br =  new BufferedReader(new InputStreamReader(validationprocess.getInputStream()));
-        while ( (line = br.readLine()) != null) {
-            sb.append(line);
-            sb.append(System.getProperty("line.separator"));
+            Object res = results.poll(timeout, TimeUnit.SECONDS);
+            if (res instanceof String) {
+                return (String) res;
+            }
+            stop();
+            if (res == null) {
+                return "Validation process killed after timeout of " + timeout + " seconds";
+            }
+            return "Validation process terminated unexpectedly";
         }
+    }
 
+    /** read the RESULT blocks written by a worker */
+    private static void readResults(BufferedReader br, BlockingQueue<Object> queue) {
+        try {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (!line.startsWith("RESULT ")) {
+                    continue; // not part of a response
+                }
+                int n = Integer.parseInt(line.substring(7).trim());
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < n; ++i) {
+                    line = br.readLine();
+                    if (line == null) {
+                        break;
+                    }
+                    sb.append(line);
+                    sb.append(System.getProperty("line.separator"));
+                }
+                if (line == null) {
+                    break;
+                }
+                queue.add(sb.toString());
+            }
+        } catch (IOException | NumberFormatException e) {
+            // the process is dead or does not respect the protocol
+        }
+        queue.add(EOF);
+    }
 
-//        System.err.println("zzzzzz");
-//        boolean exitednormally = validationprocess.waitFor(10, TimeUnit.SECONDS);  // let the process run for 5 seconds
-//        validationprocess.destroy();                     // tell the process to stop
-//        boolean killed = validationprocess.waitFor(10, TimeUnit.SECONDS); // give it a chance to stop
-//        validationprocess.destroyForcibly();             // tell the OS to kill the process
-//        validationprocess.waitFor();
-//
-//        if (killed) sb.append("Validation process killed after timeout of 20 seconds");
-//        else if (!exitednormally) sb.append("Validation process terminated after timeout of 10 seconds");
-//
-        f.delete();
-        return sb.toString();
+    public static void main(String args[]) {
+        if (args.length != 2) {
+            System.err.println("usage: Validator <validator configuration> <file.conllu>");
+        } else {
+            Validator validator = new Validator(args[0]);
+            try {
+                ConllFile cf = new ConllFile(new File(args[1]), null);
+                System.out.print(validator.validate(cf.getSentences()));
+            } catch (IOException | ConllException | InterruptedException e) {
+                System.err.println("ERROR: " + e.getMessage());
+            } finally {
+                validator.close();
+            }
+        }
     }
 }
@@ -62,6 +62,10 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Server for CoNLLL-U file editing
@@ -97,6 +101,10 @@ public class ServeurHTTP {
     private static String e404 = String.format(errortemplate, "404 Not Found", "404");
     private static String e400 = String.format(errortemplate, "400 Bad Request", "400");
     private HttpServer server;
+    private ExecutorService executor = null;
+
+    /** default number of threads handling requests */
+    public static final int DEFAULT_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
 
     /**
      * use server for CoNLL-U editing
@@ -105,6 +113,17 @@ public class ServeurHTTP {
      * @throws IOException
      */
     public ServeurHTTP(int port, /*ConlluEditor */ Object e, String rootdir, int debug, boolean test) throws IOException {
+        this(port, e, rootdir, debug, test, DEFAULT_THREADS);
+    }
+
+    /**
+     * use server for CoNLL-U editing
+     *
+     * @param port port to use
+     * @param threads number of threads handling requests. If 0 all requests are handled by the server thread
+     * @throws IOException
+     */
+    public ServeurHTTP(int port, /*ConlluEditor */ Object e, String rootdir, int debug, boolean test, int threads) throws IOException {
         this.port = port;
         //this.ce = ce;
         this.debug = debug;
@@ -175,7 +194,18 @@ public class ServeurHTTP {
         //}
 
         server.createContext("/", new FileHandler(rootdir, indexhtml));
-        server.setExecutor(null);
+        if (threads > 0) {
+            // a slow search or parse must not block other clients and static files
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    return new Thread(r, "http-" + count.incrementAndGet());
+                }
+            });
+        }
+        server.setExecutor(executor);
 
         String hostname = "localhost";
 
@@ -199,6 +229,9 @@ public class ServeurHTTP {
 
     public void stop() {
         server.stop(1);
+        if (executor != null) {
+            executor.shutdown();
+        }
     }
 
     /**
@@ -28,7 +28,7 @@ are permitted provided that the following conditions are met:
  THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
  @author Johannes Heinecke
- @version 2.29.1 as of 9th November 2024
+ @version 2.34.0 as of 18th October 2026
  */
 package com.orange.labs.parserclient;
 
@@ -38,30 +38,46 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.google.gson.JsonSyntaxException;
 import com.orange.labs.conllparser.ConllException;
-import com.orange.labs.conllparser.ConllFile;
 import com.orange.labs.conllparser.ConllSentence;
+import com.orange.labs.conllparser.ConllSentenceReader;
 import com.orange.labs.conllparser.ConllWord;
 import com.orange.labs.httpserver.ServeurHTTP;
 import java.io.BufferedReader;
-import java.io.DataOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.net.URI;
 import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.text.BreakIterator;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * This class makes an HTTP GET/POST request to a dependency parser server which
  * returns CoNLL-U. The exact API is read from a configuration file.
+ * Connections are kept open (HTTP/2 if the server accepts it), long texts are split into batches of sentences
+ * which are sent in parallel, and the results of the last requests are kept in a cache.
  *
  * @author Johannes Heinecke <johannes.heinecke@orange.com>
  */
@@ -73,6 +89,14 @@ public class ParserClient {
     private Map<String, String> other;
     private List<String> jsonpath;
     private Map<String, String>headers; // headers to be sent to the parser API
+    private int batchsize = 0; // maximal number of sentences sent in one request (0: send the whole text)
+    private int parallel = 4; // maximal number of requests sent at the same time
+    private int timeout = 60; // seconds
+    private int cachesize = 100; // number of texts whose result is kept
+
+    private final HttpClient client;
+    private final ExecutorService pool; // sends the batches
+    private final Map<String, String> cache; // text: result of ConlluEditor_json()
 
     /* just for testing */
 //    public ParserClient(String url, String txtparam, String otherparams, String jsonpath) {
@@ -89,6 +113,25 @@ public class ParserClient {
 //    }
     public ParserClient(String config) throws IOException {
         readConfig(config);
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofSeconds(timeout))
+                .build();
+        pool = Executors.newFixedThreadPool(parallel, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "parserclient");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        cache = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > cachesize;
+            }
+        };
     }
 
     private void parseOther(String line) {
@@ -142,43 +185,120 @@ public class ParserClient {
                     parseOther(elems[1].trim());
                 } else if ("jsonpath".equals(elems[0].trim())) {
                     jsonpath = Arrays.asList(elems[1].trim().split("[/\\.]"));
+                } else if ("batch".equals(elems[0].trim())) {
+                    batchsize = Integer.parseInt(elems[1].trim());
+                } else if ("parallel".equals(elems[0].trim())) {
+                    parallel = Math.max(1, Integer.parseInt(elems[1].trim()));
+                } else if ("timeout".equals(elems[0].trim())) {
+                    timeout = Math.max(1, Integer.parseInt(elems[1].trim()));
+                } else if ("cache".equals(elems[0].trim())) {
+                    cachesize = Integer.parseInt(elems[1].trim());
                 }
             }
         }
     }
 
     public String httpget(String address) throws IOException {
-        URL url = new URL(address);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setDoOutput(true);
-        connection.setRequestMethod("GET");
-
-        if (connection.getResponseCode() == HttpURLConnection.HTTP_OK) {
-            StringBuilder result = new StringBuilder();
-            InputStream isd = connection.getInputStream();
-            BufferedReader brd = new BufferedReader(new InputStreamReader(isd, StandardCharsets.UTF_8));
-            String dline;
-
-            while ((dline = brd.readLine()) != null) {
-                result.append(dline).append('\n');
+        HttpRequest request = HttpRequest.newBuilder(URI.create(address))
+                .timeout(Duration.ofSeconds(timeout))
+                .GET()
+                .build();
+        try {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+            if (response.statusCode() == 200) {
+                return response.body();
             }
-            return result.toString();
+            return "ERROR " + response.statusCode();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("request interrupted");
         }
-        return "ERROR " + connection.getResponseCode();
     }
 
+    /**
+     * parse a text. If the text is long it is split into batches of sentences which are parsed in parallel
+     */
     public List<ConllSentence> makerequest(String text) throws IOException, ConllException {
         System.err.println(API + " txt:" + txt_param + " other:" + other + " jsonpath:" + jsonpath);
 
-        URL url = new URL(API);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod("POST");
-        if (headers != null) {
-            for (String header : headers.keySet()) {
-                connection.setRequestProperty(header, headers.get(header));
+        List<String> batches = split(text);
+        if (batches.size() == 1) {
+            return parse(batches.get(0));
+        }
+
+        List<Future<List<ConllSentence>>> results = new ArrayList<>();
+        for (final String batch : batches) {
+            results.add(pool.submit(new Callable<List<ConllSentence>>() {
+                @Override
+                public List<ConllSentence> call() throws IOException, ConllException {
+                    return parse(batch);
+                }
+            }));
+        }
+        List<ConllSentence> sentences = new ArrayList<>();
+        try {
+            for (Future<List<ConllSentence>> f : results) {
+                int offset = sentences.size();
+                for (ConllSentence cs : f.get()) {
+                    // the parser numbers the sentences of every batch from 1
+                    if (cs.getSentid() != null && cs.getSentid().matches("\\d{1,9}")) {
+                        cs.setSentid(String.valueOf(Integer.parseInt(cs.getSentid()) + offset));
+                    }
+                    sentences.add(cs);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("request interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof ConllException) {
+                throw (ConllException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            for (Future<List<ConllSentence>> f : results) {
+                f.cancel(true);
+            }
+        }
+        return sentences;
+    }
+
+    /**
+     * split the text into batches of at most batchsize sentences. The sentence boundaries
+     * found here may differ from those of the parser, so batches are only used if configured
+     */
+    List<String> split(String text) {
+        if (batchsize <= 0) {
+            return Collections.singletonList(text);
+        }
+        List<String> batches = new ArrayList<>();
+        BreakIterator bi = BreakIterator.getSentenceInstance(Locale.ROOT);
+        bi.setText(text);
+        int start = 0;
+        int ct = 0;
+        for (int end = bi.next(); end != BreakIterator.DONE; end = bi.next()) {
+            ct++;
+            if (ct == batchsize) {
+                batches.add(text.substring(start, end));
+                start = end;
+                ct = 0;
             }
         }
+        if (start < text.length() && !text.substring(start).trim().isEmpty()) {
+            batches.add(text.substring(start));
+        }
+        if (batches.isEmpty()) {
+            batches.add(text);
+        }
+        return batches;
+    }
 
+    /**
+     * send a text to the parser and read the CoNLL-U sentences of the response
+     */
+    private List<ConllSentence> parse(String text) throws IOException, ConllException {
         // get other params
         Map<String, String> params = new HashMap<>();
         params.put(txt_param, text);
@@ -186,52 +306,54 @@ public class ParserClient {
             params.putAll(other);
         }
 
-        byte[] data = processParams(params);
-        connection.setRequestProperty("Content-Length", String.valueOf(data.length));
-
-        connection.setDoOutput(true);
-        try (DataOutputStream writer = new DataOutputStream(connection.getOutputStream())) {
-            writer.write(data);
-
-            writer.flush();
-            writer.close();
+        HttpRequest.Builder rb = HttpRequest.newBuilder(URI.create(API))
+                .timeout(Duration.ofSeconds(timeout))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(processParams(params)));
+        if (headers != null) {
+            for (String header : headers.keySet()) {
+                rb.setHeader(header, headers.get(header));
+            }
         }
 
-        StringBuilder response;
-
-// Get the input stream of the connection
-        try (BufferedReader input = new BufferedReader(new InputStreamReader(connection.getInputStream()))) {
-            String line;
-            response = new StringBuilder();
-            while ((line = input.readLine()) != null) {
-                // Append each line of the response and separate them
-                response.append(line);
-                response.append(System.lineSeparator());
-            }
-        } finally {
-            connection.disconnect();
+        HttpResponse<InputStream> response;
+        try {
+            response = client.send(rb.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("request interrupted");
         }
 
-        String result = response.toString();
-
-        if (jsonpath != null) {
-            JsonElement jelem = JsonParser.parseString(result); // new JsonParser().parse(result);
-            JsonObject jobject = jelem.getAsJsonObject();
-            Iterator<String> it = jsonpath.iterator();
-            JsonElement je = null;
-            while (it.hasNext()) {
-                je = jobject.get(it.next());
-                if (it.hasNext()) {
-                    jobject = je.getAsJsonObject();
+        try (InputStream is = response.body()) {
+            if (response.statusCode() != 200) {
+                throw new IOException("Server returned HTTP response code: " + response.statusCode() + " for URL: " + API);
+            }
+            InputStream conllu = is;
+            if (jsonpath != null) {
+                JsonElement jelem = JsonParser.parseReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+                JsonObject jobject = jelem.getAsJsonObject();
+                Iterator<String> it = jsonpath.iterator();
+                JsonElement je = null;
+                while (it.hasNext()) {
+                    je = jobject.get(it.next());
+                    if (it.hasNext()) {
+                        jobject = je.getAsJsonObject();
+                    }
                 }
+                conllu = new ByteArrayInputStream(je.getAsString().getBytes(StandardCharsets.UTF_8));
             }
 
-            result = je.getAsString();
+            // read the sentences while the response arrives
+            List<ConllSentence> sentences = new ArrayList<>();
+            try (ConllSentenceReader reader = new ConllSentenceReader(conllu)) {
+                ConllSentence cs;
+                while ((cs = reader.readSentence()) != null) {
+                    sentences.add(cs);
+                }
+                reader.checkErrors();
+            }
+            return sentences;
         }
-
-        ConllFile cf = new ConllFile(result/*, false, false*/);
-
-        return cf.getSentences();
     }
 
     public String getInfo() {
@@ -260,6 +382,12 @@ public class ParserClient {
 
     /** send senteces to parser server, and format the result in json for the displayer */
     public String ConlluEditor_json(String text) {
+        synchronized (cache) {
+            String cached = cache.get(text);
+            if (cached != null) {
+                return cached;
+            }
+        }
         try {
             JsonArray solutions = new JsonArray();
 
@@ -297,7 +425,11 @@ public class ParserClient {
 
             }
 
-            return solutions.toString();
+            String result = solutions.toString();
+            synchronized (cache) {
+                cache.put(text, result);
+            }
+            return result;
 
         } catch (IOException | ConllException e) {
             JsonObject solution = new JsonObject();
@@ -1,6 +1,6 @@
 /* This library is under the 3-Clause BSD License
 
-Copyright (c) 2021-2024, Orange S.A.
+Copyright (c) 2021-2026, Orange S.A.
 
 Redistribution and use in source and binary forms, with or without modification,
 are permitted provided that the following conditions are met:
@@ -28,7 +28,7 @@ are permitted provided that the following conditions are met:
  THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
  @author Johannes Heinecke
- @version 2.27.0 as of 28th September 2024
+ @version 2.34.0 as of 18th October 2026
  */
 package com.orange.labs.search;
 
@@ -37,6 +37,7 @@ import com.orange.labs.conllparser.ConllFile;
 import com.orange.labs.conllparser.ConllSentence;
 import com.orange.labs.conllparser.ConllWord;
 import com.orange.labs.conllparser.ConlluPlusConverter;
+import com.orange.labs.conllparser.QueryIndex;
 import com.orange.labs.conllparser.SDParse;
 import java.io.ByteArrayInputStream;
 import java.io.File;
@@ -46,9 +47,12 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 /**
@@ -59,6 +63,7 @@ import java.util.stream.Stream;
 public class SubTreeSearch {
 
     List<ConllSentence> subtrees;
+    List<List<ConllWord[]>> edges; // the relations of each subtree, searched first in a sentence
     final boolean debug = false;
 
     public SubTreeSearch(String conllusentence) throws ConllException, IOException {
@@ -94,6 +99,10 @@ public class SubTreeSearch {
         if (subtrees.isEmpty()) {
             throw new ConllException("No subtree given");
         }
+        edges = new ArrayList<>();
+        for (ConllSentence subtree : subtrees) {
+            edges.add(getEdges(subtree));
+        }
     }
 
     /**
@@ -108,45 +117,131 @@ public class SubTreeSearch {
      * //
      */
     public Set<Integer> match(ConllSentence sentence) throws ConllException {
+        List<Set<Integer>> res = match(sentence, false);
+        if (res.isEmpty()) {
+            return new HashSet<>();
+        }
+        return res.get(0);
+    }
+
+    /**
+     * returns all matches of the subtrees in the sentence: for each word which matches the head of a subtree
+     * the set of ids of the matching words (or an empty list)
+     */
+    public List<Set<Integer>> matchAll(ConllSentence sentence) throws ConllException {
+        return match(sentence, true);
+    }
+
+    private List<Set<Integer>> match(ConllSentence sentence, boolean all) throws ConllException {
         sentence.normalise();
         sentence.makeTrees(null);
 
-        //System.out.println("Sentence\n"+sentence);
-
-        Set<Integer>matched = new HashSet<>();
-        boolean ok = false;
-        for (ConllSentence subtree : subtrees) {
+        List<Set<Integer>> res = new ArrayList<>();
+        for (int i = 0; i < subtrees.size(); ++i) {
+            ConllSentence subtree = subtrees.get(i);
             if (debug) System.out.println("SUBTREE\n" + subtree);
+            if (!hasEdges(edges.get(i), sentence)) {
+                // a relation of the subtree is missing in the sentence
+                continue;
+            }
             for (ConllWord word : sentence.getWords()) {
                 if (debug) System.out.println("is word head of subtree ? " + word);
                 if (matchWord(subtree.getHead(), word)) {
                     if (debug) {
                         System.out.println("HEAD matches: " + word.toString());
                     }
+                    Set<Integer> matched = new HashSet<>();
+                    if (matchDependant(subtree.getHead(), word, matched)) {
+                        matched.add(word.getId());
+                        res.add(matched);
+                        if (!all) {
+                            return res;
+                        }
+                    } else if (debug) {
+                        System.out.println("bad dep match");
+                    }
+                }
+            }
+        }
+        return res;
+    }
+
+    /**
+     * search the subtrees in all sentences. If threads &gt; 1, blocks of sentences are
+     * searched in parallel
+     *
+     * @param all if false, only the first match of each sentence is returned
+     * @param threads number of threads
+     * @return the matches of each sentence (an empty list if the sentence does not match)
+     */
+    public List<List<Set<Integer>>> match(final List<ConllSentence> sentences, final boolean all, int threads) throws ConllException {
+        final List<List<Set<Integer>>> res = new ArrayList<>();
+        ConllFile.runInOrder(threads, sentences.size(), (from, to) -> new MatchChunk(sentences.subList(from, to), all),
+                matches -> {
+                    res.addAll(matches);
+                    return true;
+                });
+        return res;
+    }
+
+    /** sentences which are searched together by a thread */
+    private class MatchChunk implements Callable<List<List<Set<Integer>>>> {
+        final List<ConllSentence> sentences;
+        final boolean all;
+
+        MatchChunk(List<ConllSentence> sentences, boolean all) {
+            this.sentences = sentences;
+            this.all = all;
+        }
+
+        @Override
+        public List<List<Set<Integer>>> call() throws ConllException {
+            List<List<Set<Integer>>> res = new ArrayList<>();
+            for (ConllSentence cs : sentences) {
+                res.add(match(cs, all));
+            }
+            return res;
+        }
+    }
+
+    /** the relations (head, dependant) between the words of the subtree */
+    private static List<ConllWord[]> getEdges(ConllSentence subtree) {
+        List<ConllWord[]> res = new ArrayList<>();
+        for (ConllWord sw : subtree.getWords()) {
+            for (ConllWord dep : sw.getDependents()) {
+                res.add(new ConllWord[]{sw, dep});
+            }
+        }
+        return res;
+    }
 
-                    ok = matchDependant(subtree.getHead(), word, matched);
-                    if (!ok) {
-                         if (debug) System.out.println("bad dep match");
-                        matched.clear();
-                        //break;
+    /**
+     * returns true if for each relation of the subtree the sentence contains a word with a dependant
+     * which match the head and the dependant of the relation (including their deprels and features).
+     * If not, the subtree cannot match the sentence
+     */
+    private boolean hasEdges(List<ConllWord[]> required, ConllSentence sentence) {
+        for (ConllWord[] edge : required) {
+            boolean found = false;
+            for (ConllWord word : sentence.getWords()) {
+                if (word.getDependents().isEmpty() || !matchWord(edge[0], word)) {
+                    continue;
+                }
+                for (ConllWord dep : word.getDependents()) {
+                    if (matchWord(edge[1], dep)) {
+                        found = true;
+                        break;
                     }
                 }
-                if (ok) {
-                    matched.add(word.getId());
-                    //System.out.println("A-MATCHING WORDS " + matched);
-                    //return word.getId();
-                    return matched;
+                if (found) {
+                    break;
                 }
             }
-            if (ok) { // useful ?
-                //System.out.println("B-MATCHING WORDS " + matched);
-                ///return 0; // TODO
-                return matched;
+            if (!found) {
+                return false;
             }
         }
-        //System.out.println("C-MATCHING WORDS " + matched);
-        return matched;
-        //return -1;
+        return true;
     }
 
     /**
@@ -196,6 +291,59 @@ public class SubTreeSearch {
         return ok;
     }
 
+    /**
+     * get the sentences of the index which can contain one of the subtrees
+     */
+    public BitSet candidates(QueryIndex index) {
+        BitSet res = new BitSet();
+        for (ConllSentence subtree : subtrees) {
+            res.or(index.candidates(getRequirements(subtree)));
+        }
+        return res;
+    }
+
+    /**
+     * the values a sentence must contain in order to match the subtree: the columns checked by matchWord()
+     * (except the form) and the relations between the words of the subtree
+     */
+    private List<QueryIndex.Requirement> getRequirements(ConllSentence subtree) {
+        List<QueryIndex.Requirement> reqs = new ArrayList<>();
+        for (ConllWord sw : subtree.getWords()) {
+            if (!sw.getUpostag().equals("_")) {
+                reqs.add(new QueryIndex.Requirement(QueryIndex.Column.UPOS, sw.getUpostag()));
+            }
+            if (!sw.getLemma().equals("_")) {
+                reqs.add(new QueryIndex.Requirement(QueryIndex.Column.LEMMA, sw.getLemma()));
+            }
+            boolean deprel = !sw.getDeplabel().equals("_") && !sw.getDeplabel().equals("root");
+            if (deprel) {
+                reqs.add(new QueryIndex.Requirement(QueryIndex.Column.DEPREL, sw.getDeplabel()));
+            }
+            if (!sw.getFeaturesStr().equals("_")) {
+                for (String fname : sw.getFeatures().keySet()) {
+                    reqs.add(new QueryIndex.Requirement(QueryIndex.Column.FEAT,
+                            Pattern.quote(fname.toLowerCase()) + "=" + group(sw.getFeatures().get(fname))));
+                }
+            }
+            ConllWord head = sw.getHeadWord();
+            if (head != null && (deprel || !sw.getUpostag().equals("_") || !head.getUpostag().equals("_"))) {
+                reqs.add(new QueryIndex.Requirement(QueryIndex.Column.TRIPLE,
+                        QueryIndex.triple(group(head.getUpostag()), deprel ? group(sw.getDeplabel()) : "[^ ]*", group(sw.getUpostag()))));
+            }
+        }
+        return reqs;
+    }
+
+    /** the regex of a column of the subtree as part of a longer regex */
+    private static String group(String regex) {
+        if (regex.equals("_")) {
+            return "[^ ]*";
+        } else if (ConllWord.regex(regex) == null) {
+            return Pattern.quote(regex);
+        }
+        return "(?:" + regex + ")";
+    }
+
     /** returns if the subtreeword matches the word. The checked columns
      * are form, lemma, upos, xpos, features and deprel. The subtree word may
      * contain regular expressions. A "_" in the subtree word column matches always
@@ -250,15 +398,30 @@ public class SubTreeSearch {
     }
 
     public static void main(String args[]) throws ConllException, IOException {
+        boolean all = false;
+        int argindex = 0;
+        if (args.length > 0 && args[0].equals("--all")) {
+            all = true;
+            argindex++;
+        }
+        if (args.length - argindex != 2) {
+            System.err.println("usage: SubTreeSearch [--all] subtree.conllu file.conllu");
+            System.exit(1);
+        }
         // test sentence and partial tree
-        String subtree = readLineByLine(args[0]);
+        String subtree = readLineByLine(args[argindex]);
         SubTreeSearch std = new SubTreeSearch(subtree);
 
-        ConllFile cf = new ConllFile(new File(args[1])/*, false, false*/);
-        for (ConllSentence cs : cf.getSentences()) {
-            //int rtc =
-            Set<Integer> rtc = std.match(cs);
-            System.out.println("===" + rtc + " " + cs.getSentence());
+        ConllFile cf = new ConllFile(new File(args[argindex + 1])/*, false, false*/);
+        List<List<Set<Integer>>> res = std.match(cf.getSentences(), all, ConllFile.DEFAULTTHREADS);
+        for (int i = 0; i < res.size(); ++i) {
+            ConllSentence cs = cf.getSentences().get(i);
+            if (all) {
+                System.out.println("===" + res.get(i) + " " + cs.getSentence());
+            } else {
+                Set<Integer> rtc = res.get(i).isEmpty() ? new HashSet<>() : res.get(i).get(0);
+                System.out.println("===" + rtc + " " + cs.getSentence());
+            }
         }
     }
 }
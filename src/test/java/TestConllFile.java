@@ -31,16 +31,30 @@ are permitted provided that the following conditions are met:
  @version 2.27.0 as of 28th September 2024
  */
 
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.orange.labs.conllparser.ColumnarSentenceList;
 import com.orange.labs.conllparser.ConllException;
 import com.orange.labs.conllparser.ConllFile;
+import com.orange.labs.conllparser.ConllSentence;
+import com.orange.labs.conllparser.ConllSentenceReader;
+import com.orange.labs.conllparser.ConllWord;
 import com.orange.labs.conllparser.GetReplacement;
+import com.orange.labs.conllparser.MappedSentenceList;
+import com.orange.labs.conllparser.ValidationEngine;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
 import org.apache.commons.io.FileUtils;
 import org.junit.Assert;
 import org.junit.Before;
@@ -577,6 +591,194 @@ public class TestConllFile {
         }
     }
 
+    @Test
+    public void test32mass_edit_stream() throws IOException, ConllException {
+        name("mass edit, reading sentence by sentence");
+
+        URL sr = this.getClass().getResource("search_replace.txt");
+        ConllFile.EditRules rules = new ConllFile.EditRules(new File(sr.getFile()));
+
+        URL url = this.getClass().getResource("test.conllu");
+        File out = new File(folder, "search_replace.stream.conllu");
+        PrintStream ps = new PrintStream(out, StandardCharsets.UTF_8);
+        try (ConllSentenceReader reader = new ConllSentenceReader(new FileInputStream(url.getFile()))) {
+            ConllFile.processInput(ps, reader, reader.getColDefString(), rules, ConllFile.Output.CONLL, null, true, 1, -1, null, 1);
+            reader.checkErrors();
+        }
+        ps.close();
+
+        URL ref = this.getClass().getResource("search_replace.conllu");
+        Assert.assertEquals(String.format("search & replace incorrect\n ref: %s\n res: %s\n", ref.toString(), out.toString()),
+                FileUtils.readFileToString(new File(ref.getFile()), StandardCharsets.UTF_8),
+                FileUtils.readFileToString(out, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void test33stream_conllup() throws IOException, ConllException {
+        name("read CoNLL-U Plus sentence by sentence");
+
+        URL url = this.getClass().getResource("test.conllup");
+        ConllFile cfp = new ConllFile(new File(url.getFile()));
+
+        StringBuilder sb = new StringBuilder();
+        try (ConllSentenceReader reader = new ConllSentenceReader(new FileInputStream(url.getFile()))) {
+            Assert.assertFalse("global.columns not read", reader.isStandardcols());
+            sb.append(reader.getColDefString());
+            for (ConllSentence cs : reader) {
+                sb.append(cs.toString());
+            }
+            Assert.assertEquals("wrong number of sentences", cfp.getSentences().size(), reader.getSentenceCount());
+            reader.checkErrors();
+        }
+        Assert.assertEquals("sentences read differently", cfp.toString(), sb.toString());
+
+        try (ConllSentenceReader reader = new ConllSentenceReader(new FileInputStream(url.getFile()))) {
+            Assert.assertEquals("file statistics differ", cfp.getFilestats().toString(),
+                    ConllFile.getFilestats(cfp.getFile(), reader).toString());
+        }
+    }
+
+    @Test
+    public void test34parallel_parse() throws IOException, ConllException {
+        name("parse with several threads");
+
+        URL url = this.getClass().getResource("test.conllu");
+        String contents = FileUtils.readFileToString(new File(url.getFile()), StandardCharsets.UTF_8);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 30; ++i) {
+            sb.append(contents);
+        }
+        String big = sb.toString();
+        // same file with two errors: a line without ID and an invalid head
+        String bad = big.replaceFirst("\n1\t", "\nx\t1\t").replaceFirst("(?s)(.{20000}\n1\t[^\t]*\t[^\t]*\t[^\t]*\t[^\t]*\t[^\t]*\t)[^\t]*", "$1HEAD");
+
+        String sequential = new ConllFile(big, 1).toString();
+        String seqerror = null;
+        try {
+            new ConllFile(bad, 1);
+        } catch (ConllException e) {
+            seqerror = e.getMessage();
+        }
+
+        ConllFile parallel = new ConllFile(big, 4);
+        Assert.assertEquals("wrong number of sentences", 600, parallel.getSentences().size());
+        Assert.assertEquals("sentences read differently", sequential, parallel.toString());
+        String parerror = null;
+        try {
+            new ConllFile(bad, 4);
+        } catch (ConllException e) {
+            parerror = e.getMessage();
+        }
+        Assert.assertNotNull("errors not detected", seqerror);
+        Assert.assertEquals("errors reported differently", seqerror, parerror);
+    }
+
+    @Test
+    public void test35lazy() throws IOException, ConllException {
+        name("lazy reading");
+
+        URL url = this.getClass().getResource("test.conllu");
+        ConllFile lazy = new ConllFile(new File(url.getFile()), null, 3);
+        Assert.assertTrue(lazy.isLazy());
+        Assert.assertEquals("wrong number of sentences", cf.getSentences().size(), lazy.getSentences().size());
+        Assert.assertEquals("sentences read differently", cf.toString(), lazy.toString());
+        MappedSentenceList msl = (MappedSentenceList) lazy.getSentences();
+        Assert.assertTrue("too many sentences in memory", msl.getLoaded() <= 3);
+
+        // modified sentences stay in memory
+        lazy.getSentences().get(2).getWord(1).setLemma("MODIFIED");
+        lazy.pin(2);
+        ConllSentence newsent = new ConllSentence(cf.getSentences().get(5));
+        lazy.getSentences().add(3, newsent);
+        lazy.getSentences().remove(0);
+        for (ConllSentence cs : lazy.getSentences()) {
+            cs.getWords();
+        }
+        Assert.assertEquals("modification lost", "MODIFIED", lazy.getSentences().get(1).getWord(1).getLemma());
+        Assert.assertSame("added sentence lost", newsent, lazy.getSentences().get(2));
+        Assert.assertEquals("wrong number of sentences", cf.getSentences().size(), lazy.getSentences().size());
+
+        Assert.assertEquals("sentence id not found", "[1]",
+                msl.findSentids(Pattern.compile("^" + cf.getSentences().get(2).getSentid() + "$")).toString());
+
+        // sentences with the same sent_id are all found
+        File twice = new File(folder, "twice.conllu");
+        FileUtils.writeStringToFile(twice, cf.toString() + cf.toString(), StandardCharsets.UTF_8);
+        lazy = new ConllFile(twice, null, 3);
+        int n = cf.getSentences().size();
+        Assert.assertEquals("sentence ids not found", "[2, " + (n + 2) + "]",
+                ((MappedSentenceList) lazy.getSentences()).findSentids(Pattern.compile("^" + cf.getSentences().get(2).getSentid() + "$")).toString());
+
+        // CoNLL-U plus
+        url = this.getClass().getResource("test.conllup");
+        ConllFile cfp = new ConllFile(new File(url.getFile()));
+        lazy = new ConllFile(new File(url.getFile()), null, 2);
+        Assert.assertEquals("CoNLL-U plus read differently", cfp.toString(), lazy.toString());
+    }
+
+    @Test
+    public void test36columnar() throws IOException, ConllException {
+        name("columnar store");
+
+        URL url = this.getClass().getResource("test.conllu");
+        ConllFile col = new ConllFile(new File(url.getFile()), true);
+        Assert.assertEquals("wrong number of sentences", cf.getSentences().size(), col.getSentences().size());
+        Assert.assertEquals("sentences read differently", cf.toString(), col.toString());
+        Assert.assertEquals("different statistics", cf.getFilestats().toString(), col.getFilestats().toString());
+
+        ColumnarSentenceList csl = (ColumnarSentenceList) col.getSentences();
+        List<Integer> expected = new ArrayList<>();
+        for (int sn = 0; sn < cf.getSentences().size(); ++sn) {
+            for (ConllWord cw : cf.getSentences().get(sn).getWords()) {
+                if ("Plur".equals(cw.getFeatures().get("Number"))) {
+                    expected.add(sn);
+                    break;
+                }
+            }
+        }
+        Assert.assertEquals("bad search result", expected, csl.find("FEATS", Pattern.compile("Number=Plur")));
+        Assert.assertFalse(csl.find("UPOS", Pattern.compile("PROPN")).isEmpty());
+        Assert.assertTrue(csl.find("UPOS", Pattern.compile("PROP")).isEmpty());
+
+        // CoNLL-U plus
+        url = this.getClass().getResource("test.conllup");
+        ConllFile cfp = new ConllFile(new File(url.getFile()));
+        col = new ConllFile(new File(url.getFile()), true);
+        Assert.assertEquals("CoNLL-U plus read differently", cfp.toString(), col.toString());
+    }
+
+    @Test
+    public void test37parallel_edit() throws IOException, ConllException {
+        name("mass edit with several threads");
+
+        URL url = this.getClass().getResource("test.conllu");
+        String contents = FileUtils.readFileToString(new File(url.getFile()), StandardCharsets.UTF_8);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 30; ++i) {
+            sb.append(contents);
+        }
+        String big = sb.toString();
+        File rulefile = new File(this.getClass().getResource("search_replace.txt").getFile());
+
+        ConllFile sequential = new ConllFile(big, 1);
+        ConllFile.EditRules seqrules = new ConllFile.EditRules(rulefile);
+        seqrules.apply(sequential.getSentences(), 1);
+
+        ConllFile parallel = new ConllFile(big, 4);
+        ConllFile.EditRules parrules = new ConllFile.EditRules(rulefile);
+        parrules.apply(parallel.getSentences(), 4);
+        Assert.assertEquals("sentences edited differently", sequential.toString(), parallel.toString());
+        Assert.assertEquals("changes counted differently", seqrules.getChanges(), parrules.getChanges());
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        PrintStream ps = new PrintStream(bos, true, StandardCharsets.UTF_8);
+        try (ConllSentenceReader reader = new ConllSentenceReader(new ByteArrayInputStream(big.getBytes(StandardCharsets.UTF_8)))) {
+            ConllFile.processInput(ps, reader, reader.getColDefString(), new ConllFile.EditRules(rulefile), ConllFile.Output.CONLL, null, false, 1, -1, null, 4);
+            reader.checkErrors();
+        }
+        Assert.assertEquals("sentences edited differently when streaming", sequential.toString(), bos.toString(StandardCharsets.UTF_8));
+    }
+
     @Test
     public void test40conditionvalidation() throws IOException, ConllException {
         name("validation by conditions");
@@ -603,6 +805,156 @@ public class TestConllFile {
         }
     }
 
+    @Test
+    public void test40bValidationEngine() throws IOException, ConllException {
+        name("in-process validation");
+
+        URL sr = this.getClass().getResource("validrules.txt");
+        ValidationEngine ve = new ValidationEngine(null, null, null, null);
+        ve.addRules(new File(sr.getFile()));
+        JsonObject res = ve.validate(cf.getSentences(), 4);
+        // the same condition errors as found by conditionalValidation() (validrules.result.txt)
+        // and the sentences whose ids are not 1, 2, 3, ... (they are not normalised)
+        int conditions = 0;
+        int badids = 0;
+        for (JsonElement je : res.getAsJsonArray("invalid")) {
+            for (Map.Entry<String, JsonElement> word : je.getAsJsonObject().getAsJsonObject("words").entrySet()) {
+                for (JsonElement err : word.getValue().getAsJsonArray()) {
+                    String rule = err.getAsJsonObject().get("rule").getAsString();
+                    if ("condition".equals(rule)) {
+                        conditions++;
+                    } else if ("word-id-sequence".equals(rule)) {
+                        badids++;
+                    }
+                }
+            }
+        }
+        Assert.assertEquals("bad number of condition errors: " + res, 6, conditions);
+        Assert.assertEquals("bad number of sentences with bad ids: " + res, 4, badids);
+        Assert.assertEquals("bad number of errors: " + res, 13, res.get("errors").getAsInt());
+        Assert.assertEquals("bad number of validated sentences", cf.getSentences().size(), ve.getValidated());
+
+        // unchanged sentences are not validated again
+        ve.validate(cf.getSentences(), 1);
+        Assert.assertEquals("sentences validated again", cf.getSentences().size(), ve.getValidated());
+        cf.getSentences().get(0).increaseModificationCounter();
+        ve.validate(cf.getSentences(), 1);
+        Assert.assertEquals("modified sentence not validated", cf.getSentences().size() + 1, ve.getValidated());
+
+        ve = new ValidationEngine(null, null, null, null);
+        ConllSentence cs = new ConllSentence("1-2\tdu\t_\t_\t_\t_\t_\t_\t_\t_\n"
+                + "1\tde\tde\tADP\t_\t_\t4\tcase\t_\t_\n"
+                + "2\tle\tle\tDET\t_\t_\t3\tdet\t_\t_\n"
+                + "3\tpain\tpain\tNOUN\t_\t_\t5\tobj\t_\t_\n"
+                + "4\t,\t,\tPUNCT\t_\t_\t6\tpunct\t_\t_\n"
+                + "5\tmange\tmanger\tVERB\t_\t_\t0\troot\t_\t_\n"
+                + "6\tmange\tmanger\tVERB\t_\t_\t0\troot\t_\t_\n", null);
+        res = ve.validate(cs);
+        Assert.assertEquals("multiple roots not found: " + res, "multiple-roots",
+                res.getAsJsonArray("sentence").get(0).getAsJsonObject().get("rule").getAsString());
+        Assert.assertTrue("non-projective punctuation not found: " + res, res.getAsJsonObject("words").has("4"));
+        Assert.assertEquals("bad number of errors: " + res, 2, res.get("errors").getAsInt());
+
+        // sentences are not normalised: invalid ids and heads are reported, the conditions are not checked
+        ve = new ValidationEngine(null, null, null, null);
+        ve.addRules(new File(sr.getFile()));
+        cs = new ConllSentence("1\tle\tle\tDET\t_\t_\t2\tdet\t_\t_\n"
+                + "2\tpain\tpain\tNOUN\t_\t_\t0\troot\t_\t_\n"
+                + "3\t.\t.\tPUNCT\t_\t_\t2\tpunct\t_\t_\n", null);
+        cs.getWords().get(2).setHead(7);
+        String before = cs.toString();
+        res = ve.validate(cs);
+        Assert.assertEquals("invalid head not found: " + res, "invalid-head",
+                res.getAsJsonObject("words").getAsJsonArray("3").get(0).getAsJsonObject().get("rule").getAsString());
+        Assert.assertEquals("bad number of errors: " + res, 1, res.get("errors").getAsInt());
+        Assert.assertEquals("sentence modified", before, cs.toString());
+
+        cs.getWords().get(2).setHead(2);
+        cs.getWords().get(1).setId(5);
+        cs.increaseModificationCounter();
+        before = cs.toString();
+        res = ve.validate(cs);
+        Assert.assertEquals("bad word id not found: " + res, "word-id-sequence",
+                res.getAsJsonObject("words").getAsJsonArray("5").get(0).getAsJsonObject().get("rule").getAsString());
+        Assert.assertEquals("sentence modified", before, cs.toString());
+    }
+
+    @Test
+    public void test40cParallelValidation() throws IOException, ConllException {
+        name("validation by conditions with several threads");
+
+        URL url = this.getClass().getResource("test.conllu");
+        String contents = FileUtils.readFileToString(new File(url.getFile()), StandardCharsets.UTF_8);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 30; ++i) {
+            sb.append(contents);
+        }
+        File rulefile = new File(this.getClass().getResource("validrules.txt").getFile());
+
+        ConllFile sequential = new ConllFile(sb.toString(), 1);
+        ByteArrayOutputStream seqtext = new ByteArrayOutputStream();
+        ByteArrayOutputStream seqjson = new ByteArrayOutputStream();
+        int seqerrors = sequential.conditionalValidation(rulefile, new PrintStream(seqtext, true, StandardCharsets.UTF_8),
+                new PrintStream(seqjson, true, StandardCharsets.UTF_8));
+
+        ConllFile parallel = new ConllFile(sb.toString(), 4);
+        ByteArrayOutputStream partext = new ByteArrayOutputStream();
+        ByteArrayOutputStream parjson = new ByteArrayOutputStream();
+        int parerrors = parallel.conditionalValidation(rulefile, new PrintStream(partext, true, StandardCharsets.UTF_8),
+                new PrintStream(parjson, true, StandardCharsets.UTF_8));
+
+        Assert.assertTrue("no errors found", seqerrors > 0);
+        Assert.assertEquals("different number of errors", seqerrors, parerrors);
+        Assert.assertEquals("errors reported differently", seqtext.toString(StandardCharsets.UTF_8), partext.toString(StandardCharsets.UTF_8));
+        Assert.assertEquals("JSON errors reported differently", seqjson.toString(StandardCharsets.UTF_8), parjson.toString(StandardCharsets.UTF_8));
+
+        String[] lines = parjson.toString(StandardCharsets.UTF_8).split("\n");
+        Assert.assertEquals("bad number of JSON lines", parerrors, lines.length);
+        JsonObject jerr = JsonParser.parseString(lines[lines.length - 1]).getAsJsonObject();
+        Assert.assertEquals("bad sentence number", 600, jerr.get("sentence").getAsInt());
+        Assert.assertTrue("missing rule line", jerr.get("rule").getAsInt() > 1);
+    }
+
+    @Test
+    public void test40dRunInOrder() throws ConllException {
+        name("results of parallel chunks in order");
+        final int size = 10 * ConllFile.CHUNKSIZE + 7;
+        for (int threads : new int[]{1, 4}) {
+            final List<Integer> res = new ArrayList<>();
+            ConllFile.runInOrder(threads, size, (from, to) -> () -> {
+                List<Integer> chunk = new ArrayList<>();
+                for (int i = from; i < to; ++i) {
+                    chunk.add(i);
+                }
+                return chunk;
+            }, chunk -> {
+                res.addAll(chunk);
+                return true;
+            });
+            Assert.assertEquals("bad number of results", size, res.size());
+            for (int i = 0; i < size; ++i) {
+                Assert.assertEquals("results not in order", i, (int) res.get(i));
+            }
+
+            // stop after the second chunk
+            final int[] handled = {0};
+            ConllFile.runInOrder(threads, size, (from, to) -> () -> from, from -> ++handled[0] < 2);
+            Assert.assertEquals("not stopped", 2, handled[0]);
+
+            try {
+                ConllFile.runInOrder(threads, size, (from, to) -> () -> {
+                    if (from == 3 * ConllFile.CHUNKSIZE) {
+                        throw new ConllException("bad chunk " + from);
+                    }
+                    return from;
+                }, from -> true);
+                Assert.fail("exception not thrown");
+            } catch (ConllException e) {
+                Assert.assertEquals("bad exception", "bad chunk " + 3 * ConllFile.CHUNKSIZE, e.getMessage());
+            }
+        }
+    }
+
     @Test
     public void test41conditionvalidation_fileerror() throws IOException, ConllException {
         name("validation by conditions with file error");
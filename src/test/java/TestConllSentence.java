@@ -31,9 +31,11 @@ are permitted provided that the following conditions are met:
  @version 2.27.0 as of 28th September 2024
  */
 
+import com.orange.labs.conllparser.CheckCondition;
 import com.orange.labs.conllparser.ConllException;
 import com.orange.labs.conllparser.ConllFile;
 import com.orange.labs.conllparser.ConllSentence;
+import com.orange.labs.conllparser.ConllWord;
 import com.orange.labs.conllparser.SDParse;
 import java.io.File;
 import java.io.IOException;
@@ -211,6 +213,73 @@ public class TestConllSentence {
                 FileUtils.readFileToString(out, StandardCharsets.UTF_8));
     }
 
+    @Test
+    public void test15_trees_rebuilt_after_changes() throws ConllException {
+        name("makeTrees only after changes of the structure");
+        ConllSentence cs = new ConllSentence("1\tthe\tthe\tDET\t_\t_\t2\tdet\t_\t_\n"
+                + "2\tcat\tcat\tNOUN\t_\t_\t3\tnsubj\t_\t_\n"
+                + "3\tsleeps\tsleep\tVERB\t_\t_\t0\troot\t_\t_\n", null);
+        cs.normalise();
+        cs.makeTrees(null);
+        ConllWord verb = cs.getWord(3);
+        Assert.assertEquals(1, verb.getDependents().size());
+
+        // nothing changed: the trees are not rebuilt
+        verb.getDependents().clear();
+        cs.normalise();
+        cs.makeTrees(null);
+        Assert.assertEquals("trees rebuilt", 0, verb.getDependents().size());
+
+        // changing a head or the deprel
+        cs.getWord(1).setDeplabel("nmod");
+        cs.makeTrees(null);
+        Assert.assertEquals("trees rebuilt after changing a deprel", 0, verb.getDependents().size());
+        cs.getWord(1).setHead(3);
+        cs.makeTrees(null);
+        Assert.assertEquals("trees not rebuilt after changing a head", 2, verb.getDependents().size());
+
+        // adding and deleting words
+        cs.addWord(new ConllWord("fast", null), 3);
+        Assert.assertEquals(4, cs.getWord(4).getId());
+        cs.getWord(4).setHead(3);
+        cs.makeTrees(null);
+        Assert.assertEquals("trees not rebuilt after adding a word", 3, verb.getDependents().size());
+        cs.deleteWord(1);
+        cs.makeTrees(null);
+        Assert.assertEquals("trees not rebuilt after deleting a word", 2, cs.getWord(2).getDependents().size());
+    }
+
+    @Test
+    public void test16_compiled_conditions() throws ConllException {
+        name("conditions compiled once and evaluated on several words");
+        ConllSentence cs = new ConllSentence("1\tthe\tthe\tDET\t_\tDefinite=Def\t2\tdet\t_\t_\n"
+                + "2\tcat\tcat\tNOUN\t_\tNumber=Sing\t3\tnsubj\t_\t_\n"
+                + "3\tsleeps\tsleep\tVERB\t_\tNumber=Sing\t0\troot\t_\t_\n"
+                + "4\tfast\tfast\tADV\t_\t_\t3\tadvmod\t_\t_\n", null);
+        cs.makeTrees(null);
+        CheckCondition cc = CheckCondition.compile("Upos:NOUN and head(Lemma:sl.*) and not child(Upos:ADJ)");
+        Assert.assertSame("condition compiled again", cc, CheckCondition.compile("Upos:NOUN and head(Lemma:sl.*) and not child(Upos:ADJ)"));
+        boolean[] expected = {false, true, false, false};
+        for (int i = 0; i < expected.length; ++i) {
+            Assert.assertEquals("word " + (i + 1), expected[i], cc.evaluate(null, cs.getWord(i + 1)));
+        }
+
+        // children without the feature have no value
+        cc = CheckCondition.compile("@Feat:Number = child(@Feat:Number)");
+        Assert.assertTrue(cc.evaluate(null, cs.getWord(3)));
+        Assert.assertFalse(cc.evaluate(null, cs.getWord(2)));
+        cc = CheckCondition.compile("@Feat:Number ~ head(@Feat:Number)");
+        Assert.assertTrue("no value is compatible", cc.evaluate(null, cs.getWord(1)));
+
+        // there is no word after the last one
+        cc = CheckCondition.compile("next(not Upos:X)");
+        Assert.assertTrue(cc.evaluate(null, cs.getWord(3)));
+        Assert.assertFalse(cc.evaluate(null, cs.getWord(4)));
+        cc = CheckCondition.compile("prec(Upos:DET)");
+        Assert.assertTrue(cc.evaluate(null, cs.getWord(2)));
+        Assert.assertFalse(cc.evaluate(null, cs.getWord(1)));
+    }
+
 
     @Test
     public void testProjectivity() throws IOException, ConllException {
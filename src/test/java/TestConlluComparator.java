@@ -1,12 +1,15 @@
 
 import com.orange.labs.comparison.ConlluComparator;
+import com.orange.labs.comparison.Distance;
 import com.orange.labs.conllparser.ConllException;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import org.apache.commons.io.FileUtils;
 import org.junit.Assert;
 import org.junit.Before;
@@ -215,4 +218,135 @@ public class TestConlluComparator {
         FileUtils.readFileToString(new File(inurl.getFile()), StandardCharsets.UTF_8),
         FileUtils.readFileToString(out, StandardCharsets.UTF_8));
     }
+
+    @Test
+    public void test03CandidateIndex() throws ConllException, IOException, InterruptedException {
+        name("Compare sentences with and without candidate index");
+        int[][] distances = {
+            {0, -1, -1, -1, -1, -1},
+            {3, 1, -1, -1, -1, -1},
+            {-1, 0, 2, 0, 1, 3},
+            {20, -1, -1, -1, -1, -1}
+        };
+        for (int[] d : distances) {
+            for (List<File> other : Arrays.asList(null, g2)) {
+                ConlluComparator cc = new ConlluComparator(g1, other, 3);
+                cc.setUseIndex(false);
+                String ref = cc.analyse(d[0], d[1], d[2], d[3], d[4], d[5], false);
+                cc.setUseIndex(true);
+                String res = cc.analyse(d[0], d[1], d[2], d[3], d[4], d[5], false);
+                Assert.assertEquals("different results with candidate index", ref, res);
+            }
+        }
+    }
+
+    @Test
+    public void test04Distance() {
+        name("banded Levenshtein-Damerau distance");
+        Random r = new Random(42);
+        Distance distance = new Distance();
+        for (int t = 0; t < 5000; ++t) {
+            int[] a = new int[r.nextInt(12)];
+            for (int i = 0; i < a.length; ++i) {
+                a[i] = r.nextInt(4);
+            }
+            int[] b = new int[r.nextInt(12)];
+            for (int i = 0; i < b.length; ++i) {
+                b[i] = r.nextInt(4);
+            }
+            int maxdist = 1 + r.nextInt(5);
+            int ref = fullDistance(a, b);
+            int res = distance.calculate(a, b, maxdist);
+            if (ref <= maxdist) {
+                Assert.assertEquals(String.format("distance %s %s", Arrays.toString(a), Arrays.toString(b)), ref, res);
+            } else {
+                Assert.assertTrue(String.format("distance %s %s must be > %d", Arrays.toString(a), Arrays.toString(b), maxdist), res > maxdist);
+            }
+        }
+    }
+
+    /** distance calculated with the whole matrix */
+    private int fullDistance(int[] a, int[] b) {
+        int[][] dist = new int[a.length + 1][b.length + 1];
+        for (int i = 0; i <= a.length; i++) {
+            dist[i][0] = i;
+        }
+        for (int j = 0; j <= b.length; j++) {
+            dist[0][j] = j;
+        }
+        for (int i = 1; i <= a.length; i++) {
+            for (int j = 1; j <= b.length; j++) {
+                int cost = a[i - 1] == b[j - 1] ? 0 : 1;
+                dist[i][j] = Math.min(Math.min(dist[i - 1][j] + 1, dist[i][j - 1] + 1), dist[i - 1][j - 1] + cost);
+                if (i > 1 && j > 1 && a[i - 1] == b[j - 2] && a[i - 2] == b[j - 1]) {
+                    dist[i][j] = Math.min(dist[i][j], dist[i - 2][j - 2] + cost);
+                }
+            }
+        }
+        return dist[a.length][b.length];
+    }
+
+    @Test
+    public void test05ResumeComparison() throws ConllException, IOException, InterruptedException {
+        name("Compare sentences, resume interrupted comparison");
+        List<File> files = new ArrayList<>(g1);
+        files.addAll(g2);
+        ConlluComparator cc = new ConlluComparator(files, null, 3);
+        cc.setBlocksize(1);
+        File jsonl = new File(folder, "sim-form-2.jsonl");
+        String ref = cc.analyse(2, 1, -1, -1, -1, -1, false, jsonl, false);
+        Assert.assertEquals("results differ with json lines", cc.analyse(2, 1, -1, -1, -1, -1, false), ref);
+
+        // simulate an interruption: keep the first completed block, a result of an incomplete block
+        // and an incomplete line
+        List<String> lines = FileUtils.readLines(jsonl, StandardCharsets.UTF_8);
+        int blocks = 0;
+        List<String> kept = new ArrayList<>();
+        kept.add(lines.get(0));
+        int done = 0;
+        String incomplete = null;
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.startsWith("{\"done\"")) {
+                blocks++;
+                if (done < 1) {
+                    kept.add(line);
+                    done++;
+                }
+            } else if (done < 1) {
+                kept.add(line);
+            } else if (incomplete == null) {
+                incomplete = line;
+            }
+        }
+        Assert.assertTrue("not enough blocks", blocks > 1);
+        Assert.assertNotNull("no results after the first block", incomplete);
+        kept.add(incomplete);
+        kept.add(incomplete.substring(0, incomplete.length() / 2));
+        FileUtils.writeLines(jsonl, "UTF-8", kept);
+
+        cc = new ConlluComparator(files, null, 3);
+        cc.setBlocksize(1);
+        String res = cc.analyse(2, 1, -1, -1, -1, -1, false, jsonl, true);
+        Assert.assertEquals("resumed comparison gives different results", ref, res);
+        Assert.assertEquals("blocks compared", blocks, cc.getProgress()[1]);
+
+        int results = 0;
+        for (String line : FileUtils.readLines(jsonl, StandardCharsets.UTF_8)) {
+            if (line.startsWith("{\"block\"")) {
+                results++;
+            }
+        }
+        Assert.assertEquals("results in json lines", lines.size() - 1 - blocks, results);
+
+        // a killed comparison leaves its results in the temporary file
+        File tmp = new File(folder, "sim-form-2.jsonl.tmp");
+        FileUtils.writeLines(tmp, "UTF-8", kept);
+        FileUtils.writeLines(jsonl, "UTF-8", kept.subList(0, 1));
+        cc = new ConlluComparator(files, null, 3);
+        cc.setBlocksize(1);
+        res = cc.analyse(2, 1, -1, -1, -1, -1, false, jsonl, true);
+        Assert.assertEquals("comparison resumed from the temporary file gives different results", ref, res);
+        Assert.assertFalse("temporary file not renamed", tmp.exists());
+        Assert.assertEquals("results lost", lines.size(), FileUtils.readLines(jsonl, StandardCharsets.UTF_8).size());
+    }
 }
@@ -37,18 +37,37 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.orange.labs.editor.ConlluEditor;
+import com.orange.labs.editor.Validator;
 import com.orange.labs.conllparser.ConllException;
+import com.orange.labs.conllparser.ConllFile;
+import com.orange.labs.conllparser.ConllSentence;
+import com.orange.labs.conllparser.QueryIndex;
+import com.orange.labs.parserclient.ParserClient;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
 import java.io.File;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.URL;
+import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.revwalk.RevCommit;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.FixMethodOrder;
 import org.junit.Test;
@@ -1218,6 +1237,464 @@ public class TestConlluEditor {
                 FileUtils.readFileToString(out, StandardCharsets.UTF_8));
     }
 
+    @Test
+    public void test371FindAfterModification() throws IOException {
+        name("findlemma/findupos after modification (search index updated)");
+        ce.setCallgitcommit(false);
+        ce.setBacksuffix("");
+        ce.setSaveafter(1);
+
+        File out = new File(folder, "test.findaftermod.conllu");
+        ce.setOutfilename(out);
+
+        String rtc = ce.process("findlemma false Sammie", 1, "", 0);
+        JsonObject jobject = JsonParser.parseString(rtc).getAsJsonObject();
+        Assert.assertTrue("lemma must not be found yet", jobject.has("error"));
+
+        processwrapper("mod lemma 1 Sammie", 13, "editinfo");
+        processwrapper("mod upos 2 VERBPAST", 13, "editinfo");
+
+        rtc = ce.process("findlemma false Sammie", 1, "", 0);
+        jobject = JsonParser.parseString(rtc).getAsJsonObject();
+        Assert.assertEquals("modified lemma not found", 13, jobject.get("sentenceid").getAsInt());
+
+        rtc = ce.process("findupos true VERBPAST", 19, "", 0);
+        jobject = JsonParser.parseString(rtc).getAsJsonObject();
+        Assert.assertEquals("modified upos not found backwards", 13, jobject.get("sentenceid").getAsInt());
+
+        // the modified value is no longer in the sentence
+        processwrapper("mod upos 2 NOUN", 13, "editinfo");
+        rtc = ce.process("findupos false VERBPAST", 1, "", 0);
+        jobject = JsonParser.parseString(rtc).getAsJsonObject();
+        Assert.assertTrue("replaced upos still found", jobject.has("error"));
+    }
+
+    @Test
+    public void test372LazyMode() throws IOException, ConllException {
+        name("lazy mode: read, modify and save");
+        String ref = ce.process("read 13", 1, "", 0);
+
+        URL url = this.getClass().getResource("test.conllu");
+        ce = new ConlluEditor(new File(url.getFile()).toString(), true, 2);
+        ce.setCallgitcommit(false);
+        ce.setBacksuffix("");
+        ce.setSaveafter(1);
+        File out = new File(folder, "test.lazy.undo.conllu");
+        ce.setOutfilename(out);
+
+        Assert.assertEquals("sentence read differently in lazy mode", ref, ce.process("read 13", 1, "", 0));
+
+        processwrapper("mod lemma 1 Sammie", 13, "editinfo");
+        processwrapper("mod upos 2 VERBPAST", 13, "editinfo");
+        processwrapper("mod undo", 13, "editinfo");
+        URL reffile = this.getClass().getResource("test.mod.undo.conllu");
+        Assert.assertEquals(String.format("mod undo output incorrect in lazy mode\n ref: %s\n res: %s\n", reffile.toString(), out.toString()),
+                FileUtils.readFileToString(new File(reffile.getFile()), StandardCharsets.UTF_8),
+                FileUtils.readFileToString(out, StandardCharsets.UTF_8));
+
+        // read other sentences to push sentence 13 out of the cache, the modified sentence must be kept
+        ce.process("read 1", 13, "", 0);
+        ce.process("read 2", 1, "", 0);
+        ce.process("read 3", 2, "", 0);
+        String rtc = ce.process("findlemma false Sammie", 1, "", 0);
+        JsonObject jobject = JsonParser.parseString(rtc).getAsJsonObject();
+        Assert.assertEquals("modified lemma not found", 13, jobject.get("sentenceid").getAsInt());
+    }
+
+    @Test
+    public void test373IncrementalSave() throws IOException, ConllException {
+        name("saving only modified sentences");
+        String [][] commands = {
+            {"mod lemma 1 Sammie", "13"},
+            {"mod lemma 1 Sammia", "13"}, // same length: written in place
+            {"mod upos 2 VERBPAST", "5"}, // other length: copied into a new file
+            {"mod undo", "5"},
+            {"mod sentsplit 11", "16"}, // new sentence: whole file written
+            {"mod lemma 2 tester", "17"},
+        };
+        ce.setCallgitcommit(false);
+        ce.setBacksuffix("");
+        ce.setSaveafter(1);
+        File out = new File(folder, "test.incremental.conllu");
+        ce.setOutfilename(out);
+        for (String [] cmd : commands) {
+            processwrapper(cmd[0], Integer.parseInt(cmd[1]), "editinfo");
+        }
+
+        // same modifications, but the file is written once, entirely
+        URL url = this.getClass().getResource("test.conllu");
+        ce = new ConlluEditor(new File(url.getFile()).toString(), true);
+        ce.setCallgitcommit(false);
+        ce.setBacksuffix("");
+        ce.setSaveafter(100);
+        File ref = new File(folder, "test.incremental.ref.conllu");
+        ce.setOutfilename(ref);
+        for (String [] cmd : commands) {
+            processwrapper(cmd[0], Integer.parseInt(cmd[1]), "editinfo");
+        }
+        ce.process("save", 17, "editinfo", 0);
+
+        Assert.assertEquals(String.format("incremental save incorrect\n ref: %s\n res: %s\n", ref.toString(), out.toString()),
+                FileUtils.readFileToString(ref, StandardCharsets.UTF_8),
+                FileUtils.readFileToString(out, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void test374GitCommitInBackground() throws Exception {
+        name("saves committed together in the background");
+        File repo = new File(folder, "gitrepo");
+        FileUtils.deleteDirectory(repo);
+        repo.mkdir();
+        File edited = new File(repo, "test.conllu");
+        FileUtils.copyURLToFile(this.getClass().getResource("test.conllu"), edited);
+        Git git = Git.init().setDirectory(repo).call();
+        git.add().addFilepattern("test.conllu").call();
+        git.commit().setMessage("initial").call();
+
+        ce = new ConlluEditor(edited.toString(), true);
+        ce.setSaveafter(1);
+        ce.setCommitdelay(60000);
+        ce.setCommitedits(3);
+        processwrapper("mod lemma 1 Sammie", 13, "editinfo");
+        processwrapper("mod upos 2 VERBPAST", 13, "editinfo");
+        processwrapper("mod undo", 13, "editinfo");
+        ce.flushCommits();
+
+        int commits = 0;
+        String message = null;
+        for (RevCommit rc : git.log().call()) {
+            if (message == null) {
+                message = rc.getFullMessage();
+            }
+            commits++;
+        }
+        boolean clean = git.status().call().isClean();
+        git.close();
+        Assert.assertTrue("saved file not committed", clean);
+        Assert.assertEquals("the three saves must be committed together", 2, commits);
+        Assert.assertTrue("commit message incorrect: " + message, message.startsWith("3 modifications"));
+
+        URL ref = this.getClass().getResource("test.mod.undo.conllu");
+        Assert.assertEquals(String.format("committed file incorrect\n ref: %s\n res: %s\n", ref.toString(), edited.toString()),
+                FileUtils.readFileToString(new File(ref.getFile()), StandardCharsets.UTF_8),
+                FileUtils.readFileToString(edited, StandardCharsets.UTF_8));
+    }
+
+    @Test(timeout = 60000)
+    public void test374bGitCommitError() throws Exception {
+        name("failed commits do not stop the background commits");
+        File repo = new File(folder, "gitrepo-locked");
+        FileUtils.deleteDirectory(repo);
+        repo.mkdir();
+        File edited = new File(repo, "test.conllu");
+        FileUtils.copyURLToFile(this.getClass().getResource("test.conllu"), edited);
+        Git git = Git.init().setDirectory(repo).call();
+        git.add().addFilepattern("test.conllu").call();
+        git.commit().setMessage("initial").call();
+
+        ce = new ConlluEditor(edited.toString(), true);
+        ce.setSaveafter(1);
+        ce.setCommitdelay(0);
+        ce.setCommitedits(1);
+
+        // another git process holds the lock of the index
+        File indexlock = new File(repo, ".git/index.lock");
+        Assert.assertTrue(indexlock.createNewFile());
+        processwrapper("mod lemma 1 Sammie", 13, "editinfo");
+        ce.flushCommits();
+        JsonObject stats = JsonParser.parseString(ce.getValidlists()).getAsJsonObject().getAsJsonObject("gitcommits");
+        Assert.assertEquals("failed commit not counted: " + stats, 1, stats.get("errors").getAsInt());
+
+        Assert.assertTrue(indexlock.delete());
+        processwrapper("mod upos 2 VERBPAST", 13, "editinfo");
+        ce.flushCommits();
+
+        int commits = 0;
+        for (RevCommit rc : git.log().call()) {
+            commits++;
+        }
+        boolean clean = git.status().call().isClean();
+        git.close();
+        Assert.assertEquals("second save not committed", 2, commits);
+        Assert.assertTrue("saved file not committed", clean);
+    }
+
+    @Test
+    public void test375ExplainGrewmatch() throws IOException {
+        name("explaingrewmatch");
+        String pattern = "pattern { N [upos=NOUN]; V -[nsubj]-> N }";
+        String rtc = ce.process("explaingrewmatch " + pattern, 1, "", 0);
+        JsonObject jobject = JsonParser.parseString(rtc).getAsJsonObject();
+        Assert.assertTrue("no explanation: " + rtc, jobject.has("explain"));
+        JsonObject explain = jobject.getAsJsonObject("explain");
+        Assert.assertEquals("all sentences must be searched", jobject.get("maxsentence").getAsInt(), explain.get("sentences").getAsInt());
+        Assert.assertTrue("pattern must match", explain.get("matches").getAsInt() > 0);
+        Assert.assertTrue("candidates of node N missing", explain.getAsJsonObject("nodes").has("N"));
+        Assert.assertTrue("rejected relations missing", explain.getAsJsonObject("rejected").has("relation"));
+
+        // the first sentence found is the one findgrewmatch finds
+        int first = explain.getAsJsonArray("found").get(0).getAsInt();
+        rtc = ce.process("findgrewmatch false " + pattern, first - 1, "", 0);
+        jobject = JsonParser.parseString(rtc).getAsJsonObject();
+        Assert.assertEquals("findgrewmatch finds another sentence", first, jobject.get("sentenceid").getAsInt());
+    }
+
+    @Test
+    public void test376UndoPerSentence() throws IOException {
+        name("undo/redo in several sentences, after navigating to other sentences");
+        ce.setCallgitcommit(false);
+        ce.setBacksuffix("");
+        ce.setSaveafter(1);
+        File out = new File(folder, "test.mod.undo2.conllu");
+        ce.setOutfilename(out);
+
+        // file as written without any modification
+        processwrapper("mod lemma 1 Sammie", 13, "editinfo");
+        processwrapper("mod undo", 13, "editinfo");
+        String orig = FileUtils.readFileToString(out, StandardCharsets.UTF_8);
+
+        processwrapper("mod lemma 1 Sammie", 13, "editinfo");
+        processwrapper("mod upos 2 VERBPAST", 13, "editinfo");
+        processwrapper("mod upos 3 NOUN", 7, "editinfo");
+        processwrapper("mod split 2", 7, "editinfo");
+        ce.process("read 2", 2, "", 0);
+
+        String rtc = ce.process("read 13", 13, "", 0);
+        JsonObject jobject = JsonParser.parseString(rtc).getAsJsonObject();
+        Assert.assertTrue("undo must still be possible", jobject.get("canUndo").getAsBoolean());
+
+        processwrapper("mod undo", 13, "editinfo");
+        processwrapper("mod undo", 7, "editinfo");
+        processwrapper("mod redo", 7, "editinfo");
+        processwrapper("mod undo", 7, "editinfo");
+        processwrapper("mod undo", 7, "editinfo");
+        processwrapper("mod undo", 13, "editinfo");
+        rtc = ce.process("mod undo", 13, "", ce.getLastModification(13));
+        Assert.assertTrue("no more undo expected: " + rtc, JsonParser.parseString(rtc).getAsJsonObject().has("error"));
+
+        Assert.assertEquals("all modifications must be undone", orig, FileUtils.readFileToString(out, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void test376bUndoReplaceExpression() throws IOException {
+        name("replaceexpression keeps the history of sentences it does not modify");
+        ce.setCallgitcommit(false);
+        ce.setBacksuffix("");
+        ce.setSaveafter(1);
+        File out = new File(folder, "test.mod.undo3.conllu");
+        ce.setOutfilename(out);
+
+        processwrapper("mod lemma 13 Faculté", 1, "editinfo");
+        processwrapper("mod undo", 1, "editinfo");
+
+        JsonObject res = JsonParser.parseString(ce.process("replaceexpression false Lemma:raciste > Lemma:\"racist\"", 0, "", 0)).getAsJsonObject();
+        Assert.assertEquals("sentence not modified: " + res, 2, res.get("sentenceid").getAsInt());
+        Assert.assertTrue("undo must be possible in the modified sentence", res.get("canUndo").getAsBoolean());
+
+        JsonObject jobject = JsonParser.parseString(ce.process("read 1", 1, "", 0)).getAsJsonObject();
+        Assert.assertTrue("redo must still be possible in the scanned sentence", jobject.get("canRedo").getAsBoolean());
+        processwrapper("mod redo", 1, "editinfo");
+        Assert.assertTrue("redo not applied", FileUtils.readFileToString(out, StandardCharsets.UTF_8).contains("\tFacultés\tFaculté\t"));
+    }
+
+    @Test
+    public void test377ValidatorWorker() throws Exception {
+        name("persistent validator processes");
+        Assume.assumeTrue(new File("/bin/sh").exists());
+        URL script = this.getClass().getResource("validator_worker.sh");
+        File conf = new File(folder, "validator.conf");
+        FileUtils.writeStringToFile(conf, "worker: /bin/sh " + script.getFile() + "\nworkers: 2\ntimeout: 2\n", StandardCharsets.UTF_8);
+        Validator validator = new Validator(conf.toString());
+
+        try {
+            URL url = this.getClass().getResource("test.conllu");
+            ConllFile cf = new ConllFile(new File(url.getFile()), null);
+            ConllSentence cs = cf.getSentences().get(0);
+            String res = validator.validate(cs);
+            Assert.assertEquals("bad validator output", cs.getWords().size() + " words", res.trim());
+
+            // all sentences in one request
+            int words = 0;
+            for (ConllSentence s : cf.getSentences()) {
+                for (String line : s.toString().split("\n")) {
+                    if (!line.isEmpty() && Character.isDigit(line.charAt(0))) {
+                        words++;
+                    }
+                }
+            }
+            Assert.assertEquals("bad validator output for all sentences", words + " words", validator.validate(cf.getSentences()).trim());
+
+            // a worker which does not answer or dies is replaced
+            ConllSentence sleep = new ConllSentence("1\tSLEEP\tsleep\tVERB\t_\t_\t0\troot\t_\t_\n", null);
+            Assert.assertTrue("timeout expected", validator.validate(sleep).contains("timeout"));
+            ConllSentence crash = new ConllSentence("1\tCRASH\tcrash\tVERB\t_\t_\t0\troot\t_\t_\n", null);
+            Assert.assertTrue("crash expected", validator.validate(crash).contains("terminated"));
+            for (int i = 0; i < 4; ++i) {
+                Assert.assertEquals("worker not restarted", cs.getWords().size() + " words", validator.validate(cs).trim());
+            }
+        } finally {
+            validator.close();
+        }
+
+        // close() also stops a worker which is validating
+        FileUtils.writeStringToFile(conf, "worker: /bin/sh " + script.getFile() + "\nworkers: 1\ntimeout: 60\n", StandardCharsets.UTF_8);
+        final Validator busy = new Validator(conf.toString());
+        final ConllSentence sleep = new ConllSentence("1\tSLEEP\tsleep\tVERB\t_\t_\t0\troot\t_\t_\n", null);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        Future<String> res = pool.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return busy.validate(sleep);
+            }
+        });
+        Thread.sleep(500);
+        busy.close();
+        String r = res.get(5, TimeUnit.SECONDS);
+        pool.shutdown();
+        Assert.assertFalse("busy worker not stopped: " + r, r.contains("timeout"));
+    }
+
+    @Test
+    public void test378ParserClient() throws Exception {
+        name("parser client: batches sent in parallel, cached results");
+        final AtomicInteger requests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/parse", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange he) throws IOException {
+                requests.incrementAndGet();
+                String body = new String(he.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+                String text = URLDecoder.decode(body.substring(body.indexOf("data=") + 5), StandardCharsets.UTF_8);
+                // a sentence for every token
+                StringBuilder sb = new StringBuilder();
+                int id = 0;
+                for (String token : text.trim().split("\\s+")) {
+                    sb.append("# sent_id = ").append(++id).append('\n');
+                    sb.append("1\t").append(token).append("\t_\tX\t_\t_\t0\troot\t_\t_\n\n");
+                }
+                byte[] res = sb.toString().getBytes(StandardCharsets.UTF_8);
+                he.sendResponseHeaders(200, res.length);
+                he.getResponseBody().write(res);
+                he.close();
+            }
+        });
+        server.setExecutor(Executors.newFixedThreadPool(3));
+        server.start();
+
+        try {
+            File conf = new File(folder, "parser.conf");
+            FileUtils.writeStringToFile(conf, "url: http://localhost:" + server.getAddress().getPort() + "/parse\ntxt: data\nbatch: 2\nparallel: 3\n", StandardCharsets.UTF_8);
+            ParserClient pc = new ParserClient(conf.toString());
+
+            List<ConllSentence> sentences = pc.makerequest("A b. C d. E f. G h. I j.");
+            Assert.assertEquals("three batches expected", 3, requests.get());
+            StringBuilder forms = new StringBuilder();
+            for (ConllSentence cs : sentences) {
+                forms.append(cs.getWords().get(0).getForm()).append(' ');
+            }
+            Assert.assertEquals("bad order of parsed sentences", "A b. C d. E f. G h. I j. ", forms.toString());
+            for (int i = 0; i < sentences.size(); ++i) {
+                Assert.assertEquals("sent_id not renumbered", String.valueOf(i + 1), sentences.get(i).getSentid());
+            }
+
+            String json = pc.ConlluEditor_json("A b. C d. E f.");
+            Assert.assertEquals("bad number of sentences", 6, JsonParser.parseString(json).getAsJsonArray().size());
+            int before = requests.get();
+            Assert.assertEquals("cached result expected", json, pc.ConlluEditor_json("A b. C d. E f."));
+            Assert.assertEquals("text parsed again", before, requests.get());
+
+            // without batch: the whole text is sent in one request
+            FileUtils.writeStringToFile(conf, "url: http://localhost:" + server.getAddress().getPort() + "/parse\ntxt: data\n", StandardCharsets.UTF_8);
+            before = requests.get();
+            Assert.assertEquals("bad number of sentences", 10, new ParserClient(conf.toString()).makerequest("A b. C d. E f. G h. I j.").size());
+            Assert.assertEquals("text split without batch", before + 1, requests.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void test379TreeCache() throws IOException {
+        name("unchanged sentences are not recalculated");
+        ce.setCallgitcommit(false);
+        ce.setBacksuffix("");
+        ce.setSaveafter(1);
+        ce.setOutfilename(new File(folder, "test.treecache.conllu"));
+
+        String first = ce.process("read 3", 1, "", 0);
+        int built = ce.getTreesBuilt();
+        ce.process("read 4", 1, "", 0);
+        String again = ce.process("read 3", 1, "", 0);
+        Assert.assertEquals("different response for unchanged sentence", first, again);
+        Assert.assertEquals("unchanged sentence recalculated", built + 1, ce.getTreesBuilt());
+
+        // mod checktoken does not change the modification counter
+        String rtc = ce.process("mod checktoken 2 true", 3, "", ce.getLastModification(3));
+        Assert.assertNotEquals("modification not shown", first, rtc);
+        Assert.assertTrue("token to check missing", JsonParser.parseString(rtc).getAsJsonObject().has("textcheck"));
+        Assert.assertEquals("bad response after modification", rtc, ce.process("read 3", 1, "", 0));
+    }
+
+    @Test
+    public void test380QueryIndex() throws Exception {
+        name("findgrewmatch and findsubtree with a query index");
+        File file = new File(folder, "test.queryindex.conllu");
+        FileUtils.copyFile(new File(this.getClass().getResource("test.conllu").getFile()), file);
+        QueryIndex.main(new String[]{file.toString()});
+        ConlluEditor indexed = new ConlluEditor(file.toString(), true);
+        indexed.setCallgitcommit(false);
+
+        String[] commands = {
+            "findgrewmatch false pattern { V [upos=VERB]; N [upos=NOUN]; V -[obj]-> N }",
+            "findgrewmatch true pattern { N [upos=NOUN, Gender=Fem] }",
+            "findsubtree false # global.columns = ID\tLEMMA\tUPOS\tFEATS\tHEAD\tDEPREL\n"
+                    + "1\t_\tADP\t_\t3\t_\n"
+                    + "2\t_\tDET\tGender=Fem\t3\t_\n"
+                    + "3\t_\tNOUN\t_\t0\t_\n"
+        };
+        for (String command : commands) {
+            int sn = command.contains(" true ") ? new ConllFile(file).getSentences().size() : -1;
+            List<Integer> found = new ArrayList<>();
+            while (true) {
+                JsonObject res = JsonParser.parseString(ce.process(command, sn, "", 0)).getAsJsonObject();
+                JsonObject resindexed = JsonParser.parseString(indexed.process(command, sn, "", 0)).getAsJsonObject();
+                Assert.assertEquals("different result with query index: " + command, res.toString(), resindexed.toString());
+                if (res.has("error")) {
+                    break;
+                }
+                sn = res.get("sentenceid").getAsInt();
+                found.add(sn);
+            }
+            Assert.assertFalse("nothing found: " + command, found.isEmpty());
+        }
+
+        // split and join: same number of sentences, but the sentences in between have moved
+        File plainfile = new File(folder, "test.queryindex-plain.conllu");
+        FileUtils.copyFile(new File(this.getClass().getResource("test.conllu").getFile()), plainfile);
+        ConlluEditor plain = new ConlluEditor(plainfile.toString(), true);
+        plain.setCallgitcommit(false);
+        for (ConlluEditor editor : new ConlluEditor[]{plain, indexed}) {
+            editor.process("mod sentsplit 3", 0, "", 0);
+            editor.process("mod sentjoin", 10, "", 0);
+        }
+        String command = "findgrewmatch false pattern { N [lemma=\"Versailles\"] }";
+        JsonObject res = JsonParser.parseString(plain.process(command, -1, "", 0)).getAsJsonObject();
+        Assert.assertFalse("nothing found: " + command, res.has("error"));
+        Assert.assertEquals("different result with query index after split and join", res.toString(),
+                JsonParser.parseString(indexed.process(command, -1, "", 0)).getAsJsonObject().toString());
+
+        // saving the file writes the index again
+        indexed.setBacksuffix("");
+        indexed.setSaveafter(1);
+        indexed.setOutfilename(file);
+        indexed.process("mod lemma 1 Versailles", 2, "", 0);
+        Assert.assertNotEquals("file not saved", FileUtils.readFileToString(new File(this.getClass().getResource("test.conllu").getFile()), StandardCharsets.UTF_8),
+                FileUtils.readFileToString(file, StandardCharsets.UTF_8));
+        QueryIndex saved = QueryIndex.load(file);
+        Assert.assertNotNull("query index not saved with the file", saved);
+        Assert.assertEquals("bad number of indexed sentences", new ConllFile(file).getSentences().size(), saved.size());
+    }
+
     @Test
     public void test38Undo() throws IOException {
         name("modifying UPOS and Lemma, followed by undo");
@@ -1390,6 +1867,66 @@ public class TestConlluEditor {
 
 
 
+    @Test
+    public void test44validate() throws IOException {
+        name("in-process validation");
+        ce.setCallgitcommit(false);
+        URL url = this.getClass().getResource("upos.txt");
+        List<String>filenames = new ArrayList<>();
+        filenames.add(new File(url.getFile()).toString());
+        ce.setValidUPOS(filenames);
+        ce.setValidationRules(new File(this.getClass().getResource("validrules.txt").getFile()).toString());
+
+        // the invalid UPOS are the same as those marked in the tree
+        JsonObject tree = JsonParser.parseString(ce.process("read 2", 1, "", 0)).getAsJsonObject();
+        int invalidupos = tree.getAsJsonObject("errors").get("invalidUPOS").getAsInt();
+        JsonObject val = JsonParser.parseString(ce.process("validate", 2, "", 0)).getAsJsonObject().getAsJsonObject("validation");
+        int found = 0;
+        for (String id : val.getAsJsonObject("words").keySet()) {
+            for (JsonElement e : val.getAsJsonObject("words").getAsJsonArray(id)) {
+                if (e.getAsJsonObject().get("rule").getAsString().equals("invalid-upos")) {
+                    found++;
+                }
+            }
+        }
+        Assert.assertEquals("bad number of invalid UPOS: " + val, invalidupos, found);
+
+        val = JsonParser.parseString(ce.process("validate all", 2, "", 0)).getAsJsonObject().getAsJsonObject("validation");
+        Assert.assertEquals("all sentences must be validated", JsonParser.parseString(ce.process("read 2", 1, "", 0)).getAsJsonObject().get("maxsentence").getAsInt(),
+                val.get("sentences").getAsInt());
+        boolean rule = false;
+        for (JsonElement e : val.getAsJsonArray("invalid")) {
+            if (e.getAsJsonObject().get("sent_id").getAsString().equals("sv-ud-train-767")) {
+                rule = e.getAsJsonObject().getAsJsonObject("words").has("14");
+            }
+        }
+        Assert.assertTrue("validation rule not applied: " + val, rule);
+    }
+
+    @Test
+    public void test44bValidateAfterReplace() throws IOException {
+        name("validation after replaceexpression");
+        ce.setCallgitcommit(false);
+        ce.setBacksuffix("");
+        ce.setSaveafter(1);
+        ce.setOutfilename(new File(folder, "test.validatereplace.conllu"));
+        URL url = this.getClass().getResource("upos.txt");
+        List<String> filenames = new ArrayList<>();
+        filenames.add(new File(url.getFile()).toString());
+        ce.setValidUPOS(filenames);
+
+        int before = JsonParser.parseString(ce.process("validate", 2, "", 0)).getAsJsonObject().getAsJsonObject("validation").get("errors").getAsInt();
+        int beforeall = JsonParser.parseString(ce.process("validate all", 2, "", 0)).getAsJsonObject().getAsJsonObject("validation").get("errors").getAsInt();
+
+        JsonObject res = JsonParser.parseString(ce.process("replaceexpression false Upos:NOUN > Upos:\"BOGUS\"", 1, "", 0)).getAsJsonObject();
+        Assert.assertEquals("sentence not modified: " + res, 2, res.get("sentenceid").getAsInt());
+
+        int after = JsonParser.parseString(ce.process("validate", 2, "", 0)).getAsJsonObject().getAsJsonObject("validation").get("errors").getAsInt();
+        int afterall = JsonParser.parseString(ce.process("validate all", 2, "", 0)).getAsJsonObject().getAsJsonObject("validation").get("errors").getAsInt();
+        Assert.assertTrue("modified sentence not validated again", after > before);
+        Assert.assertEquals("modified sentence not validated again", beforeall + after - before, afterall);
+    }
+
     @Test
     public void test50deleteWords() throws IOException {
         name("delete words");
@@ -35,12 +35,21 @@ import com.orange.labs.conllparser.CheckGrewmatch;
 import com.orange.labs.conllparser.ConllException;
 import com.orange.labs.conllparser.ConllFile;
 import com.orange.labs.conllparser.ConllSentence;
+import com.orange.labs.conllparser.ConllSentenceReader;
 import com.orange.labs.conllparser.ConllWord;
+import com.orange.labs.conllparser.QueryIndex;
+import com.orange.labs.search.SubTreeSearch;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Set;
 import org.apache.commons.io.FileUtils;
 import org.junit.Assert;
 import org.junit.Before;
@@ -85,14 +94,18 @@ public class TestGrewmatch {
         StringBuilder results = new StringBuilder();
         try {
             CheckGrewmatch gc = new CheckGrewmatch(rule, false);
+            BitSet candidates = new QueryIndex(conllf.getSentences()).candidates(gc.getRequirements());
+            int sn = 0;
             for (ConllSentence cs : conllf.getSentences()) {
                 cs.normalise();
                 cs.makeTrees(null);
                 List<List<ConllWord>> llcw = gc.match(null, cs);
                 if (llcw != null) {
+                    Assert.assertTrue("sentence not found with the query index", candidates.get(sn));
                     results.append("# sent_id = ").append(cs.getSentid()).append("\n# text = ").append(cs.getSentence()).append('\n');
                     results.append(gc.prettyprint(llcw));
                 }
+                sn++;
             }
         } catch (ConllException e) {
             e.printStackTrace();
@@ -331,6 +344,199 @@ public class TestGrewmatch {
         applySearch("pattern { V -[^obj|subj]-> N}", "search32.conllu", cf2);
     }
 
+    @Test
+    public void test33() throws IOException, ConllException {
+        name("search 33: long sentence, many nodes");
+        // chain of 200 words, each word depends on the preceding one
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= 200; ++i) {
+            sb.append(i).append("\tw").append(i).append("\tw\tNOUN\t_\t_\t").append(i - 1)
+                    .append(i == 1 ? "\troot" : "\tdep").append("\t_\t_\n");
+        }
+        ConllSentence cs = new ConllSentence(sb.toString(), null);
+        cs.makeTrees(null);
+
+        CheckGrewmatch gc = new CheckGrewmatch("pattern { A -[dep]-> B; B -[dep]-> C; C -[dep]-> D; D -[dep]-> E }", false);
+        List<List<ConllWord>> llcw = gc.match(null, cs);
+        Assert.assertEquals("number of matches", 196, llcw.size());
+        Assert.assertEquals("first match", "w1 w2 w3 w4 w5",
+                llcw.get(0).get(0).getForm() + " " + llcw.get(0).get(1).getForm() + " " + llcw.get(0).get(2).getForm()
+                + " " + llcw.get(0).get(3).getForm() + " " + llcw.get(0).get(4).getForm());
+        Assert.assertTrue("pattern must match", gc.matches(null, cs));
+
+        gc = new CheckGrewmatch("pattern { A -[dep]-> B; B -[dep]-> C; C << A }", false);
+        Assert.assertFalse("pattern must not match", gc.matches(null, cs));
+    }
+
+    @Test
+    public void test34() throws IOException, ConllException {
+        name("search 34: compiled patterns");
+        String rule = "pattern { N [upos=NOUN]; V -[nsubj]-> N }";
+        CheckGrewmatch gc = CheckGrewmatch.compile(rule);
+        Assert.assertSame("pattern not cached", gc, CheckGrewmatch.compile(rule));
+
+        CheckGrewmatch gcnew = new CheckGrewmatch(rule, false);
+        int found = 0;
+        for (ConllSentence cs : cf.getSentences()) {
+            cs.normalise();
+            cs.makeTrees(null);
+            // the compiled pattern can be used again for every sentence
+            List<List<ConllWord>> llcw = gc.match(null, cs);
+            Assert.assertEquals("different results", gcnew.prettyprint(gcnew.match(null, cs)), gc.prettyprint(llcw));
+            if (llcw != null) {
+                found++;
+            }
+        }
+        Assert.assertTrue("pattern must match", found > 0);
+
+        ConllWord cw = cf.getSentences().get(0).getWords().get(0);
+        Assert.assertEquals("regex", cw.getUpostag().matches("NO.*|PRON"), cw.matchesUpostag("NO.*|PRON"));
+        Assert.assertEquals("literal", cw.getUpostag().equals("NOUN"), cw.matchesUpostag("NOUN"));
+        Assert.assertFalse("literal", cw.matchesUpostag("NOU"));
+    }
+
+
+    @Test
+    public void test35() throws IOException, ConllException {
+        name("search 35: streaming filter");
+        URL url = this.getClass().getResource("test.conllu");
+        String contents = FileUtils.readFileToString(new File(url.getFile()), StandardCharsets.UTF_8);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 50; ++i) {
+            sb.append(contents);
+        }
+        byte[] big = sb.toString().getBytes(StandardCharsets.UTF_8);
+        List<CheckGrewmatch> patterns = new ArrayList<>();
+        patterns.add(CheckGrewmatch.compile("pattern { N [upos=NOUN]; V -[nsubj]-> N }"));
+        patterns.add(CheckGrewmatch.compile("pattern { N [upos=NUM] }"));
+
+        // expected result: the sentences which match one of the patterns
+        StringBuilder expected = new StringBuilder();
+        int matching = 0;
+        int all = 0;
+        for (ConllSentence cs : new ConllFile(sb.toString()).getSentences()) {
+            cs.normalise();
+            cs.makeTrees(null);
+            all++;
+            if (patterns.get(0).matches(null, cs) || patterns.get(1).matches(null, cs)) {
+                expected.append(cs);
+                matching++;
+            }
+        }
+        Assert.assertTrue("pattern must match", matching > 0 && matching < all);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bos, true, StandardCharsets.UTF_8);
+        try (ConllSentenceReader reader = new ConllSentenceReader(new ByteArrayInputStream(big))) {
+            Assert.assertEquals("number of sentences", matching, CheckGrewmatch.filter(patterns, reader, out, false, 0, 4));
+        }
+        Assert.assertEquals("different sentences", expected.toString(), bos.toString(StandardCharsets.UTF_8));
+
+        try (ConllSentenceReader reader = new ConllSentenceReader(new ByteArrayInputStream(big))) {
+            Assert.assertEquals("inverted", all - matching, CheckGrewmatch.filter(patterns, reader, null, true, 0, 4));
+        }
+
+        bos.reset();
+        try (ConllSentenceReader reader = new ConllSentenceReader(new ByteArrayInputStream(big))) {
+            Assert.assertEquals("first sentences", 3, CheckGrewmatch.filter(patterns, reader, out, false, 3, 1));
+        }
+        Assert.assertEquals("different first sentences", 3, new ConllFile(bos.toString(StandardCharsets.UTF_8)).getSentences().size());
+        Assert.assertTrue("different first sentences", expected.toString().startsWith(bos.toString(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void test36() throws IOException, ConllException {
+        name("search 36: query index");
+        File file = new File(folder, "queryindex.conllu");
+        FileUtils.copyFile(new File(this.getClass().getResource("test.conllu").getFile()), file);
+        ConllFile conllf = new ConllFile(file);
+        QueryIndex qi = new QueryIndex(conllf.getSentences());
+        Assert.assertEquals("number of sentences", conllf.getSentences().size(), qi.size());
+        qi.save(file);
+        QueryIndex loaded = QueryIndex.load(file);
+        Assert.assertNotNull("index not loaded", loaded);
+
+        CheckGrewmatch gc = CheckGrewmatch.compile("pattern { V [upos=VERB]; N [upos=NOUN, Number=Plur]; V -[obj]-> N }");
+        BitSet candidates = loaded.candidates(gc.getRequirements());
+        Assert.assertEquals("different candidates", qi.candidates(gc.getRequirements()), candidates);
+        int found = 0;
+        for (int sn = 0; sn < conllf.getSentences().size(); ++sn) {
+            ConllSentence cs = conllf.getSentences().get(sn);
+            cs.normalise();
+            cs.makeTrees(null);
+            if (gc.matches(null, cs)) {
+                Assert.assertTrue("sentence not found with the query index", candidates.get(sn));
+                found++;
+            }
+        }
+        Assert.assertTrue("pattern must match", found > 0);
+        Assert.assertTrue("sentences not skipped", candidates.cardinality() < conllf.getSentences().size());
+
+        SubTreeSearch sts = new SubTreeSearch("# global.columns = ID\tLEMMA\tUPOS\tFEATS\tHEAD\tDEPREL\n"
+                + "1\t_\tADP\t_\t3\tcase\n"
+                + "2\t_\tDET\tGender=Fem\t3\t_\n"
+                + "3\t_\tNOUN\t_\t0\t_\n");
+        candidates = sts.candidates(loaded);
+        found = 0;
+        for (int sn = 0; sn < conllf.getSentences().size(); ++sn) {
+            if (!sts.match(conllf.getSentences().get(sn)).isEmpty()) {
+                Assert.assertTrue("sentence not found with the query index", candidates.get(sn));
+                found++;
+            }
+        }
+        Assert.assertTrue("subtree must match", found > 0);
+        Assert.assertTrue("sentences not skipped", candidates.cardinality() < conllf.getSentences().size());
+
+        // modified sentences are always searched
+        loaded.modified(0);
+        Assert.assertTrue("modified sentence not searched", sts.candidates(loaded).get(0));
+
+        // the index of a modified file is not used
+        Assert.assertTrue(file.setLastModified(file.lastModified() - 10000));
+        Assert.assertNull("outdated index loaded", QueryIndex.load(file));
+    }
+
+    @Test
+    public void test37() throws IOException, ConllException {
+        name("search 37: all subtree matches, in parallel");
+        URL url = this.getClass().getResource("test.conllu");
+        String contents = FileUtils.readFileToString(new File(url.getFile()), StandardCharsets.UTF_8);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 30; ++i) {
+            sb.append(contents);
+        }
+        ConllFile conllf = new ConllFile(sb.toString());
+        List<ConllSentence> sentences = conllf.getSentences();
+
+        SubTreeSearch sts = new SubTreeSearch("# global.columns = ID\tLEMMA\tUPOS\tFEATS\tHEAD\tDEPREL\n"
+                + "1\t_\tDET\t_\t2\tdet\n"
+                + "2\t_\tNOUN\t_\t0\t_\n");
+        List<List<Set<Integer>>> sequential = new ArrayList<>();
+        int matching = 0;
+        int several = 0;
+        for (ConllSentence cs : sentences) {
+            List<Set<Integer>> all = sts.matchAll(cs);
+            sequential.add(all);
+            if (!all.isEmpty()) {
+                matching++;
+                // the first match is the result of match()
+                Assert.assertEquals("first match", all.get(0), sts.match(cs));
+                if (all.size() > 1) {
+                    several++;
+                }
+            } else {
+                Assert.assertTrue("no match expected", sts.match(cs).isEmpty());
+            }
+        }
+        Assert.assertTrue("subtree must match", matching > 0 && matching < sentences.size());
+        Assert.assertTrue("subtree must match several times", several > 0);
+
+        Assert.assertEquals("parallel search", sequential, sts.match(sentences, true, 4));
+        List<List<Set<Integer>>> first = sts.match(sentences, false, 4);
+        for (int i = 0; i < sentences.size(); ++i) {
+            Assert.assertEquals("first match", sequential.get(i).isEmpty() ? 0 : 1, first.get(i).size());
+        }
+    }
 
     @Test
     public void testerror1() throws IOException, ConllException {
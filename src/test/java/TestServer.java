@@ -48,6 +48,9 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import org.apache.commons.io.FileUtils;
 import org.junit.Assert;
 import org.junit.jupiter.api.AfterEach;
@@ -349,6 +352,44 @@ public class TestServer {
         compareFile(res, "API 'mod head' output incorrect", "api.split.json");
     }
 
+    @Test
+    public void test054_concurrent_reads() throws Exception {
+        name("concurrent read requests");
+
+        final String [] expected = new String[20];
+        for (int i = 0; i < expected.length; ++i) {
+            expected[i] = httppost("/edit/", "read+" + i, 0);
+        }
+
+        final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        Thread [] threads = new Thread[8];
+        for (int t = 0; t < threads.length; ++t) {
+            final int offset = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < expected.length; ++i) {
+                            int sn = (i + offset) % expected.length;
+                            String res = httppost("/edit/", "read+" + sn, 0);
+                            if (!expected[sn].equals(res)) {
+                                errors.add("sentence " + sn + " read differently");
+                            }
+                            httppost("/edit/", "findupos+false+VERB", sn);
+                        }
+                    } catch (Exception e) {
+                        errors.add(e.toString());
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        Assert.assertEquals("concurrent reads failed", "[]", errors.toString());
+    }
+
     @Test
     public void test061_getfile() throws Exception {
         name("get file");
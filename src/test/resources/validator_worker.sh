@@ -0,0 +1,18 @@
+#!/bin/sh
+
+# validator worker for the tests: answers with the number of words of the sentences
+while read cmd n; do
+    words=0
+    i=0
+    while [ $i -lt $n ]; do
+        IFS= read -r line
+        i=$((i+1))
+        case "$line" in
+            *SLEEP*) sleep 10 ;;
+            *CRASH*) exit 1 ;;
+            [0-9]*) words=$((words+1)) ;;
+        esac
+    done
+    echo "RESULT 1"
+    echo "$words words"
+done